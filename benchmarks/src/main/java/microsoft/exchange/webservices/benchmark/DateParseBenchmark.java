@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.benchmark;
+
+import microsoft.exchange.webservices.data.core.EwsUtilities;
+import microsoft.exchange.webservices.data.util.DateTimeUtils;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading and writing yyyy-MM-dd'T'HH:mm:ss'Z' date times, the form
+ * every DateTimeReceived, Start or End value of a response takes. Compares a
+ * SimpleDateFormat created per value, a cached Joda formatter and the
+ * hand-written parser.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateParseBenchmark {
+
+  private static final String PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+  private static final DateTimeFormatter FORMATTER = DateTimeFormat.forPattern(PATTERN).withZoneUTC();
+
+  private static final int VALUE_COUNT = 100;
+
+  private String[] values;
+
+  private Date[] dates;
+
+  @Setup
+  public void setUp() {
+    values = new String[VALUE_COUNT];
+    dates = new Date[VALUE_COUNT];
+    long time = 1457000000000L;
+    for (int i = 0; i < VALUE_COUNT; i++) {
+      dates[i] = new Date(time);
+      values[i] = FORMATTER.print(time);
+      time += 3607000L;
+    }
+  }
+
+  @Benchmark
+  public void parseSimpleDateFormat(Blackhole blackhole) throws ParseException {
+    for (String value : values) {
+      DateFormat df = new SimpleDateFormat(PATTERN);
+      df.setTimeZone(TimeZone.getTimeZone("UTC"));
+      blackhole.consume(df.parse(value));
+    }
+  }
+
+  @Benchmark
+  public void parseCachedFormatter(Blackhole blackhole) {
+    for (String value : values) {
+      blackhole.consume(FORMATTER.parseDateTime(value).toDate());
+    }
+  }
+
+  @Benchmark
+  public void parseFastPath(Blackhole blackhole) {
+    for (String value : values) {
+      blackhole.consume(DateTimeUtils.parseUniversalDateTime(value));
+    }
+  }
+
+  @Benchmark
+  public void parseDateTimeElement(Blackhole blackhole) {
+    for (String value : values) {
+      blackhole.consume(DateTimeUtils.convertDateTimeStringToDate(value));
+    }
+  }
+
+  @Benchmark
+  public void formatSimpleDateFormat(Blackhole blackhole) {
+    for (Date date : dates) {
+      DateFormat df = new SimpleDateFormat(PATTERN);
+      df.setTimeZone(TimeZone.getTimeZone("UTC"));
+      blackhole.consume(df.format(date));
+    }
+  }
+
+  @Benchmark
+  public void formatCachedFormatter(Blackhole blackhole) {
+    for (Date date : dates) {
+      blackhole.consume(EwsUtilities.dateTimeToXSDateTime(date));
+    }
+  }
+
+}
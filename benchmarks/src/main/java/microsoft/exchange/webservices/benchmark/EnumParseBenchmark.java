@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.benchmark;
+
+import microsoft.exchange.webservices.data.core.EwsUtilities;
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+import microsoft.exchange.webservices.data.core.enumeration.property.Importance;
+import microsoft.exchange.webservices.data.core.enumeration.property.MailboxType;
+import microsoft.exchange.webservices.data.core.enumeration.property.Sensitivity;
+import microsoft.exchange.webservices.data.core.enumeration.service.ServiceResult;
+import microsoft.exchange.webservices.data.core.request.FindItemRequest;
+import microsoft.exchange.webservices.data.core.request.RecordedResponses;
+import microsoft.exchange.webservices.data.core.response.FindItemResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enum deserialization cost. The scan benchmark reproduces the former linear
+ * search over getEnumConstants(); the lookup benchmark goes through
+ * {@link EwsUtilities#parse(Class, String)}. Both parse the enum values a
+ * 100 item FindItem response carries, and findItemResponse parses the whole
+ * recorded response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnumParseBenchmark {
+
+  private static final int ITEM_COUNT = 100;
+
+  private Class<?>[] types;
+
+  private String[] values;
+
+  private FindItemRequest<Item> request;
+
+  private byte[] payload;
+
+  @Setup
+  public void setUp() throws Exception {
+    // Per item: Sensitivity, Importance and the MailboxType of Sender and From.
+    types = new Class<?>[2 + ITEM_COUNT * 4];
+    values = new String[types.length];
+    types[0] = ServiceResult.class;
+    values[0] = "Success";
+    types[1] = ServiceError.class;
+    values[1] = "NoError";
+    for (int i = 0; i < ITEM_COUNT; i++) {
+      int n = 2 + i * 4;
+      types[n] = Sensitivity.class;
+      values[n] = i % 5 == 0 ? "Private" : "Normal";
+      types[n + 1] = Importance.class;
+      values[n + 1] = i % 4 == 0 ? "High" : "Normal";
+      types[n + 2] = MailboxType.class;
+      values[n + 2] = "Mailbox";
+      types[n + 3] = MailboxType.class;
+      values[n + 3] = "Mailbox";
+    }
+
+    request = RecordedResponses.newFindItemRequest(new ExchangeService(), ITEM_COUNT);
+    payload = RecordedResponses.load("FindItemResponse.xml");
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    for (int i = 0; i < types.length; i++) {
+      blackhole.consume(scan(types[i], values[i]));
+    }
+  }
+
+  @Benchmark
+  public void lookup(Blackhole blackhole) throws Exception {
+    for (int i = 0; i < types.length; i++) {
+      blackhole.consume(EwsUtilities.parse(types[i], values[i]));
+    }
+  }
+
+  @Benchmark
+  public ServiceResponseCollection<FindItemResponse<Item>> findItemResponse() throws Exception {
+    return RecordedResponses.readFindItemResponse(request, payload);
+  }
+
+  private static Object scan(Class<?> cls, String value) {
+    for (Object o : cls.getEnumConstants()) {
+      if (o.toString().equals(value)) {
+        return o;
+      }
+    }
+    return null;
+  }
+
+}
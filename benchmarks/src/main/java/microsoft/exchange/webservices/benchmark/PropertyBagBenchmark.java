@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.benchmark;
+
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.request.FindItemRequest;
+import microsoft.exchange.webservices.data.core.request.RecordedResponses;
+import microsoft.exchange.webservices.data.core.response.FindItemResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+import microsoft.exchange.webservices.data.core.service.schema.EmailMessageSchema;
+import microsoft.exchange.webservices.data.core.service.schema.ItemSchema;
+import microsoft.exchange.webservices.data.property.definition.PropertyDefinition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Property bag cost over a recorded 100 item FindItem response: loading the
+ * items, and reading and checking property on the loaded items. Run with
+ * {@code -prof gc} to see the bytes allocated per page, most of which the
+ * loaded items retain; {@link PropertyBagFootprint} measures the retained heap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyBagBenchmark {
+
+  private static final PropertyDefinition[] READ_PROPERTIES = {
+      ItemSchema.Subject, ItemSchema.DateTimeReceived, ItemSchema.Size,
+      EmailMessageSchema.IsRead, EmailMessageSchema.From, ItemSchema.Importance
+  };
+
+  private FindItemRequest<Item> request;
+
+  private byte[] payload;
+
+  private List<Item> items;
+
+  @Setup
+  public void setUp() throws Exception {
+    ExchangeService service = new ExchangeService();
+    request = RecordedResponses.newFindItemRequest(service, 100);
+    payload = RecordedResponses.load("FindItemResponse.xml");
+    items = load().getResponseAtIndex(0).getResults().getItems();
+  }
+
+  private ServiceResponseCollection<FindItemResponse<Item>> load() throws Exception {
+    return RecordedResponses.readFindItemResponse(request, payload);
+  }
+
+  @Benchmark
+  public ServiceResponseCollection<FindItemResponse<Item>> loadItems() throws Exception {
+    return load();
+  }
+
+  @Benchmark
+  public void getProperties(Blackhole blackhole) throws Exception {
+    for (Item item : items) {
+      for (PropertyDefinition propertyDefinition : READ_PROPERTIES) {
+        blackhole.consume(item.getPropertyBag().getObjectFromPropertyDefinition(propertyDefinition));
+      }
+    }
+  }
+
+  @Benchmark
+  public void checkProperties(Blackhole blackhole) {
+    for (Item item : items) {
+      for (PropertyDefinition propertyDefinition : READ_PROPERTIES) {
+        blackhole.consume(item.getPropertyBag().isPropertyLoaded(propertyDefinition));
+        blackhole.consume(item.getPropertyBag().isPropertyUpdated(propertyDefinition));
+      }
+      blackhole.consume(item.getPropertyBag().getIsDirty());
+    }
+  }
+
+}
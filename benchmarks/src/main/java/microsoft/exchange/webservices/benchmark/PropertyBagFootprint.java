@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.benchmark;
+
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.request.FindItemRequest;
+import microsoft.exchange.webservices.data.core.request.RecordedResponses;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap retained per item loaded from a recorded FindItem response.
+ * <p>
+ * Run with {@code java -cp target/benchmarks.jar
+ * microsoft.exchange.webservices.benchmark.PropertyBagFootprint [pages]}.
+ * </p>
+ */
+public final class PropertyBagFootprint {
+
+  private PropertyBagFootprint() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int pages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    ExchangeService service = new ExchangeService();
+    FindItemRequest<Item> request = RecordedResponses.newFindItemRequest(service, 100);
+    byte[] payload = RecordedResponses.load("FindItemResponse.xml");
+
+    // Load once so that lazily initialized static state isn't counted.
+    RecordedResponses.readFindItemResponse(request, payload);
+    long before = usedHeap();
+
+    List<Item> items = new ArrayList<Item>(pages * 100);
+    for (int i = 0; i < pages; i++) {
+      items.addAll(RecordedResponses.readFindItemResponse(request, payload)
+          .getResponseAtIndex(0).getResults().getItems());
+    }
+    long after = usedHeap();
+
+    System.out.printf("%d items, %d bytes retained per item%n", items.size(),
+        (after - before) / items.size());
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.benchmark;
+
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.PropertySet;
+import microsoft.exchange.webservices.data.core.enumeration.property.BasePropertySet;
+import microsoft.exchange.webservices.data.core.enumeration.property.MapiPropertyType;
+import microsoft.exchange.webservices.data.core.enumeration.search.LogicalOperator;
+import microsoft.exchange.webservices.data.core.request.FindItemRequest;
+import microsoft.exchange.webservices.data.core.request.RecordedResponses;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+import microsoft.exchange.webservices.data.core.service.schema.EmailMessageSchema;
+import microsoft.exchange.webservices.data.core.service.schema.ItemSchema;
+import microsoft.exchange.webservices.data.property.definition.ExtendedPropertyDefinition;
+import microsoft.exchange.webservices.data.search.filter.SearchFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing a polling FindItem request whose property set carries
+ * extended properties and whose restriction is a small filter tree, with
+ * and without freezing the property set and the filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestWriteBenchmark {
+
+  @Param({"false", "true"})
+  public boolean frozen;
+
+  private FindItemRequest<Item> request;
+
+  private ByteArrayOutputStream stream;
+
+  @Setup
+  public void setUp() throws Exception {
+    PropertySet propertySet = new PropertySet(BasePropertySet.IdOnly,
+        ItemSchema.Subject, ItemSchema.DateTimeReceived, EmailMessageSchema.From,
+        EmailMessageSchema.IsRead,
+        new ExtendedPropertyDefinition(0x0E08, MapiPropertyType.Integer),
+        new ExtendedPropertyDefinition(0x1000, MapiPropertyType.String),
+        new ExtendedPropertyDefinition(0x007D, MapiPropertyType.String));
+    SearchFilter filter = new SearchFilter.SearchFilterCollection(LogicalOperator.And,
+        new SearchFilter.IsGreaterThan(ItemSchema.DateTimeReceived, new Date(1262304000000L)),
+        new SearchFilter.IsEqualTo(EmailMessageSchema.IsRead, false),
+        new SearchFilter.Not(new SearchFilter.ContainsSubstring(ItemSchema.Subject, "[auto]")));
+    if (frozen) {
+      propertySet.freeze();
+      filter.freeze();
+    }
+
+    request = RecordedResponses.newFindItemRequest(new ExchangeService(), 100);
+    request.getView().setPropertySet(propertySet);
+    request.setSearchFilter(filter);
+    stream = new ByteArrayOutputStream(8192);
+  }
+
+  @Benchmark
+  public int writeFindItem() throws Exception {
+    stream.reset();
+    RecordedResponses.writeRequest(request, stream);
+    return stream.size();
+  }
+
+}
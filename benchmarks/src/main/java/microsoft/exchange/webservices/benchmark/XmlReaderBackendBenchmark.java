@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.benchmark;
+
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.request.FindItemRequest;
+import microsoft.exchange.webservices.data.core.request.GetItemRequest;
+import microsoft.exchange.webservices.data.core.request.GetStreamingEventsRequest;
+import microsoft.exchange.webservices.data.core.request.RecordedResponses;
+import microsoft.exchange.webservices.data.core.request.SyncFolderItemsRequest;
+import microsoft.exchange.webservices.data.core.response.FindItemResponse;
+import microsoft.exchange.webservices.data.core.response.GetItemResponse;
+import microsoft.exchange.webservices.data.core.response.GetStreamingEventsResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import microsoft.exchange.webservices.data.core.response.SyncFolderItemsResponse;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response parsing with the StAX event reader and with the cursor reader
+ * ({@link ExchangeService#setXmlCursorReaderEnabled(boolean)}), over recorded
+ * 100 item FindItem, GetItem and SyncFolderItems responses, and a streaming
+ * notification of 200 events read with the EwsServiceMultiResponseXmlReader.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlReaderBackendBenchmark {
+
+  @Param({"event", "cursor"})
+  public String backend;
+
+  private FindItemRequest<Item> findItemRequest;
+
+  private byte[] findItemPayload;
+
+  private GetItemRequest getItemRequest;
+
+  private byte[] getItemPayload;
+
+  private SyncFolderItemsRequest syncFolderItemsRequest;
+
+  private byte[] syncFolderItemsPayload;
+
+  private GetStreamingEventsRequest getStreamingEventsRequest;
+
+  private byte[] getStreamingEventsPayload;
+
+  @Setup
+  public void setUp() throws Exception {
+    ExchangeService service = new ExchangeService();
+    service.setXmlCursorReaderEnabled("cursor".equals(backend));
+
+    findItemRequest = RecordedResponses.newFindItemRequest(service, 100);
+    findItemPayload = RecordedResponses.load("FindItemResponse.xml");
+    getItemPayload = RecordedResponses.load("GetItemResponse.xml");
+    getItemRequest = RecordedResponses.newGetItemRequest(service, getItemPayload);
+    syncFolderItemsRequest = RecordedResponses.newSyncFolderItemsRequest(service);
+    syncFolderItemsPayload = RecordedResponses.load("SyncFolderItemsResponse.xml");
+    getStreamingEventsRequest = RecordedResponses.newGetStreamingEventsRequest(service);
+    getStreamingEventsPayload = RecordedResponses.load("GetStreamingEventsResponse.xml");
+  }
+
+  @Benchmark
+  public ServiceResponseCollection<FindItemResponse<Item>> findItem() throws Exception {
+    return RecordedResponses.readFindItemResponse(findItemRequest, findItemPayload);
+  }
+
+  @Benchmark
+  public ServiceResponseCollection<GetItemResponse> getItem() throws Exception {
+    return RecordedResponses.readGetItemResponse(getItemRequest, getItemPayload);
+  }
+
+  @Benchmark
+  public ServiceResponseCollection<SyncFolderItemsResponse> syncFolderItems() throws Exception {
+    return RecordedResponses.readSyncFolderItemsResponse(syncFolderItemsRequest, syncFolderItemsPayload);
+  }
+
+  @Benchmark
+  public GetStreamingEventsResponse getStreamingEvents() throws Exception {
+    return RecordedResponses.readGetStreamingEventsResponse(getStreamingEventsRequest,
+        getStreamingEventsPayload);
+  }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.request;
+
+import microsoft.exchange.webservices.data.core.EwsServiceMultiResponseXmlReader;
+import microsoft.exchange.webservices.data.core.EwsServiceXmlReader;
+import microsoft.exchange.webservices.data.core.EwsServiceXmlWriter;
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.enumeration.property.BodyType;
+import microsoft.exchange.webservices.data.core.enumeration.property.Importance;
+import microsoft.exchange.webservices.data.core.enumeration.property.WellKnownFolderName;
+import microsoft.exchange.webservices.data.core.enumeration.service.MessageDisposition;
+import microsoft.exchange.webservices.data.core.enumeration.service.error.ServiceErrorHandling;
+import microsoft.exchange.webservices.data.core.PropertySet;
+import microsoft.exchange.webservices.data.core.enumeration.property.BasePropertySet;
+import microsoft.exchange.webservices.data.core.enumeration.service.SyncFolderItemsScope;
+import microsoft.exchange.webservices.data.core.response.FindItemResponse;
+import microsoft.exchange.webservices.data.core.response.GetItemResponse;
+import microsoft.exchange.webservices.data.core.response.GetStreamingEventsResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import microsoft.exchange.webservices.data.core.response.SyncFolderItemsResponse;
+import microsoft.exchange.webservices.data.core.service.item.EmailMessage;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+import microsoft.exchange.webservices.data.property.complex.MessageBody;
+import microsoft.exchange.webservices.data.property.complex.FolderId;
+import microsoft.exchange.webservices.data.property.complex.ItemId;
+import microsoft.exchange.webservices.data.search.ItemView;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses recorded EWS responses the way a request would, without a server.
+ * Lives in the request package to reach the protected response readers.
+ */
+public final class RecordedResponses {
+
+  private static final Pattern ITEM_ID_PATTERN = Pattern.compile("<t:ItemId Id=\"([^\"]+)\"");
+
+  private RecordedResponses() {
+  }
+
+  /**
+   * Loads a recorded payload from the classpath.
+   *
+   * @param name the payload file name
+   * @return the payload bytes
+   * @throws IOException on error
+   */
+  public static byte[] load(String name) throws IOException {
+    InputStream stream = RecordedResponses.class.getResourceAsStream("/payloads/" + name);
+    if (stream == null) {
+      throw new IOException("Payload not found: " + name);
+    }
+    try {
+      return IOUtils.toByteArray(stream);
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Creates a FindItem request for the inbox with the given page size.
+   *
+   * @param service  the service
+   * @param pageSize the page size
+   * @return the request
+   * @throws Exception on error
+   */
+  public static FindItemRequest<Item> newFindItemRequest(ExchangeService service, int pageSize)
+      throws Exception {
+    FindItemRequest<Item> request =
+        new FindItemRequest<Item>(service, ServiceErrorHandling.ReturnErrors);
+    request.getParentFolderIds().add(new FolderId(WellKnownFolderName.Inbox));
+    request.setView(new ItemView(pageSize));
+    return request;
+  }
+
+  /**
+   * Reads a FindItem response.
+   *
+   * @param request the request the response belongs to
+   * @param payload the recorded response
+   * @return the parsed responses
+   * @throws Exception on error
+   */
+  public static ServiceResponseCollection<FindItemResponse<Item>> readFindItemResponse(
+      FindItemRequest<Item> request, byte[] payload) throws Exception {
+    EwsServiceXmlReader reader =
+        new EwsServiceXmlReader(new ByteArrayInputStream(payload), request.getService());
+    return request.readResponse(reader);
+  }
+
+  /**
+   * Creates a GetItem request for the items of a recorded response, so that
+   * the request expects one response message per item.
+   *
+   * @param service the service
+   * @param payload the recorded response
+   * @return the request
+   * @throws Exception on error
+   */
+  public static GetItemRequest newGetItemRequest(ExchangeService service, byte[] payload)
+      throws Exception {
+    List<ItemId> itemIds = new ArrayList<ItemId>();
+    Matcher matcher = ITEM_ID_PATTERN.matcher(new String(payload, "UTF-8"));
+    while (matcher.find()) {
+      itemIds.add(new ItemId(matcher.group(1)));
+    }
+    GetItemRequest request = new GetItemRequest(service, ServiceErrorHandling.ReturnErrors);
+    request.getItemIds().addRange(itemIds);
+    request.setPropertySet(new PropertySet(BasePropertySet.FirstClassProperties));
+    return request;
+  }
+
+  /**
+   * Reads a GetItem response.
+   *
+   * @param request the request the response belongs to
+   * @param payload the recorded response
+   * @return the parsed responses
+   * @throws Exception on error
+   */
+  public static ServiceResponseCollection<GetItemResponse> readGetItemResponse(
+      GetItemRequest request, byte[] payload) throws Exception {
+    EwsServiceXmlReader reader =
+        new EwsServiceXmlReader(new ByteArrayInputStream(payload), request.getService());
+    return request.readResponse(reader);
+  }
+
+  /**
+   * Creates a SyncFolderItems request for the inbox.
+   *
+   * @param service the service
+   * @return the request
+   * @throws Exception on error
+   */
+  public static SyncFolderItemsRequest newSyncFolderItemsRequest(ExchangeService service)
+      throws Exception {
+    SyncFolderItemsRequest request = new SyncFolderItemsRequest(service);
+    request.setSyncFolderId(new FolderId(WellKnownFolderName.Inbox));
+    request.setPropertySet(new PropertySet(BasePropertySet.FirstClassProperties));
+    request.setSyncScope(SyncFolderItemsScope.NormalItems);
+    request.setMaxChangesReturned(100);
+    return request;
+  }
+
+  /**
+   * Reads a SyncFolderItems response.
+   *
+   * @param request the request the response belongs to
+   * @param payload the recorded response
+   * @return the parsed responses
+   * @throws Exception on error
+   */
+  public static ServiceResponseCollection<SyncFolderItemsResponse> readSyncFolderItemsResponse(
+      SyncFolderItemsRequest request, byte[] payload) throws Exception {
+    EwsServiceXmlReader reader =
+        new EwsServiceXmlReader(new ByteArrayInputStream(payload), request.getService());
+    return request.readResponse(reader);
+  }
+
+  /**
+   * Creates a CreateItem request that saves the given number of messages to the
+   * drafts folder, each with a small HTML body, recipients and categories.
+   *
+   * @param service the service
+   * @param count   the number of messages
+   * @return the request
+   * @throws Exception on error
+   */
+  public static CreateItemRequest newCreateItemRequest(ExchangeService service, int count)
+      throws Exception {
+    List<Item> messages = new ArrayList<Item>(count);
+    for (int i = 0; i < count; i++) {
+      EmailMessage message = new EmailMessage(service);
+      message.setSubject("Quarterly report " + i);
+      message.setBody(new MessageBody(BodyType.HTML,
+          "<html><body><p>Please find the figures for quarter " + i + " below.</p></body></html>"));
+      message.getToRecipients().add("alice" + i + "@contoso.com");
+      message.getToRecipients().add("bob" + i + "@contoso.com");
+      message.getCcRecipients().add("team@contoso.com");
+      message.setImportance(i % 4 == 0 ? Importance.High : Importance.Normal);
+      message.getCategories().add("Reports");
+      message.setIsReadReceiptRequested(i % 2 == 0);
+      messages.add(message);
+    }
+    CreateItemRequest request = new CreateItemRequest(service, ServiceErrorHandling.ReturnErrors);
+    request.setParentFolderId(new FolderId(WellKnownFolderName.Drafts));
+    request.setMessageDisposition(MessageDisposition.SaveOnly);
+    request.setItems(messages);
+    return request;
+  }
+
+  /**
+   * Creates a GetStreamingEvents request for one subscription, which ignores the
+   * responses it would receive from a server.
+   *
+   * @param service the service
+   * @return the request
+   * @throws Exception on error
+   */
+  public static GetStreamingEventsRequest newGetStreamingEventsRequest(ExchangeService service)
+      throws Exception {
+    return new GetStreamingEventsRequest(service, new HangingServiceRequestBase.IHandleResponseObject() {
+      @Override
+      public void handleResponseObject(Object response) {
+      }
+    }, Collections.singletonList("subscription"), 30);
+  }
+
+  /**
+   * Reads a GetStreamingEvents response with the reader that streaming
+   * subscriptions use for each response on the open connection.
+   *
+   * @param request the request the response belongs to
+   * @param payload the recorded response
+   * @return the parsed response
+   * @throws Exception on error
+   */
+  public static GetStreamingEventsResponse readGetStreamingEventsResponse(
+      GetStreamingEventsRequest request, byte[] payload) throws Exception {
+    EwsServiceXmlReader reader =
+        EwsServiceMultiResponseXmlReader.create(new ByteArrayInputStream(payload), request.getService());
+    return request.readResponse(reader);
+  }
+
+  /**
+   * Writes the SOAP envelope of a request the way it is sent to the server.
+   *
+   * @param request the request
+   * @param stream  the stream to write to
+   * @throws Exception on error
+   */
+  public static void writeRequest(ServiceRequestBase request, OutputStream stream)
+      throws Exception {
+    EwsServiceXmlWriter writer = new EwsServiceXmlWriter(request.getService(), stream);
+    try {
+      request.writeToXml(writer);
+      writer.flush();
+    } finally {
+      writer.dispose();
+    }
+  }
+
+}
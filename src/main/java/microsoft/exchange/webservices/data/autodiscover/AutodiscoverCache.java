@@ -0,0 +1,397 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.autodiscover;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory, least recently used {@link IAutodiscoverCache} whose entries
+ * expire after a fixed time. Negative entries usually get a shorter lifetime
+ * than positive ones, so a mailbox that was just provisioned is found soon.
+ * <p>
+ * The cache can be backed by a file to survive restarts. Every change is
+ * appended to the file, and the file is compacted when the cache is created
+ * and whenever twice as many changes as entries were appended.
+ * The file is only readable and writable by its owner where the file system
+ * supports it.
+ * </p>
+ */
+public class AutodiscoverCache implements IAutodiscoverCache {
+
+  private static final Log LOG = LogFactory.getLog(AutodiscoverCache.class);
+
+  /**
+   * The default maximum number of entries.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  /**
+   * The default lifetime of positive entries: one day.
+   */
+  public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 24L * 60 * 60 * 1000;
+
+  /**
+   * The default lifetime of negative entries: five minutes.
+   */
+  public static final long DEFAULT_NEGATIVE_TIME_TO_LIVE_MILLIS = 5L * 60 * 1000;
+
+  /**
+   * The entries in access order, guarded by this.
+   */
+  private final LinkedHashMap<String, Holder> entries;
+
+  /**
+   * The maximum number of entries.
+   */
+  private final int maxEntries;
+
+  /**
+   * The lifetime of positive entries.
+   */
+  private final long timeToLiveMillis;
+
+  /**
+   * The lifetime of negative entries.
+   */
+  private final long negativeTimeToLiveMillis;
+
+  /**
+   * The backing file, null if the cache is in memory only.
+   */
+  private final File file;
+
+  /**
+   * The writer appending to the backing file, guarded by this.
+   */
+  private Writer fileWriter;
+
+  /**
+   * The number of lines appended to the backing file since it was last compacted, guarded by this.
+   */
+  private int appendedLines;
+
+  /**
+   * Initializes a new in-memory cache with the default size and lifetimes.
+   */
+  public AutodiscoverCache() {
+    this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS, DEFAULT_NEGATIVE_TIME_TO_LIVE_MILLIS);
+  }
+
+  /**
+   * Initializes a new in-memory cache.
+   *
+   * @param maxEntries               the maximum number of entries
+   * @param timeToLiveMillis         the lifetime of positive entries
+   * @param negativeTimeToLiveMillis the lifetime of negative entries, 0 to not keep them
+   */
+  public AutodiscoverCache(int maxEntries, long timeToLiveMillis, long negativeTimeToLiveMillis) {
+    this(maxEntries, timeToLiveMillis, negativeTimeToLiveMillis, null);
+  }
+
+  /**
+   * Initializes a new cache backed by a file. Entries stored in the file by
+   * an earlier instance are loaded unless they expired.
+   *
+   * @param maxEntries               the maximum number of entries
+   * @param timeToLiveMillis         the lifetime of positive entries
+   * @param negativeTimeToLiveMillis the lifetime of negative entries, 0 to not keep them
+   * @param file                     the backing file, null to keep the cache in memory only
+   */
+  public AutodiscoverCache(int maxEntries, long timeToLiveMillis, long negativeTimeToLiveMillis,
+      File file) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be greater than 0");
+    }
+    if (timeToLiveMillis <= 0 || negativeTimeToLiveMillis < 0) {
+      throw new IllegalArgumentException("The time to live must be greater than 0");
+    }
+    this.maxEntries = maxEntries;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.negativeTimeToLiveMillis = negativeTimeToLiveMillis;
+    this.file = file;
+    this.entries = new LinkedHashMap<String, Holder>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Holder> eldest) {
+        return size() > AutodiscoverCache.this.maxEntries;
+      }
+    };
+    if (file != null) {
+      this.load();
+    }
+  }
+
+  /**
+   * Gets the current time. Tests override this to control expiry.
+   *
+   * @return the current time in milliseconds
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public synchronized AutodiscoverCacheEntry get(String key) {
+    Holder holder = this.entries.get(key);
+    if (holder == null) {
+      return null;
+    }
+    if (holder.expiresAt <= this.currentTimeMillis()) {
+      this.entries.remove(key);
+      return null;
+    }
+    return holder.entry;
+  }
+
+  @Override
+  public synchronized void put(String key, AutodiscoverCacheEntry entry) {
+    long timeToLive = entry.isNegative() ? this.negativeTimeToLiveMillis : this.timeToLiveMillis;
+    if (timeToLive == 0) {
+      this.remove(key);
+      return;
+    }
+    Holder holder = new Holder(entry, this.currentTimeMillis() + timeToLive);
+    this.entries.put(key, holder);
+    this.append(key, holder);
+  }
+
+  @Override
+  public synchronized void remove(String key) {
+    if (this.entries.remove(key) != null) {
+      this.append(key, null);
+    }
+  }
+
+  /**
+   * Gets the number of entries, including expired entries not yet evicted.
+   *
+   * @return the number of entries
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public synchronized void clear() {
+    this.entries.clear();
+    if (this.file != null) {
+      this.rewrite();
+    }
+  }
+
+  /**
+   * Closes the backing file. Later changes are kept in memory only.
+   */
+  public synchronized void close() {
+    this.closeFileWriter();
+  }
+
+  /**
+   * Loads the unexpired entries of the backing file and compacts it.
+   */
+  private void load() {
+    long now = this.currentTimeMillis();
+    try {
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split("\t", -1);
+          if (fields.length != 5 && fields.length != 6) {
+            continue;
+          }
+          try {
+            long expiresAt = Long.parseLong(fields[1]);
+            if (expiresAt <= now) {
+              this.entries.remove(fields[0]);
+            } else if (fields[2].isEmpty()) {
+              this.entries.put(fields[0], new Holder(
+                  AutodiscoverCacheEntry.notFound(fields[4]), expiresAt));
+            } else {
+              String redirectionUrl = fields.length > 5 && !fields[5].isEmpty() ? fields[5] : null;
+              this.entries.put(fields[0], new Holder(AutodiscoverCacheEntry.found(
+                  new URI(fields[2]), "1".equals(fields[3]), redirectionUrl), expiresAt));
+            }
+          } catch (NumberFormatException e) {
+            LOG.debug("Skipping malformed Autodiscover cache line", e);
+          } catch (URISyntaxException e) {
+            LOG.debug("Skipping malformed Autodiscover cache line", e);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (FileNotFoundException e) {
+      // Nothing cached yet.
+    } catch (IOException e) {
+      LOG.warn("Could not read the Autodiscover cache file " + this.file, e);
+    }
+    this.rewrite();
+  }
+
+  /**
+   * Replaces the content of the backing file by the current entries.
+   */
+  private void rewrite() {
+    this.closeFileWriter();
+    try {
+      // Create the file first so that the entries are never readable by others.
+      this.file.createNewFile();
+      restrictToOwner(this.file);
+      this.fileWriter = new OutputStreamWriter(new FileOutputStream(this.file, false), "UTF-8");
+      long now = this.currentTimeMillis();
+      for (Map.Entry<String, Holder> entry : this.entries.entrySet()) {
+        if (entry.getValue().expiresAt > now) {
+          this.writeLine(entry.getKey(), entry.getValue());
+        }
+      }
+      this.fileWriter.flush();
+      this.appendedLines = 0;
+    } catch (IOException e) {
+      LOG.warn("Could not write the Autodiscover cache file " + this.file, e);
+      this.closeFileWriter();
+    }
+  }
+
+  /**
+   * Appends a change to the backing file, and compacts the file once the
+   * appended changes outnumber twice the maximum number of entries.
+   *
+   * @param key    the key
+   * @param holder the new entry, null if the entry was removed
+   */
+  private void append(String key, Holder holder) {
+    if (this.fileWriter == null) {
+      return;
+    }
+    try {
+      this.writeLine(key, holder);
+      this.fileWriter.flush();
+    } catch (IOException e) {
+      LOG.warn("Could not write the Autodiscover cache file " + this.file, e);
+      this.closeFileWriter();
+      return;
+    }
+    if (++this.appendedLines > 2 * this.maxEntries) {
+      this.rewrite();
+    }
+  }
+
+  /**
+   * Writes the line for an entry: key, expiry, URL, external flag, error
+   * message and redirection URL, separated by tabs. A removed entry is written as expired.
+   *
+   * @param key    the key
+   * @param holder the entry, null if the entry was removed
+   * @throws IOException signals that an I/O exception has occurred
+   */
+  private void writeLine(String key, Holder holder) throws IOException {
+    StringBuilder line = new StringBuilder(128);
+    line.append(clean(key)).append('\t');
+    if (holder == null) {
+      line.append("0\t\t0\t\t");
+    } else {
+      AutodiscoverCacheEntry entry = holder.entry;
+      line.append(holder.expiresAt).append('\t');
+      line.append(entry.isNegative() ? "" : entry.getUrl().toString()).append('\t');
+      line.append(entry.isExternal() ? '1' : '0').append('\t');
+      line.append(entry.isNegative() ? clean(entry.getErrorMessage()) : "").append('\t');
+      line.append(clean(entry.getRedirectionUrl()));
+    }
+    line.append('\n');
+    this.fileWriter.write(line.toString());
+  }
+
+  /**
+   * Closes the writer appending to the backing file, if any.
+   */
+  private void closeFileWriter() {
+    if (this.fileWriter != null) {
+      try {
+        this.fileWriter.close();
+      } catch (IOException e) {
+        LOG.debug("Could not close the Autodiscover cache file " + this.file, e);
+      }
+      this.fileWriter = null;
+    }
+  }
+
+  /**
+   * Makes a file readable and writable by its owner only. The entries name
+   * the mailboxes of the application's users, so other local users must not read them.
+   *
+   * @param file the file
+   */
+  private static void restrictToOwner(File file) {
+    boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+        && file.setWritable(false, false) && file.setWritable(true, true)
+        && file.setExecutable(false, false);
+    if (!restricted) {
+      LOG.debug("Could not restrict the permissions of the Autodiscover cache file " + file);
+    }
+  }
+
+  /**
+   * Replaces the characters that delimit fields and lines.
+   *
+   * @param value the value
+   * @return the value without tabs and line breaks
+   */
+  private static String clean(String value) {
+    return value == null ? "" : value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+  }
+
+  /**
+   * An entry and the time it expires at.
+   */
+  private static final class Holder {
+
+    private final AutodiscoverCacheEntry entry;
+
+    private final long expiresAt;
+
+    Holder(AutodiscoverCacheEntry entry, long expiresAt) {
+      this.entry = entry;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.autodiscover;
+
+import java.net.URI;
+
+/**
+ * Represents the outcome of an Autodiscover lookup: either the URL that was
+ * found, or the reason no URL could be found.
+ */
+public final class AutodiscoverCacheEntry {
+
+  /**
+   * The found URL, null for a negative entry.
+   */
+  private final URI url;
+
+  /**
+   * Whether the URL was found outside the intranet.
+   */
+  private final boolean isExternal;
+
+  /**
+   * The redirection URL the validation callback allowed to find the URL, null if none.
+   */
+  private final String redirectionUrl;
+
+  /**
+   * The error message of a negative entry.
+   */
+  private final String errorMessage;
+
+  /**
+   * Initializes a new instance of the AutodiscoverCacheEntry class.
+   *
+   * @param url            the found URL, null for a negative entry
+   * @param isExternal     whether the URL was found outside the intranet
+   * @param redirectionUrl the redirection URL that was followed, null if none
+   * @param errorMessage   the error message of a negative entry
+   */
+  private AutodiscoverCacheEntry(URI url, boolean isExternal, String redirectionUrl,
+      String errorMessage) {
+    this.url = url;
+    this.isExternal = isExternal;
+    this.redirectionUrl = redirectionUrl;
+    this.errorMessage = errorMessage;
+  }
+
+  /**
+   * Creates an entry for a URL that was found without following a redirection.
+   *
+   * @param url        the URL
+   * @param isExternal whether the URL was found outside the intranet
+   * @return the entry
+   */
+  public static AutodiscoverCacheEntry found(URI url, boolean isExternal) {
+    return found(url, isExternal, null);
+  }
+
+  /**
+   * Creates an entry for a URL that was found.
+   *
+   * @param url            the URL
+   * @param isExternal     whether the URL was found outside the intranet
+   * @param redirectionUrl the redirection URL the validation callback allowed on the way,
+   *                       null if no redirection was followed
+   * @return the entry
+   */
+  public static AutodiscoverCacheEntry found(URI url, boolean isExternal, String redirectionUrl) {
+    if (url == null) {
+      throw new IllegalArgumentException("url");
+    }
+    return new AutodiscoverCacheEntry(url, isExternal, redirectionUrl, null);
+  }
+
+  /**
+   * Creates an entry recording that no URL could be found.
+   *
+   * @param errorMessage the reason no URL could be found
+   * @return the entry
+   */
+  public static AutodiscoverCacheEntry notFound(String errorMessage) {
+    return new AutodiscoverCacheEntry(null, false, null, errorMessage);
+  }
+
+  /**
+   * Gets the key of the Autodiscover endpoint found for a domain.
+   *
+   * @param domain the domain
+   * @return the key
+   */
+  public static String domainKey(String domain) {
+    return "domain:" + domain.toLowerCase();
+  }
+
+  /**
+   * Gets the key of the Autodiscover endpoint that returned the settings of
+   * a user, after following address and URL redirections.
+   *
+   * @param smtpAddress the SMTP address of the user
+   * @return the key
+   */
+  public static String userKey(String smtpAddress) {
+    return "user:" + smtpAddress.toLowerCase();
+  }
+
+  /**
+   * Gets the key of the EWS URL found for a user.
+   *
+   * @param smtpAddress the SMTP address of the user
+   * @return the key
+   */
+  public static String ewsUrlKey(String smtpAddress) {
+    return "ews:" + smtpAddress.toLowerCase();
+  }
+
+  /**
+   * Gets the URL that was found.
+   *
+   * @return the URL, null for a negative entry
+   */
+  public URI getUrl() {
+    return this.url;
+  }
+
+  /**
+   * Gets a value indicating whether the URL was found outside the intranet.
+   *
+   * @return true if the URL was found outside the intranet
+   */
+  public boolean isExternal() {
+    return this.isExternal;
+  }
+
+  /**
+   * Gets the redirection URL the validation callback allowed while the URL was
+   * found. The entry must only be used if the current callback allows it too.
+   *
+   * @return the redirection URL, null if no redirection was followed
+   */
+  public String getRedirectionUrl() {
+    return this.redirectionUrl;
+  }
+
+  /**
+   * Gets the reason no URL could be found.
+   *
+   * @return the error message of a negative entry
+   */
+  public String getErrorMessage() {
+    return this.errorMessage;
+  }
+
+  /**
+   * Gets a value indicating whether the entry records that no URL could be found.
+   *
+   * @return true for a negative entry
+   */
+  public boolean isNegative() {
+    return this.url == null;
+  }
+
+}
@@ -26,6 +26,7 @@ package microsoft.exchange.webservices.data.autodiscover;
 import microsoft.exchange.webservices.data.core.EwsUtilities;
 import microsoft.exchange.webservices.data.core.enumeration.misc.TraceFlags;
 import microsoft.exchange.webservices.data.core.exception.dns.DnsException;
+import microsoft.exchange.webservices.data.dns.DnsCache;
 import microsoft.exchange.webservices.data.dns.DnsClient;
 import microsoft.exchange.webservices.data.dns.DnsSrvRecord;
 
@@ -125,8 +126,12 @@ class AutodiscoverDnsClient {
       throws XMLStreamException, IOException {
     List<DnsSrvRecord> dnsSrvRecordList;
     try {
-      // Make DnsQuery call to get collection of SRV records.
-      dnsSrvRecordList = DnsClient.dnsQuery(DnsSrvRecord.class, domain, this.service.getDnsServerAddress());
+      // Make DnsQuery call to get collection of SRV records. Users of the
+      // same domain share the cached answer.
+      DnsCache cache = DnsCache.getDefault();
+      dnsSrvRecordList = (cache != null)
+          ? cache.query(DnsSrvRecord.class, domain, this.service.getDnsServerAddress())
+          : DnsClient.dnsQuery(DnsSrvRecord.class, domain, this.service.getDnsServerAddress());
     } catch (DnsException ex) {
       String dnsExcMessage = String.format("DnsQuery returned error '%s'.", ex.getMessage());
       this.service
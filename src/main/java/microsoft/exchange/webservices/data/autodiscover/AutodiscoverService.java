@@ -29,6 +29,7 @@ import microsoft.exchange.webservices.data.autodiscover.enumeration.Autodiscover
 import microsoft.exchange.webservices.data.autodiscover.enumeration.AutodiscoverErrorCode;
 import microsoft.exchange.webservices.data.autodiscover.exception.AutodiscoverLocalException;
 import microsoft.exchange.webservices.data.autodiscover.exception.AutodiscoverRemoteException;
+import microsoft.exchange.webservices.data.autodiscover.exception.AutodiscoverResponseException;
 import microsoft.exchange.webservices.data.autodiscover.request.AutodiscoverRequest;
 import microsoft.exchange.webservices.data.autodiscover.request.GetDomainSettingsRequest;
 import microsoft.exchange.webservices.data.autodiscover.request.GetUserSettingsRequest;
@@ -53,8 +54,11 @@ import microsoft.exchange.webservices.data.autodiscover.exception.MaximumRedirec
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceLocalException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceValidationException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceVersionException;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceRequestException;
+import microsoft.exchange.webservices.data.misc.ChunkedTask;
 import microsoft.exchange.webservices.data.misc.OutParam;
 import microsoft.exchange.webservices.data.security.XmlNodeType;
+import org.apache.http.impl.client.CloseableHttpClient;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -72,6 +76,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Represents a binding to the Exchange Autodiscover Service.
@@ -101,6 +107,12 @@ public class AutodiscoverService extends ExchangeServiceBase
   private IAutodiscoverRedirectionUrl
       redirectionUrlValidationCallback;
 
+  /**
+   * The redirection URL the validation callback allowed to find the current
+   * url, null if it was found without following a redirection.
+   */
+  private String urlRedirection;
+
   /**
    * The dns client.
    */
@@ -116,6 +128,26 @@ public class AutodiscoverService extends ExchangeServiceBase
    */
   private boolean enableScpLookup = true;
 
+  /**
+   * The cache of Autodiscover results, null if results aren't cached.
+   */
+  private IAutodiscoverCache autodiscoverCache;
+
+  /**
+   * Whether the candidate endpoints are probed at the same time.
+   */
+  private boolean parallelEndpointDiscovery;
+
+  /**
+   * The maximum number of GetUserSettings requests sent at the same time.
+   */
+  private int usersSettingsParallelism = DefaultUsersSettingsParallelism;
+
+  /**
+   * Set on the threads that send GetUserSettings requests at the same time.
+   */
+  private static final ThreadLocal<Boolean> concurrentRequest = new ThreadLocal<Boolean>();
+
   // Autodiscover legacy path
   /**
    * The Constant AutodiscoverLegacyPath.
@@ -175,6 +207,16 @@ public class AutodiscoverService extends ExchangeServiceBase
    * The Constant AutodiscoverMaxRedirections.
    */
   protected static final int AutodiscoverMaxRedirections = 10;
+
+  /**
+   * The maximum number of users the server accepts in one GetUserSettings request.
+   */
+  private static final int GetUserSettingsMaxUsers = 100;
+
+  /**
+   * The default maximum number of GetUserSettings requests sent at the same time.
+   */
+  private static final int DefaultUsersSettingsParallelism = 4;
   // HTTP header indicating that SOAP Autodiscover service is enabled.
   /**
    * The Constant AutodiscoverSoapEnabledHeaderName.
@@ -256,6 +298,7 @@ public class AutodiscoverService extends ExchangeServiceBase
     HttpWebRequest request = null;
     try {
       request = this.prepareHttpWebRequestForUrl(url);
+      EndpointProbes.track(request);
 
       this.traceHttpRequestHeaders(
           TraceFlags.AutodiscoverRequestHttpHeaders,
@@ -379,7 +422,7 @@ public class AutodiscoverService extends ExchangeServiceBase
    * @throws ServiceLocalException the service local exception
    * @throws URISyntaxException the uRI syntax exception
    */
-  private URI getRedirectUrl(String domainName)
+  protected URI getRedirectUrl(String domainName)
       throws EWSHttpException, XMLStreamException, IOException, ServiceLocalException, URISyntaxException {
     String url = String.format(AutodiscoverLegacyHttpUrl, "autodiscover." + domainName);
 
@@ -389,7 +432,8 @@ public class AutodiscoverService extends ExchangeServiceBase
     HttpWebRequest request = null;
 
     try {
-      request = new HttpClientWebRequest(httpClient, httpContext);
+      request = new HttpClientWebRequest(getProbeHttpClient(), createHttpContext());
+      EndpointProbes.track(request);
       request.setProxy(getWebProxy());
 
       try {
@@ -544,7 +588,37 @@ public class AutodiscoverService extends ExchangeServiceBase
       List<String> redirectionEmailAddresses,
       OutParam<Integer> currentHop)
       throws Exception {
-    String domainName = EwsUtilities.domainFromEmailAddress(emailAddress);
+    EndpointProbes probes = this.parallelEndpointDiscovery ? new EndpointProbes() : null;
+    try {
+      return this.internalGetLegacyUserSettings(cls, emailAddress,
+          redirectionEmailAddresses, currentHop, probes);
+    } finally {
+      if (probes != null) {
+        probes.close();
+      }
+    }
+  }
+
+  /**
+   * Calls the Autodiscover service to retrieve configuration settings.
+   *
+   * @param <TSettings>  the generic type
+   * @param cls          the cls
+   * @param emailAddress The email address to retrieve configuration settings for.
+   * @param currentHop   Current number of redirection urls/addresses attempted so far.
+   * @param probes       The probes that contact all candidates at once, null to try them in turn.
+   * @return The requested configuration settings.
+   * @throws Exception the exception
+   */
+  private <TSettings extends ConfigurationSettingsBase>
+  TSettings internalGetLegacyUserSettings(
+      final Class<TSettings> cls,
+      final String emailAddress,
+      List<String> redirectionEmailAddresses,
+      OutParam<Integer> currentHop,
+      EndpointProbes probes)
+      throws Exception {
+    final String domainName = EwsUtilities.domainFromEmailAddress(emailAddress);
 
     int scpUrlCount;
     OutParam<Integer> outParamInt = new OutParam<Integer>();
@@ -562,6 +636,23 @@ public class AutodiscoverService extends ExchangeServiceBase
     // valid Autodiscover settings.
     this.isExternal = true;
 
+    // Contact all candidates now, their answers are still used in order.
+    List<Future<TSettings>> pending = new ArrayList<Future<TSettings>>();
+    Future<URI> redirectProbe = null;
+    Future<URI> srvProbe = null;
+    if (probes != null) {
+      for (final URI candidate : urls) {
+        pending.add(probes.start(new Callable<TSettings>() {
+          @Override
+          public TSettings call() throws Exception {
+            return getLegacyUserSettingsAtUrl(cls, emailAddress, candidate);
+          }
+        }));
+      }
+      redirectProbe = startRedirectUrlProbe(probes, domainName);
+      srvProbe = startDnsSrvRecordProbe(probes, domainName);
+    }
+
     int currentUrlIndex = 0;
 
     // Used to save exception for later reporting.
@@ -573,8 +664,9 @@ public class AutodiscoverService extends ExchangeServiceBase
       boolean isScpUrl = currentUrlIndex < scpUrlCount;
 
       try {
-        settings = this.getLegacyUserSettingsAtUrl(cls,
-            emailAddress, autodiscoverUrl);
+        Future<TSettings> probe = currentUrlIndex < pending.size() ? pending.get(currentUrlIndex) : null;
+        settings = (probe != null) ? EndpointProbes.await(probe)
+            : this.getLegacyUserSettingsAtUrl(cls, emailAddress, autodiscoverUrl);
 
         switch (settings.getResponseType()) {
           case Success:
@@ -603,6 +695,9 @@ public class AutodiscoverService extends ExchangeServiceBase
 
               urls.add(currentUrlIndex, new URI(
                   settings.getRedirectTarget()));
+              if (probes != null) {
+                pending.add(currentUrlIndex, null);
+              }
 
               break;
             } else {
@@ -630,6 +725,9 @@ public class AutodiscoverService extends ExchangeServiceBase
                   settings.getRedirectTarget(),
                   redirectionEmailAddresses);
 
+              if (probes != null) {
+                probes.close();
+              }
               return this.internalGetLegacyUserSettings(cls,
                   settings.getRedirectTarget(),
                   redirectionEmailAddresses,
@@ -693,6 +791,9 @@ public class AutodiscoverService extends ExchangeServiceBase
 
           currentHop.setParam(currentHop.getParam() + 1);
           urls.add(currentUrlIndex, redirectUrl);
+          if (probes != null) {
+            pending.add(currentUrlIndex, null);
+          }
         } else {
           if (response != null) {
             this.processHttpErrorResponse(response, ex);
@@ -716,7 +817,8 @@ public class AutodiscoverService extends ExchangeServiceBase
     // redirection URL to get the configuration settings for this email
     // address. (This will be a common scenario for
     // DataCenter deployments).
-    URI redirectionUrl = this.getRedirectUrl(domainName);
+    URI redirectionUrl = (redirectProbe != null) ? EndpointProbes.await(redirectProbe)
+        : this.getRedirectUrl(domainName);
     OutParam<TSettings> outParam = new OutParam<TSettings>();
     if ((redirectionUrl != null)
         && this.tryLastChanceHostRedirection(cls, emailAddress,
@@ -728,7 +830,8 @@ public class AutodiscoverService extends ExchangeServiceBase
       // chance, try to get an appropriate SRV Record
       // using DnsQuery. If successful, use this redirection URL to get
       // the configuration settings for this email address.
-      redirectionUrl = this.getRedirectionUrlFromDnsSrvRecord(domainName);
+      redirectionUrl = (srvProbe != null) ? EndpointProbes.await(srvProbe)
+          : this.getRedirectionUrlFromDnsSrvRecord(domainName);
       if ((redirectionUrl != null)
           && this.tryLastChanceHostRedirection(cls, emailAddress,
           redirectionUrl, outParam)) {
@@ -984,9 +1087,42 @@ public class AutodiscoverService extends ExchangeServiceBase
     List<String> redirectionEmailAddresses = new ArrayList<String>();
     redirectionEmailAddresses.add(smtpAddress.toLowerCase());
 
+    // Only look up the endpoint of users when the caller didn't pin one.
+    IAutodiscoverCache cache = this.autodiscoverCache;
+    boolean useCache = cache != null && this.url == null
+        && (this.domain == null || this.domain.isEmpty());
+
     for (int currentHop = 0; currentHop < AutodiscoverService.AutodiscoverMaxRedirections; currentHop++) {
-      GetUserSettingsResponse response = this.getUserSettings(smtpAddresses,
-          requestedSettings).getTResponseAtIndex(0);
+      String cacheKey = null;
+      if (useCache && this.url == null) {
+        AutodiscoverCacheEntry cacheEntry =
+            cache.get(AutodiscoverCacheEntry.userKey(smtpAddresses.get(0)));
+        if (cacheEntry != null && !cacheEntry.isNegative() && this.isAllowed(cacheEntry)) {
+          cacheKey = AutodiscoverCacheEntry.userKey(smtpAddresses.get(0));
+          this.url = cacheEntry.getUrl();
+          this.urlRedirection = cacheEntry.getRedirectionUrl();
+          this.isExternal = cacheEntry.isExternal();
+        }
+      }
+
+      GetUserSettingsResponse response;
+      try {
+        response = this.getUserSettings(smtpAddresses,
+            requestedSettings).getTResponseAtIndex(0);
+      } catch (Exception e) {
+        if (cacheKey == null) {
+          throw e;
+        }
+        // The user may have moved, run the discovery again.
+        this.traceMessage(TraceFlags.AutodiscoverConfiguration, String.format(
+            "Cached Autodiscover endpoint %s for %s failed: %s",
+            this.url, smtpAddresses.get(0), e.getMessage()));
+        cache.remove(cacheKey);
+        this.url = null;
+        this.urlRedirection = null;
+        response = this.getUserSettings(smtpAddresses,
+            requestedSettings).getTResponseAtIndex(0);
+      }
 
       switch (response.getErrorCode()) {
         case RedirectAddress:
@@ -999,6 +1135,7 @@ public class AutodiscoverService extends ExchangeServiceBase
           smtpAddresses.add(response.getRedirectTarget().
               toLowerCase());
           this.url = null;
+          this.urlRedirection = null;
           this.domain = null;
 
           // If this email address was already tried,
@@ -1020,6 +1157,15 @@ public class AutodiscoverService extends ExchangeServiceBase
 
         case NoError:
         default:
+          if (useCache && response.getErrorCode() == AutodiscoverErrorCode.NoError
+              && this.url != null) {
+            // Every address of the redirection chain ends up at this endpoint.
+            AutodiscoverCacheEntry cacheEntry =
+                AutodiscoverCacheEntry.found(this.url, this.isExternal, this.urlRedirection);
+            for (String address : redirectionEmailAddresses) {
+              cache.put(AutodiscoverCacheEntry.userKey(address), cacheEntry);
+            }
+          }
           return response;
       }
     }
@@ -1104,6 +1250,7 @@ public class AutodiscoverService extends ExchangeServiceBase
 
       // If we got this far, response was successful, set Url.
       this.url = autodiscoverUrl;
+      this.urlRedirection = null;
       return response;
     }
     // No Url or Domain specified, need to figure out which endpoint(s) to
@@ -1118,7 +1265,36 @@ public class AutodiscoverService extends ExchangeServiceBase
 
       URI autodiscoverUrl;
 
-      String domainName = getDomainMethod.func();
+      final String domainName = getDomainMethod.func();
+
+      IAutodiscoverCache cache = this.autodiscoverCache;
+      String cacheKey = cache != null ? AutodiscoverCacheEntry.domainKey(domainName) : null;
+      AutodiscoverCacheEntry cacheEntry = cache != null ? cache.get(cacheKey) : null;
+      if (cacheEntry != null && cacheEntry.isNegative()) {
+        throw new AutodiscoverLocalException(cacheEntry.getErrorMessage());
+      } else if (cacheEntry != null && !this.isAllowed(cacheEntry)) {
+        this.traceMessage(TraceFlags.AutodiscoverConfiguration, String.format(
+            "Cached Autodiscover endpoint %s for domain %s was found through redirection URL %s, "
+                + "which the validation callback doesn't allow.",
+            cacheEntry.getUrl(), domainName, cacheEntry.getRedirectionUrl()));
+      } else if (cacheEntry != null) {
+        try {
+          response = getSettingsMethod.func(identities, settings,
+              requestedVersion, cacheEntry.getUrl());
+          this.url = cacheEntry.getUrl();
+          this.urlRedirection = cacheEntry.getRedirectionUrl();
+          this.isExternal = cacheEntry.isExternal();
+          return response;
+        } catch (Exception e) {
+          // The endpoint may have moved, run the discovery again.
+          this.traceMessage(TraceFlags.AutodiscoverConfiguration, String.format(
+              "Cached Autodiscover endpoint %s for domain %s failed: %s",
+              cacheEntry.getUrl(), domainName, e.getMessage()));
+          cache.remove(cacheKey);
+          this.isExternal = true;
+        }
+      }
+
       int scpHostCount;
       OutParam<Integer> outParam = new OutParam<Integer>();
       List<String> hosts = this.getAutodiscoverServiceHosts(domainName,
@@ -1129,74 +1305,157 @@ public class AutodiscoverService extends ExchangeServiceBase
             "This Autodiscover request requires that either the Domain or Url be specified.");
       }
 
-      for (int currentHostIndex = 0; currentHostIndex < hosts.size(); currentHostIndex++) {
-        String host = hosts.get(currentHostIndex);
-        boolean isScpHost = currentHostIndex < scpHostCount;
-        OutParam<URI> outParams = new OutParam<URI>();
-        if (this.tryGetAutodiscoverEndpointUrl(host, outParams)) {
-          autodiscoverUrl = outParams.getParam();
+      // Contact all candidates now, their answers are still used in order. Hosts
+      // returned by redirection are only contacted once the callback allowed them.
+      EndpointProbes probes = this.parallelEndpointDiscovery ? new EndpointProbes() : null;
+      // A redirection the callback rejected may be allowed by another callback,
+      // so a failure is only cached if no redirection was rejected.
+      boolean redirectionRejected = false;
+      List<Future<URI>> pending = new ArrayList<Future<URI>>();
+      Future<URI> redirectProbe = null;
+      Future<URI> srvProbe = null;
+      if (probes != null) {
+        for (final String host : hosts) {
+          pending.add(probes.start(new Callable<URI>() {
+            @Override
+            public URI call() throws Exception {
+              OutParam<URI> endpointUrl = new OutParam<URI>();
+              return tryGetAutodiscoverEndpointUrl(host, endpointUrl) ? endpointUrl.getParam() : null;
+            }
+          }));
+        }
+        redirectProbe = startRedirectUrlProbe(probes, domainName);
+        srvProbe = startDnsSrvRecordProbe(probes, domainName);
+      }
+
+      try {
+        for (int currentHostIndex = 0; currentHostIndex < hosts.size(); currentHostIndex++) {
+          String host = hosts.get(currentHostIndex);
+          boolean isScpHost = currentHostIndex < scpHostCount;
+          OutParam<URI> outParams = new OutParam<URI>();
+          Future<URI> probe = (probes != null) ? pending.get(currentHostIndex) : null;
+          if (this.tryGetAutodiscoverEndpointUrl(host, outParams, probe)) {
+            autodiscoverUrl = outParams.getParam();
+            response = getSettingsMethod.func(identities, settings,
+                requestedVersion,
+                autodiscoverUrl);
+
+            // If we got this far, the response was successful, set Url.
+            this.url = autodiscoverUrl;
+            this.urlRedirection = null;
+
+            // Not external if Autodiscover endpoint found via SCP
+            // returned the settings.
+            if (isScpHost) {
+              this.isExternal = false;
+            }
+
+            if (cache != null) {
+              cache.put(cacheKey, AutodiscoverCacheEntry.found(autodiscoverUrl, this.isExternal));
+            }
+            return response;
+          }
+        }
+
+        // Next-to-last chance: try unauthenticated GET over HTTP to be
+        // redirected to appropriate service endpoint.
+        autodiscoverUrl = (redirectProbe != null) ? EndpointProbes.await(redirectProbe)
+            : this.getRedirectUrl(domainName);
+        OutParam<URI> outParamUrl = new OutParam<URI>();
+        String redirectionUrl = (autodiscoverUrl != null) ? autodiscoverUrl.toString() : null;
+        boolean allowed = (redirectionUrl != null)
+            && this.callRedirectionUrlValidationCallback(redirectionUrl);
+        redirectionRejected |= (redirectionUrl != null) && !allowed;
+        if (allowed &&
+            this.tryGetAutodiscoverEndpointUrl(autodiscoverUrl
+                .getHost(), outParamUrl)) {
+          autodiscoverUrl = outParamUrl.getParam();
           response = getSettingsMethod.func(identities, settings,
               requestedVersion,
               autodiscoverUrl);
 
           // If we got this far, the response was successful, set Url.
           this.url = autodiscoverUrl;
+          this.urlRedirection = redirectionUrl;
 
-          // Not external if Autodiscover endpoint found via SCP
-          // returned the settings.
-          if (isScpHost) {
-            this.isExternal = false;
+          if (cache != null) {
+            cache.put(cacheKey, AutodiscoverCacheEntry.found(autodiscoverUrl, this.isExternal,
+                redirectionUrl));
           }
-
           return response;
         }
-      }
 
-      // Next-to-last chance: try unauthenticated GET over HTTP to be
-      // redirected to appropriate service endpoint.
-      autodiscoverUrl = this.getRedirectUrl(domainName);
-      OutParam<URI> outParamUrl = new OutParam<URI>();
-      if ((autodiscoverUrl != null) &&
-          this
-              .callRedirectionUrlValidationCallback(
-                  autodiscoverUrl.toString()) &&
-          this.tryGetAutodiscoverEndpointUrl(autodiscoverUrl
-              .getHost(), outParamUrl)) {
-        autodiscoverUrl = outParamUrl.getParam();
-        response = getSettingsMethod.func(identities, settings,
-            requestedVersion,
-            autodiscoverUrl);
-
-        // If we got this far, the response was successful, set Url.
-        this.url = autodiscoverUrl;
+        // Last Chance: try to read autodiscover SRV Record from DNS. If we
+        // find one, use
+        // the hostname returned to construct an Autodiscover endpoint URL.
+        autodiscoverUrl = (srvProbe != null) ? EndpointProbes.await(srvProbe)
+            : this.getRedirectionUrlFromDnsSrvRecord(domainName);
+        redirectionUrl = (autodiscoverUrl != null) ? autodiscoverUrl.toString() : null;
+        allowed = (redirectionUrl != null)
+            && this.callRedirectionUrlValidationCallback(redirectionUrl);
+        redirectionRejected |= (redirectionUrl != null) && !allowed;
+        if (allowed &&
+            this.tryGetAutodiscoverEndpointUrl(autodiscoverUrl
+                .getHost(), outParamUrl)) {
+          autodiscoverUrl = outParamUrl.getParam();
+          response = getSettingsMethod.func(identities, settings,
+              requestedVersion,
+              autodiscoverUrl);
 
-        return response;
+          // If we got this far, the response was successful, set Url.
+          this.url = autodiscoverUrl;
+          this.urlRedirection = redirectionUrl;
+
+          if (cache != null) {
+            cache.put(cacheKey, AutodiscoverCacheEntry.found(autodiscoverUrl, this.isExternal,
+                redirectionUrl));
+          }
+          return response;
+        } else {
+          if (cache != null && !redirectionRejected) {
+            cache.put(cacheKey, AutodiscoverCacheEntry.notFound(
+                "The Autodiscover service couldn't be located."));
+          }
+          throw new AutodiscoverLocalException("The Autodiscover service couldn't be located.");
+        }
+      } finally {
+        if (probes != null) {
+          probes.close();
+        }
       }
+    }
+  }
 
-      // Last Chance: try to read autodiscover SRV Record from DNS. If we
-      // find one, use
-      // the hostname returned to construct an Autodiscover endpoint URL.
-      autodiscoverUrl = this
-          .getRedirectionUrlFromDnsSrvRecord(domainName);
-      if ((autodiscoverUrl != null) &&
-          this
-              .callRedirectionUrlValidationCallback(
-                  autodiscoverUrl.toString()) &&
-          this.tryGetAutodiscoverEndpointUrl(autodiscoverUrl
-              .getHost(), outParamUrl)) {
-        autodiscoverUrl = outParamUrl.getParam();
-        response = getSettingsMethod.func(identities, settings,
-            requestedVersion,
-            autodiscoverUrl);
-
-        // If we got this far, the response was successful, set Url.
-        this.url = autodiscoverUrl;
+  /**
+   * Starts looking up the redirection URL returned by an HTTP GET on a non-SSL endpoint.
+   *
+   * @param probes     the probes
+   * @param domainName the domain name
+   * @return the future redirection URL, null if none was returned
+   */
+  private Future<URI> startRedirectUrlProbe(EndpointProbes probes, final String domainName) {
+    return probes.start(new Callable<URI>() {
+      @Override
+      public URI call() throws Exception {
+        return getRedirectUrl(domainName);
+      }
+    });
+  }
 
-        return response;
-      } else {
-        throw new AutodiscoverLocalException("The Autodiscover service couldn't be located.");
+  /**
+   * Starts looking up the Autodiscover URL from the DNS SRV record of a domain.
+   *
+   * @param probes     the probes
+   * @param domainName the domain name
+   * @return the future Autodiscover URL, null if no record was found
+   */
+  private Future<URI> startDnsSrvRecordProbe(EndpointProbes probes, final String domainName) {
+    return probes.start(new Callable<URI>() {
+      @Override
+      public URI call() throws Exception {
+        return getRedirectionUrlFromDnsSrvRecord(domainName);
       }
-    }
+    });
   }
 
   /**
@@ -1211,8 +1470,103 @@ public class AutodiscoverService extends ExchangeServiceBase
    * @throws Exception             the exception
    */
   private GetUserSettingsResponseCollection internalGetUserSettings(
-      List<String> smtpAddresses, List<UserSettingName> settings,
+      List<String> smtpAddresses, final List<UserSettingName> settings,
       ExchangeVersion requestedVersion,
+      final URI autodiscoverUrl) throws ServiceLocalException, Exception {
+    if (smtpAddresses.size() <= GetUserSettingsMaxUsers) {
+      return this.getUserSettingsAtUrl(smtpAddresses, settings, autodiscoverUrl);
+    }
+
+    // The server limits the number of users per request. Send chunks of them,
+    // each one following its own redirections.
+    int parallelism = this.getUsersSettingsParallelism();
+    final boolean concurrent = parallelism > 1;
+    List<GetUserSettingsResponseCollection> results =
+        new ChunkedTask<String, GetUserSettingsResponseCollection>() {
+          @Override
+          protected GetUserSettingsResponseCollection executeChunk(List<String> chunk)
+              throws Exception {
+            if (concurrent) {
+              concurrentRequest.set(Boolean.TRUE);
+            }
+            GetUserSettingsResponseCollection result;
+            try {
+              result = getUserSettingsAtUrl(chunk, settings, autodiscoverUrl);
+            } catch (ServiceRequestException e) {
+              // The server rejected the whole chunk, e.g. with ServerBusy.
+              if (!(e.getCause() instanceof AutodiscoverResponseException)) {
+                throw e;
+              }
+              AutodiscoverResponseException fault = (AutodiscoverResponseException) e.getCause();
+              return failedUsersSettings(chunk, fault.getErrorCode(), fault.getMessage());
+            } finally {
+              concurrentRequest.remove();
+            }
+            // A chunk rejected as a whole has no user responses. Report its
+            // users with the chunk's error to keep the merged responses in
+            // the order of the addresses.
+            if (result.getErrorCode() != AutodiscoverErrorCode.NoError) {
+              return failedUsersSettings(chunk, result.getErrorCode(), result.getErrorMessage());
+            }
+            return result;
+          }
+
+          @Override
+          protected List<GetUserSettingsResponseCollection> onPartialFailure(Exception failure,
+              List<List<String>> chunks, List<GetUserSettingsResponseCollection> results) {
+            // Keep the settings of the users already answered and report the rest
+            // as failed users, the way the server reports users it cannot answer.
+            for (int i = 0; i < results.size(); i++) {
+              if (results.get(i) == null) {
+                results.set(i, failedUsersSettings(chunks.get(i),
+                    AutodiscoverErrorCode.InternalServerError, failure.getMessage()));
+              }
+            }
+            return results;
+          }
+        }.executeChunks(smtpAddresses, GetUserSettingsMaxUsers, parallelism,
+            concurrent ? getAsyncExecutor() : null);
+
+    GetUserSettingsResponseCollection responses = new GetUserSettingsResponseCollection();
+    for (GetUserSettingsResponseCollection result : results) {
+      responses.getResponses().addAll(result.getResponses());
+    }
+    return responses;
+  }
+
+  /**
+   * Creates the responses of users whose settings could not be retrieved.
+   *
+   * @param smtpAddresses The SMTP addresses of the users.
+   * @param errorCode     The error code.
+   * @param errorMessage  The error message.
+   * @return GetUserSettingsResponse collection with one response per user.
+   */
+  private static GetUserSettingsResponseCollection failedUsersSettings(
+      List<String> smtpAddresses, AutodiscoverErrorCode errorCode, String errorMessage) {
+    GetUserSettingsResponseCollection failed = new GetUserSettingsResponseCollection();
+    for (String smtpAddress : smtpAddresses) {
+      GetUserSettingsResponse response = new GetUserSettingsResponse();
+      response.setSmtpAddress(smtpAddress);
+      response.setErrorCode(errorCode);
+      response.setErrorMessage(errorMessage);
+      failed.getResponses().add(response);
+    }
+    return failed;
+  }
+
+  /**
+   * Gets settings for at most {@link #GetUserSettingsMaxUsers} users from one endpoint.
+   *
+   * @param smtpAddresses   The SMTP addresses of the users.
+   * @param settings        The settings.
+   * @param autodiscoverUrl The autodiscover URL.
+   * @return GetUserSettingsResponse collection.
+   * @throws ServiceLocalException the service local exception
+   * @throws Exception             the exception
+   */
+  private GetUserSettingsResponseCollection getUserSettingsAtUrl(
+      List<String> smtpAddresses, List<UserSettingName> settings,
       URI autodiscoverUrl) throws ServiceLocalException, Exception {
     // The response to GetUserSettings can be a redirection. Execute
     // GetUserSettings until we get back
@@ -1340,7 +1694,7 @@ public class AutodiscoverService extends ExchangeServiceBase
    * @return boolean The boolean.
    * @throws Exception the exception
    */
-  private boolean tryGetAutodiscoverEndpointUrl(String host,
+  protected boolean tryGetAutodiscoverEndpointUrl(String host,
       OutParam<URI> url)
       throws Exception {
     EnumSet<AutodiscoverEndpoints> endpoints;
@@ -1442,6 +1796,25 @@ public class AutodiscoverService extends ExchangeServiceBase
     }
   }
 
+  /**
+   * Tries the get Autodiscover Service endpoint URL, using the result of a
+   * probe when the host was already contacted.
+   *
+   * @param host  The host.
+   * @param url   the url
+   * @param probe the probe of the host, null to contact it now
+   * @return boolean The boolean.
+   * @throws Exception the exception
+   */
+  private boolean tryGetAutodiscoverEndpointUrl(String host,
+      OutParam<URI> url, Future<URI> probe) throws Exception {
+    if (probe == null) {
+      return this.tryGetAutodiscoverEndpointUrl(host, url);
+    }
+    url.setParam(EndpointProbes.await(probe));
+    return url.getParam() != null;
+  }
+
   /**
    * Gets the list of autodiscover service URLs.
    *
@@ -1510,7 +1883,8 @@ public class AutodiscoverService extends ExchangeServiceBase
 
       HttpWebRequest request = null;
       try {
-        request = new HttpClientWebRequest(httpClient, httpContext);
+        request = new HttpClientWebRequest(getProbeHttpClient(), createHttpContext());
+        EndpointProbes.track(request);
         request.setProxy(getWebProxy());
 
         try {
@@ -1651,11 +2025,33 @@ public class AutodiscoverService extends ExchangeServiceBase
    */
   public HttpWebRequest prepareHttpWebRequestForUrl(URI url)
       throws ServiceLocalException, URISyntaxException {
+    if (usesPoolingClient()) {
+      // Concurrent requests can't share the single connection of the regular client.
+      return this.prepareHttpPoolingWebRequestForUrl(url, false, false);
+    }
     return this.prepareHttpWebRequestForUrl(url, false,
         // acceptGzipEncoding
         false); // allowAutoRedirect
   }
 
+  /**
+   * Gets the client used for the requests that locate the Autodiscover service.
+   *
+   * @return the pooling client when called from a probe, the regular client otherwise
+   */
+  private CloseableHttpClient getProbeHttpClient() {
+    return usesPoolingClient() ? getHttpPoolingClient() : httpClient;
+  }
+
+  /**
+   * Checks whether the current thread sends requests at the same time as others.
+   *
+   * @return true if the requests of the current thread need the pooling client
+   */
+  private static boolean usesPoolingClient() {
+    return EndpointProbes.isProbing() || concurrentRequest.get() != null;
+  }
+
   /**
    * Calls the redirection URL validation callback. If the redirection URL
    * validation callback is null, use the default callback which does not
@@ -1674,6 +2070,20 @@ public class AutodiscoverService extends ExchangeServiceBase
         .autodiscoverRedirectionUrlValidationCallback(redirectionUrl);
   }
 
+  /**
+   * Determines whether a cached endpoint may be used with the current
+   * validation callback. Endpoints found by following a redirection are only
+   * used if the callback allows that redirection as well.
+   *
+   * @param cacheEntry the cache entry
+   * @return true if the entry may be used
+   * @throws AutodiscoverLocalException the autodiscover local exception
+   */
+  private boolean isAllowed(AutodiscoverCacheEntry cacheEntry) throws AutodiscoverLocalException {
+    return cacheEntry.getRedirectionUrl() == null
+        || this.callRedirectionUrlValidationCallback(cacheEntry.getRedirectionUrl());
+  }
+
   /**
    * Processes an HTTP error response.
    *
@@ -1948,6 +2358,7 @@ public class AutodiscoverService extends ExchangeServiceBase
     // If Domain property is set to non-null value, Url property is nulled.
     if (value != null) {
       this.url = null;
+      this.urlRedirection = null;
     }
     this.domain = value;
   }
@@ -1973,6 +2384,7 @@ public class AutodiscoverService extends ExchangeServiceBase
       this.domain = value.getHost();
     }
     this.url = value;
+    this.urlRedirection = null;
   }
 
   public Boolean isExternal() {
@@ -2042,6 +2454,74 @@ public class AutodiscoverService extends ExchangeServiceBase
     this.enableScpLookup = value;
   }
 
+  /**
+   * Gets the cache of Autodiscover results.
+   *
+   * @return the cache, null if results aren't cached
+   */
+  public IAutodiscoverCache getAutodiscoverCache() {
+    return this.autodiscoverCache;
+  }
+
+  /**
+   * Sets the cache of Autodiscover results. The endpoints found for domains
+   * and users are reused until they expire or stop working, and domains
+   * without an endpoint are not looked up again while the negative entry
+   * lives.
+   *
+   * @param value the cache, null to not cache results
+   */
+  public void setAutodiscoverCache(IAutodiscoverCache value) {
+    this.autodiscoverCache = value;
+  }
+
+  /**
+   * Gets a value indicating whether the candidate Autodiscover endpoints are
+   * probed at the same time.
+   *
+   * @return true if endpoints are probed in parallel
+   */
+  public boolean getParallelEndpointDiscovery() {
+    return this.parallelEndpointDiscovery;
+  }
+
+  /**
+   * Sets whether the candidate Autodiscover endpoints are probed at the same
+   * time. The endpoints found are still used in the usual order of priority, so
+   * an unreachable candidate costs one timeout instead of one per candidate.
+   * Redirection URLs are only followed once the redirection URL validation
+   * callback allowed them. Default is false.
+   *
+   * @param value true to probe endpoints in parallel
+   */
+  public void setParallelEndpointDiscovery(boolean value) {
+    this.parallelEndpointDiscovery = value;
+  }
+
+  /**
+   * Gets the maximum number of GetUserSettings requests sent at the same time.
+   *
+   * @return the parallelism
+   */
+  public synchronized int getUsersSettingsParallelism() {
+    return this.usersSettingsParallelism;
+  }
+
+  /**
+   * Sets the maximum number of GetUserSettings requests sent at the same time.
+   * Settings for more than 100 users are retrieved with one request per 100
+   * users, and the requests run on the asynchronous executor of this service.
+   * Default is 4, 1 sends the requests one after another.
+   *
+   * @param value the parallelism
+   */
+  public synchronized void setUsersSettingsParallelism(int value) {
+    if (value < 1) {
+      throw new IllegalArgumentException("usersSettingsParallelism must be 1 or greater");
+    }
+    this.usersSettingsParallelism = value;
+  }
+
   /*
    * (non-Javadoc)
    *
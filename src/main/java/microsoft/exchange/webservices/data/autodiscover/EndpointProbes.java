@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.autodiscover;
+
+import microsoft.exchange.webservices.data.core.request.HttpWebRequest;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts Autodiscover endpoint probes ahead of time, so that candidates which are
+ * otherwise tried one after another are contacted at the same time.
+ * <p>
+ * The caller still consumes the results in priority order, so a probe only saves
+ * the wait for it. Closing the probes aborts the requests of the ones still running.
+ * </p>
+ */
+final class EndpointProbes implements Closeable {
+
+  /**
+   * The maximum number of probes running at once, across all discoveries. Further
+   * probes wait for a thread; their results are awaited in order anyway.
+   */
+  static final int MAX_THREADS = 32;
+
+  private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+  private static final ExecutorService EXECUTOR = createExecutor();
+
+  private static final ThreadLocal<EndpointProbes> CURRENT = new ThreadLocal<EndpointProbes>();
+
+  private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+  private final Set<HttpWebRequest> requests =
+      Collections.newSetFromMap(new ConcurrentHashMap<HttpWebRequest, Boolean>());
+
+  private volatile boolean closed;
+
+  private static ExecutorService createExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            // Daemon threads, so that idle probe threads never keep the JVM alive.
+            Thread thread = new Thread(r, "ews-autodiscover-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Starts a probe.
+   *
+   * @param <T>   the type of the result
+   * @param probe the probe
+   * @return the future result of the probe
+   */
+  <T> Future<T> start(final Callable<T> probe) {
+    Future<T> future = EXECUTOR.submit(new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        CURRENT.set(EndpointProbes.this);
+        try {
+          return probe.call();
+        } finally {
+          CURRENT.remove();
+        }
+      }
+    });
+    futures.add(future);
+    return future;
+  }
+
+  /**
+   * Aborts the probes that are still running.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+    for (HttpWebRequest request : requests) {
+      request.abort();
+    }
+  }
+
+  /**
+   * Checks whether the current thread runs a probe.
+   *
+   * @return true if called from a probe
+   */
+  static boolean isProbing() {
+    return CURRENT.get() != null;
+  }
+
+  /**
+   * Registers a request made by the probe running on the current thread, so that
+   * it is aborted when the probes are closed. Does nothing outside of a probe.
+   *
+   * @param request the request
+   */
+  static void track(HttpWebRequest request) {
+    EndpointProbes probes = CURRENT.get();
+    if (probes != null) {
+      probes.requests.add(request);
+      if (probes.closed) {
+        request.abort();
+      }
+    }
+  }
+
+  /**
+   * Waits for the result of a probe, rethrowing the exception it failed with.
+   *
+   * @param <T>    the type of the result
+   * @param future the future result of the probe
+   * @return the result
+   * @throws Exception the exception thrown by the probe
+   */
+  static <T> T await(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.autodiscover;
+
+/**
+ * Defines a store for the results of Autodiscover lookups. The
+ * AutodiscoverService and ExchangeService consult the cache before running
+ * the discovery algorithm and record the outcome afterwards, so repeated
+ * lookups for the same mailbox or domain don't go through SCP, DNS and
+ * redirections again. Implementations decide how long entries are kept and
+ * must be safe for use by multiple threads.
+ */
+public interface IAutodiscoverCache {
+
+  /**
+   * Gets the entry stored for a key.
+   *
+   * @param key the key, as built by {@link AutodiscoverCacheEntry}
+   * @return the entry, or null if there is none or it expired
+   */
+  AutodiscoverCacheEntry get(String key);
+
+  /**
+   * Stores the entry for a key, replacing any previous entry.
+   *
+   * @param key   the key, as built by {@link AutodiscoverCacheEntry}
+   * @param entry the entry
+   */
+  void put(String key, AutodiscoverCacheEntry entry);
+
+  /**
+   * Removes the entry stored for a key, if any.
+   *
+   * @param key the key
+   */
+  void remove(String key);
+
+}
@@ -23,9 +23,12 @@
 
 package microsoft.exchange.webservices.data.core;
 
+import microsoft.exchange.webservices.data.security.SafeXmlFactory;
+
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import java.io.BufferedReader;
 import java.io.InputStream;
@@ -84,7 +87,7 @@ public class EwsServiceMultiResponseXmlReader extends EwsServiceXmlReader {
     // it will do so. EWS doesn't use DTD references so we want to turn this off. Also, the XmlResolver property is
     // set to an instance of XmlUrlResolver by default. We don't want XmlTextReader to try to resolve this DTD reference
     // so we disable the XmlResolver as well.
-    XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    XMLInputFactory inputFactory = SafeXmlFactory.getInputFactory();
     InputStreamReader isr = new InputStreamReader(stream);
     BufferedReader in = new BufferedReader(isr);
     return inputFactory.createXMLEventReader(in);
@@ -103,4 +106,18 @@ public class EwsServiceMultiResponseXmlReader extends EwsServiceXmlReader {
     return createXmlReader(stream);
   }
 
+  /**
+   * Initializes the XML cursor reader.
+   *
+   * @param stream The stream. An XML cursor reader to use.
+   * @throws Exception on error
+   */
+  @Override
+  protected XMLStreamReader initializeCursorReader(InputStream stream)
+      throws Exception {
+    InputStreamReader isr = new InputStreamReader(stream);
+    BufferedReader in = new BufferedReader(isr);
+    return SafeXmlFactory.getInputFactory().createXMLStreamReader(in);
+  }
+
 }
@@ -56,7 +56,7 @@ public class EwsServiceXmlReader extends EwsXmlReader {
    */
   public EwsServiceXmlReader(InputStream stream, ExchangeService service)
       throws Exception {
-    super(stream);
+    super(stream, service != null && service.isXmlCursorReaderEnabled());
     this.service = service;
   }
 
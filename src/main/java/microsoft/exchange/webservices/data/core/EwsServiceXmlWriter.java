@@ -27,7 +27,9 @@ import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceXmlSerializationException;
 import microsoft.exchange.webservices.data.misc.OutParam;
 import microsoft.exchange.webservices.data.property.complex.ISearchStringProvider;
+import microsoft.exchange.webservices.data.security.SafeXmlFactory;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.CDATASection;
@@ -41,14 +43,13 @@ import org.w3c.dom.NodeList;
 import org.w3c.dom.ProcessingInstruction;
 import org.w3c.dom.Text;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Date;
 
 /**
@@ -73,6 +74,11 @@ public class EwsServiceXmlWriter implements IDisposable {
    */
   private XMLStreamWriter xmlWriter;
 
+  /**
+   * The stream the xml writer writes to.
+   */
+  private OutputStream stream;
+
   /**
    * The is time zone header emitted.
    */
@@ -83,6 +89,11 @@ public class EwsServiceXmlWriter implements IDisposable {
    */
   private static final int BufferSize = 4096;
 
+  /**
+   * The number of bytes Base64-encoded at a time; a multiple of 3.
+   */
+  private static final int Base64ChunkSize = 3 * BufferSize;
+
   /**
    * The  requireWSSecurityUtilityNamespace *
    */
@@ -98,8 +109,8 @@ public class EwsServiceXmlWriter implements IDisposable {
    */
   public EwsServiceXmlWriter(ExchangeServiceBase service, OutputStream stream) throws XMLStreamException {
     this.service = service;
-    XMLOutputFactory xmlof = XMLOutputFactory.newInstance();
-    xmlWriter = xmlof.createXMLStreamWriter(stream, "utf-8");
+    this.stream = stream;
+    xmlWriter = SafeXmlFactory.getOutputFactory().createXMLStreamWriter(stream, "utf-8");
 
   }
 
@@ -181,6 +192,26 @@ public class EwsServiceXmlWriter implements IDisposable {
     this.xmlWriter.writeStartElement(strPrefix, localName, strNameSpace);
   }
 
+  /**
+   * Writes a fragment serialized earlier by a writer for a service with the
+   * same requested server version. The fragment is copied to the underlying
+   * stream as is, so it must consist of complete elements.
+   *
+   * @param fragment the UTF-8 encoded fragment
+   * @throws XMLStreamException the XML stream exception
+   */
+  public void writeFragment(byte[] fragment) throws XMLStreamException {
+    // Writing empty text closes a pending start tag, so the fragment
+    // ends up in the content of the current element.
+    this.xmlWriter.writeCharacters("");
+    this.xmlWriter.flush();
+    try {
+      this.stream.write(fragment);
+    } catch (IOException e) {
+      throw new XMLStreamException(e);
+    }
+  }
+
   /**
    * Writes the end element.
    *
@@ -511,21 +542,21 @@ public class EwsServiceXmlWriter implements IDisposable {
   public void writeBase64ElementValue(InputStream stream) throws IOException,
       XMLStreamException {
 
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    byte[] buf = new byte[BufferSize];
-    try {
-      for (int readNum; (readNum = stream.read(buf)) != -1; ) {
-        bos.write(buf, 0, readNum);
+    // Encode in chunks of whole 3-byte groups so the chunks concatenate into valid Base64.
+    byte[] buf = new byte[Base64ChunkSize];
+    char[] chars = new char[Base64ChunkSize / 3 * 4];
+    int count;
+    while ((count = IOUtils.read(stream, buf)) > 0) {
+      byte[] chunk = count == buf.length ? buf : Arrays.copyOf(buf, count);
+      byte[] encoded = Base64.encodeBase64(chunk);
+      for (int i = 0; i < encoded.length; i++) {
+        chars[i] = (char) encoded[i];
+      }
+      this.xmlWriter.writeCharacters(chars, 0, encoded.length);
+      if (count < buf.length) {
+        break;
       }
-    } catch (IOException ex) {
-      LOG.error(ex);
-    } finally {
-      bos.close();
     }
-    byte[] bytes = bos.toByteArray();
-    String strValue = Base64.encodeBase64String(bytes);
-    this.xmlWriter.writeCharacters(strValue);
-
   }
 
   /**
@@ -50,13 +50,17 @@ import microsoft.exchange.webservices.data.core.exception.service.local.ServiceV
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceVersionException;
 import microsoft.exchange.webservices.data.misc.TimeSpan;
 import microsoft.exchange.webservices.data.property.complex.ItemAttachment;
+import microsoft.exchange.webservices.data.security.SafeXmlFactory;
+import microsoft.exchange.webservices.data.util.DateTimeUtils;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.Period;
+import org.joda.time.chrono.GJChronology;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISOPeriodFormat;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
@@ -76,6 +80,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -229,8 +235,16 @@ public final class EwsUtilities {
         }
       );
 
-  private static final String XML_SCHEMA_DATE_FORMAT = "yyyy-MM-dd'Z'";
-  private static final String XML_SCHEMA_DATE_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+  private static final String XML_SCHEMA_DATE_TIME_PATTERN = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+  // The Julian/Gregorian calendar of java.util, so that dates before the
+  // Gregorian cutover (e.g. 0001-01-01) format as they parse.
+  private static final DateTimeFormatter XML_SCHEMA_DATE_FORMAT =
+      DateTimeFormat.forPattern("yyyy-MM-dd'Z'").withChronology(GJChronology.getInstanceUTC());
+  private static final DateTimeFormatter XML_SCHEMA_DATE_TIME_FORMAT =
+      DateTimeFormat.forPattern(XML_SCHEMA_DATE_TIME_PATTERN).withChronology(GJChronology.getInstanceUTC());
+  private static final DateTimeFormatter TRACE_TIME_FORMAT =
+      DateTimeFormat.forPattern("yyyy-MM-dd HH:mm:ss'Z'").withZoneUTC();
 
   private static final Pattern PATTERN_TIME_SPAN = Pattern.compile("-P");
   private static final Pattern PATTERN_YEAR = Pattern.compile("(\\d+)Y");
@@ -330,6 +344,13 @@ public final class EwsUtilities {
             }
           });
 
+  /**
+   * Dictionary of enum type to value lookup used when parsing, keyed by schema
+   * name and by string value. Built on first use of each enum type.
+   */
+  private static final ConcurrentMap<Class<?>, Map<String, Object>> ENUM_PARSE_DICTIONARIES =
+      new ConcurrentHashMap<Class<?>, Map<String, Object>>();
+
   /**
    * Regular expression for legal domain names.
    */
@@ -528,10 +549,7 @@ public final class EwsUtilities {
     writer.writeStartElement("Trace");
     writer.writeAttribute("Tag", traceTag);
     writer.writeAttribute("Tid", Thread.currentThread().getId() + "");
-    Date d = new Date();
-    DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss'Z'");
-    df.setTimeZone(TimeZone.getTimeZone("UTC"));
-    String formattedString = df.format(d);
+    String formattedString = TRACE_TIME_FORMAT.print(System.currentTimeMillis());
     writer.writeAttribute("Time", formattedString);
 
     if (includeVersion) {
@@ -552,8 +570,7 @@ public final class EwsUtilities {
       throws XMLStreamException, IOException {
     String lineSeparator = System.getProperty("line.separator");
     ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-    XMLOutputFactory factory = XMLOutputFactory.newInstance();
-    XMLStreamWriter writer = factory.createXMLStreamWriter(outStream);
+    XMLStreamWriter writer = SafeXmlFactory.getOutputFactory().createXMLStreamWriter(outStream);
     EwsUtilities.writeTraceStartElement(writer, entryKind, false);
     writer.writeCharacters(lineSeparator);
     writer.writeCharacters(logEntry);
@@ -713,22 +730,7 @@ public final class EwsUtilities {
   @SuppressWarnings("unchecked")
   public static <T> T parse(Class<T> cls, String value) throws ParseException {
     if (cls.isEnum()) {
-      final Map<Class<?>, Map<String, String>> member = SCHEMA_TO_ENUM_DICTIONARIES.getMember();
-
-      String val = value;
-      final Map<String, String> stringToEnumDict = member.get(cls);
-      if (stringToEnumDict != null) {
-        final String strEnumName = stringToEnumDict.get(value);
-        if (strEnumName != null) {
-          val = strEnumName;
-        }
-      }
-      for (T o : cls.getEnumConstants()) {
-        if (o.toString().equals(val)) {
-          return o;
-        }
-      }
-      return null;
+      return (T) getEnumParseDict(cls).get(value);
     }else if (Number.class.isAssignableFrom(cls)){
       if (Double.class.isAssignableFrom(cls)){
         return (T) ((Double) Double.parseDouble(value));
@@ -748,8 +750,13 @@ public final class EwsUtilities {
         return (T) (new BigDecimal(value));
       }
     } else if (Date.class.isAssignableFrom(cls)) {
-      DateFormat df = createDateFormat(XML_SCHEMA_DATE_TIME_FORMAT);
-      return (T) df.parse(value);
+      final Date date = DateTimeUtils.parseUniversalDateTime(value);
+      if (date != null) {
+        return (T) date;
+      }
+      // Rare values, e.g. dates before the Gregorian cutover, keep the
+      // lenient parsing of the Julian/Gregorian calendar.
+      return (T) createDateFormat(XML_SCHEMA_DATE_TIME_PATTERN).parse(value);
     } else if (Boolean.class.isAssignableFrom(cls)) {
       return (T) ((Boolean) Boolean.parseBoolean(value));
     } else if (String.class.isAssignableFrom(cls)) {
@@ -760,6 +767,51 @@ public final class EwsUtilities {
 
 
 
+  /**
+   * Gets the parse dictionary of an enum type, building it on first use.
+   *
+   * @param cls the enum type
+   * @return The mapping from schema name or string value to enum value
+   */
+  private static Map<String, Object> getEnumParseDict(Class<?> cls) {
+    Map<String, Object> dict = ENUM_PARSE_DICTIONARIES.get(cls);
+    if (dict == null) {
+      dict = buildEnumParseDict(cls);
+      final Map<String, Object> existing = ENUM_PARSE_DICTIONARIES.putIfAbsent(cls, dict);
+      if (existing != null) {
+        dict = existing;
+      }
+    }
+    return dict;
+  }
+
+  /**
+   * Builds the parse dictionary of an enum type. The first constant with a
+   * given string value wins, and schema names take precedence over string
+   * values.
+   *
+   * @param cls the enum type
+   * @return The mapping from schema name or string value to enum value
+   */
+  private static Map<String, Object> buildEnumParseDict(Class<?> cls) {
+    final Map<String, Object> byValue = new HashMap<String, Object>();
+    for (Object o : cls.getEnumConstants()) {
+      final String key = o.toString();
+      if (!byValue.containsKey(key)) {
+        byValue.put(key, o);
+      }
+    }
+
+    final Map<String, Object> dict = new HashMap<String, Object>(byValue);
+    final Map<String, String> schemaToEnumDict = SCHEMA_TO_ENUM_DICTIONARIES.getMember().get(cls);
+    if (schemaToEnumDict != null) {
+      for (Map.Entry<String, String> entry : schemaToEnumDict.entrySet()) {
+        dict.put(entry.getKey(), byValue.get(entry.getValue()));
+      }
+    }
+    return dict;
+  }
+
   /**
    * Builds the schema to enum mapping dictionary.
    *
@@ -821,7 +873,7 @@ public final class EwsUtilities {
    * @return String representation of DateTime.
    */
   public static String dateTimeToXSDate(Date date) {
-    return formatDate(date, XML_SCHEMA_DATE_FORMAT);
+    return XML_SCHEMA_DATE_FORMAT.print(date.getTime());
   }
 
   /**
@@ -831,7 +883,7 @@ public final class EwsUtilities {
    * @return String representation of DateTime.
    */
   public static String dateTimeToXSDateTime(Date date) {
-    return formatDate(date, XML_SCHEMA_DATE_TIME_FORMAT);
+    return XML_SCHEMA_DATE_TIME_FORMAT.print(date.getTime());
   }
 
   /**
@@ -1333,12 +1385,6 @@ public final class EwsUtilities {
     }
   }
 
-
-  private static String formatDate(Date date, String format) {
-    final DateFormat utcFormatter = createDateFormat(format);
-    return utcFormatter.format(date);
-  }
-
   private static DateFormat createDateFormat(String format) {
     final DateFormat utcFormatter = new SimpleDateFormat(format);
     utcFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -26,8 +26,10 @@ package microsoft.exchange.webservices.data.core;
 import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceXmlDeserializationException;
 import microsoft.exchange.webservices.data.misc.OutParam;
+import microsoft.exchange.webservices.data.security.SafeXmlFactory;
 import microsoft.exchange.webservices.data.security.XmlNodeType;
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +39,8 @@ import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.EndElement;
@@ -49,6 +53,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -78,6 +84,23 @@ public class EwsXmlReader {
    */
   private XMLEvent prevEvent;
 
+  /**
+   * The cursor reader, used instead of the event reader if set.
+   */
+  private XMLStreamReader cursor = null;
+
+  /**
+   * Whether the cursor has moved one node past the present node, which is
+   * then held in {@link #cursorAheadElement}. The cursor starts out on the
+   * start of the document, which is reported by the first read.
+   */
+  private boolean cursorAhead = false;
+
+  /**
+   * The present start element, copied when the cursor looked ahead.
+   */
+  private CursorStartElement cursorAheadElement;
+
   /**
    * Initializes a new instance of the EwsXmlReader class.
    *
@@ -85,7 +108,28 @@ public class EwsXmlReader {
    * @throws Exception on error
    */
   public EwsXmlReader(InputStream stream) throws Exception {
-    this.xmlReader = initializeXmlReader(stream);
+    this(stream, false);
+  }
+
+  /**
+   * Initializes a new instance of the EwsXmlReader class.
+   * <p>
+   * The cursor API (XMLStreamReader) reports nodes without allocating an
+   * event object, name and attribute iterator for each of them, which makes
+   * large responses considerably cheaper to read.
+   * </p>
+   *
+   * @param stream    the stream
+   * @param useCursor true to read with the StAX cursor API, false to read with the event API
+   * @throws Exception on error
+   */
+  public EwsXmlReader(InputStream stream, boolean useCursor) throws Exception {
+    if (useCursor) {
+      this.cursor = initializeCursorReader(stream);
+      this.cursorAhead = true;
+    } else {
+      this.xmlReader = initializeXmlReader(stream);
+    }
   }
 
   /**
@@ -96,10 +140,18 @@ public class EwsXmlReader {
    * @throws Exception on error
    */
   protected XMLEventReader initializeXmlReader(InputStream stream) throws Exception {
-    XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    return SafeXmlFactory.getInputFactory().createXMLEventReader(stream);
+  }
 
-    return inputFactory.createXMLEventReader(stream);
+  /**
+   * Initializes the XML cursor reader.
+   *
+   * @param stream the stream
+   * @return An XML cursor reader to use.
+   * @throws Exception on error
+   */
+  protected XMLStreamReader initializeCursorReader(InputStream stream) throws Exception {
+    return SafeXmlFactory.getInputFactory().createXMLStreamReader(stream);
   }
 
 
@@ -191,6 +243,11 @@ public class EwsXmlReader {
    */
   private void read(boolean keepWhiteSpace) throws ServiceXmlDeserializationException,
       XMLStreamException {
+    if (this.cursor != null) {
+      this.readCursor(keepWhiteSpace);
+      return;
+    }
+
     // The caller to EwsXmlReader.Read expects
     // that there's another node to
     // read. Throw an exception if not true.
@@ -237,6 +294,13 @@ public class EwsXmlReader {
    * @throws Exception thrown if attribute value can not be read
    */
   private String readAttributeValue(QName qName) throws Exception {
+    if (this.cursor != null) {
+      if (this.isStartElement()) {
+        return this.getCursorAttributeValue(qName.getNamespaceURI(), qName.getLocalPart());
+      } else {
+        throw new Exception(String.format("Could not fetch attribute %s", qName.toString()));
+      }
+    }
     if (this.presentEvent.isStartElement()) {
       StartElement startElement = this.presentEvent.asStartElement();
       Attribute attr = startElement.getAttributeByName(qName);
@@ -448,6 +512,9 @@ public class EwsXmlReader {
    */
   public String readValue(boolean keepWhiteSpace) throws XMLStreamException,
       ServiceXmlDeserializationException {
+    if (this.cursor != null) {
+      return this.readCursorValue(keepWhiteSpace);
+    }
     if (this.presentEvent.isStartElement()) {
       // Go to next event and check for Characters event
       this.read(keepWhiteSpace);
@@ -526,7 +593,7 @@ public class EwsXmlReader {
     if (!this.isEmptyElement()) {
       this.read();
 
-      if (this.presentEvent.isCharacters()) {
+      if (this.cursor != null ? isCharacters(this.getCursorEventType()) : this.presentEvent.isCharacters()) {
         value.setParam(this.readValue());
         return true;
       } else {
@@ -560,32 +627,55 @@ public class EwsXmlReader {
   public byte[] readBase64ElementValue()
       throws ServiceXmlDeserializationException, XMLStreamException,
       IOException {
-    this.ensureCurrentNodeIsStartElement();
-
-    byte[] buffer = null;
-
     ByteArrayOutputStream byteArrayStream = new ByteArrayOutputStream();
-
-    buffer = Base64.decodeBase64(this.xmlReader.getElementText().toString());
-    byteArrayStream.write(buffer);
-
+    this.readBase64ElementValue(byteArrayStream);
     return byteArrayStream.toByteArray();
-
   }
 
   /**
-   * Reads the base64 element value.
+   * Reads the base64 element value. The content is decoded chunk by chunk as
+   * the parser reports it, so the encoded text is never held in memory as a whole.
    *
    * @param outputStream the output stream
-   * @throws Exception the exception
+   * @throws ServiceXmlDeserializationException the service xml deserialization exception
+   * @throws XMLStreamException the XML stream exception
+   * @throws IOException signals that an I/O exception has occurred
    */
   public void readBase64ElementValue(OutputStream outputStream)
-      throws Exception {
+      throws ServiceXmlDeserializationException, XMLStreamException,
+      IOException {
     this.ensureCurrentNodeIsStartElement();
 
-    byte[] buffer = null;
-    buffer = Base64.decodeBase64(this.xmlReader.getElementText().toString());
-    outputStream.write(buffer);
+    if (this.cursor != null) {
+      this.readCursorBase64ElementValue(outputStream);
+      return;
+    }
+
+    OutputStream decoder = new Base64OutputStream(new CloseShieldOutputStream(outputStream), false);
+    byte[] buffer = new byte[ReadWriteBufferSize];
+    while (true) {
+      XMLEvent event = this.xmlReader.nextEvent();
+      if (event.isCharacters()) {
+        String data = event.asCharacters().getData();
+        int length = data.length();
+        for (int offset = 0; offset < length; offset += buffer.length) {
+          int count = Math.min(buffer.length, length - offset);
+          for (int i = 0; i < count; i++) {
+            // Base64 text is ASCII, so each char maps to one byte.
+            buffer[i] = (byte) data.charAt(offset + i);
+          }
+          decoder.write(buffer, 0, count);
+        }
+      } else if (event.isEndElement()) {
+        break;
+      } else if (event.getEventType() != XMLStreamConstants.COMMENT
+          && event.getEventType() != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+        throw new XMLStreamException(
+            "A text-only element was expected, but an event of type " + event.getEventType()
+            + " was found.", event.getLocation());
+      }
+    }
+    decoder.close();
     outputStream.flush();
   }
 
@@ -667,6 +757,9 @@ public class EwsXmlReader {
    * @return boolean
    */
   public boolean isStartElement() {
+    if (this.cursor != null) {
+      return this.getCursorEventType() == XMLStreamConstants.START_ELEMENT;
+    }
     return this.presentEvent.isStartElement();
   }
 
@@ -678,6 +771,11 @@ public class EwsXmlReader {
    * @return boolean
    */
   public boolean isStartElement(String namespacePrefix, String localName) {
+    if (this.cursor != null) {
+      return this.isStartElement()
+          && namesEqual(this.getLocalName(), localName)
+          && namesEqual(this.getNamespacePrefix(), namespacePrefix);
+    }
     boolean isStart = false;
     if (this.presentEvent.isStartElement()) {
       StartElement startElement = this.presentEvent.asStartElement();
@@ -696,6 +794,9 @@ public class EwsXmlReader {
    * @return true for matching start element; false otherwise.
    */
   public boolean isStartElement(XmlNamespace xmlNamespace, String localName) {
+    if (this.cursor != null) {
+      return this.isStartElement() && this.isCursorElement(xmlNamespace, localName);
+    }
     return this.isStartElement()
       && StringUtils.equals(getLocalName(), localName)
       && (
@@ -711,6 +812,11 @@ public class EwsXmlReader {
    * @return boolean
    */
   public boolean isEndElement(String namespacePrefix, String localName) {
+    if (this.cursor != null) {
+      return this.getCursorEventType() == XMLStreamConstants.END_ELEMENT
+          && namesEqual(this.getLocalName(), localName)
+          && namesEqual(this.getNamespacePrefix(), namespacePrefix);
+    }
     boolean isEndElement = false;
     if (this.presentEvent.isEndElement()) {
       EndElement endElement = this.presentEvent.asEndElement();
@@ -730,6 +836,10 @@ public class EwsXmlReader {
    * @return boolean
    */
   public boolean isEndElement(XmlNamespace xmlNamespace, String localName) {
+    if (this.cursor != null) {
+      return this.getCursorEventType() == XMLStreamConstants.END_ELEMENT
+          && this.isCursorElement(xmlNamespace, localName);
+    }
 
     boolean isEndElement = false;
 		/*
@@ -827,6 +937,16 @@ public class EwsXmlReader {
    */
   public void ensureCurrentNodeIsStartElement()
       throws ServiceXmlDeserializationException {
+    if (this.cursor != null) {
+      if (!this.isStartElement()) {
+        final int eventType = this.getCursorEventType();
+        throw new ServiceXmlDeserializationException(String.format(
+            "The start element was expected, but node '%s' of type %s was found.",
+            eventType == XMLStreamConstants.END_ELEMENT ? this.getName() : XmlNodeType.getString(eventType),
+            new XmlNodeType(eventType).toString()));
+      }
+      return;
+    }
     XmlNodeType presentNodeType = new XmlNodeType(this.presentEvent
         .getEventType());
     if (!this.presentEvent.isStartElement()) {
@@ -869,6 +989,10 @@ public class EwsXmlReader {
       throw new ServiceXmlDeserializationException("The current position is not the start of an element.");
     }
 
+    if (this.cursor != null) {
+      return this.readCursorXml(true);
+    }
+
     XMLEvent startEvent = this.presentEvent;
     XMLEvent event;
     StringBuilder str = new StringBuilder();
@@ -894,6 +1018,10 @@ public class EwsXmlReader {
       throw new ServiceXmlDeserializationException("The current position is not the start of an element.");
     }
 
+    if (this.cursor != null) {
+      return this.readCursorXml(false);
+    }
+
     XMLEvent startEvent = this.presentEvent;
     StringBuilder str = new StringBuilder();
     do {
@@ -948,6 +1076,10 @@ public class EwsXmlReader {
       throw new ServiceXmlDeserializationException("The current position is not the start of an element.");
     }
 
+    if (this.cursor != null) {
+      return SafeXmlFactory.getInputFactory().createXMLEventReader(new StringReader(this.readCursorXml(true)));
+    }
+
     XMLEventReader eventReader = null;
     InputStream in = null;
     XMLEvent startEvent = this.presentEvent;
@@ -961,7 +1093,7 @@ public class EwsXmlReader {
 
     try {
 
-      XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+      XMLInputFactory inputFactory = SafeXmlFactory.getInputFactory();
 
       try {
         in = new ByteArrayInputStream(str.toString().getBytes("UTF-8"));
@@ -993,6 +1125,9 @@ public class EwsXmlReader {
     if (!this.isStartElement()) {
       return false;
     }
+    if (this.cursor != null) {
+      return this.readCursorToDescendant(localName, namespaceURI);
+    }
     XMLEvent startEvent = this.presentEvent;
     XMLEvent event = this.presentEvent;
     do {
@@ -1017,6 +1152,12 @@ public class EwsXmlReader {
    * @return boolean
    */
   public boolean hasAttributes() {
+    if (this.cursor != null) {
+      if (!this.isStartElement()) {
+        return false;
+      }
+      return this.cursorAhead ? this.cursorAheadElement.attributeCount > 0 : this.cursor.getAttributeCount() > 0;
+    }
 
     if (this.presentEvent.isStartElement()) {
       StartElement startElement = this.presentEvent.asStartElement();
@@ -1033,6 +1174,21 @@ public class EwsXmlReader {
    * @throws XMLStreamException the XML stream exception
    */
   public boolean isEmptyElement() throws XMLStreamException {
+    if (this.cursor != null) {
+      if (!this.isStartElement()) {
+        return false;
+      }
+      if (!this.cursorAhead) {
+        // The cursor can't peek, so keep a copy of the start element and move past it.
+        if (this.cursorAheadElement == null) {
+          this.cursorAheadElement = new CursorStartElement();
+        }
+        this.cursorAheadElement.copyFrom(this.cursor);
+        this.cursor.next();
+        this.cursorAhead = true;
+      }
+      return this.cursor.getEventType() == XMLStreamConstants.END_ELEMENT;
+    }
     boolean isPresentStartElement = this.presentEvent.isStartElement();
     boolean isNextEndElement = this.xmlReader.peek().isEndElement();
     return isPresentStartElement && isNextEndElement;
@@ -1044,6 +1200,9 @@ public class EwsXmlReader {
    * @return String
    */
   public String getLocalName() {
+    if (this.cursor != null) {
+      return this.cursorAhead ? this.cursorAheadElement.localName : this.cursor.getLocalName();
+    }
 
     String localName = null;
 
@@ -1064,6 +1223,13 @@ public class EwsXmlReader {
    * @return String
    */
   protected String getNamespacePrefix() {
+    if (this.cursor != null) {
+      final int eventType = this.getCursorEventType();
+      if (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_ELEMENT) {
+        return null;
+      }
+      return this.cursorAhead ? this.cursorAheadElement.prefix : emptyIfNull(this.cursor.getPrefix());
+    }
     if (this.presentEvent.isStartElement()) {
       return this.presentEvent.asStartElement().getName().getPrefix();
     }
@@ -1079,6 +1245,9 @@ public class EwsXmlReader {
    * @return String
    */
   public String getNamespaceUri() {
+    if (this.cursor != null) {
+      return this.cursorAhead ? this.cursorAheadElement.namespaceUri : emptyIfNull(this.cursor.getNamespaceURI());
+    }
 
     String nameSpaceUri = null;
     if (this.presentEvent.isStartElement()) {
@@ -1099,6 +1268,9 @@ public class EwsXmlReader {
    * @throws XMLStreamException the XML stream exception
    */
   public XmlNodeType getNodeType() throws XMLStreamException {
+    if (this.cursor != null) {
+      return new XmlNodeType(this.getCursorEventType());
+    }
     XMLEvent event = this.presentEvent;
     return new XmlNodeType(event.getEventType());
   }
@@ -1109,6 +1281,10 @@ public class EwsXmlReader {
    * @return Object
    */
   protected Object getName() {
+    if (this.cursor != null) {
+      final String namespaceUri = this.getNamespaceUri();
+      return namespaceUri.isEmpty() ? this.getLocalName() : "{" + namespaceUri + "}" + this.getLocalName();
+    }
     String name = null;
     if (this.presentEvent.isStartElement()) {
       name = this.presentEvent.asStartElement().getName().toString();
@@ -1137,8 +1313,374 @@ public class EwsXmlReader {
    * @return error message with details
    */
   private String getReadValueErrMsg(final String details) {
-    final int eventType = this.presentEvent.getEventType();
+    final int eventType = this.cursor != null ? this.getCursorEventType() : this.presentEvent.getEventType();
     return "Could not read value from " + XmlNodeType.getString(eventType) + "." + details;
   }
 
+  /**
+   * Gets the event type of the present node in cursor mode.
+   *
+   * @return the event type
+   */
+  private int getCursorEventType() {
+    return this.cursorAhead ? XMLStreamConstants.START_ELEMENT : this.cursor.getEventType();
+  }
+
+  /**
+   * Moves the cursor to the next node, skipping whitespace unless asked to keep it.
+   *
+   * @param keepWhiteSpace Do not remove whitespace characters if true
+   * @throws ServiceXmlDeserializationException the service xml deserialization exception
+   * @throws XMLStreamException the XML stream exception
+   */
+  private void readCursor(boolean keepWhiteSpace) throws ServiceXmlDeserializationException,
+      XMLStreamException {
+    while (true) {
+      if (this.cursorAhead) {
+        this.cursorAhead = false;
+      } else if (!this.cursor.hasNext()) {
+        throw new ServiceXmlDeserializationException("Unexpected end of XML document.");
+      } else {
+        this.cursor.next();
+      }
+      if (!keepWhiteSpace && this.cursor.getEventType() == XMLStreamConstants.CHARACTERS
+          && this.cursor.isWhiteSpace()) {
+        continue;
+      }
+      break;
+    }
+  }
+
+  /**
+   * Reads the value of the present node in cursor mode, mirroring {@link #readValue(boolean)}.
+   *
+   * @param keepWhiteSpace Do not remove whitespace characters if true
+   * @return String
+   * @throws XMLStreamException the XML stream exception
+   * @throws ServiceXmlDeserializationException the service xml deserialization exception
+   */
+  private String readCursorValue(boolean keepWhiteSpace) throws XMLStreamException,
+      ServiceXmlDeserializationException {
+    final StringBuilder value = new StringBuilder();
+    int eventType = this.getCursorEventType();
+    if (eventType == XMLStreamConstants.START_ELEMENT) {
+      this.read(keepWhiteSpace);
+      eventType = this.cursor.getEventType();
+      if (eventType == XMLStreamConstants.END_ELEMENT) {
+        return "";
+      } else if (!isCharacters(eventType)) {
+        throw new ServiceXmlDeserializationException(
+            getReadValueErrMsg("Could not find " + XmlNodeType.getString(XmlNodeType.CHARACTERS)));
+      }
+    } else if (eventType != XMLStreamConstants.CHARACTERS) {
+      throw new ServiceXmlDeserializationException(
+          getReadValueErrMsg("Expected is " + XmlNodeType.getString(XmlNodeType.START_ELEMENT))
+      );
+    }
+
+    do {
+      eventType = this.cursor.getEventType();
+      if ((eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA)
+          && (keepWhiteSpace || !this.cursor.isWhiteSpace())) {
+        value.append(this.cursor.getTextCharacters(), this.cursor.getTextStart(), this.cursor.getTextLength());
+      }
+      this.read(keepWhiteSpace);
+    } while (this.cursor.getEventType() != XMLStreamConstants.END_ELEMENT);
+    return value.toString();
+  }
+
+  /**
+   * Decodes the base64 content of the present element in cursor mode and
+   * leaves the reader on its end element.
+   *
+   * @param outputStream the output stream
+   * @throws XMLStreamException the XML stream exception
+   * @throws IOException signals that an I/O exception has occurred
+   */
+  private void readCursorBase64ElementValue(OutputStream outputStream)
+      throws XMLStreamException, IOException {
+    OutputStream decoder = new Base64OutputStream(new CloseShieldOutputStream(outputStream), false);
+    byte[] buffer = new byte[ReadWriteBufferSize];
+    char[] chars = new char[ReadWriteBufferSize];
+    if (this.cursorAhead) {
+      this.cursorAhead = false;
+    } else {
+      this.cursor.next();
+    }
+    while (true) {
+      final int eventType = this.cursor.getEventType();
+      if (isCharacters(eventType)) {
+        int offset = 0;
+        int count;
+        while ((count = this.cursor.getTextCharacters(offset, chars, 0, chars.length)) > 0) {
+          for (int i = 0; i < count; i++) {
+            // Base64 text is ASCII, so each char maps to one byte.
+            buffer[i] = (byte) chars[i];
+          }
+          decoder.write(buffer, 0, count);
+          offset += count;
+        }
+      } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+        break;
+      } else if (eventType != XMLStreamConstants.COMMENT
+          && eventType != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+        throw new XMLStreamException(
+            "A text-only element was expected, but an event of type " + eventType
+            + " was found.", this.cursor.getLocation());
+      }
+      this.cursor.next();
+    }
+    decoder.close();
+    outputStream.flush();
+  }
+
+  /**
+   * Copies the present element in cursor mode as XML text and leaves the
+   * reader on its end element.
+   *
+   * @param includeElement true to include the element's own tags, false for its content only
+   * @return String
+   * @throws XMLStreamException the XML stream exception
+   */
+  private String readCursorXml(boolean includeElement) throws XMLStreamException {
+    StringWriter out = new StringWriter();
+    XMLStreamWriter writer = SafeXmlFactory.getOutputFactory().createXMLStreamWriter(out);
+    if (includeElement) {
+      this.writeCursorStartElement(writer);
+    }
+    if (this.cursorAhead) {
+      this.cursorAhead = false;
+    } else {
+      this.cursor.next();
+    }
+    int depth = 0;
+    while (true) {
+      switch (this.cursor.getEventType()) {
+        case XMLStreamConstants.START_ELEMENT:
+          this.writeCursorStartElement(writer);
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          if (depth == 0 && !includeElement) {
+            writer.flush();
+            return out.toString();
+          }
+          writer.writeEndElement();
+          if (depth == 0) {
+            writer.flush();
+            return out.toString();
+          }
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+          writer.writeCharacters(this.cursor.getTextCharacters(), this.cursor.getTextStart(),
+              this.cursor.getTextLength());
+          break;
+        case XMLStreamConstants.CDATA:
+          writer.writeCData(this.cursor.getText());
+          break;
+        case XMLStreamConstants.COMMENT:
+          writer.writeComment(this.cursor.getText());
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          writer.writeProcessingInstruction(this.cursor.getPITarget(), this.cursor.getPIData());
+          break;
+        case XMLStreamConstants.ENTITY_REFERENCE:
+          writer.writeEntityRef(this.cursor.getLocalName());
+          break;
+        default:
+          break;
+      }
+      this.cursor.next();
+    }
+  }
+
+  /**
+   * Writes the present start element, with its namespace declarations and attributes.
+   *
+   * @param writer the writer
+   * @throws XMLStreamException the XML stream exception
+   */
+  private void writeCursorStartElement(XMLStreamWriter writer) throws XMLStreamException {
+    final CursorStartElement element;
+    if (this.cursorAhead) {
+      element = this.cursorAheadElement;
+    } else {
+      element = new CursorStartElement();
+      element.copyFrom(this.cursor);
+    }
+    writer.writeStartElement(element.prefix, element.localName, element.namespaceUri);
+    for (int i = 0; i < element.namespaceCount; i++) {
+      if (isNullOrEmpty(element.namespacePrefixes[i])) {
+        writer.writeDefaultNamespace(element.namespaceUris[i]);
+      } else {
+        writer.writeNamespace(element.namespacePrefixes[i], element.namespaceUris[i]);
+      }
+    }
+    for (int i = 0; i < element.attributeCount; i++) {
+      if (isNullOrEmpty(element.attributeNamespaceUris[i])) {
+        writer.writeAttribute(element.attributeLocalNames[i], element.attributeValues[i]);
+      } else {
+        writer.writeAttribute(element.attributePrefixes[i], element.attributeNamespaceUris[i],
+            element.attributeLocalNames[i], element.attributeValues[i]);
+      }
+    }
+  }
+
+  /**
+   * Moves the cursor to the first element within the present one, the present
+   * element included, with the given name.
+   *
+   * @param localName    the local name
+   * @param namespaceURI the namespace uri
+   * @return true if such an element was found
+   * @throws XMLStreamException the XML stream exception
+   */
+  private boolean readCursorToDescendant(String localName, String namespaceURI) throws XMLStreamException {
+    int depth = 0;
+    while (true) {
+      final int eventType = this.getCursorEventType();
+      if (eventType == XMLStreamConstants.START_ELEMENT) {
+        if (namesEqual(this.getLocalName(), localName) && namesEqual(this.getNamespaceUri(), namespaceURI)) {
+          return true;
+        }
+        depth++;
+      } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+        if (--depth == 0) {
+          return false;
+        }
+      }
+      if (this.cursorAhead) {
+        this.cursorAhead = false;
+      } else {
+        this.cursor.next();
+      }
+    }
+  }
+
+  /**
+   * Gets the value of an attribute of the present start element in cursor mode.
+   *
+   * @param namespaceUri the namespace uri, empty for none
+   * @param localName    the local name
+   * @return the value, or null if the element has no such attribute
+   */
+  private String getCursorAttributeValue(String namespaceUri, String localName) {
+    if (this.cursorAhead) {
+      final CursorStartElement element = this.cursorAheadElement;
+      for (int i = 0; i < element.attributeCount; i++) {
+        if (namesEqual(element.attributeLocalNames[i], localName)
+            && namesEqual(emptyIfNull(element.attributeNamespaceUris[i]), namespaceUri)) {
+          return element.attributeValues[i];
+        }
+      }
+      return null;
+    }
+    final int count = this.cursor.getAttributeCount();
+    for (int i = 0; i < count; i++) {
+      if (namesEqual(this.cursor.getAttributeLocalName(i), localName)
+          && namesEqual(emptyIfNull(this.cursor.getAttributeNamespace(i)), namespaceUri)) {
+        return this.cursor.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks whether the present element in cursor mode has the given namespace and local name.
+   *
+   * @param xmlNamespace the xml namespace
+   * @param localName    the local name
+   * @return true, if it matches
+   */
+  private boolean isCursorElement(XmlNamespace xmlNamespace, String localName) {
+    return namesEqual(this.getLocalName(), localName)
+        && (namesEqual(this.getNamespacePrefix(), EwsUtilities.getNamespacePrefix(xmlNamespace))
+        || namesEqual(this.getNamespaceUri(), EwsUtilities.getNamespaceUri(xmlNamespace)));
+  }
+
+  /**
+   * Compares two names. The parser interns the names it reports, so the
+   * reference check usually decides.
+   *
+   * @param name  the name read
+   * @param other the name expected
+   * @return true, if equal
+   */
+  private static boolean namesEqual(String name, String other) {
+    return name == other || (name != null && name.equals(other));
+  }
+
+  /**
+   * Returns the empty string for null.
+   *
+   * @param value the value
+   * @return the value, or the empty string
+   */
+  private static String emptyIfNull(String value) {
+    return value == null ? "" : value;
+  }
+
+  /**
+   * Checks whether an event type carries text.
+   *
+   * @param eventType the event type
+   * @return true, if it is characters, CDATA or ignorable space
+   */
+  private static boolean isCharacters(int eventType) {
+    return eventType == XMLStreamConstants.CHARACTERS
+        || eventType == XMLStreamConstants.CDATA
+        || eventType == XMLStreamConstants.SPACE;
+  }
+
+
+  /**
+   * A copy of a start element, kept when the cursor moves past it to look ahead.
+   */
+  private static final class CursorStartElement {
+
+    String localName;
+    String prefix;
+    String namespaceUri;
+    int attributeCount;
+    String[] attributeLocalNames = new String[0];
+    String[] attributePrefixes = new String[0];
+    String[] attributeNamespaceUris = new String[0];
+    String[] attributeValues = new String[0];
+    int namespaceCount;
+    String[] namespacePrefixes = new String[0];
+    String[] namespaceUris = new String[0];
+
+    void copyFrom(XMLStreamReader reader) {
+      this.localName = reader.getLocalName();
+      this.prefix = emptyIfNull(reader.getPrefix());
+      this.namespaceUri = emptyIfNull(reader.getNamespaceURI());
+
+      this.attributeCount = reader.getAttributeCount();
+      if (this.attributeLocalNames.length < this.attributeCount) {
+        this.attributeLocalNames = new String[this.attributeCount];
+        this.attributePrefixes = new String[this.attributeCount];
+        this.attributeNamespaceUris = new String[this.attributeCount];
+        this.attributeValues = new String[this.attributeCount];
+      }
+      for (int i = 0; i < this.attributeCount; i++) {
+        this.attributeLocalNames[i] = reader.getAttributeLocalName(i);
+        this.attributePrefixes[i] = emptyIfNull(reader.getAttributePrefix(i));
+        this.attributeNamespaceUris[i] = emptyIfNull(reader.getAttributeNamespace(i));
+        this.attributeValues[i] = reader.getAttributeValue(i);
+      }
+
+      this.namespaceCount = reader.getNamespaceCount();
+      if (this.namespacePrefixes.length < this.namespaceCount) {
+        this.namespacePrefixes = new String[this.namespaceCount];
+        this.namespaceUris = new String[this.namespaceCount];
+      }
+      for (int i = 0; i < this.namespaceCount; i++) {
+        this.namespacePrefixes[i] = reader.getNamespacePrefix(i);
+        this.namespaceUris[i] = emptyIfNull(reader.getNamespaceURI(i));
+      }
+    }
+  }
+
 }
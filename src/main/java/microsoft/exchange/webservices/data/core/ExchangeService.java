@@ -37,8 +37,12 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
+import microsoft.exchange.webservices.data.autodiscover.AutodiscoverCacheEntry;
 import microsoft.exchange.webservices.data.autodiscover.AutodiscoverService;
+import microsoft.exchange.webservices.data.autodiscover.IAutodiscoverCache;
 import microsoft.exchange.webservices.data.autodiscover.IAutodiscoverRedirectionUrl;
 import microsoft.exchange.webservices.data.autodiscover.enumeration.UserSettingName;
 import microsoft.exchange.webservices.data.autodiscover.exception.AutodiscoverLocalException;
@@ -69,6 +73,7 @@ import microsoft.exchange.webservices.data.core.exception.misc.ArgumentOutOfRang
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceLocalException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceValidationException;
 import microsoft.exchange.webservices.data.core.exception.service.remote.AccountIsLockedException;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ChunkedRequestException;
 import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceRemoteException;
 import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceResponseException;
 import microsoft.exchange.webservices.data.core.request.AddDelegateRequest;
@@ -149,14 +154,20 @@ import microsoft.exchange.webservices.data.core.service.item.Item;
 import microsoft.exchange.webservices.data.messaging.UnifiedMessaging;
 import microsoft.exchange.webservices.data.misc.AsyncCallback;
 import microsoft.exchange.webservices.data.misc.AsyncRequestResult;
+import microsoft.exchange.webservices.data.misc.ChunkedRequest;
 import microsoft.exchange.webservices.data.misc.ConversationAction;
 import microsoft.exchange.webservices.data.misc.DelegateInformation;
 import microsoft.exchange.webservices.data.misc.ExpandGroupResults;
 import microsoft.exchange.webservices.data.misc.FolderIdWrapper;
 import microsoft.exchange.webservices.data.misc.IAsyncResult;
+import microsoft.exchange.webservices.data.misc.IRequestInstrumentation;
+import microsoft.exchange.webservices.data.misc.InMemoryRequestInstrumentation;
 import microsoft.exchange.webservices.data.misc.ImpersonatedUserId;
 import microsoft.exchange.webservices.data.misc.NameResolutionCollection;
 import microsoft.exchange.webservices.data.misc.OutParam;
+import microsoft.exchange.webservices.data.misc.PrefetchingPagedIterable;
+import microsoft.exchange.webservices.data.misc.RequestCoalescer;
+import microsoft.exchange.webservices.data.misc.ThrottlingController;
 import microsoft.exchange.webservices.data.misc.UserConfiguration;
 import microsoft.exchange.webservices.data.misc.availability.AttendeeInfo;
 import microsoft.exchange.webservices.data.misc.availability.AvailabilityOptions;
@@ -240,6 +251,16 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
 
   private boolean enableScpLookup = true;
 
+  /**
+   * The cache of Autodiscover results, null if results aren't cached.
+   */
+  private volatile IAutodiscoverCache autodiscoverCache;
+
+  /**
+   * Whether the AutodiscoverUrl method probes the candidate endpoints at the same time.
+   */
+  private volatile boolean parallelEndpointDiscovery;
+
   /**
    * When false, used to indicate that we should use "Exchange2007" as the server version String rather than
    * Exchange2007_SP1 (@see #getExchange2007CompatibilityMode).
@@ -247,6 +268,40 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    */
   private boolean exchange2007CompatibilityMode = false;
 
+  /**
+   * The time in milliseconds concurrent binds are collected into one request, 0 if binds aren't combined.
+   */
+  private int bindCoalescingWindow = 0;
+
+  /**
+   * The maximum number of ids in a combined bind request.
+   */
+  private int bindCoalescingMaxBatchSize = 100;
+
+  private volatile RequestCoalescer<ItemId, GetItemResponse> itemBindCoalescer;
+
+  private volatile RequestCoalescer<FolderId, GetFolderResponse> folderBindCoalescer;
+
+  /**
+   * The maximum number of objects per request of a bulk operation, 0 for no limit.
+   */
+  private int batchChunkSize = 0;
+
+  /**
+   * The number of requests of a bulk operation that are executed at the same time.
+   */
+  private int batchParallelism = 1;
+
+  /**
+   * Limits the requests in flight when the server throttles, null if requests aren't limited.
+   */
+  private volatile ThrottlingController throttlingController;
+
+  /**
+   * Receives the metrics of every request, null if requests aren't instrumented.
+   */
+  private volatile IRequestInstrumentation requestInstrumentation;
+
   /**
    * Create response object.
    *
@@ -461,6 +516,54 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     return this.findFolders(new FolderId(parentFolderName), view);
   }
 
+  /**
+   * Obtains all folders found by searching the sub-folders of the specified folder,
+   * fetching the next page of results in the background while the current one is
+   * consumed.
+   *
+   * @param parentFolderId The Id of the folder in which to search for folders.
+   * @param searchFilter   The search filter, may be null.
+   * @param view           The view controlling the page size and the first page. Its offset
+   *                       is advanced as pages are fetched.
+   * @return The folders, fetched lazily as the iteration proceeds.
+   * @throws Exception the exception
+   */
+  public Iterable<Folder> findAllFolders(FolderId parentFolderId,
+      SearchFilter searchFilter, FolderView view) throws Exception {
+    return this.findAllFolders(parentFolderId, searchFilter, view, 1);
+  }
+
+  /**
+   * Obtains all folders found by searching the sub-folders of the specified folder,
+   * fetching up to the prefetch depth pages of results in the background while the
+   * current one is consumed. Consumed pages are not retained.
+   *
+   * @param parentFolderId The Id of the folder in which to search for folders.
+   * @param searchFilter   The search filter, may be null.
+   * @param view           The view controlling the page size and the first page. Its offset
+   *                       is advanced as pages are fetched.
+   * @param prefetchDepth  The number of pages fetched ahead, 0 to fetch each page when needed.
+   * @return The folders, fetched lazily as the iteration proceeds.
+   * @throws Exception the exception
+   */
+  public Iterable<Folder> findAllFolders(final FolderId parentFolderId,
+      final SearchFilter searchFilter, final FolderView view, int prefetchDepth) throws Exception {
+    EwsUtilities.validateParam(parentFolderId, "parentFolderId");
+    EwsUtilities.validateParam(view, "view");
+    EwsUtilities.validateParamAllowNull(searchFilter, "searchFilter");
+
+    return new PrefetchingPagedIterable<Folder>(view.getOffset(), prefetchDepth,
+        prefetchDepth > 0 ? this.getAsyncExecutor() : null) {
+      @Override
+      protected Page<Folder> fetchPage(int offset) throws Exception {
+        view.setOffset(offset);
+        FindFoldersResults results = findFolders(parentFolderId, searchFilter, view);
+        return new Page<Folder>(results.getFolders(), results.isMoreAvailable(),
+            results.getNextPageOffset());
+      }
+    };
+  }
+
   /**
    * Load specified property for a folder.
    *
@@ -495,6 +598,13 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     EwsUtilities.validateParam(folderId, "folderId");
     EwsUtilities.validateParam(propertySet, "propertySet");
 
+    RequestCoalescer<FolderId, GetFolderResponse> coalescer = this.folderBindCoalescer;
+    if (coalescer != null) {
+      GetFolderResponse response = coalescer.execute(propertySet, folderId);
+      response.throwIfNecessary();
+      return response.getFolder();
+    }
+
     GetFolderRequest request = new GetFolderRequest(this,
         ServiceErrorHandling.ThrowOnError);
 
@@ -586,16 +696,21 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    * @throws Exception the exception
    */
   private ServiceResponseCollection<ServiceResponse> internalCreateItems(
-      Collection<Item> items, FolderId parentFolderId,
-      MessageDisposition messageDisposition,
-      SendInvitationsMode sendInvitationsMode,
-      ServiceErrorHandling errorHandling) throws Exception {
-    CreateItemRequest request = new CreateItemRequest(this, errorHandling);
-    request.setParentFolderId(parentFolderId);
-    request.setItems(items);
-    request.setMessageDisposition(messageDisposition);
-    request.setSendInvitationsMode(sendInvitationsMode);
-    return request.execute();
+      Collection<Item> items, final FolderId parentFolderId,
+      final MessageDisposition messageDisposition,
+      final SendInvitationsMode sendInvitationsMode,
+      final ServiceErrorHandling errorHandling) throws Exception {
+    return this.executeInChunks(items, errorHandling, new ChunkedRequest<Item, ServiceResponse>() {
+      @Override
+      protected ServiceResponseCollection<ServiceResponse> executeChunk(List<Item> chunk) throws Exception {
+        CreateItemRequest request = new CreateItemRequest(ExchangeService.this, errorHandling);
+        request.setParentFolderId(parentFolderId);
+        request.setItems(chunk);
+        request.setMessageDisposition(messageDisposition);
+        request.setSendInvitationsMode(sendInvitationsMode);
+        return request.execute();
+      }
+    });
   }
 
   /**
@@ -641,6 +756,48 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
         ServiceErrorHandling.ReturnErrors);
   }
 
+  /**
+   * Creates multiple item asynchronously on the executor shared by asynchronous
+   * requests of this service.
+   *
+   * @param items               the item
+   * @param parentFolderId      the parent folder id
+   * @param messageDisposition  the message disposition
+   * @param sendInvitationsMode the send invitations mode
+   * @return A Future providing the results of createItems
+   */
+  public Future<ServiceResponseCollection<ServiceResponse>> createItemsAsync(
+      final Collection<Item> items, final FolderId parentFolderId,
+      final MessageDisposition messageDisposition,
+      final SendInvitationsMode sendInvitationsMode) {
+    return this.createItemsAsync(null, items, parentFolderId, messageDisposition,
+        sendInvitationsMode);
+  }
+
+  /**
+   * Creates multiple item asynchronously on the executor shared by asynchronous
+   * requests of this service.
+   * The callback is invoked on the executor thread that completed the operation,
+   * with the returned Future.
+   *
+   * @param callback            the callback, may be null
+   * @param items               the item
+   * @param parentFolderId      the parent folder id
+   * @param messageDisposition  the message disposition
+   * @param sendInvitationsMode the send invitations mode
+   * @return A Future providing the results of createItems
+   */
+  public Future<ServiceResponseCollection<ServiceResponse>> createItemsAsync(AsyncCallback callback,
+      final Collection<Item> items, final FolderId parentFolderId,
+      final MessageDisposition messageDisposition,
+      final SendInvitationsMode sendInvitationsMode) {
+    return this.submitAsync(new Callable<ServiceResponseCollection<ServiceResponse>>() {
+      public ServiceResponseCollection<ServiceResponse> call() throws Exception {
+        return createItems(items, parentFolderId, messageDisposition, sendInvitationsMode);
+      }
+    }, callback);
+  }
+
   /**
    * Creates an item. Calling this method results in a call to EWS.
    *
@@ -674,21 +831,26 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    */
   private ServiceResponseCollection<UpdateItemResponse> internalUpdateItems(
       Iterable<Item> items,
-      FolderId savedItemsDestinationFolderId,
-      ConflictResolutionMode conflictResolution,
-      MessageDisposition messageDisposition,
-      SendInvitationsOrCancellationsMode sendInvitationsOrCancellationsMode,
-      ServiceErrorHandling errorHandling) throws Exception {
-    UpdateItemRequest request = new UpdateItemRequest(this, errorHandling);
+      final FolderId savedItemsDestinationFolderId,
+      final ConflictResolutionMode conflictResolution,
+      final MessageDisposition messageDisposition,
+      final SendInvitationsOrCancellationsMode sendInvitationsOrCancellationsMode,
+      final ServiceErrorHandling errorHandling) throws Exception {
+    return this.executeInChunks(items, errorHandling, new ChunkedRequest<Item, UpdateItemResponse>() {
+      @Override
+      protected ServiceResponseCollection<UpdateItemResponse> executeChunk(List<Item> chunk) throws Exception {
+        UpdateItemRequest request = new UpdateItemRequest(ExchangeService.this, errorHandling);
 
-    request.getItems().addAll((Collection<? extends Item>) items);
-    request.setSavedItemsDestinationFolder(savedItemsDestinationFolderId);
-    request.setMessageDisposition(messageDisposition);
-    request.setConflictResolutionMode(conflictResolution);
-    request
-        .setSendInvitationsOrCancellationsMode(sendInvitationsOrCancellationsMode);
+        request.getItems().addAll(chunk);
+        request.setSavedItemsDestinationFolder(savedItemsDestinationFolderId);
+        request.setMessageDisposition(messageDisposition);
+        request.setConflictResolutionMode(conflictResolution);
+        request
+            .setSendInvitationsOrCancellationsMode(sendInvitationsOrCancellationsMode);
 
-    return request.execute();
+        return request.execute();
+      }
+    });
   }
 
   /**
@@ -802,15 +964,20 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    * @throws Exception the exception
    */
   private ServiceResponseCollection<MoveCopyItemResponse> internalCopyItems(
-      Iterable<ItemId> itemIds, FolderId destinationFolderId,
-      Boolean returnNewItemIds, ServiceErrorHandling errorHandling)
+      Iterable<ItemId> itemIds, final FolderId destinationFolderId,
+      final Boolean returnNewItemIds, final ServiceErrorHandling errorHandling)
       throws Exception {
-    CopyItemRequest request = new CopyItemRequest(this, errorHandling);
-    request.getItemIds().addRange(itemIds);
-    request.setDestinationFolderId(destinationFolderId);
-    request.setReturnNewItemIds(returnNewItemIds);
-    return request.execute();
-
+    return this.executeInChunks(itemIds, errorHandling, new ChunkedRequest<ItemId, MoveCopyItemResponse>() {
+      @Override
+      protected ServiceResponseCollection<MoveCopyItemResponse> executeChunk(List<ItemId> chunk)
+          throws Exception {
+        CopyItemRequest request = new CopyItemRequest(ExchangeService.this, errorHandling);
+        request.getItemIds().addRange(chunk);
+        request.setDestinationFolderId(destinationFolderId);
+        request.setReturnNewItemIds(returnNewItemIds);
+        return request.execute();
+      }
+    });
   }
 
   /**
@@ -882,15 +1049,21 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    * @throws Exception the exception
    */
   private ServiceResponseCollection<MoveCopyItemResponse> internalMoveItems(
-      Iterable<ItemId> itemIds, FolderId destinationFolderId,
-      Boolean returnNewItemIds, ServiceErrorHandling errorHandling)
+      Iterable<ItemId> itemIds, final FolderId destinationFolderId,
+      final Boolean returnNewItemIds, final ServiceErrorHandling errorHandling)
       throws Exception {
-    MoveItemRequest request = new MoveItemRequest(this, errorHandling);
-
-    request.getItemIds().addRange(itemIds);
-    request.setDestinationFolderId(destinationFolderId);
-    request.setReturnNewItemIds(returnNewItemIds);
-    return request.execute();
+    return this.executeInChunks(itemIds, errorHandling, new ChunkedRequest<ItemId, MoveCopyItemResponse>() {
+      @Override
+      protected ServiceResponseCollection<MoveCopyItemResponse> executeChunk(List<ItemId> chunk)
+          throws Exception {
+        MoveItemRequest request = new MoveItemRequest(ExchangeService.this, errorHandling);
+
+        request.getItemIds().addRange(chunk);
+        request.setDestinationFolderId(destinationFolderId);
+        request.setReturnNewItemIds(returnNewItemIds);
+        return request.execute();
+      }
+    });
   }
 
   /**
@@ -1033,6 +1206,42 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     return responses.getResponseAtIndex(0).getResults();
   }
 
+  /**
+   * Obtains a list of item by searching the contents of a specific folder
+   * asynchronously on the executor shared by asynchronous requests of this service.
+   *
+   * @param parentFolderId the parent folder id
+   * @param searchFilter   the search filter
+   * @param view           the view
+   * @return A Future providing the results of the search operation.
+   */
+  public Future<FindItemsResults<Item>> findItemsAsync(final FolderId parentFolderId,
+      final SearchFilter searchFilter, final ItemView view) {
+    return this.findItemsAsync(null, parentFolderId, searchFilter, view);
+  }
+
+  /**
+   * Obtains a list of item by searching the contents of a specific folder
+   * asynchronously on the executor shared by asynchronous requests of this service.
+   * The callback is invoked on the executor thread that completed the operation,
+   * with the returned Future.
+   *
+   * @param callback       the callback, may be null
+   * @param parentFolderId the parent folder id
+   * @param searchFilter   the search filter
+   * @param view           the view
+   * @return A Future providing the results of the search operation.
+   */
+  public Future<FindItemsResults<Item>> findItemsAsync(AsyncCallback callback,
+      final FolderId parentFolderId,
+      final SearchFilter searchFilter, final ItemView view) {
+    return this.submitAsync(new Callable<FindItemsResults<Item>>() {
+      public FindItemsResults<Item> call() throws Exception {
+        return findItems(parentFolderId, searchFilter, view);
+      }
+    }, callback);
+  }
+
   /**
    * Obtains a list of item by searching the contents of a specific folder.
    * Calling this method results in a call to EWS.
@@ -1104,6 +1313,54 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     return this.findItems(new FolderId(parentFolderName), (SearchFilter) null, view);
   }
 
+  /**
+   * Obtains all items found by searching the contents of a specific folder, fetching
+   * the next page of results in the background while the current one is consumed.
+   *
+   * @param parentFolderId the parent folder id
+   * @param searchFilter   the search filter, may be null
+   * @param view           the view controlling the page size and the first page; its offset
+   *                       is advanced as pages are fetched
+   * @return the items, fetched lazily as the iteration proceeds
+   * @throws Exception the exception
+   */
+  public Iterable<Item> findAllItems(FolderId parentFolderId,
+      SearchFilter searchFilter, ItemView view) throws Exception {
+    return this.findAllItems(parentFolderId, searchFilter, view, 1);
+  }
+
+  /**
+   * Obtains all items found by searching the contents of a specific folder, fetching
+   * up to the prefetch depth pages of results in the background while the current one
+   * is consumed. Consumed pages are not retained, so folders of any size can be walked
+   * with bounded memory.
+   *
+   * @param parentFolderId the parent folder id
+   * @param searchFilter   the search filter, may be null
+   * @param view           the view controlling the page size and the first page; its offset
+   *                       is advanced as pages are fetched
+   * @param prefetchDepth  the number of pages fetched ahead, 0 to fetch each page when needed
+   * @return the items, fetched lazily as the iteration proceeds
+   * @throws Exception the exception
+   */
+  public Iterable<Item> findAllItems(final FolderId parentFolderId,
+      final SearchFilter searchFilter, final ItemView view, int prefetchDepth) throws Exception {
+    EwsUtilities.validateParam(parentFolderId, "parentFolderId");
+    EwsUtilities.validateParam(view, "view");
+    EwsUtilities.validateParamAllowNull(searchFilter, "searchFilter");
+
+    return new PrefetchingPagedIterable<Item>(view.getOffset(), prefetchDepth,
+        prefetchDepth > 0 ? this.getAsyncExecutor() : null) {
+      @Override
+      protected Page<Item> fetchPage(int offset) throws Exception {
+        view.setOffset(offset);
+        FindItemsResults<Item> results = findItems(parentFolderId, searchFilter, view);
+        return new Page<Item>(results.getItems(), results.isMoreAvailable(),
+            results.getNextPageOffset());
+      }
+    };
+  }
+
   /**
    * Obtains a grouped list of item by searching the contents of a specific
    * folder. Calling this method results in a call to EWS.
@@ -1302,6 +1559,39 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     return this.internalLoadPropertiesForItems(items, propertySet, ServiceErrorHandling.ReturnErrors);
   }
 
+  /**
+   * Loads the property of multiple item asynchronously on the executor shared
+   * by asynchronous requests of this service.
+   *
+   * @param items       the item
+   * @param propertySet the property set
+   * @return A Future providing results for each of the specified item.
+   */
+  public Future<ServiceResponseCollection<ServiceResponse>> loadPropertiesForItemsAsync(
+      final Iterable<Item> items, final PropertySet propertySet) {
+    return this.loadPropertiesForItemsAsync(null, items, propertySet);
+  }
+
+  /**
+   * Loads the property of multiple item asynchronously on the executor shared
+   * by asynchronous requests of this service.
+   * The callback is invoked on the executor thread that completed the operation,
+   * with the returned Future.
+   *
+   * @param callback    the callback, may be null
+   * @param items       the item
+   * @param propertySet the property set
+   * @return A Future providing results for each of the specified item.
+   */
+  public Future<ServiceResponseCollection<ServiceResponse>> loadPropertiesForItemsAsync(
+      AsyncCallback callback, final Iterable<Item> items, final PropertySet propertySet) {
+    return this.submitAsync(new Callable<ServiceResponseCollection<ServiceResponse>>() {
+      public ServiceResponseCollection<ServiceResponse> call() throws Exception {
+        return loadPropertiesForItems(items, propertySet);
+      }
+    }, callback);
+  }
+
   /**
    * Loads the property of multiple item in a single call to EWS.
    *
@@ -1313,15 +1603,19 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    * @throws Exception the exception
    */
   public ServiceResponseCollection<ServiceResponse> internalLoadPropertiesForItems(Iterable<Item> items,
-      PropertySet propertySet, ServiceErrorHandling errorHandling) throws Exception {
-    GetItemRequestForLoad request = new GetItemRequestForLoad(this,
-        errorHandling);
-    // return null;
+      final PropertySet propertySet, final ServiceErrorHandling errorHandling) throws Exception {
+    return this.executeInChunks(items, errorHandling, new ChunkedRequest<Item, ServiceResponse>() {
+      @Override
+      protected ServiceResponseCollection<ServiceResponse> executeChunk(List<Item> chunk) throws Exception {
+        GetItemRequestForLoad request = new GetItemRequestForLoad(ExchangeService.this,
+            errorHandling);
 
-    request.getItemIds().addRangeItem(items);
-    request.setPropertySet(propertySet);
+        request.getItemIds().addRangeItem(chunk);
+        request.setPropertySet(propertySet);
 
-    return request.execute();
+        return request.execute();
+      }
+    });
   }
 
   /**
@@ -1335,12 +1629,17 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    * @throws Exception the exception
    */
   private ServiceResponseCollection<GetItemResponse> internalBindToItems(
-      Iterable<ItemId> itemIds, PropertySet propertySet,
-      ServiceErrorHandling errorHandling) throws Exception {
-    GetItemRequest request = new GetItemRequest(this, errorHandling);
-    request.getItemIds().addRange(itemIds);
-    request.setPropertySet(propertySet);
-    return request.execute();
+      Iterable<ItemId> itemIds, final PropertySet propertySet,
+      final ServiceErrorHandling errorHandling) throws Exception {
+    return this.executeInChunks(itemIds, errorHandling, new ChunkedRequest<ItemId, GetItemResponse>() {
+      @Override
+      protected ServiceResponseCollection<GetItemResponse> executeChunk(List<ItemId> chunk) throws Exception {
+        GetItemRequest request = new GetItemRequest(ExchangeService.this, errorHandling);
+        request.getItemIds().addRange(chunk);
+        request.setPropertySet(propertySet);
+        return request.execute();
+      }
+    });
   }
 
   /**
@@ -1360,6 +1659,39 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     return this.internalBindToItems(itemIds, propertySet, ServiceErrorHandling.ReturnErrors);
   }
 
+  /**
+   * Binds to multiple item asynchronously on the executor shared by
+   * asynchronous requests of this service.
+   *
+   * @param itemIds     the item ids
+   * @param propertySet the property set
+   * @return A Future providing results for each of the specified item Ids.
+   */
+  public Future<ServiceResponseCollection<GetItemResponse>> bindToItemsAsync(
+      final Iterable<ItemId> itemIds, final PropertySet propertySet) {
+    return this.bindToItemsAsync(null, itemIds, propertySet);
+  }
+
+  /**
+   * Binds to multiple item asynchronously on the executor shared by
+   * asynchronous requests of this service.
+   * The callback is invoked on the executor thread that completed the operation,
+   * with the returned Future.
+   *
+   * @param callback    the callback, may be null
+   * @param itemIds     the item ids
+   * @param propertySet the property set
+   * @return A Future providing results for each of the specified item Ids.
+   */
+  public Future<ServiceResponseCollection<GetItemResponse>> bindToItemsAsync(AsyncCallback callback,
+      final Iterable<ItemId> itemIds, final PropertySet propertySet) {
+    return this.submitAsync(new Callable<ServiceResponseCollection<GetItemResponse>>() {
+      public ServiceResponseCollection<GetItemResponse> call() throws Exception {
+        return bindToItems(itemIds, propertySet);
+      }
+    }, callback);
+  }
+
   /**
    * Binds to multiple item in a single call to EWS.
    *
@@ -1373,6 +1705,14 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
       throws Exception {
     EwsUtilities.validateParam(itemId, "itemId");
     EwsUtilities.validateParam(propertySet, "propertySet");
+
+    RequestCoalescer<ItemId, GetItemResponse> coalescer = this.itemBindCoalescer;
+    if (coalescer != null) {
+      GetItemResponse response = coalescer.execute(propertySet, itemId);
+      response.throwIfNecessary();
+      return response.getItem();
+    }
+
     List<ItemId> itmLst = new ArrayList<ItemId>();
     itmLst.add(itemId);
     ServiceResponseCollection<GetItemResponse> responses = this
@@ -1415,18 +1755,48 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
    * @throws Exception the exception
    */
   private ServiceResponseCollection<ServiceResponse> internalDeleteItems(
-      Iterable<ItemId> itemIds, DeleteMode deleteMode,
-      SendCancellationsMode sendCancellationsMode,
-      AffectedTaskOccurrence affectedTaskOccurrences,
-      ServiceErrorHandling errorHandling) throws Exception {
-    DeleteItemRequest request = new DeleteItemRequest(this, errorHandling);
+      Iterable<ItemId> itemIds, final DeleteMode deleteMode,
+      final SendCancellationsMode sendCancellationsMode,
+      final AffectedTaskOccurrence affectedTaskOccurrences,
+      final ServiceErrorHandling errorHandling) throws Exception {
+    return this.executeInChunks(itemIds, errorHandling, new ChunkedRequest<ItemId, ServiceResponse>() {
+      @Override
+      protected ServiceResponseCollection<ServiceResponse> executeChunk(List<ItemId> chunk) throws Exception {
+        DeleteItemRequest request = new DeleteItemRequest(ExchangeService.this, errorHandling);
 
-    request.getItemIds().addRange(itemIds);
-    request.setDeleteMode(deleteMode);
-    request.setSendCancellationsMode(sendCancellationsMode);
-    request.setAffectedTaskOccurrences(affectedTaskOccurrences);
+        request.getItemIds().addRange(chunk);
+        request.setDeleteMode(deleteMode);
+        request.setSendCancellationsMode(sendCancellationsMode);
+        request.setAffectedTaskOccurrences(affectedTaskOccurrences);
 
-    return request.execute();
+        return request.execute();
+      }
+    });
+  }
+
+  /**
+   * Executes a multi-response request in chunks of {@link #getBatchChunkSize()} objects,
+   * {@link #getBatchParallelism()} chunks at a time. Requests that throw on errors are
+   * made for single objects and always sent as one request.
+   *
+   * @param items         the objects
+   * @param errorHandling the error handling
+   * @param request       the request for one chunk
+   * @param <TItem>       the type of the objects
+   * @param <TResponse>   the type of the responses
+   * @return the responses for all objects, in order
+   * @throws Exception the exception
+   */
+  private <TItem, TResponse extends ServiceResponse> ServiceResponseCollection<TResponse> executeInChunks(
+      Iterable<TItem> items, ServiceErrorHandling errorHandling, ChunkedRequest<TItem, TResponse> request)
+      throws Exception {
+    int chunkSize;
+    int parallelism;
+    synchronized (this) {
+      chunkSize = errorHandling == ServiceErrorHandling.ReturnErrors ? batchChunkSize : 0;
+      parallelism = batchParallelism;
+    }
+    return request.execute(items, chunkSize, parallelism, parallelism > 1 ? getAsyncExecutor() : null);
   }
 
   /**
@@ -2007,6 +2377,40 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
         .getResponseAtIndex(0).getResults();
   }
 
+  /**
+   * Retrieves the latests events associated with a pull subscription
+   * asynchronously on the executor shared by asynchronous requests of this service.
+   *
+   * @param subscriptionId the subscription id
+   * @param waterMark      the water mark
+   * @return A Future providing the events associated with the subscription.
+   */
+  public Future<GetEventsResults> getEventsAsync(final String subscriptionId,
+      final String waterMark) {
+    return this.getEventsAsync(null, subscriptionId, waterMark);
+  }
+
+  /**
+   * Retrieves the latests events associated with a pull subscription
+   * asynchronously on the executor shared by asynchronous requests of this service.
+   * The callback is invoked on the executor thread that completed the operation,
+   * with the returned Future.
+   *
+   * @param callback       the callback, may be null
+   * @param subscriptionId the subscription id
+   * @param waterMark      the water mark
+   * @return A Future providing the events associated with the subscription.
+   */
+  public Future<GetEventsResults> getEventsAsync(AsyncCallback callback,
+      final String subscriptionId,
+      final String waterMark) {
+    return this.submitAsync(new Callable<GetEventsResults>() {
+      public GetEventsResults call() throws Exception {
+        return getEvents(subscriptionId, waterMark);
+      }
+    }, callback);
+  }
+
   /**
    * Begins an asynchronous request to retrieve the latest events associated
    * with a pull subscription. Calling this method results in a call to EWS.
@@ -2378,6 +2782,58 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
         .execute().getResponseAtIndex(0).getChanges();
   }
 
+  /**
+   * Synchronizes the item of a specific folder asynchronously on the executor
+   * shared by asynchronous requests of this service.
+   *
+   * @param syncFolderId       The Id of the folder containing the item to synchronize with.
+   * @param propertySet        The set of property to retrieve for synchronized item.
+   * @param ignoredItemIds     The optional list of item Ids that should be ignored.
+   * @param maxChangesReturned The maximum number of changes that should be returned.
+   * @param syncScope          The sync scope identifying item to include in the
+   *                           ChangeCollection.
+   * @param syncState          The optional sync state representing the point in time when to
+   *                           start the synchronization.
+   * @return A Future providing the changes that occurred in the specified folder.
+   */
+  public Future<ChangeCollection<ItemChange>> syncFolderItemsAsync(final FolderId syncFolderId,
+      final PropertySet propertySet, final Iterable<ItemId> ignoredItemIds,
+      final int maxChangesReturned, final SyncFolderItemsScope syncScope,
+      final String syncState) {
+    return this.syncFolderItemsAsync(null, syncFolderId, propertySet, ignoredItemIds,
+        maxChangesReturned, syncScope, syncState);
+  }
+
+  /**
+   * Synchronizes the item of a specific folder asynchronously on the executor
+   * shared by asynchronous requests of this service.
+   * The callback is invoked on the executor thread that completed the operation,
+   * with the returned Future.
+   *
+   * @param callback           the callback, may be null
+   * @param syncFolderId       The Id of the folder containing the item to synchronize with.
+   * @param propertySet        The set of property to retrieve for synchronized item.
+   * @param ignoredItemIds     The optional list of item Ids that should be ignored.
+   * @param maxChangesReturned The maximum number of changes that should be returned.
+   * @param syncScope          The sync scope identifying item to include in the
+   *                           ChangeCollection.
+   * @param syncState          The optional sync state representing the point in time when to
+   *                           start the synchronization.
+   * @return A Future providing the changes that occurred in the specified folder.
+   */
+  public Future<ChangeCollection<ItemChange>> syncFolderItemsAsync(AsyncCallback callback,
+      final FolderId syncFolderId,
+      final PropertySet propertySet, final Iterable<ItemId> ignoredItemIds,
+      final int maxChangesReturned, final SyncFolderItemsScope syncScope,
+      final String syncState) {
+    return this.submitAsync(new Callable<ChangeCollection<ItemChange>>() {
+      public ChangeCollection<ItemChange> call() throws Exception {
+        return syncFolderItems(syncFolderId, propertySet, ignoredItemIds, maxChangesReturned,
+            syncScope, syncState);
+      }
+    }, callback);
+  }
+
   /**
    * Begins an asynchronous request to synchronize the item of a specific
    * folder. Calling this method results in a call to EWS.
@@ -2649,6 +3105,47 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     return request.execute();
   }
 
+  /**
+   * Gets detailed information about the availability of a set of users,
+   * rooms, and resources within a specified time window asynchronously on
+   * the executor shared by asynchronous requests of this service.
+   *
+   * @param attendees     the attendees
+   * @param timeWindow    the time window
+   * @param requestedData the requested data
+   * @param options       the options
+   * @return A Future providing the availability information.
+   */
+  public Future<GetUserAvailabilityResults> getUserAvailabilityAsync(
+      final Iterable<AttendeeInfo> attendees, final TimeWindow timeWindow,
+      final AvailabilityData requestedData, final AvailabilityOptions options) {
+    return this.getUserAvailabilityAsync(null, attendees, timeWindow, requestedData, options);
+  }
+
+  /**
+   * Gets detailed information about the availability of a set of users,
+   * rooms, and resources within a specified time window asynchronously on
+   * the executor shared by asynchronous requests of this service.
+   * The callback is invoked on the executor thread that completed the operation,
+   * with the returned Future.
+   *
+   * @param callback      the callback, may be null
+   * @param attendees     the attendees
+   * @param timeWindow    the time window
+   * @param requestedData the requested data
+   * @param options       the options
+   * @return A Future providing the availability information.
+   */
+  public Future<GetUserAvailabilityResults> getUserAvailabilityAsync(AsyncCallback callback,
+      final Iterable<AttendeeInfo> attendees, final TimeWindow timeWindow,
+      final AvailabilityData requestedData, final AvailabilityOptions options) {
+    return this.submitAsync(new Callable<GetUserAvailabilityResults>() {
+      public GetUserAvailabilityResults call() throws Exception {
+        return getUserAvailability(attendees, timeWindow, requestedData, options);
+      }
+    }, callback);
+  }
+
   /**
    * Gets detailed information about the availability of a set of users,
    * rooms, and resources within a specified time window.
@@ -3533,6 +4030,112 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
   public void autodiscoverUrl(String emailAddress,
       IAutodiscoverRedirectionUrl validateRedirectionUrlCallback)
       throws Exception {
+    IAutodiscoverCache cache = this.autodiscoverCache;
+    if (cache == null) {
+      this.setUrl(this.adjustServiceUriFromCredentials(
+          this.discoverEwsUrl(emailAddress, validateRedirectionUrlCallback)));
+      return;
+    }
+
+    String cacheKey = AutodiscoverCacheEntry.ewsUrlKey(emailAddress);
+    AutodiscoverCacheEntry cacheEntry = cache.get(cacheKey);
+    if (cacheEntry != null && cacheEntry.isNegative()) {
+      throw new AutodiscoverLocalException(cacheEntry.getErrorMessage());
+    }
+
+    // A URL found by following a redirection is only reused if this callback
+    // allows that redirection as well.
+    if (cacheEntry != null && cacheEntry.getRedirectionUrl() != null
+        && !validateRedirectionUrlCallback.autodiscoverRedirectionUrlValidationCallback(
+            cacheEntry.getRedirectionUrl())) {
+      cacheEntry = null;
+    }
+
+    URI exchangeServiceUrl;
+    if (cacheEntry != null) {
+      exchangeServiceUrl = cacheEntry.getUrl();
+    } else {
+      RedirectionUrlValidationRecorder recorder =
+          new RedirectionUrlValidationRecorder(validateRedirectionUrlCallback);
+      try {
+        exchangeServiceUrl = this.discoverEwsUrl(emailAddress, recorder);
+      } catch (AutodiscoverLocalException ex) {
+        if (!recorder.rejected) {
+          cache.put(cacheKey, AutodiscoverCacheEntry.notFound(ex.getMessage()));
+        }
+        throw ex;
+      } catch (ServiceRemoteException ex) {
+        if (!(ex instanceof AccountIsLockedException) && !recorder.rejected) {
+          cache.put(cacheKey, AutodiscoverCacheEntry.notFound(ex.getMessage()));
+        }
+        throw ex;
+      }
+      cache.put(cacheKey, AutodiscoverCacheEntry.found(exchangeServiceUrl, false,
+          recorder.allowedUrl));
+    }
+    this.setUrl(this.adjustServiceUriFromCredentials(exchangeServiceUrl));
+  }
+
+  /**
+   * Passes redirection URLs on to a validation callback and records its
+   * answers, so that a cached EWS URL can be tied to the redirection it
+   * was found through.
+   */
+  private static class RedirectionUrlValidationRecorder implements IAutodiscoverRedirectionUrl {
+
+    /**
+     * The callback the redirection URLs are passed to.
+     */
+    private final IAutodiscoverRedirectionUrl callback;
+
+    /**
+     * The last redirection URL the callback allowed, null if none.
+     */
+    private String allowedUrl;
+
+    /**
+     * Whether the callback rejected a redirection URL.
+     */
+    private boolean rejected;
+
+    /**
+     * Initializes a new instance of the RedirectionUrlValidationRecorder class.
+     *
+     * @param callback the callback the redirection URLs are passed to
+     */
+    RedirectionUrlValidationRecorder(IAutodiscoverRedirectionUrl callback) {
+      this.callback = callback;
+    }
+
+    @Override
+    public boolean autodiscoverRedirectionUrlValidationCallback(String redirectionUrl)
+        throws AutodiscoverLocalException {
+      boolean allowed = false;
+      try {
+        allowed = this.callback.autodiscoverRedirectionUrlValidationCallback(redirectionUrl);
+      } finally {
+        if (allowed) {
+          this.allowedUrl = redirectionUrl;
+        } else {
+          this.rejected = true;
+        }
+      }
+      return allowed;
+    }
+  }
+
+  /**
+   * Finds the Exchange Web Services URL for the specified e-mail address by
+   * calling the Autodiscover service.
+   *
+   * @param emailAddress                   the email address to use.
+   * @param validateRedirectionUrlCallback The callback used to validate redirection URL
+   * @return the EWS URL
+   * @throws Exception the exception
+   */
+  private URI discoverEwsUrl(String emailAddress,
+      IAutodiscoverRedirectionUrl validateRedirectionUrlCallback)
+      throws Exception {
     URI exchangeServiceUrl = null;
 
     if (this.getRequestedServerVersion().ordinal() > ExchangeVersion.Exchange2007_SP1
@@ -3541,9 +4144,7 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
         exchangeServiceUrl = this.getAutodiscoverUrl(emailAddress, this
                 .getRequestedServerVersion(),
             validateRedirectionUrlCallback);
-        this.setUrl(this
-            .adjustServiceUriFromCredentials(exchangeServiceUrl));
-        return;
+        return exchangeServiceUrl;
       } catch (AutodiscoverLocalException ex) {
 
         this.traceMessage(TraceFlags.AutodiscoverResponse, String
@@ -3569,11 +4170,9 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
 
     // Try legacy Autodiscover provider
 
-    exchangeServiceUrl = this.getAutodiscoverUrl(emailAddress,
+    return this.getAutodiscoverUrl(emailAddress,
         ExchangeVersion.Exchange2007_SP1,
         validateRedirectionUrlCallback);
-
-    this.setUrl(this.adjustServiceUriFromCredentials(exchangeServiceUrl));
   }
 
   /**
@@ -3612,6 +4211,8 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     autodiscoverService
         .setRedirectionUrlValidationCallback(validateRedirectionUrlCallback);
     autodiscoverService.setEnableScpLookup(this.getEnableScpLookup());
+    autodiscoverService.setAutodiscoverCache(this.autodiscoverCache);
+    autodiscoverService.setParallelEndpointDiscovery(this.parallelEndpointDiscovery);
 
     GetUserSettingsResponse response = autodiscoverService.getUserSettings(
         emailAddress, UserSettingName.InternalEwsUrl,
@@ -3912,6 +4513,244 @@ public class ExchangeService extends ExchangeServiceBase implements IAutodiscove
     this.enableScpLookup = value;
   }
 
+  /**
+   * Gets the cache of Autodiscover results used by the AutodiscoverUrl method.
+   *
+   * @return the cache, null if results aren't cached
+   */
+  public IAutodiscoverCache getAutodiscoverCache() {
+    return this.autodiscoverCache;
+  }
+
+  /**
+   * Sets the cache of Autodiscover results used by the AutodiscoverUrl
+   * method. The cache keeps the EWS URL found for each e-mail address, or the
+   * reason none was found, as well as the Autodiscover endpoints found for
+   * domains and users. A cache can be shared by several services.
+   *
+   * @param value the cache, null to not cache results
+   */
+  public void setAutodiscoverCache(IAutodiscoverCache value) {
+    this.autodiscoverCache = value;
+  }
+
+  /**
+   * Gets a value indicating whether the AutodiscoverUrl method probes the
+   * candidate Autodiscover endpoints at the same time.
+   *
+   * @return true if endpoints are probed in parallel
+   */
+  public boolean getParallelEndpointDiscovery() {
+    return this.parallelEndpointDiscovery;
+  }
+
+  /**
+   * Sets whether the AutodiscoverUrl method probes the candidate Autodiscover
+   * endpoints at the same time instead of one after another. The endpoints
+   * keep their usual order of priority. Default is false.
+   *
+   * @param value true to probe endpoints in parallel
+   */
+  public void setParallelEndpointDiscovery(boolean value) {
+    this.parallelEndpointDiscovery = value;
+  }
+
+  /**
+   * Gets the time in milliseconds that concurrent binds are collected into one request.
+   *
+   * @return the window in milliseconds, 0 if binds aren't combined
+   */
+  public synchronized int getBindCoalescingWindow() {
+    return bindCoalescingWindow;
+  }
+
+  /**
+   * Sets the time in milliseconds that concurrent binds are collected into one request.
+   * <p>
+   * If positive, {@link #bindToItem(ItemId, PropertySet)} and
+   * {@link #bindToFolder(FolderId, PropertySet)} calls made by different threads with the
+   * same property set instance within the window are sent as one GetItem or GetFolder
+   * request, and each caller gets the object for its own id. Every bind waits up to the
+   * window for others to join. Default is 0, which sends each bind on its own.
+   * </p>
+   *
+   * @param bindCoalescingWindow the window in milliseconds, 0 to disable
+   */
+  public synchronized void setBindCoalescingWindow(int bindCoalescingWindow) {
+    if (bindCoalescingWindow < 0) {
+      throw new IllegalArgumentException("bindCoalescingWindow must not be negative");
+    }
+    this.bindCoalescingWindow = bindCoalescingWindow;
+    initializeBindCoalescers();
+  }
+
+  /**
+   * Gets the maximum number of ids in a combined bind request.
+   *
+   * @return the maximum batch size
+   */
+  public synchronized int getBindCoalescingMaxBatchSize() {
+    return bindCoalescingMaxBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of ids in a combined bind request. A full batch is sent
+   * without waiting for the rest of the window. Default is 100.
+   *
+   * @param bindCoalescingMaxBatchSize the maximum batch size
+   */
+  public synchronized void setBindCoalescingMaxBatchSize(int bindCoalescingMaxBatchSize) {
+    if (bindCoalescingMaxBatchSize < 1) {
+      throw new IllegalArgumentException("bindCoalescingMaxBatchSize must be positive");
+    }
+    this.bindCoalescingMaxBatchSize = bindCoalescingMaxBatchSize;
+    initializeBindCoalescers();
+  }
+
+  /**
+   * Gets the maximum number of objects per request of a bulk operation.
+   *
+   * @return the chunk size, 0 if bulk operations are sent as one request
+   */
+  public synchronized int getBatchChunkSize() {
+    return batchChunkSize;
+  }
+
+  /**
+   * Sets the maximum number of objects per request of bulk operations such as
+   * {@link #bindToItems(Iterable, PropertySet)}, deleteItems, updateItems, moveItems,
+   * copyItems, createItems and loadPropertiesForItems. Larger lists are split into
+   * chunks and the responses of the chunks are merged in the original order.
+   * If a chunk fails after others completed, the operation throws a
+   * {@link ChunkedRequestException} carrying the responses of the completed chunks.
+   * Default is 0, which sends each operation as one request.
+   *
+   * @param batchChunkSize the chunk size, 0 for no limit
+   */
+  public synchronized void setBatchChunkSize(int batchChunkSize) {
+    if (batchChunkSize < 0) {
+      throw new IllegalArgumentException("batchChunkSize must not be negative");
+    }
+    this.batchChunkSize = batchChunkSize;
+  }
+
+  /**
+   * Gets the number of chunks of a bulk operation that are sent at the same time.
+   *
+   * @return the parallelism
+   */
+  public synchronized int getBatchParallelism() {
+    return batchParallelism;
+  }
+
+  /**
+   * Sets the number of chunks of a bulk operation that are sent at the same time. The
+   * calling thread sends chunks itself and is helped by the threads of the
+   * {@link #getAsyncExecutor() async executor}. Default is 1.
+   *
+   * @param batchParallelism the parallelism
+   */
+  public synchronized void setBatchParallelism(int batchParallelism) {
+    if (batchParallelism < 1) {
+      throw new IllegalArgumentException("batchParallelism must be positive");
+    }
+    this.batchParallelism = batchParallelism;
+  }
+
+  /**
+   * Gets the controller that limits the requests in flight when the server throttles.
+   *
+   * @return the throttling controller, null if requests aren't limited
+   */
+  public ThrottlingController getThrottlingController() {
+    return throttlingController;
+  }
+
+  /**
+   * Sets the controller that limits the requests in flight when the server throttles.
+   * <p>
+   * Requests to the same server for the same mailbox share a limit, which is lowered
+   * when the server answers ErrorServerBusy and raised again as requests succeed.
+   * Requests that only read data are sent again after the back-off advised by the
+   * server. Default is null, which sends every request immediately and reports
+   * throttling to the caller.
+   * </p>
+   *
+   * @param throttlingController the throttling controller, null to disable
+   */
+  public void setThrottlingController(ThrottlingController throttlingController) {
+    this.throttlingController = throttlingController;
+  }
+
+  /**
+   * Gets the instrumentation that receives the metrics of every request.
+   *
+   * @return the request instrumentation, null if requests aren't instrumented
+   */
+  public IRequestInstrumentation getRequestInstrumentation() {
+    return requestInstrumentation;
+  }
+
+  /**
+   * Sets the instrumentation that receives the metrics of every request: the time spent
+   * writing the request, waiting for a connection, waiting for the response and parsing
+   * it, the size of the response, the error reported by the server and the number of
+   * retries. {@link InMemoryRequestInstrumentation} keeps histograms of them per
+   * operation. Default is null, which doesn't measure requests.
+   *
+   * @param requestInstrumentation the request instrumentation, null to disable
+   */
+  public void setRequestInstrumentation(IRequestInstrumentation requestInstrumentation) {
+    this.requestInstrumentation = requestInstrumentation;
+  }
+
+  /**
+   * Gets the target a request is throttled for: the server, and the impersonated user or
+   * anchor mailbox if one is set. A service without a server URL gets an empty server part,
+   * so that its requests fail validation rather than the lookup of the target.
+   *
+   * @return the throttling key
+   */
+  public String getThrottlingKey() {
+    String server = this.getUrl() == null ? null : this.getUrl().getAuthority();
+    String mailbox = null;
+    if (this.getImpersonatedUserId() != null) {
+      mailbox = this.getImpersonatedUserId().getId();
+    } else if (this.getHttpHeaders() != null) {
+      mailbox = this.getHttpHeaders().get("X-AnchorMailbox");
+    }
+    server = server == null ? "" : server.toLowerCase(Locale.ROOT);
+    return mailbox == null ? server : server + "/" + mailbox.toLowerCase(Locale.ROOT);
+  }
+
+  private void initializeBindCoalescers() {
+    if (bindCoalescingWindow == 0) {
+      itemBindCoalescer = null;
+      folderBindCoalescer = null;
+      return;
+    }
+
+    itemBindCoalescer = new RequestCoalescer<ItemId, GetItemResponse>(bindCoalescingWindow,
+        bindCoalescingMaxBatchSize) {
+      @Override
+      protected ServiceResponseCollection<GetItemResponse> executeBatch(Object key, List<ItemId> ids)
+          throws Exception {
+        return internalBindToItems(ids, (PropertySet) key, ServiceErrorHandling.ReturnErrors);
+      }
+    };
+    folderBindCoalescer = new RequestCoalescer<FolderId, GetFolderResponse>(bindCoalescingWindow,
+        bindCoalescingMaxBatchSize) {
+      @Override
+      protected ServiceResponseCollection<GetFolderResponse> executeBatch(Object key, List<FolderId> ids)
+          throws Exception {
+        GetFolderRequest request = new GetFolderRequest(ExchangeService.this, ServiceErrorHandling.ReturnErrors);
+        request.getFolderIds().addRangeFolderId(ids);
+        request.setPropertySet((PropertySet) key);
+        return request.execute();
+      }
+    };
+  }
+
   /**
    * Returns true whether Exchange2007 compatibility mode is enabled, false otherwise.
    */
@@ -31,15 +31,16 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
@@ -53,7 +54,10 @@ import microsoft.exchange.webservices.data.core.exception.service.remote.Account
 import microsoft.exchange.webservices.data.core.request.HttpClientWebRequest;
 import microsoft.exchange.webservices.data.core.request.HttpWebRequest;
 import microsoft.exchange.webservices.data.credential.ExchangeCredentials;
+import microsoft.exchange.webservices.data.misc.AsyncCallback;
+import microsoft.exchange.webservices.data.misc.AsyncExecutor;
 import microsoft.exchange.webservices.data.misc.EwsTraceListener;
+import microsoft.exchange.webservices.data.misc.HangingRequestExecutor;
 import microsoft.exchange.webservices.data.misc.ITraceListener;
 
 import org.apache.commons.io.IOUtils;
@@ -69,9 +73,13 @@ import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 
 /**
  * Represents an abstract binding to an Exchange Service.
@@ -115,6 +123,16 @@ public abstract class ExchangeServiceBase implements Closeable {
    */
   private ITraceListener traceListener = new EwsTraceListener();
 
+  /**
+   * The maximum number of response bytes kept for tracing.
+   */
+  private int maximumTraceResponseSize = 10 * 1024 * 1024;
+
+  /**
+   * The number of request bytes kept in memory before spooling to a temporary file.
+   */
+  private int maximumRequestBufferSize = 1024 * 1024;
+
   /**
    * The pre authenticate.
    */
@@ -142,18 +160,49 @@ public abstract class ExchangeServiceBase implements Closeable {
 
   private Map<String, String> httpHeaders = new HashMap<String, String>();
 
-  private Map<String, String> httpResponseHeaders = new HashMap<String, String>();
+  /**
+   * The headers of the last response received by this service. The map is
+   * replaced rather than updated, so concurrent requests never mix their headers.
+   */
+  private volatile Map<String, String> httpResponseHeaders = new HashMap<String, String>();
 
   private WebProxy webProxy;
 
   protected CloseableHttpClient httpClient;
 
-  protected HttpClientContext httpContext;
+  /**
+   * The context shared by all requests: the cookie store and the user token of
+   * authenticated connections. Each request gets its own child context, see
+   * {@link #createHttpContext()}.
+   */
+  protected volatile HttpClientContext httpContext;
+
+  /**
+   * The request configuration and credentials of the last request, reused while
+   * the settings don't change.
+   */
+  private volatile HttpClientWebRequest.ConnectionSettings httpConnectionSettings;
 
   protected CloseableHttpClient	httpPoolingClient;
+
+  private PoolingHttpClientConnectionManager httpPoolingConnectionManager;
   
   private int maximumPoolingConnections = 10;
 
+  private int maximumPoolingConnectionsPerRoute;
+
+  private int pooledConnectionIdleTimeout = 60000;
+
+  private int pooledConnectionValidateAfterInactivity = 2000;
+
+  private boolean xmlCursorReaderEnabled;
+
+  private ExecutorService asyncExecutor;
+
+  private boolean ownsAsyncExecutor;
+
+  private volatile HangingRequestExecutor hangingRequestExecutor;
+
 
 //  protected HttpClientWebRequest request = null;
 
@@ -188,11 +237,18 @@ public abstract class ExchangeServiceBase implements Closeable {
     this.traceEnabled = service.isTraceEnabled();
     this.traceListener = service.getTraceListener();
     this.traceFlags = service.getTraceFlags();
+    this.maximumTraceResponseSize = service.getMaximumTraceResponseSize();
+    this.maximumRequestBufferSize = service.getMaximumRequestBufferSize();
     this.timeout = service.getTimeout();
     this.preAuthenticate = service.isPreAuthenticate();
     this.userAgent = service.getUserAgent();
     this.acceptGzipEncoding = service.getAcceptGzipEncoding();
     this.httpHeaders = service.getHttpHeaders();
+    this.maximumPoolingConnections = service.getMaximumPoolingConnections();
+    this.maximumPoolingConnectionsPerRoute = service.maximumPoolingConnectionsPerRoute;
+    this.pooledConnectionIdleTimeout = service.getPooledConnectionIdleTimeout();
+    this.pooledConnectionValidateAfterInactivity = service.getPooledConnectionValidateAfterInactivity();
+    this.xmlCursorReaderEnabled = service.isXmlCursorReaderEnabled();
   }
 
   private void initializeHttpClient() {
@@ -203,35 +259,168 @@ public abstract class ExchangeServiceBase implements Closeable {
     httpClient = HttpClients.custom()
       .setConnectionManager(httpConnectionManager)
       .setTargetAuthenticationStrategy(authStrategy)
+      .setRequestExecutor(new HttpClientWebRequest.TimingRequestExecutor())
       .build();
   }
 
+  /**
+   * Gets the client backed by the pooling connection manager, creating it on first use.
+   *
+   * @return the pooling http client
+   */
+  protected synchronized CloseableHttpClient getHttpPoolingClient() {
+    if (httpPoolingClient == null) {
+      initializeHttpPoolingClient();
+    }
+    return httpPoolingClient;
+  }
+
   private void initializeHttpPoolingClient() {
     Registry<ConnectionSocketFactory> registry = createConnectionSocketFactoryRegistry();
     PoolingHttpClientConnectionManager httpConnectionManager = new PoolingHttpClientConnectionManager(registry);
     httpConnectionManager.setMaxTotal(maximumPoolingConnections);
-    httpConnectionManager.setDefaultMaxPerRoute(maximumPoolingConnections);
+    httpConnectionManager.setDefaultMaxPerRoute(getMaximumPoolingConnectionsPerRoute());
+    httpConnectionManager.setValidateAfterInactivity(pooledConnectionValidateAfterInactivity);
     AuthenticationStrategy authStrategy = new CookieProcessingTargetAuthenticationStrategy();
 
-    httpPoolingClient = HttpClients.custom()
+    HttpClientBuilder builder = HttpClients.custom()
         .setConnectionManager(httpConnectionManager)
         .setTargetAuthenticationStrategy(authStrategy)
-        .build();
+        .setRequestExecutor(new HttpClientWebRequest.TimingRequestExecutor());
+    if (pooledConnectionIdleTimeout > 0) {
+      builder.evictExpiredConnections()
+          .evictIdleConnections((long) pooledConnectionIdleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    httpPoolingConnectionManager = httpConnectionManager;
+    httpPoolingClient = builder.build();
   }
 
   /**
-   * Sets the maximum number of connections for the pooling connection manager which is used for
-   * subscriptions.
+   * Sets the maximum number of connections for the pooling connection manager. It is used for
+   * subscriptions, and for all other requests when more than one connection is allowed.
    * <p>
-   * Default is 10.
+   * Default is 10. Setting it to 1 sends regular requests over a single, non-pooled connection.
    * </p>
    * 
    * @param maximumPoolingConnections Maximum number of pooling connections
    */
-  public void setMaximumPoolingConnections(int maximumPoolingConnections) {
+  public synchronized void setMaximumPoolingConnections(int maximumPoolingConnections) {
     if (maximumPoolingConnections < 1)
       throw new IllegalArgumentException("maximumPoolingConnections must be 1 or greater");
     this.maximumPoolingConnections = maximumPoolingConnections;
+    if (httpPoolingConnectionManager != null) {
+      httpPoolingConnectionManager.setMaxTotal(maximumPoolingConnections);
+      httpPoolingConnectionManager.setDefaultMaxPerRoute(getMaximumPoolingConnectionsPerRoute());
+    }
+  }
+
+  /**
+   * Gets the maximum number of pooled connections to a single host.
+   *
+   * @return the maximum number of pooled connections per route
+   */
+  public synchronized int getMaximumPoolingConnectionsPerRoute() {
+    return maximumPoolingConnectionsPerRoute > 0 ? maximumPoolingConnectionsPerRoute : maximumPoolingConnections;
+  }
+
+  /**
+   * Sets the maximum number of pooled connections to a single host.
+   * <p>
+   * By default it is the same as the maximum number of pooling connections.
+   * </p>
+   *
+   * @param maximumPoolingConnectionsPerRoute Maximum number of pooled connections per route
+   */
+  public synchronized void setMaximumPoolingConnectionsPerRoute(int maximumPoolingConnectionsPerRoute) {
+    if (maximumPoolingConnectionsPerRoute < 1)
+      throw new IllegalArgumentException("maximumPoolingConnectionsPerRoute must be 1 or greater");
+    this.maximumPoolingConnectionsPerRoute = maximumPoolingConnectionsPerRoute;
+    if (httpPoolingConnectionManager != null) {
+      httpPoolingConnectionManager.setDefaultMaxPerRoute(maximumPoolingConnectionsPerRoute);
+    }
+  }
+
+  /**
+   * Gets the time in milliseconds after which idle pooled connections are closed.
+   *
+   * @return the idle timeout, 0 if idle connections are kept
+   */
+  public synchronized int getPooledConnectionIdleTimeout() {
+    return pooledConnectionIdleTimeout;
+  }
+
+  /**
+   * Sets the time in milliseconds after which idle pooled connections are closed by a background
+   * thread. Expired connections are closed as well. Only takes effect if set before the first
+   * pooled request.
+   * <p>
+   * Default is 60 seconds, 0 keeps idle connections open.
+   * </p>
+   *
+   * @param pooledConnectionIdleTimeout the idle timeout
+   */
+  public synchronized void setPooledConnectionIdleTimeout(int pooledConnectionIdleTimeout) {
+    if (pooledConnectionIdleTimeout < 0)
+      throw new IllegalArgumentException("pooledConnectionIdleTimeout must not be negative");
+    this.pooledConnectionIdleTimeout = pooledConnectionIdleTimeout;
+  }
+
+  /**
+   * Gets the time in milliseconds a pooled connection may be idle before it is checked when leased.
+   *
+   * @return the inactivity period
+   */
+  public synchronized int getPooledConnectionValidateAfterInactivity() {
+    return pooledConnectionValidateAfterInactivity;
+  }
+
+  /**
+   * Sets the time in milliseconds a pooled connection may be idle before it is checked for a
+   * stale socket when leased again.
+   * <p>
+   * Default is 2 seconds, a value of 0 or less disables the check.
+   * </p>
+   *
+   * @param pooledConnectionValidateAfterInactivity the inactivity period
+   */
+  public synchronized void setPooledConnectionValidateAfterInactivity(int pooledConnectionValidateAfterInactivity) {
+    this.pooledConnectionValidateAfterInactivity = pooledConnectionValidateAfterInactivity;
+    if (httpPoolingConnectionManager != null) {
+      httpPoolingConnectionManager.setValidateAfterInactivity(pooledConnectionValidateAfterInactivity);
+    }
+  }
+
+  /**
+   * Gets whether responses are read with the StAX cursor API.
+   *
+   * @return true if the cursor reader is used, false if the event reader is used
+   */
+  public boolean isXmlCursorReaderEnabled() {
+    return xmlCursorReaderEnabled;
+  }
+
+  /**
+   * Sets whether responses are read with the StAX cursor API (XMLStreamReader) instead of
+   * the event API (XMLEventReader).
+   * <p>
+   * The cursor reader doesn't allocate an event object per XML node and is considerably
+   * faster on large responses. Default is false.
+   * </p>
+   *
+   * @param xmlCursorReaderEnabled true to use the cursor reader
+   */
+  public void setXmlCursorReaderEnabled(boolean xmlCursorReaderEnabled) {
+    this.xmlCursorReaderEnabled = xmlCursorReaderEnabled;
+  }
+
+  /**
+   * Gets the statistics of the connection pool.
+   *
+   * @return the pool statistics, null if no pooled request was made yet
+   */
+  public synchronized PoolStats getConnectionPoolStats() {
+    return httpPoolingConnectionManager != null ? httpPoolingConnectionManager.getTotalStats() : null;
   }
 
   /**
@@ -259,14 +448,36 @@ public abstract class ExchangeServiceBase implements Closeable {
    */
   private void initializeHttpContext() {
     CookieStore cookieStore = new BasicCookieStore();
-    httpContext = HttpClientContext.create();
-    httpContext.setCookieStore(cookieStore);
+    HttpClientContext context = HttpClientContext.create();
+    context.setCookieStore(cookieStore);
+    httpContext = context;
+  }
+
+  /**
+   * Creates the context for a single request. Attributes set while executing the
+   * request (authentication state, route, connection) stay with the request, so
+   * concurrent requests of this service don't interfere. The cookie store is
+   * shared, and so is the user token of connections that were authenticated with
+   * a connection based scheme like NTLM, so such connections can be reused by
+   * later requests.
+   *
+   * @return the request context
+   */
+  protected HttpClientContext createHttpContext() {
+    return HttpClientContext.adapt(new RequestHttpContext(httpContext));
   }
 
   @Override
   public void close() {
     IOUtils.closeQuietly(httpClient);
     IOUtils.closeQuietly(httpPoolingClient);
+    synchronized (this) {
+      if (ownsAsyncExecutor) {
+        asyncExecutor.shutdown();
+        asyncExecutor = null;
+        ownsAsyncExecutor = false;
+      }
+    }
   }
 
   // Event handlers
@@ -312,7 +523,7 @@ public abstract class ExchangeServiceBase implements Closeable {
       throw new ServiceLocalException(strErr);
     }
 
-    HttpClientWebRequest request = new HttpClientWebRequest(httpClient, httpContext);
+    HttpClientWebRequest request = new HttpClientWebRequest(httpClient, createHttpContext());
     prepareHttpWebRequestForUrl(url, acceptGzipEncoding, allowAutoRedirect, request);
 
     return request;
@@ -342,11 +553,7 @@ public abstract class ExchangeServiceBase implements Closeable {
       throw new ServiceLocalException(strErr);
     }
 
-    if (httpPoolingClient == null) {
-      initializeHttpPoolingClient();
-    }
-
-    HttpClientWebRequest request = new HttpClientWebRequest(httpPoolingClient, httpContext);
+    HttpClientWebRequest request = new HttpClientWebRequest(getHttpPoolingClient(), createHttpContext());
     prepareHttpWebRequestForUrl(url, acceptGzipEncoding, allowAutoRedirect, request);
 
     return request;
@@ -363,6 +570,7 @@ public abstract class ExchangeServiceBase implements Closeable {
 
     request.setPreAuthenticate(preAuthenticate);
     request.setTimeout(timeout);
+    request.setMaximumRequestBufferSize(maximumRequestBufferSize);
     request.setContentType("text/xml; charset=utf-8");
     request.setAccept("text/xml");
     request.setUserAgent(userAgent);
@@ -372,9 +580,9 @@ public abstract class ExchangeServiceBase implements Closeable {
     request.setProxy(getWebProxy());
     prepareCredentials(request);
 
+    request.setConnectionSettings(httpConnectionSettings);
     request.prepareConnection();
-
-    httpResponseHeaders.clear();
+    httpConnectionSettings = request.getConnectionSettings();
   }
 
   protected void prepareCredentials(HttpWebRequest request) throws ServiceLocalException, URISyntaxException {
@@ -533,10 +741,7 @@ public abstract class ExchangeServiceBase implements Closeable {
    * @return String representation of DateTime in yyyy-MM-ddTHH:mm:ssZ format.
    */
   public String convertDateTimeToUniversalDateTimeString(Date dt) {
-    String utcPattern = "yyyy-MM-dd'T'HH:mm:ss'Z'";
-    DateFormat utcFormatter = new SimpleDateFormat(utcPattern);
-    utcFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-    return utcFormatter.format(dt);
+    return EwsUtilities.dateTimeToXSDateTime(dt);
   }
 
   /**
@@ -614,6 +819,57 @@ public abstract class ExchangeServiceBase implements Closeable {
     this.traceEnabled = (traceListener != null);
   }
 
+  /**
+   * Gets the maximum number of bytes of a response that are kept for tracing.
+   *
+   * @return the maximum trace response size in bytes
+   */
+  public int getMaximumTraceResponseSize() {
+    return maximumTraceResponseSize;
+  }
+
+  /**
+   * Sets the maximum number of bytes of a response that are kept for tracing.
+   * Responses are parsed directly from the network stream while being traced,
+   * so larger responses are still processed but their trace is truncated.
+   * <p>
+   * Default is 10 MB.
+   * </p>
+   *
+   * @param maximumTraceResponseSize the maximum trace response size in bytes
+   */
+  public void setMaximumTraceResponseSize(int maximumTraceResponseSize) {
+    if (maximumTraceResponseSize < 0)
+      throw new IllegalArgumentException("maximumTraceResponseSize must be 0 or greater");
+    this.maximumTraceResponseSize = maximumTraceResponseSize;
+  }
+
+  /**
+   * Gets the number of request bytes kept in memory before a request is
+   * spooled to a temporary file.
+   *
+   * @return the maximum request buffer size in bytes
+   */
+  public int getMaximumRequestBufferSize() {
+    return maximumRequestBufferSize;
+  }
+
+  /**
+   * Sets the number of request bytes kept in memory before a request is
+   * spooled to a temporary file. Larger requests, such as attachment uploads,
+   * are then streamed from that file to the server.
+   * <p>
+   * Default is 1 MB.
+   * </p>
+   *
+   * @param maximumRequestBufferSize the maximum request buffer size in bytes
+   */
+  public void setMaximumRequestBufferSize(int maximumRequestBufferSize) {
+    if (maximumRequestBufferSize < 0)
+      throw new IllegalArgumentException("maximumRequestBufferSize must be 0 or greater");
+    this.maximumRequestBufferSize = maximumRequestBufferSize;
+  }
+
   /**
    * Gets the credential used to authenticate with the Exchange Web Services.
    *
@@ -858,15 +1114,12 @@ public abstract class ExchangeServiceBase implements Closeable {
    * @param headers The response headers
    */
   private void saveHttpResponseHeaders(Map<String, String> headers) {
-    this.httpResponseHeaders.clear();
-
-    for (String key : headers.keySet()) {
-      this.httpResponseHeaders.put(key, headers.get(key));
-    }
+    this.httpResponseHeaders = new HashMap<String, String>(headers);
   }
 
   /**
-   * Gets a collection of HTTP headers from the last response.
+   * Gets a collection of HTTP headers from the last response received by this
+   * service, whichever thread sent the request.
    * @return HTTP response headers
    */
   public Map<String, String> getHttpResponseHeaders() {
@@ -890,7 +1143,104 @@ public abstract class ExchangeServiceBase implements Closeable {
     }
   }
 
-  public int getMaximumPoolingConnections() {
+  public synchronized int getMaximumPoolingConnections() {
     return maximumPoolingConnections;
   }
+
+  /**
+   * Gets the executor that runs asynchronous (beginXxx) requests and their callbacks.
+   * <p>
+   * Unless one was set, a bounded {@link AsyncExecutor} is created on first use
+   * and shut down when this service is closed. It runs up to 16 requests at a time
+   * and queues up to 1024 more; requests beyond that fail with a
+   * RejectedExecutionException instead of running on the calling thread.
+   * </p>
+   *
+   * @return the executor shared by all asynchronous requests of this service
+   */
+  public synchronized ExecutorService getAsyncExecutor() {
+    if (asyncExecutor == null) {
+      asyncExecutor = new AsyncExecutor();
+      ownsAsyncExecutor = true;
+    }
+    return asyncExecutor;
+  }
+
+  /**
+   * Sets the executor that runs asynchronous (beginXxx) requests and their callbacks,
+   * e.g. {@link AsyncExecutor#newVirtualThreadExecutor()}. The caller remains
+   * responsible for shutting down an executor set here.
+   *
+   * @param asyncExecutor the executor, or null to use the default executor
+   */
+  public synchronized void setAsyncExecutor(ExecutorService asyncExecutor) {
+    if (ownsAsyncExecutor) {
+      this.asyncExecutor.shutdown();
+    }
+    this.asyncExecutor = asyncExecutor;
+    this.ownsAsyncExecutor = false;
+  }
+
+  /**
+   * Runs an operation on the executor shared by asynchronous requests of this service.
+   * The callback, if any, is invoked on the executor thread once the operation completes,
+   * which allows follow-up work to be chained without blocking a thread on the result.
+   *
+   * @param operation the operation, typically one or more synchronous calls on this service
+   * @param callback  the callback, may be null
+   * @param <T>       the result type
+   * @return A Future providing the result of the operation
+   */
+  public <T> Future<T> submitAsync(Callable<T> operation, AsyncCallback callback) {
+    return AsyncExecutor.submit(getAsyncExecutor(), operation, callback);
+  }
+
+  /**
+   * Gets the executor that reads the responses of hanging requests, e.g. streaming subscriptions.
+   *
+   * @return the executor set on this service, or {@link HangingRequestExecutor#getDefault()}
+   */
+  public HangingRequestExecutor getHangingRequestExecutor() {
+    HangingRequestExecutor executor = hangingRequestExecutor;
+    return executor != null ? executor : HangingRequestExecutor.getDefault();
+  }
+
+  /**
+   * Sets the executor that reads the responses of hanging requests, e.g. streaming subscriptions.
+   * The default executor does not limit the number of connections; pass
+   * {@code new HangingRequestExecutor(max)} to cap the connections of this service, after which
+   * opening another one fails with a {@code ServiceRequestException}.
+   * Use {@link HangingRequestExecutor#newVirtualThreadExecutor(int)} to hold large numbers of
+   * connections open on runtimes that support virtual threads.
+   *
+   * @param hangingRequestExecutor the executor, or null to use the shared default executor
+   */
+  public void setHangingRequestExecutor(HangingRequestExecutor hangingRequestExecutor) {
+    this.hangingRequestExecutor = hangingRequestExecutor;
+  }
+
+
+  /**
+   * The context of a single request. It falls back to the service's shared
+   * context for attributes it doesn't have, and passes the user token of an
+   * authenticated connection on to it.
+   */
+  private static final class RequestHttpContext extends BasicHttpContext {
+
+    private final HttpContext sharedContext;
+
+    RequestHttpContext(HttpContext sharedContext) {
+      super(sharedContext);
+      this.sharedContext = sharedContext;
+    }
+
+    @Override
+    public void setAttribute(String id, Object obj) {
+      super.setAttribute(id, obj);
+      if (obj != null && HttpClientContext.USER_TOKEN.equals(id)) {
+        sharedContext.setAttribute(id, obj);
+      }
+    }
+  }
+
 }
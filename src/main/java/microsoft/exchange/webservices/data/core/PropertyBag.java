@@ -26,6 +26,7 @@ package microsoft.exchange.webservices.data.core;
 import microsoft.exchange.webservices.data.ISelfValidate;
 import microsoft.exchange.webservices.data.core.service.ServiceObject;
 import microsoft.exchange.webservices.data.core.service.item.Item;
+import microsoft.exchange.webservices.data.core.service.schema.ServiceObjectSchema;
 import microsoft.exchange.webservices.data.core.enumeration.property.BasePropertySet;
 import microsoft.exchange.webservices.data.core.enumeration.property.PropertyDefinitionFlags;
 import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
@@ -43,11 +44,12 @@ import microsoft.exchange.webservices.data.property.definition.PropertyDefinitio
 import microsoft.exchange.webservices.data.security.XmlNodeType;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * Represents a property bag keyed on PropertyDefinition objects.
@@ -75,34 +77,56 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
   private boolean onlySummaryPropertiesRequested;
 
   /**
-   * The loaded property.
+   * The schema of the owner, which numbers the property. Resolved on first use.
    */
-  private List<PropertyDefinition> loadedProperties =
-      new ArrayList<PropertyDefinition>();
+  private ServiceObjectSchema schema;
 
   /**
-   * The property.
+   * Whether the schema was resolved.
    */
-  private Map<PropertyDefinition, Object> properties =
-      new HashMap<PropertyDefinition, Object>();
+  private boolean schemaResolved;
 
   /**
-   * The deleted property.
+   * The property set on this bag that aren't registered with the schema; their
+   * ordinals follow the schema's. Allocated when needed.
    */
-  private Map<PropertyDefinition, Object> deletedProperties =
-      new HashMap<PropertyDefinition, Object>();
+  private List<PropertyDefinition> extraProperties;
 
   /**
-   * The modified property.
+   * The property values, by ordinal. Grown as property are set.
    */
-  private List<PropertyDefinition> modifiedProperties =
-      new ArrayList<PropertyDefinition>();
+  private Object[] values;
 
   /**
-   * The added property.
+   * The ordinals of the property in the bag.
    */
-  private List<PropertyDefinition> addedProperties =
-      new ArrayList<PropertyDefinition>();
+  private BitSet presentProperties;
+
+  /**
+   * The ordinals of the loaded property.
+   */
+  private BitSet loadedProperties;
+
+  /**
+   * The ordinals of the added property. Allocated on the first change, as are
+   * the other change sets.
+   */
+  private BitSet addedProperties;
+
+  /**
+   * The ordinals of the modified property.
+   */
+  private BitSet modifiedProperties;
+
+  /**
+   * The ordinals of the deleted property.
+   */
+  private BitSet deletedProperties;
+
+  /**
+   * The values the deleted property had, by ordinal.
+   */
+  private Object[] deletedValues;
 
   /**
    * The requested property set.
@@ -121,12 +145,20 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
   }
 
   /**
-   * Gets a Map holding the bag's property.
+   * Gets a Map holding the bag's property. The map is a read-only snapshot in
+   * schema order; use {@link #setObjectFromPropertyDefinition(PropertyDefinition, Object)}
+   * to change property.
    *
    * @return A Map holding the bag's property.
    */
   public Map<PropertyDefinition, Object> getProperties() {
-    return this.properties;
+    Map<PropertyDefinition, Object> properties = new LinkedHashMap<PropertyDefinition, Object>();
+    if (this.presentProperties != null) {
+      for (int i = this.presentProperties.nextSetBit(0); i >= 0; i = this.presentProperties.nextSetBit(i + 1)) {
+        properties.put(this.getPropertyDefinition(i), this.values[i]);
+      }
+    }
+    return Collections.unmodifiableMap(properties);
   }
 
   /**
@@ -144,9 +176,8 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * @return True if the bag has pending changes, false otherwise.
    */
   public boolean getIsDirty() {
-    int changes = this.modifiedProperties.size() +
-        this.deletedProperties.size() + this.addedProperties.size();
-    return changes > 0 || this.isDirty;
+    return !isEmpty(this.modifiedProperties) || !isEmpty(this.deletedProperties)
+        || !isEmpty(this.addedProperties) || this.isDirty;
   }
 
   /**
@@ -172,7 +203,7 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    */
   public boolean isPropertyLoaded(PropertyDefinition propertyDefinition) {
     // Is the property loaded?
-    if (this.loadedProperties.contains(propertyDefinition)) {
+    if (isSet(this.loadedProperties, this.getOrdinal(propertyDefinition, false))) {
       return true;
     } else {
       // Was the property requested?
@@ -219,8 +250,9 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * false.
    */
   public boolean isPropertyUpdated(PropertyDefinition propertyDefinition) {
-    return this.modifiedProperties.contains(propertyDefinition) ||
-        this.addedProperties.contains(propertyDefinition);
+    int ordinal = this.getOrdinal(propertyDefinition, false);
+    return isSet(this.modifiedProperties, ordinal) ||
+        isSet(this.addedProperties, ordinal);
   }
 
   /**
@@ -321,7 +353,7 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
         propertyValueOutParam.setParam((T) propertyValue);
         if (propertyValue != null) {
           this.initComplexProperty(propertyValue);
-          this.properties.put(propertyDefinition, propertyValue);
+          this.putValue(this.getOrdinal(propertyDefinition, true), propertyValue);
         }
       } else {
         // If the property is not the Id (we need to let developers read
@@ -371,11 +403,9 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * @return True if the specified property is in the bag, false otherwise.
    */
   public boolean contains(PropertyDefinition propertyDefinition) {
-    return this.properties.containsKey(propertyDefinition);
+    return isSet(this.presentProperties, this.getOrdinal(propertyDefinition, false));
   }
 
-
-
   /**
    * Tries to retrieve the value of the specified property.
    *
@@ -384,8 +414,9 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * @return true if the value could be retrieved, false otherwise
    */
   public <T> boolean tryGetValue(PropertyDefinition propertyDefinition, OutParam<T> propertyValueOutParam) {
-    if (this.properties.containsKey(propertyDefinition)) {
-      T param = (T) properties.get(propertyDefinition);
+    int ordinal = this.getOrdinal(propertyDefinition, false);
+    if (isSet(this.presentProperties, ordinal)) {
+      T param = (T) this.values[ordinal];
       propertyValueOutParam.setParam(param);
       return true;
     } else {
@@ -400,14 +431,13 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * @param complexProperty The property that changes.
    */
   protected void propertyChanged(ComplexProperty complexProperty) {
-    Iterator<Entry<PropertyDefinition, Object>> it = this.properties
-        .entrySet().iterator();
-    while (it.hasNext()) {
-      Entry<PropertyDefinition, Object> keyValuePair = it.next();
-      if (keyValuePair.getValue().equals(complexProperty)) {
-        if (!this.deletedProperties.containsKey(keyValuePair.getKey())) {
-          addToChangeList(keyValuePair.getKey(),
-              this.modifiedProperties);
+    if (this.presentProperties == null) {
+      return;
+    }
+    for (int i = this.presentProperties.nextSetBit(0); i >= 0; i = this.presentProperties.nextSetBit(i + 1)) {
+      if (this.values[i] != null && this.values[i].equals(complexProperty)) {
+        if (!isSet(this.deletedProperties, i)) {
+          this.modifiedProperties = set(this.modifiedProperties, i);
           this.changed();
         }
       }
@@ -420,16 +450,22 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * @param propertyDefinition The property to delete.
    */
   protected void deleteProperty(PropertyDefinition propertyDefinition) {
-    if (!this.deletedProperties.containsKey(propertyDefinition)) {
+    int ordinal = this.getOrdinal(propertyDefinition, true);
+    if (!isSet(this.deletedProperties, ordinal)) {
       Object propertyValue = null;
 
-      if (this.properties.containsKey(propertyDefinition)) {
-        propertyValue = this.properties.get(propertyDefinition);
+      if (isSet(this.presentProperties, ordinal)) {
+        propertyValue = this.values[ordinal];
+        this.values[ordinal] = null;
+        this.presentProperties.clear(ordinal);
       }
 
-      this.properties.remove(propertyDefinition);
-      this.modifiedProperties.remove(propertyDefinition);
-      this.deletedProperties.put(propertyDefinition, propertyValue);
+      if (this.modifiedProperties != null) {
+        this.modifiedProperties.clear(ordinal);
+      }
+      this.deletedProperties = set(this.deletedProperties, ordinal);
+      this.deletedValues = ensureCapacity(this.deletedValues, ordinal, this.getOrdinalCount());
+      this.deletedValues[ordinal] = propertyValue;
 
       if (propertyValue instanceof ComplexProperty) {
         ComplexProperty complexProperty =
@@ -444,8 +480,10 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    */
   protected void clear() {
     this.clearChangeLog();
-    this.properties.clear();
-    this.loadedProperties.clear();
+    this.values = null;
+    this.presentProperties = null;
+    this.loadedProperties = null;
+    this.extraProperties = null;
     this.requestedPropertySet = null;
   }
 
@@ -453,18 +491,17 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * Clears the bag's change log.
    */
   public void clearChangeLog() {
-    this.deletedProperties.clear();
-    this.modifiedProperties.clear();
-    this.addedProperties.clear();
-
-    Iterator<Entry<PropertyDefinition, Object>> it = this.properties
-        .entrySet().iterator();
-    while (it.hasNext()) {
-      Entry<PropertyDefinition, Object> keyValuePair = it.next();
-      if (keyValuePair.getValue() instanceof ComplexProperty) {
-        ComplexProperty complexProperty = (ComplexProperty) keyValuePair
-            .getValue();
-        complexProperty.clearChangeLog();
+    this.deletedProperties = null;
+    this.deletedValues = null;
+    this.modifiedProperties = null;
+    this.addedProperties = null;
+
+    if (this.presentProperties != null) {
+      for (int i = this.presentProperties.nextSetBit(0); i >= 0; i = this.presentProperties.nextSetBit(i + 1)) {
+        if (this.values[i] instanceof ComplexProperty) {
+          ComplexProperty complexProperty = (ComplexProperty) this.values[i];
+          complexProperty.clearChangeLog();
+        }
       }
     }
 
@@ -510,7 +547,8 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
             propertyDefinition.loadPropertyValueFromXml(reader,
                 this);
 
-            this.loadedProperties.add(propertyDefinition);
+            this.loadedProperties = set(this.loadedProperties,
+                this.getOrdinal(propertyDefinition, true));
           } else {
             reader.skipCurrentElement();
           }
@@ -570,20 +608,18 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
 
     writer.writeStartElement(XmlNamespace.Types, XmlElementNames.Updates);
 
-    for (PropertyDefinition propertyDefinition : this.addedProperties) {
+    for (PropertyDefinition propertyDefinition : this.getPropertyDefinitions(this.addedProperties)) {
       this.writeSetUpdateToXml(writer, propertyDefinition);
     }
 
-    for (PropertyDefinition propertyDefinition : this.modifiedProperties) {
+    for (PropertyDefinition propertyDefinition : this.getPropertyDefinitions(this.modifiedProperties)) {
       this.writeSetUpdateToXml(writer, propertyDefinition);
     }
 
-    Iterator<Entry<PropertyDefinition, Object>> it = this.deletedProperties
-        .entrySet().iterator();
-    while (it.hasNext()) {
-      Entry<PropertyDefinition, Object> property = it.next();
-      this.writeDeleteUpdateToXml(writer, property.getKey(), property
-          .getValue());
+    if (this.deletedProperties != null) {
+      for (int i = this.deletedProperties.nextSetBit(0); i >= 0; i = this.deletedProperties.nextSetBit(i + 1)) {
+        this.writeDeleteUpdateToXml(writer, this.getPropertyDefinition(i), this.deletedValues[i]);
+      }
     }
 
     writer.writeEndElement();
@@ -600,9 +636,9 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
   public boolean getIsUpdateCallNecessary() {
     List<PropertyDefinition> propertyDefinitions =
         new ArrayList<PropertyDefinition>();
-    propertyDefinitions.addAll(this.addedProperties);
-    propertyDefinitions.addAll(this.modifiedProperties);
-    propertyDefinitions.addAll(this.deletedProperties.keySet());
+    propertyDefinitions.addAll(this.getPropertyDefinitions(this.addedProperties));
+    propertyDefinitions.addAll(this.getPropertyDefinitions(this.modifiedProperties));
+    propertyDefinitions.addAll(this.getPropertyDefinitions(this.deletedProperties));
     for (PropertyDefinition propertyDefinition : propertyDefinitions) {
       if (propertyDefinition.hasFlag(PropertyDefinitionFlags.CanUpdate)) {
         return true;
@@ -714,11 +750,11 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
    * @throws Exception the exception
    */
   public void validate() throws Exception {
-    for (PropertyDefinition propertyDefinition : this.addedProperties) {
+    for (PropertyDefinition propertyDefinition : this.getPropertyDefinitions(this.addedProperties)) {
       this.validatePropertyValue(propertyDefinition);
     }
 
-    for (PropertyDefinition propertyDefinition : this.modifiedProperties) {
+    for (PropertyDefinition propertyDefinition : this.getPropertyDefinitions(this.modifiedProperties)) {
       this.validatePropertyValue(propertyDefinition);
     }
   }
@@ -830,9 +866,11 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
     } else {
       ComplexProperty complexProperty = null;
       Object currentValue = null;
+      int ordinal = this.getOrdinal(propertyDefinition, true);
+      boolean present = isSet(this.presentProperties, ordinal);
 
-      if (this.properties.containsKey(propertyDefinition)) {
-        currentValue = this.properties.get(propertyDefinition);
+      if (present) {
+        currentValue = this.values[ordinal];
 
         if (currentValue instanceof ComplexProperty) {
           complexProperty = (ComplexProperty) currentValue;
@@ -842,32 +880,146 @@ public class PropertyBag implements IComplexPropertyChanged, IComplexPropertyCha
 
       // If the property was to be deleted, the deletion becomes an
       // update.
-      if (this.deletedProperties.containsKey(propertyDefinition)) {
-        this.deletedProperties.remove(propertyDefinition);
-        addToChangeList(propertyDefinition, this.modifiedProperties);
+      if (isSet(this.deletedProperties, ordinal)) {
+        this.deletedProperties.clear(ordinal);
+        this.deletedValues[ordinal] = null;
+        this.modifiedProperties = set(this.modifiedProperties, ordinal);
       } else {
         // If the property value was not set, we have a newly set
         // property.
-        if (!this.properties.containsKey(propertyDefinition)) {
-          addToChangeList(propertyDefinition, this.addedProperties);
+        if (!present) {
+          this.addedProperties = set(this.addedProperties, ordinal);
         } else {
           // The last case is that we have a modified property.
-          if (!this.modifiedProperties.contains(propertyDefinition)) {
-            addToChangeList(propertyDefinition,
-                this.modifiedProperties);
-          }
+          this.modifiedProperties = set(this.modifiedProperties, ordinal);
         }
       }
 
       if (object instanceof ComplexProperty) {
         this.initComplexProperty((ComplexProperty) object);
       }
-      this.properties.put(propertyDefinition, object);
+      this.putValue(ordinal, object);
       this.changed();
     }
 
   }
 
+  /**
+   * Gets the ordinal of a property in this bag: its ordinal in the owner's schema,
+   * or an ordinal following the schema's for property the schema doesn't register.
+   *
+   * @param propertyDefinition the property definition
+   * @param assign             whether to assign an ordinal to a property outside the schema
+   * @return the ordinal, or -1 if the property has none
+   */
+  private int getOrdinal(PropertyDefinition propertyDefinition, boolean assign) {
+    if (this.schemaResolved && this.schema != null) {
+      int ordinal = this.schema.getPropertyOrdinal(propertyDefinition);
+      if (ordinal >= 0) {
+        return ordinal;
+      }
+    }
+    return this.getExtraOrdinal(propertyDefinition, assign);
+  }
+
+  /**
+   * Gets the ordinal of a property once the schema lookup failed, resolving the
+   * schema first if needed.
+   */
+  private int getExtraOrdinal(PropertyDefinition propertyDefinition, boolean assign) {
+    if (!this.schemaResolved) {
+      this.schema = this.getOwner().getSchema();
+      this.schemaResolved = true;
+      return this.getOrdinal(propertyDefinition, assign);
+    }
+    int schemaCount = this.schema == null ? 0 : this.schema.getPropertyCount();
+    if (this.extraProperties != null) {
+      for (int i = 0; i < this.extraProperties.size(); i++) {
+        if (this.extraProperties.get(i) == propertyDefinition) {
+          return schemaCount + i;
+        }
+      }
+    }
+    if (!assign) {
+      return -1;
+    }
+    if (this.extraProperties == null) {
+      this.extraProperties = new ArrayList<PropertyDefinition>(2);
+    }
+    this.extraProperties.add(propertyDefinition);
+    return schemaCount + this.extraProperties.size() - 1;
+  }
+
+  /**
+   * Gets the number of ordinals assigned in this bag.
+   */
+  private int getOrdinalCount() {
+    int count = this.schema == null ? 0 : this.schema.getPropertyCount();
+    return this.extraProperties == null ? count : count + this.extraProperties.size();
+  }
+
+  /**
+   * Gets the property with an ordinal of this bag.
+   */
+  private PropertyDefinition getPropertyDefinition(int ordinal) {
+    int schemaCount = this.schema == null ? 0 : this.schema.getPropertyCount();
+    return ordinal < schemaCount ? this.schema.getPropertyByOrdinal(ordinal)
+        : this.extraProperties.get(ordinal - schemaCount);
+  }
+
+  /**
+   * Gets the property in a set of ordinals, in ordinal order.
+   */
+  private List<PropertyDefinition> getPropertyDefinitions(BitSet ordinals) {
+    if (isEmpty(ordinals)) {
+      return Collections.emptyList();
+    }
+    List<PropertyDefinition> propertyDefinitions = new ArrayList<PropertyDefinition>(ordinals.cardinality());
+    for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+      propertyDefinitions.add(this.getPropertyDefinition(i));
+    }
+    return propertyDefinitions;
+  }
+
+  private void putValue(int ordinal, Object value) {
+    this.values = ensureCapacity(this.values, ordinal, this.getOrdinalCount());
+    this.values[ordinal] = value;
+    this.presentProperties = set(this.presentProperties, ordinal);
+  }
+
+  /**
+   * Grows an array to hold an ordinal. Arrays start small and grow towards the
+   * number of ordinals, so bags holding few property stay small.
+   */
+  private static Object[] ensureCapacity(Object[] array, int ordinal, int ordinalCount) {
+    if (array != null && ordinal < array.length) {
+      return array;
+    }
+    int length = array == null ? 0 : array.length;
+    int capacity = Math.max(ordinal + 1, Math.min(ordinalCount, length + (length >> 1) + 8));
+    Object[] grown = new Object[capacity];
+    if (array != null) {
+      System.arraycopy(array, 0, grown, 0, array.length);
+    }
+    return grown;
+  }
+
+  private static boolean isSet(BitSet bits, int ordinal) {
+    return ordinal >= 0 && bits != null && bits.get(ordinal);
+  }
+
+  private static BitSet set(BitSet bits, int ordinal) {
+    if (bits == null) {
+      bits = new BitSet();
+    }
+    bits.set(ordinal);
+    return bits;
+  }
+
+  private static boolean isEmpty(BitSet bits) {
+    return bits == null || bits.isEmpty();
+  }
+
   /*
    * (non-Javadoc)
    *
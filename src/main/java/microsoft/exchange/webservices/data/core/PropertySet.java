@@ -39,12 +39,15 @@ import microsoft.exchange.webservices.data.property.definition.PropertyDefinitio
 
 import javax.xml.stream.XMLStreamException;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Represents a set of item or folder property. Property sets are used to
@@ -139,6 +142,12 @@ public final class PropertySet implements ISelfValidate,
    */
   private boolean isReadOnly;
 
+  /**
+   * The serialized Item/FolderShape elements of a read-only property set,
+   * indexed by requested server version and service object type.
+   */
+  private AtomicReferenceArray<byte[]> shapeFragments;
+
   /**
    * Initializes a new instance of PropertySet.
    *
@@ -281,10 +290,33 @@ public final class PropertySet implements ISelfValidate,
   private static PropertySet createReadonlyPropertySet(
       BasePropertySet basePropertySet) {
     PropertySet propertySet = new PropertySet(basePropertySet);
-    propertySet.isReadOnly = true;
+    propertySet.freeze();
     return propertySet;
   }
 
+  /**
+   * Makes this property set read-only. A read-only property set serializes
+   * itself once per requested server version and reuses the serialized XML
+   * in every subsequent request, so property sets sent repeatedly should be
+   * frozen once they are fully built.
+   */
+  public void freeze() {
+    this.isReadOnly = true;
+    if (this.shapeFragments == null) {
+      this.shapeFragments = new AtomicReferenceArray<byte[]>(
+          ExchangeVersion.values().length * ServiceObjectType.values().length);
+    }
+  }
+
+  /**
+   * Gets a value indicating whether this property set is read-only.
+   *
+   * @return true if the property set can't be modified
+   */
+  public boolean isReadOnly() {
+    return this.isReadOnly;
+  }
+
   /**
    * Throws if readonly property set.
    */
@@ -539,6 +571,40 @@ public final class PropertySet implements ISelfValidate,
    * @throws ServiceXmlSerializationException the service xml serialization exception
    */
   public void writeToXml(EwsServiceXmlWriter writer, ServiceObjectType serviceObjectType) throws XMLStreamException, ServiceXmlSerializationException {
+    ExchangeServiceBase service = writer.getService();
+    if (this.shapeFragments == null || service == null) {
+      this.writeShapeToXml(writer, serviceObjectType);
+      return;
+    }
+
+    int index = service.getRequestedServerVersion().ordinal() * ServiceObjectType.values().length
+        + serviceObjectType.ordinal();
+    byte[] fragment = this.shapeFragments.get(index);
+    if (fragment == null) {
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      EwsServiceXmlWriter fragmentWriter = new EwsServiceXmlWriter(service, stream);
+      try {
+        this.writeShapeToXml(fragmentWriter, serviceObjectType);
+        fragmentWriter.flush();
+      } finally {
+        fragmentWriter.dispose();
+      }
+      fragment = stream.toByteArray();
+      this.shapeFragments.set(index, fragment);
+    }
+    writer.writeFragment(fragment);
+  }
+
+  /**
+   * Writes the Item/FolderShape element of the property set.
+   *
+   * @param writer            The writer to write to
+   * @param serviceObjectType The type of service object the property set is emitted for
+   * @throws XMLStreamException the XML stream exception
+   * @throws ServiceXmlSerializationException the service xml serialization exception
+   */
+  private void writeShapeToXml(EwsServiceXmlWriter writer, ServiceObjectType serviceObjectType)
+      throws XMLStreamException, ServiceXmlSerializationException {
     writer
         .writeStartElement(
             XmlNamespace.Messages,
@@ -585,6 +651,9 @@ public final class PropertySet implements ISelfValidate,
    */
   @Override
   public Iterator<PropertyDefinitionBase> iterator() {
+    if (this.isReadOnly) {
+      return Collections.unmodifiableList(this.additionalProperties).iterator();
+    }
     return this.additionalProperties.iterator();
   }
 
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.exception.service.remote;
+
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents an error that occurs when a request that was split into chunks of
+ * objects fails for some chunks after others completed. The responses of the
+ * completed chunks are kept; the failure of the first chunk that failed is the cause.
+ */
+public final class ChunkedRequestException extends ServiceRequestException {
+
+  /**
+   * Constant serialized ID used for compatibility.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The number of objects per chunk.
+   */
+  private final int chunkSize;
+
+  /**
+   * The responses of each chunk, null for chunks that did not complete.
+   */
+  private final List<ServiceResponseCollection<? extends ServiceResponse>> chunkResponses;
+
+  /**
+   * Initializes a new instance of ChunkedRequestException.
+   *
+   * @param chunkSize      the number of objects per chunk
+   * @param chunkResponses the responses of each chunk, null for chunks that did not complete
+   * @param innerException the failure of the first chunk that failed
+   */
+  public ChunkedRequestException(int chunkSize,
+      List<? extends ServiceResponseCollection<? extends ServiceResponse>> chunkResponses,
+      Exception innerException) {
+    super(String.format("The request failed for some of the objects. %s",
+        innerException.getMessage()), innerException);
+    this.chunkSize = chunkSize;
+    this.chunkResponses = Collections.unmodifiableList(
+        new ArrayList<ServiceResponseCollection<? extends ServiceResponse>>(chunkResponses));
+  }
+
+  /**
+   * Gets the number of objects per chunk. Chunk i covers the objects from
+   * i * chunkSize up to, but excluding, (i + 1) * chunkSize.
+   *
+   * @return the chunk size
+   */
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Gets the responses of each chunk, in the order of the objects.
+   *
+   * @return the responses, null for chunks that failed or were not started
+   */
+  public List<ServiceResponseCollection<? extends ServiceResponse>> getChunkResponses() {
+    return chunkResponses;
+  }
+
+}
@@ -189,4 +189,13 @@ public final class ConvertIdRequest extends
   public List<AlternateIdBase> getIds() {
     return this.ids;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
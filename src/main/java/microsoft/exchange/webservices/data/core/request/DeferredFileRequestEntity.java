@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.request;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.ThresholdingOutputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Request entity whose content is kept in memory up to a threshold and
+ * spooled to a temporary file beyond it, so large requests (e.g. attachment
+ * uploads) are streamed from disk to the socket with bounded memory. The
+ * entity stays repeatable, which authentication schemes such as NTLM rely on
+ * when they resend a request.
+ */
+public class DeferredFileRequestEntity extends AbstractHttpEntity {
+
+  private static final Log LOG = LogFactory.getLog(DeferredFileRequestEntity.class);
+
+  private final SpoolingOutputStream os;
+
+  /**
+   * Initializes a new instance.
+   *
+   * @param threshold the number of bytes kept in memory before spooling to a temporary file
+   */
+  public DeferredFileRequestEntity(int threshold) {
+    super();
+    this.os = new SpoolingOutputStream(threshold);
+    setContentType("text/xml; charset=utf-8");
+  }
+
+  /**
+   * Gets the stream the request content is written to.
+   *
+   * @return the output stream
+   */
+  public OutputStream getOutputStream() {
+    return os;
+  }
+
+  @Override
+  public long getContentLength() {
+    return os.getByteCount();
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    os.close();
+    if (os.file == null) {
+      return new ByteArrayInputStream(os.memory.toByteArray());
+    }
+    return new FileInputStream(os.file);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    os.close();
+    if (os.file == null) {
+      os.memory.writeTo(out);
+    } else {
+      InputStream in = new FileInputStream(os.file);
+      try {
+        IOUtils.copy(in, out);
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  /**
+   * Deletes the temporary file, if the content was spooled to one.
+   */
+  public void dispose() {
+    try {
+      os.close();
+    } catch (IOException e) {
+      LOG.debug("Could not close the request spool file " + os.file, e);
+    }
+    File file = os.file;
+    if (file != null && file.exists() && !file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Keeps the content in memory up to the threshold and writes it to a
+   * temporary file beyond it. Requests carry mail bodies and attachments, so
+   * the file is made readable by its owner only before anything is written to it.
+   */
+  private static final class SpoolingOutputStream extends ThresholdingOutputStream {
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+    private File file;
+
+    private OutputStream current = memory;
+
+    SpoolingOutputStream(int threshold) {
+      super(threshold);
+    }
+
+    @Override
+    protected OutputStream getStream() {
+      return current;
+    }
+
+    @Override
+    protected void thresholdReached() throws IOException {
+      File spoolFile = File.createTempFile("ews-request-", ".xml");
+      restrictToOwner(spoolFile);
+      FileOutputStream fileStream = null;
+      try {
+        fileStream = new FileOutputStream(spoolFile);
+        memory.writeTo(fileStream);
+      } catch (IOException e) {
+        IOUtils.closeQuietly(fileStream);
+        if (!spoolFile.delete()) {
+          spoolFile.deleteOnExit();
+        }
+        throw e;
+      }
+      file = spoolFile;
+      current = fileStream;
+      memory = null;
+    }
+
+    private static void restrictToOwner(File file) {
+      boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+          && file.setWritable(false, false) && file.setWritable(true, true);
+      if (!restricted) {
+        LOG.debug("Could not restrict the permissions of the request spool file " + file);
+      }
+    }
+  }
+}
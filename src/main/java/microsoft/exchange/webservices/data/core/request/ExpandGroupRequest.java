@@ -160,4 +160,13 @@ public class ExpandGroupRequest extends
   public void setEmailAddress(EmailAddress emailAddress) {
     this.emailAddress = emailAddress;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -199,5 +199,13 @@ public final class FindConversationRequest extends SimpleServiceRequestBase<Find
     serviceResponse.throwIfNecessary();
     return serviceResponse;
   }
-}
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
+}
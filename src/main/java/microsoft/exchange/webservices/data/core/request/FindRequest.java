@@ -247,4 +247,13 @@ abstract class FindRequest<TResponse extends ServiceResponse> extends
   public void setView(ViewBase view) {
     this.view = view;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -235,4 +235,12 @@ public final class GetAttachmentRequest extends
     this.bodyType = bodyType;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -166,4 +166,13 @@ public class GetDelegateRequest extends
   public void setIncludePermissions(boolean includePermissions) {
     this.includePermissions = includePermissions;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
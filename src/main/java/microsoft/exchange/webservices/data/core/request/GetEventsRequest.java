@@ -187,4 +187,13 @@ public class GetEventsRequest extends MultiResponseServiceRequest<GetEventsRespo
   public void setWatermark(String watermark) {
     this.watermark = watermark;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
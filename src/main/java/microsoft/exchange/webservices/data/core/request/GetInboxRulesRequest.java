@@ -144,4 +144,13 @@ public final class GetInboxRulesRequest extends SimpleServiceRequestBase<GetInbo
     serviceResponse.throwIfNecessary();
     return serviceResponse;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -110,4 +110,13 @@ public final class GetPasswordExpirationDateRequest extends SimpleServiceRequest
   }
 
   private String mailboxSmtpAddress;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -109,4 +109,13 @@ abstract class GetRequest<TServiceObject extends ServiceObject,
   public void setPropertySet(PropertySet propertySet) {
     this.propertySet = propertySet;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -107,4 +107,13 @@ public final class GetRoomListsRequest extends SimpleServiceRequestBase<GetRoomL
     serviceResponse.throwIfNecessary();
     return serviceResponse;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
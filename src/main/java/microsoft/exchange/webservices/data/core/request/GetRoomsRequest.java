@@ -136,4 +136,12 @@ public final class GetRoomsRequest extends SimpleServiceRequestBase<GetRoomsResp
    */
   private EmailAddress roomList;
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -174,4 +174,13 @@ public final class GetServerTimeZonesRequest extends
   protected void setIds(Iterable<String> ids) {
     this.ids = ids;
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -320,4 +320,12 @@ public final class GetUserAvailabilityRequest extends SimpleServiceRequestBase<G
     this.options = options;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
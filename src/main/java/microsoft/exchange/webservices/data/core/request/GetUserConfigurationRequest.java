@@ -260,4 +260,12 @@ public class GetUserConfigurationRequest extends
     this.properties = properties;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -173,4 +173,12 @@ public final class GetUserOofSettingsRequest extends SimpleServiceRequestBase<Ge
     this.smtpAddress = smtpAddress;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
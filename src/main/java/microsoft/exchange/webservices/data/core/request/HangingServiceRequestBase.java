@@ -50,9 +50,7 @@ import java.net.SocketTimeoutException;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -173,8 +171,13 @@ public abstract class HangingServiceRequestBase<T> extends ServiceRequestBase<T>
    */
   public void internalExecute() throws Exception {
     synchronized (this) {
-      this.response = this.validateAndEmitRequest();
-      this.internalOnConnect();
+      try {
+        this.response = this.validateAndEmitRequest();
+        this.internalOnConnect();
+      } catch (Exception e) {
+        this.completeMetrics(null, e);
+        throw e;
+      }
     }
   }
 
@@ -189,7 +192,7 @@ public abstract class HangingServiceRequestBase<T> extends ServiceRequestBase<T>
 
     try {
       boolean traceEWSResponse = this.getService().isTraceEnabledFor(TraceFlags.EwsResponse);
-      InputStream responseStream = this.response.getInputStream();
+      InputStream responseStream = this.measureResponseStream(this.response.getInputStream());
       tracingStream = new HangingTraceStream(responseStream,
           this.getService());
       //EWSServiceMultiResponseXmlReader. Create causes a read.
@@ -246,7 +249,7 @@ public abstract class HangingServiceRequestBase<T> extends ServiceRequestBase<T>
     }
   }
 
-  private boolean isConnected;
+  private volatile boolean isConnected;
 
   /**
    * Gets a value indicating whether this instance is connected.
@@ -289,7 +292,7 @@ public abstract class HangingServiceRequestBase<T> extends ServiceRequestBase<T>
    * @throws XMLStreamException the XML stream exception
    */
   private void internalOnConnect() throws XMLStreamException,
-      IOException, EWSHttpException {
+      IOException, EWSHttpException, ServiceRequestException {
     if (!this.isConnected()) {
       this.isConnected = true;
 
@@ -299,37 +302,37 @@ public abstract class HangingServiceRequestBase<T> extends ServiceRequestBase<T>
             TraceFlags.EwsResponseHttpHeaders,
             this.response);
       }
-      int poolSize = 1;
-
-      int maxPoolSize = 1;
-
-      long keepAliveTime = 10;
-
-      final ArrayBlockingQueue<Runnable> queue =
-          new ArrayBlockingQueue<Runnable>(
-              1);
-      ThreadPoolExecutor threadPool = new ThreadPoolExecutor(poolSize,
-          maxPoolSize,
-          keepAliveTime, TimeUnit.SECONDS, queue);
-      threadPool.execute(new Runnable() {
-        public void run() {
-          parseResponses();
-        }
-      });
-      threadPool.shutdown();
+      try {
+        this.getService().getHangingRequestExecutor().execute(new Runnable() {
+          public void run() {
+            parseResponses();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        this.isConnected = false;
+        IOUtils.closeQuietly(this.response);
+        throw new ServiceRequestException(String.format("The request failed. %s", e.getMessage()), e);
+      }
     }
   }
 
   /**
-   * Perform any bookkeeping needed when we disconnect (cleanly or forcefully)
+   * Perform any bookkeeping needed when we disconnect (cleanly or forcefully).
+   * The metrics of the request are reported once the connection is closed.
    *
    * @param reason    The reason.
    * @param exception The exception.
    */
   private void internalOnDisconnect(HangingRequestDisconnectReason reason,
       Exception exception) {
-    if (this.isConnected()) {
+    // The reader thread and the user may disconnect at the same time, only one does the bookkeeping.
+    boolean wasConnected;
+    synchronized (this) {
+      wasConnected = this.isConnected;
       this.isConnected = false;
+    }
+    if (wasConnected) {
+      this.completeMetrics(null, exception);
       for (IHangingRequestDisconnectHandler disconnect : onDisconnectList) {
         disconnect.hangingRequestDisconnectHandler(this,
             new HangingRequestDisconnectEventArgs(reason, exception));
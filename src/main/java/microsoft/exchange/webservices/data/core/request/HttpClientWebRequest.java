@@ -25,8 +25,13 @@ package microsoft.exchange.webservices.data.core.request;
 
 import microsoft.exchange.webservices.data.core.WebProxy;
 import microsoft.exchange.webservices.data.core.exception.http.EWSHttpException;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.NTCredentials;
 import org.apache.http.client.CredentialsProvider;
@@ -37,10 +42,11 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -58,11 +64,15 @@ public class HttpClientWebRequest extends HttpWebRequest {
   /**
    * The Http Method.
    */
-  private HttpPost httpPost = null;
+  private volatile HttpPost httpPost = null;
+  private volatile boolean aborted;
   private CloseableHttpResponse response = null;
+  private DeferredFileRequestEntity requestEntity = null;
 
   private final CloseableHttpClient httpClient;
   private final HttpClientContext httpContext;
+  private ConnectionSettings connectionSettings;
+  private long executeStarted = -1;
 
 
   /**
@@ -92,6 +102,11 @@ public class HttpClientWebRequest extends HttpWebRequest {
     // The response is kept, in case something in the library still wants to read something from it,
     // like response code or headers
     httpPost = null;
+
+    if (requestEntity != null) {
+      requestEntity.dispose();
+      requestEntity = null;
+    }
   }
 
   /**
@@ -118,43 +133,51 @@ public class HttpClientWebRequest extends HttpWebRequest {
       }
     }
 
-    // Build request configuration.
-    // Disable Kerberos in the preferred auth schemes - EWS should usually allow NTLM or Basic auth
-    RequestConfig.Builder
-        requestConfigBuilder =
-        RequestConfig.custom().setAuthenticationEnabled(true).setConnectionRequestTimeout(getTimeout())
-            .setConnectTimeout(getTimeout()).setRedirectsEnabled(isAllowAutoRedirect())
-            .setSocketTimeout(getTimeout())
-            .setTargetPreferredAuthSchemes(Arrays.asList(AuthSchemes.NTLM, AuthSchemes.BASIC))
-            .setProxyPreferredAuthSchemes(Arrays.asList(AuthSchemes.NTLM, AuthSchemes.BASIC));
-
-    CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-
-    // Add proxy credential if necessary.
-    WebProxy proxy = getProxy();
-    if (proxy != null) {
-      HttpHost proxyHost = new HttpHost(proxy.getHost(), proxy.getPort());
-      requestConfigBuilder.setProxy(proxyHost);
-
-      if (proxy.hasCredentials()) {
-        NTCredentials
-            proxyCredentials =
-            new NTCredentials(proxy.getCredentials().getUsername(), proxy.getCredentials().getPassword(), "",
-                              proxy.getCredentials().getDomain());
-
-        credentialsProvider.setCredentials(new AuthScope(proxyHost), proxyCredentials);
-      }
+    // Reuse the configuration built for an earlier request with the same settings.
+    ConnectionSettings settings = connectionSettings;
+    if (settings == null || !settings.appliesTo(this)) {
+      settings = new ConnectionSettings(this);
+      connectionSettings = settings;
     }
 
-    // Add web service credential if necessary.
-    if (isAllowAuthentication() && getUsername() != null) {
-      NTCredentials webServiceCredentials = new NTCredentials(getUsername(), getPassword(), "", getDomain());
-      credentialsProvider.setCredentials(new AuthScope(AuthScope.ANY), webServiceCredentials);
+    httpContext.setCredentialsProvider(settings.getCredentialsProvider());
+
+    httpPost.setConfig(settings.getRequestConfig(isAllowAutoRedirect()));
+
+    if (aborted) {
+      httpPost.abort();
     }
+  }
 
-    httpContext.setCredentialsProvider(credentialsProvider);
+  /**
+   * Aborts the request. A pending or later call to executeRequest fails with an IOException.
+   */
+  @Override
+  public void abort() {
+    aborted = true;
+    HttpPost post = httpPost;
+    if (post != null) {
+      post.abort();
+    }
+  }
+
+  /**
+   * Gets the connection settings the request was prepared with.
+   *
+   * @return the connection settings, null before the connection is prepared
+   */
+  public ConnectionSettings getConnectionSettings() {
+    return connectionSettings;
+  }
 
-    httpPost.setConfig(requestConfigBuilder.build());
+  /**
+   * Sets connection settings built for an earlier request. They are used by
+   * {@link #prepareConnection()} if they still apply to this request.
+   *
+   * @param connectionSettings the connection settings
+   */
+  public void setConnectionSettings(ConnectionSettings connectionSettings) {
+    this.connectionSettings = connectionSettings;
   }
 
   /**
@@ -201,12 +224,14 @@ public class HttpClientWebRequest extends HttpWebRequest {
    */
   @Override
   public OutputStream getOutputStream() throws EWSHttpException {
-    OutputStream os = null;
     throwIfRequestIsNull();
-    os = new ByteArrayOutputStream();
+    if (requestEntity != null) {
+      requestEntity.dispose();
+    }
+    requestEntity = new DeferredFileRequestEntity(getMaximumRequestBufferSize());
 
-    httpPost.setEntity(new ByteArrayOSRequestEntity(os));
-    return os;
+    httpPost.setEntity(requestEntity);
+    return requestEntity.getOutputStream();
   }
 
   /**
@@ -289,10 +314,38 @@ public class HttpClientWebRequest extends HttpWebRequest {
   @Override
   public int executeRequest() throws EWSHttpException, IOException {
     throwIfRequestIsNull();
+    executeStarted = System.nanoTime();
     response = httpClient.execute(httpPost, httpContext);
     return response.getStatusLine().getStatusCode(); // ?? don't know what is wanted in return
   }
 
+  /**
+   * Gets the time from executing the request until a connection was leased, if the
+   * client executes requests with a {@link TimingRequestExecutor}.
+   *
+   * @return the time in nanoseconds, -1 if unknown
+   */
+  @Override
+  public long getConnectionLeaseNanos() {
+    return elapsedUntil(TimingRequestExecutor.CONNECTION_LEASED);
+  }
+
+  /**
+   * Gets the time from executing the request until the response headers were received,
+   * if the client executes requests with a {@link TimingRequestExecutor}.
+   *
+   * @return the time in nanoseconds, -1 if unknown
+   */
+  @Override
+  public long getTimeToFirstByteNanos() {
+    return elapsedUntil(TimingRequestExecutor.RESPONSE_RECEIVED);
+  }
+
+  private long elapsedUntil(String attribute) {
+    Object time = httpContext.getAttribute(attribute);
+    return executeStarted < 0 || !(time instanceof Long) ? -1 : (Long) time - executeStarted;
+  }
+
   /**
    * Gets the response code.
    *
@@ -349,4 +402,141 @@ public class HttpClientWebRequest extends HttpWebRequest {
     }
     return map;
   }
+
+
+  /**
+   * The request configuration and credentials for a set of connection settings.
+   * Instances are immutable, so one instance can be shared by concurrent requests.
+   */
+  public static final class ConnectionSettings {
+
+    private final int timeout;
+    private final WebProxy proxy;
+    private final boolean allowAuthentication;
+    private final String username;
+    private final String password;
+    private final String domain;
+
+    private final RequestConfig requestConfig;
+    private final RequestConfig redirectingRequestConfig;
+    private final CredentialsProvider credentialsProvider;
+
+    /**
+     * Builds the connection settings for a request.
+     *
+     * @param request the request
+     */
+    public ConnectionSettings(HttpWebRequest request) {
+      this.timeout = request.getTimeout();
+      this.proxy = request.getProxy();
+      this.allowAuthentication = request.isAllowAuthentication();
+      this.username = request.getUsername();
+      this.password = request.getPassword();
+      this.domain = request.getDomain();
+
+      // Build request configuration.
+      // Disable Kerberos in the preferred auth schemes - EWS should usually allow NTLM or Basic auth
+      RequestConfig.Builder
+          requestConfigBuilder =
+          RequestConfig.custom().setAuthenticationEnabled(true).setConnectionRequestTimeout(timeout)
+              .setConnectTimeout(timeout)
+              .setSocketTimeout(timeout)
+              .setTargetPreferredAuthSchemes(Arrays.asList(AuthSchemes.NTLM, AuthSchemes.BASIC))
+              .setProxyPreferredAuthSchemes(Arrays.asList(AuthSchemes.NTLM, AuthSchemes.BASIC));
+
+      CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+
+      // Add proxy credential if necessary.
+      if (proxy != null) {
+        HttpHost proxyHost = new HttpHost(proxy.getHost(), proxy.getPort());
+        requestConfigBuilder.setProxy(proxyHost);
+
+        if (proxy.hasCredentials()) {
+          NTCredentials
+              proxyCredentials =
+              new NTCredentials(proxy.getCredentials().getUsername(), proxy.getCredentials().getPassword(), "",
+                                proxy.getCredentials().getDomain());
+
+          credentialsProvider.setCredentials(new AuthScope(proxyHost), proxyCredentials);
+        }
+      }
+
+      // Add web service credential if necessary.
+      if (allowAuthentication && username != null) {
+        NTCredentials webServiceCredentials = new NTCredentials(username, password, "", domain);
+        credentialsProvider.setCredentials(new AuthScope(AuthScope.ANY), webServiceCredentials);
+      }
+
+      this.requestConfig = requestConfigBuilder.setRedirectsEnabled(false).build();
+      this.redirectingRequestConfig = requestConfigBuilder.setRedirectsEnabled(true).build();
+      this.credentialsProvider = credentialsProvider;
+    }
+
+    /**
+     * Checks whether these settings were built for the same timeout, proxy and credentials
+     * as the request has.
+     *
+     * @param request the request
+     * @return true if the settings can be used for the request
+     */
+    public boolean appliesTo(HttpWebRequest request) {
+      return timeout == request.getTimeout()
+          && proxy == request.getProxy()
+          && allowAuthentication == request.isAllowAuthentication()
+          && StringUtils.equals(username, request.getUsername())
+          && StringUtils.equals(password, request.getPassword())
+          && StringUtils.equals(domain, request.getDomain());
+    }
+
+    /**
+     * Gets the request configuration.
+     *
+     * @param allowAutoRedirect whether redirects are followed
+     * @return the request configuration
+     */
+    public RequestConfig getRequestConfig(boolean allowAutoRedirect) {
+      return allowAutoRedirect ? redirectingRequestConfig : requestConfig;
+    }
+
+    /**
+     * Gets the credentials provider. It is not modified after construction.
+     *
+     * @return the credentials provider
+     */
+    public CredentialsProvider getCredentialsProvider() {
+      return credentialsProvider;
+    }
+  }
+
+
+
+  /**
+   * Executes requests over a leased connection and notes in the context when the first
+   * exchange got its connection and when the last response headers were received.
+   */
+  public static final class TimingRequestExecutor extends HttpRequestExecutor {
+
+    /**
+     * The context attribute holding the System.nanoTime() at which the connection was leased.
+     */
+    public static final String CONNECTION_LEASED = "ews.connection-leased";
+
+    /**
+     * The context attribute holding the System.nanoTime() at which the response headers were
+     * received.
+     */
+    public static final String RESPONSE_RECEIVED = "ews.response-received";
+
+    @Override
+    public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+        throws IOException, HttpException {
+      if (context.getAttribute(CONNECTION_LEASED) == null) {
+        context.setAttribute(CONNECTION_LEASED, System.nanoTime());
+      }
+      HttpResponse response = super.execute(request, conn, context);
+      context.setAttribute(RESPONSE_RECEIVED, System.nanoTime());
+      return response;
+    }
+  }
+
 }
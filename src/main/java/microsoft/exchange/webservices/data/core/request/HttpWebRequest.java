@@ -121,6 +121,11 @@ public abstract class HttpWebRequest implements Closeable {
    */
   private WebProxy proxy;
 
+  /**
+   * The number of request bytes kept in memory before spooling to a temporary file.
+   */
+  private int maximumRequestBufferSize = Integer.MAX_VALUE;
+
   /**
    * Gets the Web Proxy.
    *
@@ -262,6 +267,26 @@ public abstract class HttpWebRequest implements Closeable {
     this.timeout = timeout;
   }
 
+  /**
+   * Gets the number of request bytes kept in memory before the request is
+   * spooled to a temporary file.
+   *
+   * @return the maximum request buffer size
+   */
+  public int getMaximumRequestBufferSize() {
+    return maximumRequestBufferSize;
+  }
+
+  /**
+   * Sets the number of request bytes kept in memory before the request is
+   * spooled to a temporary file.
+   *
+   * @param maximumRequestBufferSize the maximum request buffer size
+   */
+  public void setMaximumRequestBufferSize(int maximumRequestBufferSize) {
+    this.maximumRequestBufferSize = maximumRequestBufferSize;
+  }
+
   /**
    * Gets the content type.
    *
@@ -495,6 +520,33 @@ public abstract class HttpWebRequest implements Closeable {
    */
   public abstract void close() throws IOException;
 
+  /**
+   * Aborts the request from another thread, making a pending executeRequest fail.
+   * The default implementation does nothing.
+   */
+  public void abort() {
+  }
+
+  /**
+   * Gets the time from executing the request until a connection was leased. For a new
+   * connection this includes connecting. The default implementation doesn't measure it.
+   *
+   * @return the time in nanoseconds, -1 if unknown
+   */
+  public long getConnectionLeaseNanos() {
+    return -1;
+  }
+
+  /**
+   * Gets the time from executing the request until the response headers were received.
+   * The default implementation doesn't measure it.
+   *
+   * @return the time in nanoseconds, -1 if unknown
+   */
+  public long getTimeToFirstByteNanos() {
+    return -1;
+  }
+
   /**
    * Prepare connection.
    */
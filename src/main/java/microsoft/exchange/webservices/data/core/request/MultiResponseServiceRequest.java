@@ -32,6 +32,7 @@ import microsoft.exchange.webservices.data.core.response.ServiceResponse;
 import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
 import microsoft.exchange.webservices.data.core.enumeration.service.ServiceResult;
 import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
 import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceResponseException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceXmlDeserializationException;
 import microsoft.exchange.webservices.data.misc.IAsyncResult;
@@ -168,6 +169,22 @@ public abstract class MultiResponseServiceRequest<TResponse extends ServiceRespo
     return serviceResponses;
   }
 
+  /**
+   * Throws the error of a singleton request whose errors are thrown if the server was busy.
+   *
+   * @param serviceResponses the service responses
+   * @throws Exception if the server was busy
+   */
+  @Override
+  protected void throwIfServerBusy(ServiceResponseCollection<TResponse> serviceResponses)
+      throws Exception {
+    if (this.errorHandlingMode == ServiceErrorHandling.ThrowOnError
+        && serviceResponses.getCount() == 1
+        && serviceResponses.getResponseAtIndex(0).getErrorCode() == ServiceError.ErrorServerBusy) {
+      serviceResponses.getResponseAtIndex(0).throwIfNecessary();
+    }
+  }
+
   /**
    * Ends executing this async request.
    *
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.request;
+
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+import microsoft.exchange.webservices.data.core.exception.http.EWSHttpException;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceResponseException;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import microsoft.exchange.webservices.data.misc.IRequestInstrumentation;
+import microsoft.exchange.webservices.data.misc.RequestMetrics;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.InputStream;
+
+/**
+ * Measures one attempt of a service request and reports it to an IRequestInstrumentation.
+ */
+final class RequestMetricsRecorder {
+
+  private static final Log LOG = LogFactory.getLog(RequestMetricsRecorder.class);
+
+  private final IRequestInstrumentation instrumentation;
+
+  private final String operationName;
+
+  private final int retryCount;
+
+  private final long started = System.nanoTime();
+
+  private long serializationStarted = -1;
+
+  private long serializationNanos = -1;
+
+  private HttpWebRequest request;
+
+  private long parseStarted = -1;
+
+  private CountingInputStream responseStream;
+
+  RequestMetricsRecorder(IRequestInstrumentation instrumentation, String operationName, int retryCount) {
+    this.instrumentation = instrumentation;
+    this.operationName = operationName;
+    this.retryCount = retryCount;
+  }
+
+  void serializationStarted() {
+    serializationStarted = System.nanoTime();
+  }
+
+  void serializationCompleted(HttpWebRequest request) {
+    serializationNanos = System.nanoTime() - serializationStarted;
+    this.request = request;
+  }
+
+  /**
+   * Starts measuring the parsing of the response.
+   *
+   * @param stream the response stream
+   * @return the stream to parse the response from
+   */
+  InputStream parsingStarted(InputStream stream) {
+    parseStarted = System.nanoTime();
+    responseStream = new CountingInputStream(stream);
+    return responseStream;
+  }
+
+  /**
+   * Reports the attempt to the instrumentation.
+   *
+   * @param result    the response object, null if the attempt failed or has none
+   * @param exception the exception the attempt failed with, null if it succeeded
+   */
+  void completed(Object result, Exception exception) {
+    long now = System.nanoTime();
+    RequestMetrics metrics = new RequestMetrics(operationName, retryCount, serializationNanos,
+        request == null ? -1 : request.getConnectionLeaseNanos(),
+        request == null ? -1 : request.getTimeToFirstByteNanos(),
+        responseStream == null ? -1 : responseStream.getByteCount(),
+        parseStarted < 0 ? -1 : now - parseStarted,
+        now - started, getHttpStatusCode(),
+        exception != null ? getErrorCode(exception) : getErrorCode(result), exception);
+    try {
+      instrumentation.requestCompleted(metrics);
+    } catch (RuntimeException e) {
+      LOG.warn("Request instrumentation failed for " + operationName, e);
+    }
+  }
+
+  private int getHttpStatusCode() {
+    if (request == null) {
+      return -1;
+    }
+    try {
+      return request.getResponseCode();
+    } catch (EWSHttpException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Gets the first error of the response messages of a parsed response.
+   *
+   * @param result the response object
+   * @return the error, null if all responses succeeded
+   */
+  private static ServiceError getErrorCode(Object result) {
+    if (result instanceof ServiceResponseCollection) {
+      for (Object response : (ServiceResponseCollection<?>) result) {
+        ServiceError errorCode = getErrorCode(response);
+        if (errorCode != null) {
+          return errorCode;
+        }
+      }
+    } else if (result instanceof ServiceResponse) {
+      ServiceError errorCode = ((ServiceResponse) result).getErrorCode();
+      if (errorCode != null && errorCode != ServiceError.NoError) {
+        return errorCode;
+      }
+    }
+    return null;
+  }
+
+  private static ServiceError getErrorCode(Exception exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ServiceResponseException) {
+        return ((ServiceResponseException) cause).getErrorCode();
+      }
+    }
+    return null;
+  }
+
+}
@@ -329,4 +329,12 @@ public final class ResolveNamesRequest extends
     return this.contactDataPropertySet;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
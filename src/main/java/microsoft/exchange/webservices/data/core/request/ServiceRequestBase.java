@@ -44,6 +44,9 @@ import microsoft.exchange.webservices.data.core.exception.service.local.ServiceV
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceXmlDeserializationException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceXmlSerializationException;
 import microsoft.exchange.webservices.data.core.exception.xml.XmlException;
+import microsoft.exchange.webservices.data.misc.IRequestInstrumentation;
+import microsoft.exchange.webservices.data.misc.ImpersonatedUserId;
+import microsoft.exchange.webservices.data.misc.ResponseTraceStream;
 import microsoft.exchange.webservices.data.misc.SoapFaultDetails;
 import microsoft.exchange.webservices.data.security.XmlNodeType;
 import org.apache.commons.io.IOUtils;
@@ -53,10 +56,11 @@ import org.apache.commons.logging.LogFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.ws.http.HTTPException;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -72,6 +76,16 @@ public abstract class ServiceRequestBase<T> {
    */
   private ExchangeService service;
 
+  /**
+   * The number of times the request was sent.
+   */
+  private int attempts;
+
+  /**
+   * Measures the current attempt, null if the service has no request instrumentation.
+   */
+  private RequestMetricsRecorder metricsRecorder;
+
   // Methods for subclasses to override
 
   /**
@@ -112,6 +126,16 @@ public abstract class ServiceRequestBase<T> {
    */
   protected abstract void writeElementsToXml(EwsServiceXmlWriter writer) throws Exception;
 
+  /**
+   * Gets a value indicating whether sending this request again has the same effect as
+   * sending it once, so that it may be retried when the server throttled it.
+   *
+   * @return true if the request only reads data
+   */
+  protected boolean isIdempotent() {
+    return false;
+  }
+
   /**
    * Validate request.
    *
@@ -203,15 +227,70 @@ public abstract class ServiceRequestBase<T> {
                                  EwsUtilities.WSSecurityUtilityNamespace);
     }
 
-    writer.writeStartElement(XmlNamespace.Soap, XmlElementNames.SOAPHeaderElementName);
+    if (this.canUseSoapHeaderTemplate()) {
+      SoapHeaderTemplate template =
+          SoapHeaderTemplate.forService(this.service, this.getRequestedServiceVersionString());
+      writer.writeFragment(template.getHeader());
+    } else {
+      writer.writeStartElement(XmlNamespace.Soap, XmlElementNames.SOAPHeaderElementName);
 
-    if (this.service.getCredentials() != null) {
-      this.service.getCredentials().emitExtraSoapHeaderNamespaceAliases(writer.getInternalWriter());
+      if (this.service.getCredentials() != null) {
+        this.service.getCredentials().emitExtraSoapHeaderNamespaceAliases(writer.getInternalWriter());
+      }
+
+      writeSoapHeadersToXml(writer, this.getRequestedServiceVersionString(),
+          this.service.getPreferredCulture(), this.service.getDateTimePrecision(),
+          this.service.getImpersonatedUserId());
+
+      if (this.service.getCredentials() != null) {
+        this.service.getCredentials()
+            .serializeExtraSoapHeaders(writer.getInternalWriter(), this.getXmlElementName());
+      }
+      this.service.doOnSerializeCustomSoapHeaders(writer.getInternalWriter());
+
+      writer.writeEndElement(); // soap:Header
     }
 
+    writer.writeStartElement(XmlNamespace.Soap, XmlElementNames.SOAPBodyElementName);
+
+    this.writeBodyToXml(writer);
+
+    writer.writeEndElement(); // soap:Body
+    writer.writeEndElement(); // soap:Envelope
+    writer.flush();
+  }
+
+  /**
+   * Determines whether the soap:Header element only depends on the service
+   * settings, so that a pre-rendered header can be sent. Headers
+   * added by the credentials or by custom serializers may change from one
+   * request to the next and are always written out.
+   *
+   * @return true if a header template can be used
+   */
+  private boolean canUseSoapHeaderTemplate() {
+    return (this.service.getCredentials() == null
+            || !this.service.getCredentials().emitsExtraSoapHeaders())
+        && (this.service.getOnSerializeCustomSoapHeaders() == null
+            || this.service.getOnSerializeCustomSoapHeaders().isEmpty());
+  }
+
+  /**
+   * Writes the headers that depend on the service settings.
+   *
+   * @param writer                 the writer
+   * @param requestedServerVersion the requested server version string
+   * @param preferredCulture       the preferred culture, or null
+   * @param dateTimePrecision      the DateTime precision
+   * @param impersonatedUserId     the impersonated user id, or null
+   * @throws Exception the exception
+   */
+  static void writeSoapHeadersToXml(EwsServiceXmlWriter writer, String requestedServerVersion,
+      Locale preferredCulture, DateTimePrecision dateTimePrecision,
+      ImpersonatedUserId impersonatedUserId) throws Exception {
     // Emit the RequestServerVersion header
     writer.writeStartElement(XmlNamespace.Types, XmlElementNames.RequestServerVersion);
-    writer.writeAttributeValue(XmlAttributeNames.Version, this.getRequestedServiceVersionString());
+    writer.writeAttributeValue(XmlAttributeNames.Version, requestedServerVersion);
     writer.writeEndElement(); // RequestServerVersion
 
 		/*
@@ -229,36 +308,20 @@ public abstract class ServiceRequestBase<T> {
 		 * writer.IsTimeZoneHeaderEmitted = true; }
 		 */
 
-    if (this.service.getPreferredCulture() != null) {
+    if (preferredCulture != null) {
       writer.writeElementValue(XmlNamespace.Types, XmlElementNames.MailboxCulture,
-                               this.service.getPreferredCulture().getDisplayName());
+                               preferredCulture.getDisplayName());
     }
 
     /** Emit the DateTimePrecision header */
 
-    if (this.getService().getDateTimePrecision().ordinal() != DateTimePrecision.Default.ordinal()) {
+    if (dateTimePrecision.ordinal() != DateTimePrecision.Default.ordinal()) {
       writer.writeElementValue(XmlNamespace.Types, XmlElementNames.DateTimePrecision,
-                               this.getService().getDateTimePrecision().toString());
-    }
-    if (this.service.getImpersonatedUserId() != null) {
-      this.service.getImpersonatedUserId().writeToXml(writer);
+                               dateTimePrecision.toString());
     }
-
-    if (this.service.getCredentials() != null) {
-      this.service.getCredentials()
-          .serializeExtraSoapHeaders(writer.getInternalWriter(), this.getXmlElementName());
+    if (impersonatedUserId != null) {
+      impersonatedUserId.writeToXml(writer);
     }
-    this.service.doOnSerializeCustomSoapHeaders(writer.getInternalWriter());
-
-    writer.writeEndElement(); // soap:Header
-
-    writer.writeStartElement(XmlNamespace.Soap, XmlElementNames.SOAPBodyElementName);
-
-    this.writeBodyToXml(writer);
-
-    writer.writeEndElement(); // soap:Body
-    writer.writeEndElement(); // soap:Envelope
-    writer.flush();
   }
 
   /**
@@ -329,6 +392,25 @@ public abstract class ServiceRequestBase<T> {
 
   }
 
+  /**
+   * Traces the response captured by a ResponseTraceStream.
+   *
+   * @param request     the response
+   * @param traceStream the stream the response was parsed from
+   * @throws XMLStreamException the XML stream exception
+   * @throws IOException        signals that an I/O exception has occurred
+   * @throws EWSHttpException   the EWS http exception
+   */
+  protected void traceResponse(HttpWebRequest request, ResponseTraceStream traceStream)
+      throws XMLStreamException, IOException, EWSHttpException {
+    this.traceResponse(request, traceStream.getResponseCopy());
+    if (traceStream.isTruncated()) {
+      this.service.traceMessage(TraceFlags.EwsResponse, String.format(
+          "Response trace truncated to %d of %d bytes.", traceStream.getResponseCopy().size(),
+          traceStream.getTotalBytesRead()));
+    }
+  }
+
   /**
    * Gets the response error stream.
    *
@@ -372,32 +454,27 @@ public abstract class ServiceRequestBase<T> {
     }
 
     /**
-     * If tracing is enabled, we read the entire response into a
-     * MemoryStream so that we can pass it along to the ITraceListener. Then
-     * we parse the response from the MemoryStream.
+     * If tracing is enabled, we parse the response straight off the wire
+     * through a ResponseTraceStream, which keeps a bounded copy of the bytes
+     * read. That copy is passed along to the ITraceListener afterwards.
      */
 
     try {
       this.getService().processHttpResponseHeaders(TraceFlags.EwsResponseHttpHeaders, response);
 
+      InputStream responseStream = this.measureResponseStream(
+          ServiceRequestBase.getResponseStream(response));
       if (this.getService().isTraceEnabledFor(TraceFlags.EwsResponse)) {
-        ByteArrayOutputStream memoryStream = new ByteArrayOutputStream();
-        InputStream serviceResponseStream = ServiceRequestBase.getResponseStream(response);
-
-        int data = serviceResponseStream.read();
-        while (data != -1) {
-          memoryStream.write(data);
-          data = serviceResponseStream.read();
+        ResponseTraceStream traceStream =
+            new ResponseTraceStream(responseStream, this.getService().getMaximumTraceResponseSize());
+        try {
+          EwsServiceXmlReader ewsXmlReader = new EwsServiceXmlReader(traceStream, this.getService());
+          serviceResponse = this.readResponse(ewsXmlReader);
+        } finally {
+          this.traceResponse(response, traceStream);
+          traceStream.close();
         }
-
-        this.traceResponse(response, memoryStream);
-        ByteArrayInputStream memoryStreamIn = new ByteArrayInputStream(memoryStream.toByteArray());
-        EwsServiceXmlReader ewsXmlReader = new EwsServiceXmlReader(memoryStreamIn, this.getService());
-        serviceResponse = this.readResponse(ewsXmlReader);
-        serviceResponseStream.close();
-        memoryStream.flush();
       } else {
-        InputStream responseStream = ServiceRequestBase.getResponseStream(response);
         EwsServiceXmlReader ewsXmlReader = new EwsServiceXmlReader(responseStream, this.getService());
         serviceResponse = this.readResponse(ewsXmlReader);
       }
@@ -483,23 +560,17 @@ public abstract class ServiceRequestBase<T> {
       this.getService().processHttpResponseHeaders(TraceFlags.EwsResponseHttpHeaders, req);
       if (500 == req.getResponseCode()) {
         if (this.service.isTraceEnabledFor(TraceFlags.EwsResponse)) {
-          ByteArrayOutputStream memoryStream = new ByteArrayOutputStream();
-          InputStream serviceResponseStream = ServiceRequestBase.getResponseErrorStream(req);
-          while (true) {
-            int data = serviceResponseStream.read();
-            if (-1 == data) {
-              break;
-            } else {
-              memoryStream.write(data);
-            }
+          ResponseTraceStream traceStream = new ResponseTraceStream(
+              ServiceRequestBase.getResponseErrorStream(req), this.service.getMaximumTraceResponseSize());
+          try {
+            EwsServiceXmlReader reader = new EwsServiceXmlReader(traceStream, this.service);
+            soapFaultDetails = this.readSoapFault(reader);
+            // Drain whatever the fault parser did not consume so the trace is complete.
+            IOUtils.skip(traceStream, Long.MAX_VALUE);
+          } finally {
+            this.traceResponse(req, traceStream);
+            traceStream.close();
           }
-          memoryStream.flush();
-          serviceResponseStream.close();
-          this.traceResponse(req, memoryStream);
-          ByteArrayInputStream memoryStreamIn = new ByteArrayInputStream(memoryStream.toByteArray());
-          EwsServiceXmlReader reader = new EwsServiceXmlReader(memoryStreamIn, this.service);
-          soapFaultDetails = this.readSoapFault(reader);
-          memoryStream.close();
         } else {
           InputStream serviceResponseStream = ServiceRequestBase.getResponseStream(req);
           EwsServiceXmlReader reader = new EwsServiceXmlReader(serviceResponseStream, this.service);
@@ -633,13 +704,7 @@ public abstract class ServiceRequestBase<T> {
   protected HttpWebRequest validateAndEmitRequest() throws Exception {
     this.validate();
 
-    HttpWebRequest request;
-    
-    if (service.getMaximumPoolingConnections() > 1) {
-        request = buildEwsHttpPoolingWebRequest();
-    } else {
-        request = buildEwsHttpWebRequest();
-    }
+    HttpWebRequest request = buildServiceHttpWebRequest();
 
     try {
       try {
@@ -656,6 +721,26 @@ public abstract class ServiceRequestBase<T> {
     }
   }
 
+  /**
+   * Builds the HttpWebRequest object for current service request, from the pooling connection
+   * manager if the service allows more than one pooled connection.
+   *
+   * @return An HttpWebRequest instance
+   * @throws Exception on error
+   */
+  HttpWebRequest buildServiceHttpWebRequest() throws Exception {
+    IRequestInstrumentation instrumentation = service.getRequestInstrumentation();
+    this.metricsRecorder = instrumentation == null ? null
+        : new RequestMetricsRecorder(instrumentation, this.getXmlElementName(), this.attempts);
+    this.attempts++;
+
+    if (service.getMaximumPoolingConnections() > 1) {
+      return buildEwsHttpPoolingWebRequest();
+    } else {
+      return buildEwsHttpWebRequest();
+    }
+  }
+
   /**
    * Builds the HttpWebRequest object for current service request with exception handling.
    *
@@ -683,30 +768,85 @@ public abstract class ServiceRequestBase<T> {
   }
 
   private HttpWebRequest buildEwsHttpWebRequest(HttpWebRequest request) throws Exception {
+    boolean built = false;
     try {
 
       service.traceHttpRequestHeaders(TraceFlags.EwsRequestHttpHeaders, request);
 
-      ByteArrayOutputStream requestStream = (ByteArrayOutputStream) request.getOutputStream();
+      RequestMetricsRecorder recorder = this.metricsRecorder;
+      if (recorder != null) {
+        recorder.serializationStarted();
+      }
 
-      EwsServiceXmlWriter writer = new EwsServiceXmlWriter(service, requestStream);
+      OutputStream requestStream = request.getOutputStream();
 
       boolean needSignature =
           service.getCredentials() != null && service.getCredentials().isNeedSignature();
-      writer.setRequireWSSecurityUtilityNamespace(needSignature);
 
-      writeToXml(writer);
+      if (needSignature || service.isTraceEnabledFor(TraceFlags.EwsRequest)) {
+        // Signing and tracing need the whole request in memory.
+        ByteArrayOutputStream memoryStream = new ByteArrayOutputStream();
+        EwsServiceXmlWriter writer = new EwsServiceXmlWriter(service, memoryStream);
+        writer.setRequireWSSecurityUtilityNamespace(needSignature);
 
-      if (needSignature) {
-        service.getCredentials().sign(requestStream);
-      }
+        writeToXml(writer);
 
-      service.traceXml(TraceFlags.EwsRequest, requestStream);
+        if (needSignature) {
+          service.getCredentials().sign(memoryStream);
+        }
+
+        service.traceXml(TraceFlags.EwsRequest, memoryStream);
+        memoryStream.writeTo(requestStream);
+      } else {
+        EwsServiceXmlWriter writer = new EwsServiceXmlWriter(service, requestStream);
+        writeToXml(writer);
+      }
+      requestStream.close();
 
+      if (recorder != null) {
+        recorder.serializationCompleted(request);
+      }
+      built = true;
       return request;
     } catch (IOException e) {
       // Wrap exception.
       throw new ServiceRequestException(String.format("The request failed. %s", e.getMessage()), e);
+    } finally {
+      if (!built) {
+        // Nobody else gets hold of the request, so delete the content spooled so far.
+        try {
+          request.close();
+        } catch (IOException e) {
+          LOG.debug("Could not close a request that failed to serialize", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts measuring the parsing of the response of the current attempt.
+   *
+   * @param responseStream the response stream
+   * @return the stream to parse the response from
+   */
+  InputStream measureResponseStream(InputStream responseStream) {
+    RequestMetricsRecorder recorder = this.metricsRecorder;
+    return recorder == null ? responseStream : recorder.parsingStarted(responseStream);
+  }
+
+  /**
+   * Reports the metrics of the current attempt to the request instrumentation of the
+   * service, once the response was read or the attempt failed. Does nothing if the
+   * service has no request instrumentation.
+   *
+   * @param result    the response object, null if the attempt failed or has none
+   * @param exception the exception the attempt failed with, null if it succeeded
+   */
+  protected void completeMetrics(Object result, Exception exception) {
+    RequestMetricsRecorder recorder = this.metricsRecorder;
+    if (recorder != null) {
+      this.metricsRecorder = null;
+      recorder.completed(result, exception);
     }
   }
 
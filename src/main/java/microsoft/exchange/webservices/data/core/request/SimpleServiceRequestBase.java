@@ -31,6 +31,7 @@ import microsoft.exchange.webservices.data.misc.AsyncExecutor;
 import microsoft.exchange.webservices.data.misc.AsyncRequestResult;
 import microsoft.exchange.webservices.data.misc.CallableMethod;
 import microsoft.exchange.webservices.data.misc.IAsyncResult;
+import microsoft.exchange.webservices.data.misc.ThrottlingController;
 
 import java.io.IOException;
 import java.util.concurrent.Callable;
@@ -56,16 +57,54 @@ public abstract class SimpleServiceRequestBase<T> extends ServiceRequestBase<T>
    * @throws Exception on error
    */
   protected T internalExecute() throws Exception {
+    ThrottlingController throttlingController = this.getService().getThrottlingController();
+    if (throttlingController == null) {
+      return this.executeOnce();
+    }
+    final boolean idempotent = this.isIdempotent();
+    return throttlingController.execute(this.getService().getThrottlingKey(), idempotent,
+        new Callable<T>() {
+          public T call() throws Exception {
+            T result = executeOnce();
+            if (idempotent) {
+              throwIfServerBusy(result);
+            }
+            return result;
+          }
+        });
+  }
+
+  /**
+   * Throws if the response says the server is busy and the caller would get the
+   * error thrown anyway, so that the throttling controller sends the request again.
+   *
+   * @param result the response object
+   * @throws Exception if the server is busy
+   */
+  protected void throwIfServerBusy(T result) throws Exception {
+  }
+
+  /**
+   * Sends this request once.
+   *
+   * @return response object
+   * @throws Exception on error
+   */
+  private T executeOnce() throws Exception {
     HttpWebRequest response = null;
 
     try {
       response = this.validateAndEmitRequest();
-      return this.readResponse(response);
+      T result = this.readResponse(response);
+      this.completeMetrics(result, null);
+      return result;
     } catch (IOException ex) {
+      this.completeMetrics(null, ex);
       // Wrap exception.
       throw new ServiceRequestException(String.
           format("The request failed. %s", ex.getMessage()), ex);
     } catch (Exception e) {
+      this.completeMetrics(null, e);
       if (response != null) {
         this.getService().processHttpResponseHeaders(TraceFlags.
             EwsResponseHttpHeaders, response);
@@ -83,8 +122,15 @@ public abstract class SimpleServiceRequestBase<T> extends ServiceRequestBase<T>
    * @throws Exception on error
    */
   protected T endInternalExecute(IAsyncResult asyncResult) throws Exception {
-    HttpWebRequest response = (HttpWebRequest) asyncResult.get();
-    return this.readResponse(response);
+    try {
+      HttpWebRequest response = (HttpWebRequest) asyncResult.get();
+      T result = this.readResponse(response);
+      this.completeMetrics(result, null);
+      return result;
+    } catch (Exception e) {
+      this.completeMetrics(null, e);
+      throw e;
+    }
   }
 
   /**
@@ -97,11 +143,9 @@ public abstract class SimpleServiceRequestBase<T> extends ServiceRequestBase<T>
   public AsyncRequestResult beginExecute(AsyncCallback callback) throws Exception {
     this.validate();
 
-    HttpWebRequest request = this.buildEwsHttpWebRequest();
-    AsyncExecutor es = new AsyncExecutor();
+    HttpWebRequest request = this.buildServiceHttpWebRequest();
     Callable<?> cl = new CallableMethod(request);
-    Future<?> task = es.submit(cl, callback);
-    es.shutdown();
+    Future<?> task = AsyncExecutor.submit(this.getService().getAsyncExecutor(), cl, callback);
 
     return new AsyncRequestResult(this, request, task, null);
   }
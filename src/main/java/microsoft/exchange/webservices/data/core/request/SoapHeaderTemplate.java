@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.request;
+
+import microsoft.exchange.webservices.data.core.EwsServiceXmlWriter;
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.XmlElementNames;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ConnectingIdType;
+import microsoft.exchange.webservices.data.core.enumeration.misc.DateTimePrecision;
+import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
+import microsoft.exchange.webservices.data.misc.ImpersonatedUserId;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Represents the pre-rendered soap:Header element of the requests of a
+ * service, together with the service settings it was rendered from.
+ */
+final class SoapHeaderTemplate {
+
+  /**
+   * The last template rendered for each service. The services are weakly
+   * referenced, so a template is dropped with its service.
+   */
+  private static final Map<ExchangeService, SoapHeaderTemplate> templates =
+      new WeakHashMap<ExchangeService, SoapHeaderTemplate>();
+
+  /**
+   * The requested server version string.
+   */
+  private final String requestedServerVersion;
+
+  /**
+   * The preferred culture.
+   */
+  private final Locale preferredCulture;
+
+  /**
+   * The DateTime precision.
+   */
+  private final DateTimePrecision dateTimePrecision;
+
+  /**
+   * The impersonated user id.
+   */
+  private final ImpersonatedUserId impersonatedUserId;
+
+  /**
+   * The id type of the impersonated user id when the header was rendered.
+   */
+  private final ConnectingIdType impersonatedIdType;
+
+  /**
+   * The id of the impersonated user id when the header was rendered.
+   */
+  private final String impersonatedId;
+
+  /**
+   * The UTF-8 encoded soap:Header element.
+   */
+  private final byte[] header;
+
+  /**
+   * Renders the soap:Header element for the current settings of a service.
+   *
+   * @param service                the service
+   * @param requestedServerVersion the requested server version string
+   * @throws Exception the exception
+   */
+  SoapHeaderTemplate(ExchangeService service, String requestedServerVersion) throws Exception {
+    this.requestedServerVersion = requestedServerVersion;
+    this.preferredCulture = service.getPreferredCulture();
+    this.dateTimePrecision = service.getDateTimePrecision();
+    this.impersonatedUserId = service.getImpersonatedUserId();
+    this.impersonatedIdType =
+        this.impersonatedUserId != null ? this.impersonatedUserId.getIdType() : null;
+    this.impersonatedId = this.impersonatedUserId != null ? this.impersonatedUserId.getId() : null;
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    EwsServiceXmlWriter writer = new EwsServiceXmlWriter(service, stream);
+    try {
+      writer.writeStartElement(XmlNamespace.Soap, XmlElementNames.SOAPHeaderElementName);
+      ServiceRequestBase.writeSoapHeadersToXml(writer, this.requestedServerVersion,
+          this.preferredCulture, this.dateTimePrecision, this.impersonatedUserId);
+      writer.writeEndElement(); // soap:Header
+      writer.flush();
+    } finally {
+      writer.dispose();
+    }
+    this.header = stream.toByteArray();
+  }
+
+  /**
+   * Gets the template for the current settings of a service, rendering it if
+   * the settings changed since the last request of the service.
+   *
+   * @param service                the service
+   * @param requestedServerVersion the requested server version string
+   * @return the template
+   * @throws Exception the exception
+   */
+  static SoapHeaderTemplate forService(ExchangeService service, String requestedServerVersion)
+      throws Exception {
+    SoapHeaderTemplate template = getCached(service);
+    if (template == null || !template.matches(service, requestedServerVersion)) {
+      template = new SoapHeaderTemplate(service, requestedServerVersion);
+      synchronized (templates) {
+        templates.put(service, template);
+      }
+    }
+    return template;
+  }
+
+  /**
+   * Gets the last template rendered for a service.
+   *
+   * @param service the service
+   * @return the template, or null if none was rendered
+   */
+  static SoapHeaderTemplate getCached(ExchangeService service) {
+    synchronized (templates) {
+      return templates.get(service);
+    }
+  }
+
+  /**
+   * Determines whether the header was rendered from the current settings of
+   * a service. The requested server version can differ between requests and
+   * the impersonated user id can change without going through the service.
+   *
+   * @param service                the service
+   * @param requestedServerVersion the requested server version string
+   * @return true if the header can be sent with the service's requests
+   */
+  boolean matches(ExchangeService service, String requestedServerVersion) {
+    ImpersonatedUserId currentUserId = service.getImpersonatedUserId();
+    return this.requestedServerVersion.equals(requestedServerVersion)
+        && equals(this.preferredCulture, service.getPreferredCulture())
+        && this.dateTimePrecision == service.getDateTimePrecision()
+        && this.impersonatedUserId == currentUserId
+        && (currentUserId == null
+            || (this.impersonatedIdType == currentUserId.getIdType()
+                && equals(this.impersonatedId, currentUserId.getId())));
+  }
+
+  /**
+   * Gets the UTF-8 encoded soap:Header element.
+   *
+   * @return the header
+   */
+  byte[] getHeader() {
+    return this.header;
+  }
+
+  private static boolean equals(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+}
@@ -224,4 +224,12 @@ public class SyncFolderHierarchyRequest extends
     this.syncState = value;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -319,4 +319,12 @@ public class SyncFolderItemsRequest extends
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isIdempotent() {
+    return true;
+  }
+
 }
@@ -44,6 +44,7 @@ import org.apache.commons.logging.LogFactory;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -329,6 +330,31 @@ public abstract class ServiceObjectSchema implements
   private List<IndexedPropertyDefinition> indexedProperties =
       new ArrayList<IndexedPropertyDefinition>();
 
+  /**
+   * The ordinals of the registered property, numbered densely from 0 in order of registration.
+   */
+  private Map<PropertyDefinition, Integer> propertyOrdinals =
+      new HashMap<PropertyDefinition, Integer>();
+
+  /**
+   * The highest definition index kept in {@link #ordinalsByDefinitionIndex}. Definitions created
+   * after many others, e.g. once an application has made lots of extended property, are
+   * only kept in {@link #propertyOrdinals} so that the array stays small.
+   */
+  private static final int MAX_INDEXED_DEFINITION = 8191;
+
+  /**
+   * The same ordinals indexed by {@link PropertyDefinition#getDefinitionIndex()}, -1 for
+   * definitions that aren't registered. Resolves the registered instances without a hash lookup.
+   */
+  private int[] ordinalsByDefinitionIndex = new int[0];
+
+  /**
+   * The registered property, indexed by ordinal.
+   */
+  private List<PropertyDefinition> propertiesByOrdinal =
+      new ArrayList<PropertyDefinition>();
+
   /**
    * Registers a schema property.
    *
@@ -340,6 +366,21 @@ public abstract class ServiceObjectSchema implements
       boolean isInternal) {
     this.properties.put(property.getXmlElement(), property);
 
+    if (!this.propertyOrdinals.containsKey(property)) {
+      int index = property.getDefinitionIndex();
+      if (index <= MAX_INDEXED_DEFINITION) {
+        if (index >= this.ordinalsByDefinitionIndex.length) {
+          int length = this.ordinalsByDefinitionIndex.length;
+          this.ordinalsByDefinitionIndex = Arrays.copyOf(this.ordinalsByDefinitionIndex,
+              Math.min(Math.max(index + 1, length * 2), MAX_INDEXED_DEFINITION + 1));
+          Arrays.fill(this.ordinalsByDefinitionIndex, length, this.ordinalsByDefinitionIndex.length, -1);
+        }
+        this.ordinalsByDefinitionIndex[index] = this.propertiesByOrdinal.size();
+      }
+      this.propertyOrdinals.put(property, this.propertiesByOrdinal.size());
+      this.propertiesByOrdinal.add(property);
+    }
+
     if (!isInternal) {
       this.visibleProperties.add(property);
     }
@@ -411,6 +452,41 @@ public abstract class ServiceObjectSchema implements
     return this.firstClassSummaryProperties;
   }
 
+  /**
+   * Gets the number of property registered with this schema, visible and internal.
+   *
+   * @return the number of property, one more than the highest ordinal
+   */
+  public int getPropertyCount() {
+    return this.propertiesByOrdinal.size();
+  }
+
+  /**
+   * Gets the ordinal of a property within this schema. Ordinals are dense, so
+   * they can index arrays of per-property values.
+   *
+   * @param propertyDefinition the property definition
+   * @return the ordinal, or -1 if the property isn't registered with this schema
+   */
+  public int getPropertyOrdinal(PropertyDefinition propertyDefinition) {
+    int index = propertyDefinition.getDefinitionIndex();
+    if (index < this.ordinalsByDefinitionIndex.length && this.ordinalsByDefinitionIndex[index] >= 0) {
+      return this.ordinalsByDefinitionIndex[index];
+    }
+    Integer ordinal = this.propertyOrdinals.get(propertyDefinition);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * Gets the property with an ordinal.
+   *
+   * @param ordinal the ordinal
+   * @return the property definition
+   */
+  public PropertyDefinition getPropertyByOrdinal(int ordinal) {
+    return this.propertiesByOrdinal.get(ordinal);
+  }
+
   /**
    * Tries to get property definition.
    *
@@ -38,6 +38,11 @@ import java.net.URISyntaxException;
  */
 public abstract class ExchangeCredentials {
 
+  /**
+   * Whether the credential adds SOAP headers to requests, null until determined.
+   */
+  private volatile Boolean emitsExtraSoapHeaders;
+
   /**
    * Performs an implicit conversion from <see
    * cref="System.Net.NetworkCredential"/> to <see
@@ -119,6 +124,41 @@ public abstract class ExchangeCredentials {
     // do nothing by default.
   }
 
+  /**
+   * Gets a value indicating whether the credential adds namespace aliases or
+   * headers to the soap:Header element of requests. By default this is the
+   * case when the credential type overrides
+   * {@link #emitExtraSoapHeaderNamespaceAliases(XMLStreamWriter)} or
+   * {@link #serializeExtraSoapHeaders(XMLStreamWriter, String)}.
+   *
+   * @return true if the credential writes to the soap:Header element
+   */
+  public boolean emitsExtraSoapHeaders() {
+    Boolean emits = this.emitsExtraSoapHeaders;
+    if (emits == null) {
+      emits = this.overrides("emitExtraSoapHeaderNamespaceAliases", XMLStreamWriter.class)
+          || this.overrides("serializeExtraSoapHeaders", XMLStreamWriter.class, String.class);
+      this.emitsExtraSoapHeaders = emits;
+    }
+    return emits;
+  }
+
+  /**
+   * Determines whether the credential type overrides a method of this class.
+   *
+   * @param name           the method name
+   * @param parameterTypes the parameter types
+   * @return true if the method is overridden
+   */
+  private boolean overrides(String name, Class<?>... parameterTypes) {
+    try {
+      return this.getClass().getMethod(name, parameterTypes).getDeclaringClass()
+          != ExchangeCredentials.class;
+    } catch (NoSuchMethodException e) {
+      return true;
+    }
+  }
+
   /**
    * Adjusts the URL endpoint based on the credential.
    *
@@ -0,0 +1,295 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.dns;
+
+import microsoft.exchange.webservices.data.core.exception.dns.DnsException;
+import microsoft.exchange.webservices.data.core.exception.dns.DnsNameNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches the answers of {@link DnsClient#dnsQuery(Class, String, String)}.
+ * <p>
+ * An answer lives for the smallest time to live of its records. Records that
+ * carry no time to live, which is the case of the records read through JNDI,
+ * live for the default time to live. Names that don't exist and empty answers
+ * are cached for the shorter negative time to live. Other failures, such as
+ * timeouts, aren't cached. Concurrent queries for the same name share one lookup.
+ * </p>
+ */
+public class DnsCache {
+
+  /**
+   * The default maximum number of cached names.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+  /**
+   * The default lifetime of answers whose records carry no time to live: one hour.
+   */
+  public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60L * 60 * 1000;
+
+  /**
+   * The default lifetime of names that don't exist and empty answers: five minutes.
+   */
+  public static final long DEFAULT_NEGATIVE_TIME_TO_LIVE_MILLIS = 5L * 60 * 1000;
+
+  private static DnsCache defaultCache = new DnsCache();
+
+  /**
+   * The answers in access order, guarded by this.
+   */
+  private final LinkedHashMap<String, Answer> answers;
+
+  /**
+   * The lookups running, by name.
+   */
+  private final ConcurrentHashMap<String, FutureTask<Answer>> lookups =
+      new ConcurrentHashMap<String, FutureTask<Answer>>();
+
+  private final long timeToLiveMillis;
+
+  private final long negativeTimeToLiveMillis;
+
+  /**
+   * Initializes a new instance with the default limits.
+   */
+  public DnsCache() {
+    this(DEFAULT_MAX_ENTRIES, DEFAULT_TIME_TO_LIVE_MILLIS, DEFAULT_NEGATIVE_TIME_TO_LIVE_MILLIS);
+  }
+
+  /**
+   * Initializes a new instance.
+   *
+   * @param maxEntries               the maximum number of cached names
+   * @param timeToLiveMillis         the lifetime of answers whose records carry no time to live
+   * @param negativeTimeToLiveMillis the lifetime of names that don't exist and empty answers
+   */
+  public DnsCache(final int maxEntries, long timeToLiveMillis, long negativeTimeToLiveMillis) {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("maxEntries must be 1 or greater");
+    }
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.negativeTimeToLiveMillis = negativeTimeToLiveMillis;
+    this.answers = new LinkedHashMap<String, Answer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Gets the cache used by the Autodiscover service.
+   *
+   * @return the default cache, null if DNS answers aren't cached
+   */
+  public static synchronized DnsCache getDefault() {
+    return defaultCache;
+  }
+
+  /**
+   * Replaces the cache used by the Autodiscover service.
+   *
+   * @param cache the new default cache, null to not cache DNS answers
+   */
+  public static synchronized void setDefault(DnsCache cache) {
+    defaultCache = cache;
+  }
+
+  /**
+   * Performs a DNS query, or returns the cached answer.
+   *
+   * @param <T>              the generic type
+   * @param cls              DnsRecord Type
+   * @param domain           the domain
+   * @param dnsServerAddress IPAddress of DNS server to use (may be null)
+   * @return The DNS record list (never null but may be empty)
+   * @throws DnsException the dns exception
+   */
+  public <T extends DnsRecord> List<T> query(final Class<T> cls, final String domain,
+      final String dnsServerAddress) throws DnsException {
+    String key = cls.getName() + '|' + (dnsServerAddress == null ? "" : dnsServerAddress)
+        + '|' + domain.toLowerCase();
+
+    Answer answer = getAnswer(key);
+    if (answer == null) {
+      FutureTask<Answer> lookup = new FutureTask<Answer>(new Callable<Answer>() {
+        @Override
+        public Answer call() {
+          return lookup(cls, domain, dnsServerAddress);
+        }
+      });
+      FutureTask<Answer> running = lookups.putIfAbsent(key, lookup);
+      if (running == null) {
+        try {
+          lookup.run();
+        } finally {
+          lookups.remove(key, lookup);
+        }
+        running = lookup;
+      }
+      answer = awaitLookup(running);
+      if (answer.expiresAt > 0) {
+        synchronized (this) {
+          answers.put(key, answer);
+        }
+      }
+    }
+
+    if (answer.error != null) {
+      throw new DnsException(answer.error);
+    }
+    List<T> records = new ArrayList<T>(answer.records.size());
+    for (DnsRecord record : answer.records) {
+      records.add(cls.cast(record));
+    }
+    return records;
+  }
+
+  /**
+   * Removes all answers.
+   */
+  public synchronized void clear() {
+    answers.clear();
+  }
+
+  /**
+   * Gets the number of cached names, including expired ones not removed yet.
+   *
+   * @return the number of names
+   */
+  public synchronized int size() {
+    return answers.size();
+  }
+
+  /**
+   * Looks a name up in DNS.
+   *
+   * @param <T>              the generic type
+   * @param cls              DnsRecord Type
+   * @param domain           the domain
+   * @param dnsServerAddress IPAddress of DNS server to use (may be null)
+   * @return The DNS record list
+   * @throws DnsException the dns exception
+   */
+  protected <T extends DnsRecord> List<T> lookupRecords(Class<T> cls, String domain,
+      String dnsServerAddress) throws DnsException {
+    return DnsClient.dnsQuery(cls, domain, dnsServerAddress);
+  }
+
+  /**
+   * Gets the current time, used to expire answers.
+   *
+   * @return the current time in milliseconds
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private synchronized Answer getAnswer(String key) {
+    Answer answer = answers.get(key);
+    if (answer != null && answer.expiresAt <= currentTimeMillis()) {
+      answers.remove(key);
+      return null;
+    }
+    return answer;
+  }
+
+  private Answer lookup(Class<? extends DnsRecord> cls, String domain, String dnsServerAddress) {
+    List<? extends DnsRecord> records;
+    try {
+      records = lookupRecords(cls, domain, dnsServerAddress);
+    } catch (DnsNameNotFoundException e) {
+      return new Answer(Collections.<DnsRecord>emptyList(), e.getMessage(),
+          currentTimeMillis() + negativeTimeToLiveMillis);
+    } catch (DnsException e) {
+      // A timeout or server failure says nothing about the name, don't cache it.
+      return new Answer(Collections.<DnsRecord>emptyList(), e.getMessage(), 0);
+    }
+    if (records.isEmpty()) {
+      return new Answer(Collections.<DnsRecord>emptyList(), null,
+          currentTimeMillis() + negativeTimeToLiveMillis);
+    }
+
+    long lifetime = Long.MAX_VALUE;
+    for (DnsRecord record : records) {
+      if (record.getTimeToLive() > 0) {
+        lifetime = Math.min(lifetime, record.getTimeToLive() * 1000L);
+      }
+    }
+    if (lifetime == Long.MAX_VALUE) {
+      lifetime = timeToLiveMillis;
+    }
+    return new Answer(new ArrayList<DnsRecord>(records), null, currentTimeMillis() + lifetime);
+  }
+
+  private static Answer awaitLookup(FutureTask<Answer> lookup) throws DnsException {
+    try {
+      return lookup.get();
+    } catch (InterruptedException e) {
+      // Stop waiting for the lookup another thread runs, and keep the interrupt.
+      Thread.currentThread().interrupt();
+      throw new DnsException("Interrupted while waiting for the DNS lookup.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new DnsException(cause.getMessage());
+    }
+  }
+
+  /**
+   * The answer to a query.
+   */
+  private static final class Answer {
+
+    private final List<DnsRecord> records;
+
+    private final String error;
+
+    /**
+     * The time the answer expires at, 0 if the answer isn't cached.
+     */
+    private final long expiresAt;
+
+    Answer(List<DnsRecord> records, String error, long expiresAt) {
+      this.records = records;
+      this.error = error;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
@@ -25,7 +25,9 @@ package microsoft.exchange.webservices.data.dns;
 
 import microsoft.exchange.webservices.data.EWSConstants;
 import microsoft.exchange.webservices.data.core.exception.dns.DnsException;
+import microsoft.exchange.webservices.data.core.exception.dns.DnsNameNotFoundException;
 
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
@@ -36,12 +38,28 @@ import javax.naming.directory.InitialDirContext;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class that represents DNS Query client.
  */
 public class DnsClient {
 
+  /**
+   * The maximum number of idle contexts kept per DNS server. Contexts released
+   * while that many are idle are closed.
+   */
+  static final int MAX_IDLE_CONTEXTS = 4;
+
+  /**
+   * Contexts not used by a query, by DNS server address. A context is only used
+   * by one query at a time.
+   */
+  private static final ConcurrentHashMap<String, BlockingQueue<DirContext>> idleContexts =
+      new ConcurrentHashMap<String, BlockingQueue<DirContext>>();
+
   /**
    * Set up the environment used to construct the DirContext.
    *
@@ -74,9 +92,10 @@ public class DnsClient {
                                                                                                              DnsException {
 
     List<T> dnsRecordList = new ArrayList<T>();
+    DirContext ictx = null;
+    boolean reusable = false;
     try {
-      // Create initial context
-      DirContext ictx = new InitialDirContext(getEnv(dnsServerAddress));
+      ictx = acquireContext(dnsServerAddress);
 
       // Retrieve SRV record context attribute for the specified domain
       Attributes contextAttributes = ictx.getAttributes(domain,
@@ -99,11 +118,67 @@ public class DnsClient {
           }
         }
       }
+      reusable = true;
+    } catch (NameNotFoundException ne) {
+      throw new DnsNameNotFoundException(ne.getMessage());
     } catch (NamingException ne) {
       throw new DnsException(ne.getMessage());
     } catch (Exception e) {
       throw new DnsException(e.getMessage());
+    } finally {
+      if (ictx != null) {
+        releaseContext(dnsServerAddress, ictx, reusable);
+      }
     }
     return dnsRecordList;
   }
+
+  /**
+   * Takes an idle context for the DNS server, or creates one.
+   *
+   * @param dnsServerAddress IPAddress of DNS server to use (may be null)
+   * @return the context
+   * @throws NamingException the naming exception
+   */
+  static DirContext acquireContext(String dnsServerAddress) throws NamingException {
+    BlockingQueue<DirContext> idle = idleContexts.get(contextKey(dnsServerAddress));
+    DirContext context = (idle != null) ? idle.poll() : null;
+    return (context != null) ? context : new InitialDirContext(getEnv(dnsServerAddress));
+  }
+
+  /**
+   * Returns a context once a query is done with it. Contexts of failed queries,
+   * including those that failed with a naming exception, are closed rather than
+   * reused, as are contexts beyond {@link #MAX_IDLE_CONTEXTS}.
+   *
+   * @param dnsServerAddress IPAddress of DNS server the context uses (may be null)
+   * @param context          the context
+   * @param reusable         whether the context can serve further queries
+   */
+  static void releaseContext(String dnsServerAddress, DirContext context, boolean reusable) {
+    if (reusable) {
+      String key = contextKey(dnsServerAddress);
+      BlockingQueue<DirContext> idle = idleContexts.get(key);
+      if (idle == null) {
+        BlockingQueue<DirContext> created =
+            new ArrayBlockingQueue<DirContext>(MAX_IDLE_CONTEXTS);
+        idle = idleContexts.putIfAbsent(key, created);
+        if (idle == null) {
+          idle = created;
+        }
+      }
+      if (idle.offer(context)) {
+        return;
+      }
+    }
+    try {
+      context.close();
+    } catch (NamingException e) {
+      // Ignore exception while closing the context.
+    }
+  }
+
+  private static String contextKey(String dnsServerAddress) {
+    return (dnsServerAddress == null) ? "" : dnsServerAddress;
+  }
 }
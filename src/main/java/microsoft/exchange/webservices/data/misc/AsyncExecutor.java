@@ -23,31 +23,154 @@
 
 package microsoft.exchange.webservices.data.misc;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Bounded thread pool used to run asynchronous (beginXxx) service requests.
+ * <p>
+ * One instance is shared by all asynchronous requests of an
+ * {@link microsoft.exchange.webservices.data.core.ExchangeServiceBase}; callbacks are invoked
+ * on the pool thread that completed the request. At most {@link #DEFAULT_POOL_SIZE} requests
+ * run at the same time and {@link #DEFAULT_QUEUE_CAPACITY} more wait for a thread. A request
+ * submitted through {@link #submit(Executor, Callable, AsyncCallback)} while the queue is
+ * full is never run on the submitting thread: its future fails with a
+ * RejectedExecutionException and its callback is invoked right away.
+ * </p>
+ */
 public class AsyncExecutor extends ThreadPoolExecutor implements ExecutorService {
-  final static ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(1);
 
+  private static final Log LOG = LogFactory.getLog(AsyncExecutor.class);
+
+  /**
+   * Default number of pool threads.
+   */
+  public static final int DEFAULT_POOL_SIZE = 16;
+
+  /**
+   * Default number of requests that may wait for a pool thread.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+  /**
+   * Initializes a new instance with the default pool size and queue capacity.
+   */
   public AsyncExecutor() {
-    super(1, 5, 10, TimeUnit.SECONDS, queue);
+    this(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Initializes a new instance.
+   *
+   * @param poolSize      the maximum number of pool threads
+   * @param queueCapacity the maximum number of queued requests
+   */
+  public AsyncExecutor(int poolSize, int queueCapacity) {
+    super(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity),
+        new DaemonThreadFactory("ews-async-" + POOL_NUMBER.incrementAndGet() + "-"),
+        new ThreadPoolExecutor.AbortPolicy());
+    allowCoreThreadTimeOut(true);
   }
 
   public <T> Future<T> submit(Callable<T> task, AsyncCallback callback) {
+    return submit(this, task, callback);
+  }
+
+  /**
+   * Submits a task to an executor. The callback, if any, is invoked by the
+   * thread that completes the task, so no extra thread is needed to wait for it.
+   * If the executor rejects the task, the returned future fails with the
+   * RejectedExecutionException and the callback is invoked on the calling thread.
+   *
+   * @param executor the executor
+   * @param task     the task
+   * @param callback the callback, may be null
+   * @param <T>      the result type
+   * @return the future of the submitted task
+   */
+  public static <T> Future<T> submit(Executor executor, Callable<T> task, AsyncCallback callback) {
     if (task == null) {
       throw new NullPointerException();
     }
-    RunnableFuture<T> ftask = newTaskFor(task);
-    execute(ftask);
+    CallbackFutureTask<T> ftask = new CallbackFutureTask<T>(task, callback);
     if (callback != null) {
       callback.setTask(ftask);
     }
-    new Thread(callback).start();
+    try {
+      executor.execute(ftask);
+    } catch (RejectedExecutionException e) {
+      ftask.reject(e);
+    }
     return ftask;
   }
+
+  /**
+   * Creates an executor that runs every task on its own virtual thread.
+   * Virtual threads require Java 21 or later; on older runtimes a default
+   * {@link AsyncExecutor} is returned instead.
+   *
+   * @return the executor
+   */
+  public static ExecutorService newVirtualThreadExecutor() {
+    ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    return executor != null ? executor : new AsyncExecutor();
+  }
+
+  /**
+   * Looks up Executors.newVirtualThreadPerTaskExecutor() reflectively, as the
+   * library is compiled against Java 6.
+   *
+   * @return the virtual thread executor, or null if the runtime has no virtual threads
+   */
+  static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (Exception e) {
+      LOG.debug("Virtual threads are not available, falling back to a thread pool.", e);
+      return null;
+    }
+  }
+
+
+  private static class CallbackFutureTask<T> extends FutureTask<T> {
+
+    private final AsyncCallback callback;
+
+    CallbackFutureTask(Callable<T> callable, AsyncCallback callback) {
+      super(callable);
+      this.callback = callback;
+    }
+
+    void reject(RejectedExecutionException e) {
+      setException(e);
+    }
+
+    @Override
+    protected void done() {
+      if (callback != null) {
+        try {
+          callback.processMe(this);
+        } catch (RuntimeException e) {
+          LOG.error("Async callback failed", e);
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.exception.service.remote.ChunkedRequestException;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Splits a multi-response request over many objects into requests over
+ * chunks of them, and merges the responses of the chunks in the original order.
+ * <p>
+ * Chunks are executed as described for {@link ChunkedTask}.
+ * </p>
+ *
+ * @param <TItem>     the type of the objects the request is made for
+ * @param <TResponse> the type of the responses
+ */
+public abstract class ChunkedRequest<TItem, TResponse extends ServiceResponse>
+    extends ChunkedTask<TItem, ServiceResponseCollection<TResponse>> {
+
+  /**
+   * Executes the request for all objects.
+   *
+   * @param items       the objects
+   * @param chunkSize   the maximum number of objects per request, 0 for a single request
+   * @param parallelism the maximum number of requests executed at the same time
+   * @param executor    the executor for parallel requests, may be null if parallelism is 1
+   * @return the responses of all chunks, in the order of the objects
+   * @throws ChunkedRequestException if the request for a chunk failed after others completed;
+   *                                  it carries the responses of the completed chunks
+   * @throws Exception                if the request failed before any chunk completed
+   */
+  public ServiceResponseCollection<TResponse> execute(Iterable<TItem> items, int chunkSize,
+      int parallelism, Executor executor) throws Exception {
+    final List<TItem> list = new ArrayList<TItem>();
+    for (TItem item : items) {
+      list.add(item);
+    }
+    List<ServiceResponseCollection<TResponse>> results = executeChunks(list, chunkSize, parallelism, executor);
+    if (results.size() == 1) {
+      return results.get(0);
+    }
+
+    ServiceResponseCollection<TResponse> responses = new ServiceResponseCollection<TResponse>();
+    for (ServiceResponseCollection<TResponse> result : results) {
+      for (TResponse response : result) {
+        responses.add(response);
+      }
+    }
+    return responses;
+  }
+
+  /**
+   * Throws a {@link ChunkedRequestException} with the responses of the completed chunks.
+   */
+  @Override
+  protected List<ServiceResponseCollection<TResponse>> onPartialFailure(Exception failure,
+      List<List<TItem>> chunks, List<ServiceResponseCollection<TResponse>> results)
+      throws Exception {
+    throw new ChunkedRequestException(chunks.get(0).size(), results, failure);
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Splits work over many objects into chunks of them, and returns the results
+ * of the chunks in the original order.
+ * <p>
+ * Chunks are executed by the calling thread and, if the parallelism allows,
+ * by tasks on an executor that take the next chunk until none is left.
+ * Helper tasks that haven't started by the time the caller runs out of
+ * chunks never run, so a busy executor never blocks the caller.
+ * </p>
+ *
+ * @param <TItem>   the type of the objects the work is done for
+ * @param <TResult> the type of the result of a chunk
+ */
+public abstract class ChunkedTask<TItem, TResult> {
+
+  /**
+   * Executes the work for one chunk of the objects.
+   *
+   * @param chunk the objects
+   * @return the result
+   * @throws Exception if the work failed
+   */
+  protected abstract TResult executeChunk(List<TItem> chunk) throws Exception;
+
+  /**
+   * Executes the work for all objects.
+   *
+   * @param list        the objects
+   * @param chunkSize   the maximum number of objects per chunk, 0 for a single chunk
+   * @param parallelism the maximum number of chunks executed at the same time
+   * @param executor    the executor for parallel chunks, may be null if parallelism is 1
+   * @return the results of the chunks, in the order of the objects
+   * @throws Exception if the work for a chunk failed; no further chunks are started then,
+   *                   and chunks that already completed are passed to {@link #onPartialFailure}
+   */
+  public List<TResult> executeChunks(final List<TItem> list, int chunkSize,
+      int parallelism, Executor executor) throws Exception {
+    if (chunkSize <= 0 || list.size() <= chunkSize) {
+      return Collections.singletonList(executeChunk(list));
+    }
+
+    final int size = chunkSize;
+    final int chunkCount = (list.size() + size - 1) / size;
+    final AtomicReferenceArray<TResult> results = new AtomicReferenceArray<TResult>(chunkCount);
+    final AtomicInteger nextChunk = new AtomicInteger();
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    Callable<Void> worker = new Callable<Void>() {
+      public Void call() {
+        int chunk;
+        while (failure.get() == null && (chunk = nextChunk.getAndIncrement()) < chunkCount) {
+          int from = chunk * size;
+          try {
+            results.set(chunk, executeChunk(list.subList(from, Math.min(from + size, list.size()))));
+          } catch (Exception e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+        return null;
+      }
+    };
+
+    List<Helper> helpers = new ArrayList<Helper>();
+    if (executor != null) {
+      for (int i = 1; i < Math.min(parallelism, chunkCount); i++) {
+        Helper helper = new Helper(worker);
+        try {
+          executor.execute(helper);
+          helpers.add(helper);
+        } catch (RejectedExecutionException e) {
+          break;
+        }
+      }
+    }
+
+    worker.call();
+    for (Helper helper : helpers) {
+      helper.awaitIfStarted();
+    }
+
+    List<TResult> chunkResults = new ArrayList<TResult>(chunkCount);
+    boolean anyCompleted = false;
+    for (int i = 0; i < chunkCount; i++) {
+      chunkResults.add(results.get(i));
+      anyCompleted |= results.get(i) != null;
+    }
+    if (failure.get() != null) {
+      if (!anyCompleted) {
+        throw failure.get();
+      }
+      List<List<TItem>> chunks = new ArrayList<List<TItem>>(chunkCount);
+      for (int i = 0; i < chunkCount; i++) {
+        chunks.add(list.subList(i * size, Math.min((i + 1) * size, list.size())));
+      }
+      return onPartialFailure(failure.get(), chunks, chunkResults);
+    }
+    return chunkResults;
+  }
+
+  /**
+   * Called when the work for a chunk failed after the work for at least one other
+   * chunk completed. By default the failure is thrown and the completed results are dropped.
+   *
+   * @param failure the failure of the first chunk that failed
+   * @param chunks  the objects of each chunk
+   * @param results the result of each chunk, null for chunks that failed or were not started
+   * @return the results to return instead of throwing
+   * @throws Exception the failure to throw
+   */
+  protected List<TResult> onPartialFailure(Exception failure, List<List<TItem>> chunks,
+      List<TResult> results) throws Exception {
+    throw failure;
+  }
+
+  /**
+   * Runs the worker on an executor thread, unless the caller claimed it first.
+   */
+  private static final class Helper implements Runnable {
+
+    private final Callable<Void> worker;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Error error;
+
+    Helper(Callable<Void> worker) {
+      this.worker = worker;
+    }
+
+    public void run() {
+      if (!started.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        worker.call();
+      } catch (Error e) {
+        error = e;
+      } catch (Exception e) {
+        // The worker records failures itself.
+      } finally {
+        done.countDown();
+      }
+    }
+
+    /**
+     * Waits for the worker to finish if it has started, and prevents it from starting otherwise.
+     */
+    void awaitIfStarted() {
+      if (started.compareAndSet(false, true)) {
+        return;
+      }
+      boolean interrupted = false;
+      while (true) {
+        try {
+          done.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+
+}
@@ -21,50 +21,28 @@
  * THE SOFTWARE.
  */
 
-package microsoft.exchange.webservices.data.core.request;
+package microsoft.exchange.webservices.data.misc;
 
-import org.apache.http.Header;
-import org.apache.http.entity.BasicHttpEntity;
-import org.apache.http.message.BasicHeader;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-
-public class ByteArrayOSRequestEntity extends BasicHttpEntity {
-
-  private ByteArrayOutputStream os = null;
-
-  /**
-   * Constructor for ByteArrayOSRequestEntity.
-   */
-  public ByteArrayOSRequestEntity(OutputStream os) {
-    super();
-    this.os = (ByteArrayOutputStream) os;
-  }
-
-  @Override
-  public long getContentLength() {
-    return os.size();
-  }
+/**
+ * Creates named daemon threads, so pools owned by the library never keep the JVM alive.
+ */
+class DaemonThreadFactory implements ThreadFactory {
 
-  @Override
-  public Header getContentType() {
-    return new BasicHeader("Content-Type", "text/xml; charset=utf-8");
-  }
+  private final String namePrefix;
+  private final AtomicInteger threadNumber = new AtomicInteger();
 
-  @Override
-  public boolean isRepeatable() {
-    return true;
+  DaemonThreadFactory(String namePrefix) {
+    this.namePrefix = namePrefix;
   }
 
   @Override
-  public void writeTo(OutputStream out) throws IOException {
-    os.writeTo(out);
+  public Thread newThread(Runnable r) {
+    Thread thread = new Thread(r, namePrefix + threadNumber.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
   }
 
-  @Override
-  public boolean isStreaming() {
-    return false;
-  }
 }
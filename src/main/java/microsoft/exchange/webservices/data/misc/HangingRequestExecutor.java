@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the response readers of hanging requests, such as the ones behind a
+ * {@link microsoft.exchange.webservices.data.notification.StreamingSubscriptionConnection}.
+ * <p>
+ * A reader blocks on its connection for as long as the connection stays open.
+ * This executor shares one set of reader threads between all connections and
+ * reuses threads across reconnects. The shared default executor does not limit
+ * the number of open connections; to cap them, give a service its own instance
+ * created with a maximum through
+ * {@link microsoft.exchange.webservices.data.core.ExchangeServiceBase#setHangingRequestExecutor(HangingRequestExecutor)}.
+ * Once the maximum is reached, opening another connection fails.
+ * When the runtime supports virtual threads, {@link #newVirtualThreadExecutor(int)}
+ * lets one JVM hold tens of thousands of connections.
+ * </p>
+ */
+public class HangingRequestExecutor implements Executor {
+
+  /**
+   * Maximum number of connections of an executor that does not limit them.
+   */
+  public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+  private static HangingRequestExecutor defaultExecutor;
+
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final int maximumConnections;
+
+  /**
+   * Initializes a new instance that reads on platform threads and does not
+   * limit the number of connections.
+   */
+  public HangingRequestExecutor() {
+    this(UNBOUNDED);
+  }
+
+  /**
+   * Initializes a new instance that reads on platform threads.
+   *
+   * @param maximumConnections the maximum number of hanging requests read at the same time
+   */
+  public HangingRequestExecutor(int maximumConnections) {
+    this(new ThreadPoolExecutor(0, maximumConnections, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), new DaemonThreadFactory("ews-hanging-")), maximumConnections);
+  }
+
+  /**
+   * Initializes a new instance that reads on the threads of the given executor.
+   *
+   * @param executor           the executor running the readers
+   * @param maximumConnections the maximum number of hanging requests read at the same time
+   */
+  public HangingRequestExecutor(ExecutorService executor, int maximumConnections) {
+    if (maximumConnections < 1) {
+      throw new IllegalArgumentException("maximumConnections must be 1 or greater");
+    }
+    this.executor = executor;
+    this.maximumConnections = maximumConnections;
+    this.permits = new Semaphore(maximumConnections);
+  }
+
+  /**
+   * Creates an instance that reads every hanging request on its own virtual thread.
+   * Virtual threads require Java 21 or later; on older runtimes platform threads are used.
+   *
+   * @param maximumConnections the maximum number of hanging requests read at the same time
+   * @return the executor
+   */
+  public static HangingRequestExecutor newVirtualThreadExecutor(int maximumConnections) {
+    ExecutorService executor = AsyncExecutor.newVirtualThreadPerTaskExecutor();
+    return executor != null
+        ? new HangingRequestExecutor(executor, maximumConnections)
+        : new HangingRequestExecutor(maximumConnections);
+  }
+
+  /**
+   * Gets the executor shared by services that were not given one of their own.
+   * It does not limit the number of connections.
+   *
+   * @return the default executor
+   */
+  public static synchronized HangingRequestExecutor getDefault() {
+    if (defaultExecutor == null) {
+      defaultExecutor = new HangingRequestExecutor();
+    }
+    return defaultExecutor;
+  }
+
+  /**
+   * Replaces the executor shared by services that were not given one of their own.
+   * Hanging requests already running keep their current reader.
+   *
+   * @param executor the new default executor
+   */
+  public static synchronized void setDefault(HangingRequestExecutor executor) {
+    defaultExecutor = executor;
+  }
+
+  /**
+   * Starts reading a hanging request.
+   *
+   * @param reader the reader, which returns once its connection is closed
+   * @throws RejectedExecutionException if the maximum number of connections is reached
+   *                                    or the executor has been shut down
+   */
+  @Override
+  public void execute(final Runnable reader) {
+    if (!permits.tryAcquire()) {
+      throw new RejectedExecutionException(String.format(
+          "The maximum number of %d concurrent hanging requests has been reached.", maximumConnections));
+    }
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            reader.run();
+          } finally {
+            permits.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the maximum number of hanging requests read at the same time.
+   *
+   * @return the maximum number of connections
+   */
+  public int getMaximumConnections() {
+    return maximumConnections;
+  }
+
+  /**
+   * Gets the number of hanging requests currently being read.
+   *
+   * @return the number of active connections
+   */
+  public int getActiveConnections() {
+    return maximumConnections - permits.availablePermits();
+  }
+
+  /**
+   * Stops accepting new hanging requests. Readers already running finish once
+   * their connection is closed.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+}
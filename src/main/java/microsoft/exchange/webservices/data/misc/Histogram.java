@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of non-negative values, like latencies or sizes, in the
+ * manner of HdrHistogram.
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split into
+ * 2<sup>precisionBits</sup> buckets of equal width, so a value is reported with a
+ * relative error of at most 2<sup>-precisionBits</sup> and values below
+ * 2<sup>precisionBits + 1</sup> are exact. Recording is lock-free and takes constant
+ * time, so a histogram can be shared by all threads. Reads are not synchronized with
+ * concurrent recording and may miss values recorded at the same time.
+ * </p>
+ */
+public class Histogram {
+
+  private final int precisionBits;
+
+  private final AtomicLongArray counts;
+
+  private final AtomicLong count = new AtomicLong();
+
+  private final AtomicLong sum = new AtomicLong();
+
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+  private final AtomicLong max = new AtomicLong(-1);
+
+  /**
+   * Creates a histogram with a relative error of about 3%.
+   */
+  public Histogram() {
+    this(5);
+  }
+
+  /**
+   * Creates a histogram.
+   *
+   * @param precisionBits the number of bits a value is resolved to, from 1 to 10
+   */
+  public Histogram(int precisionBits) {
+    if (precisionBits < 1 || precisionBits > 10) {
+      throw new IllegalArgumentException("precisionBits must be between 1 and 10");
+    }
+    this.precisionBits = precisionBits;
+    this.counts = new AtomicLongArray((64 - precisionBits) << precisionBits);
+  }
+
+  /**
+   * Records a value.
+   *
+   * @param value the value
+   */
+  public void record(long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("value must not be negative");
+    }
+    counts.incrementAndGet(indexOf(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current;
+    while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+      // Lost a race, try again.
+    }
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      // Lost a race, try again.
+    }
+  }
+
+  /**
+   * Gets the number of recorded values.
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Gets the smallest recorded value.
+   *
+   * @return the minimum, 0 if no value was recorded
+   */
+  public long getMin() {
+    long value = min.get();
+    return value == Long.MAX_VALUE ? 0 : value;
+  }
+
+  /**
+   * Gets the largest recorded value.
+   *
+   * @return the maximum, 0 if no value was recorded
+   */
+  public long getMax() {
+    return Math.max(max.get(), 0);
+  }
+
+  /**
+   * Gets the mean of the recorded values.
+   *
+   * @return the mean, 0 if no value was recorded
+   */
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  /**
+   * Gets the value at a percentile: the largest value that is equivalent to the
+   * recorded value below which the given percentage of values fall.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the value, 0 if no value was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+    long total = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      total += counts.get(i);
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestEquivalentValue(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Resets the histogram. Values recorded at the same time may be lost or only
+   * partially counted.
+   */
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    min.set(Long.MAX_VALUE);
+    max.set(-1);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d, min=%d, p50=%d, p90=%d, p99=%d, max=%d", getCount(), getMin(),
+        getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), getMax());
+  }
+
+  int indexOf(long value) {
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent <= precisionBits) {
+      return (int) value;
+    }
+    int shift = exponent - precisionBits;
+    return ((shift + 1) << precisionBits) + (int) ((value >>> shift) - (1L << precisionBits));
+  }
+
+  long highestEquivalentValue(int index) {
+    int subBuckets = 1 << precisionBits;
+    if (index < 2 * subBuckets) {
+      return index;
+    }
+    int shift = (index >> precisionBits) - 1;
+    long lowest = ((long) (index & (subBuckets - 1)) + subBuckets) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+/**
+ * IRequestInstrumentation receives the metrics of every request sent to Exchange Web
+ * Services.
+ * <p>
+ * It is called on the thread that executed the request, once per attempt, after the
+ * response was parsed or the attempt failed. Implementations must be thread-safe and
+ * should return quickly; exceptions they throw are logged and otherwise ignored.
+ * </p>
+ *
+ * @see InMemoryRequestInstrumentation
+ */
+public interface IRequestInstrumentation {
+
+  /**
+   * Handles the metrics of a request attempt.
+   *
+   * @param metrics the metrics
+   */
+  void requestCompleted(RequestMetrics metrics);
+
+}
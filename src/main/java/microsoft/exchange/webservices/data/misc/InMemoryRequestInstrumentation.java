@@ -0,0 +1,251 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps histograms of the request metrics per operation in memory, to be read by a
+ * monitoring system or logged now and then.
+ */
+public class InMemoryRequestInstrumentation implements IRequestInstrumentation {
+
+  private final ConcurrentMap<String, OperationStatistics> operations =
+      new ConcurrentHashMap<String, OperationStatistics>();
+
+  @Override
+  public void requestCompleted(RequestMetrics metrics) {
+    getOrCreate(metrics.getOperationName()).record(metrics);
+  }
+
+  /**
+   * Gets the statistics of an operation.
+   *
+   * @param operationName the name of the operation, like FindItem
+   * @return the statistics, null if the operation wasn't executed
+   */
+  public OperationStatistics getStatistics(String operationName) {
+    return operations.get(operationName);
+  }
+
+  /**
+   * Gets the statistics of all operations that were executed.
+   *
+   * @return the statistics by operation name
+   */
+  public Map<String, OperationStatistics> getStatistics() {
+    return Collections.unmodifiableMap(new HashMap<String, OperationStatistics>(operations));
+  }
+
+  /**
+   * Removes all statistics.
+   */
+  public void reset() {
+    operations.clear();
+  }
+
+  private OperationStatistics getOrCreate(String operationName) {
+    OperationStatistics statistics = operations.get(operationName);
+    if (statistics == null) {
+      OperationStatistics created = new OperationStatistics();
+      statistics = operations.putIfAbsent(operationName, created);
+      if (statistics == null) {
+        statistics = created;
+      }
+    }
+    return statistics;
+  }
+
+
+  /**
+   * The statistics of the attempts of one operation. Times are in nanoseconds.
+   */
+  public static final class OperationStatistics {
+
+    private final AtomicLong attempts = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final Histogram serializationTime = new Histogram();
+
+    private final Histogram connectionLeaseTime = new Histogram();
+
+    private final Histogram timeToFirstByte = new Histogram();
+
+    private final Histogram responseSize = new Histogram();
+
+    private final Histogram parseTime = new Histogram();
+
+    private final Histogram totalTime = new Histogram();
+
+    private final ConcurrentMap<ServiceError, AtomicLong> errors =
+        new ConcurrentHashMap<ServiceError, AtomicLong>();
+
+    OperationStatistics() {
+    }
+
+    void record(RequestMetrics metrics) {
+      attempts.incrementAndGet();
+      if (!metrics.isSucceeded()) {
+        failures.incrementAndGet();
+      }
+      if (metrics.getRetryCount() > 0) {
+        retries.incrementAndGet();
+      }
+      recordIfKnown(serializationTime, metrics.getSerializationNanos());
+      recordIfKnown(connectionLeaseTime, metrics.getConnectionLeaseNanos());
+      recordIfKnown(timeToFirstByte, metrics.getTimeToFirstByteNanos());
+      recordIfKnown(responseSize, metrics.getResponseBytes());
+      recordIfKnown(parseTime, metrics.getParseNanos());
+      recordIfKnown(totalTime, metrics.getTotalNanos());
+      if (metrics.getErrorCode() != null) {
+        AtomicLong counter = errors.get(metrics.getErrorCode());
+        if (counter == null) {
+          AtomicLong created = new AtomicLong();
+          counter = errors.putIfAbsent(metrics.getErrorCode(), created);
+          if (counter == null) {
+            counter = created;
+          }
+        }
+        counter.incrementAndGet();
+      }
+    }
+
+    private static void recordIfKnown(Histogram histogram, long value) {
+      if (value >= 0) {
+        histogram.record(value);
+      }
+    }
+
+    /**
+     * Gets the number of attempts, including retries.
+     *
+     * @return the number of attempts
+     */
+    public long getAttempts() {
+      return attempts.get();
+    }
+
+    /**
+     * Gets the number of attempts that failed.
+     *
+     * @return the number of failed attempts
+     */
+    public long getFailures() {
+      return failures.get();
+    }
+
+    /**
+     * Gets the number of attempts that were retries of a throttled request.
+     *
+     * @return the number of retries
+     */
+    public long getRetries() {
+      return retries.get();
+    }
+
+    /**
+     * Gets the time spent writing requests.
+     *
+     * @return the histogram
+     */
+    public Histogram getSerializationTime() {
+      return serializationTime;
+    }
+
+    /**
+     * Gets the time until a connection was leased.
+     *
+     * @return the histogram
+     */
+    public Histogram getConnectionLeaseTime() {
+      return connectionLeaseTime;
+    }
+
+    /**
+     * Gets the time until the response headers were received.
+     *
+     * @return the histogram
+     */
+    public Histogram getTimeToFirstByte() {
+      return timeToFirstByte;
+    }
+
+    /**
+     * Gets the size of the response bodies in bytes.
+     *
+     * @return the histogram
+     */
+    public Histogram getResponseSize() {
+      return responseSize;
+    }
+
+    /**
+     * Gets the time spent reading and parsing responses.
+     *
+     * @return the histogram
+     */
+    public Histogram getParseTime() {
+      return parseTime;
+    }
+
+    /**
+     * Gets the time of whole attempts.
+     *
+     * @return the histogram
+     */
+    public Histogram getTotalTime() {
+      return totalTime;
+    }
+
+    /**
+     * Gets how often the server reported each error.
+     *
+     * @return the number of attempts by error
+     */
+    public Map<ServiceError, Long> getErrors() {
+      Map<ServiceError, Long> counts = new HashMap<ServiceError, Long>();
+      for (Map.Entry<ServiceError, AtomicLong> entry : errors.entrySet()) {
+        counts.put(entry.getKey(), entry.getValue().get());
+      }
+      return Collections.unmodifiableMap(counts);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("attempts=%d, failures=%d, retries=%d, total=[%s], errors=%s",
+          getAttempts(), getFailures(), getRetries(), totalTime, getErrors());
+    }
+  }
+
+}
@@ -31,10 +31,9 @@ import microsoft.exchange.webservices.data.core.exception.misc.FormatException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceXmlDeserializationException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -49,6 +48,14 @@ public class MapiTypeConverter {
 
   private static final Log LOG = LogFactory.getLog(MapiTypeConverter.class);
 
+  /**
+   * Formats of date time values, read in the default time zone.
+   */
+  static final DateTimeFormatter DATE_TIME_Z_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+  private static final DateTimeFormatter DATE_TIME_LOWER_Z_FORMAT =
+      DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss'z'");
+  private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss");
+
   private static final IFunction<String, Object> DATE_TIME_PARSER = new IFunction<String, Object>() {
     public Object func(final String s) {
       return parseDateTime(s);
@@ -286,19 +293,17 @@ public class MapiTypeConverter {
 
 
   private static Object parseDateTime(String s) {
-    String utcPattern = "yyyy-MM-dd'T'HH:mm:ss'Z'";
     String errMsg = String.format("Date String %s not in " + "valid UTC/local format", s);
-    DateFormat utcFormatter = new SimpleDateFormat(utcPattern);
     Date dt;
 
     if (s.endsWith("Z")) {
       try {
-        dt = utcFormatter.parse(s);
-      } catch (ParseException e) {
+        dt = DATE_TIME_Z_FORMAT.parseLocalDateTime(s).toDate();
+      } catch (IllegalArgumentException e) {
         s = s.substring(0, 10) + "T12:00:00Z";
         try {
-          dt = utcFormatter.parse(s);
-        } catch (ParseException e1) {
+          dt = DATE_TIME_Z_FORMAT.parseLocalDateTime(s).toDate();
+        } catch (IllegalArgumentException e1) {
           LOG.error(e);
           throw new IllegalArgumentException(
               errMsg, e);
@@ -306,19 +311,9 @@ public class MapiTypeConverter {
       }
     } else if (s.endsWith("z")) {
       // String in UTC format yyyy-MM-ddTHH:mm:ssZ
-      utcFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'z'");
-      try {
-        dt = utcFormatter.parse(s);
-      } catch (ParseException e) {
-        throw new IllegalArgumentException(e);
-      }
+      dt = DATE_TIME_LOWER_Z_FORMAT.parseLocalDateTime(s).toDate();
     } else {
-      utcFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-      try {
-        dt = utcFormatter.parse(s);
-      } catch (ParseException e) {
-        throw new IllegalArgumentException(e);
-      }
+      dt = DATE_TIME_FORMAT.parseLocalDateTime(s).toDate();
     }
     return dt;
   }
@@ -34,11 +34,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -66,12 +65,7 @@ public class MapiTypeConverterMapEntry {
           map.put(Long.class, new Long(0L));
           map.put(Float.class, new Float(0.0));
           map.put(Double.class, new Double(0.0D));
-          SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-          try {
-            map.put(Date.class, formatter.parse("0001-01-01 12:00:00"));
-          } catch (ParseException e) {
-            LOG.error(e);
-          }
+          map.put(Date.class, new GregorianCalendar(1, Calendar.JANUARY, 1, 12, 0, 0).getTime());
           map.put(UUID.class, UUID.fromString("00000000-0000-0000-0000-000000000000"));
           map.put(String.class, null);
 
@@ -145,9 +139,7 @@ public class MapiTypeConverterMapEntry {
           o = Integer.parseInt(value + "");
           return o;
         } else if (this.getType().isInstance(new Date())) {
-          DateFormat df = new SimpleDateFormat(
-              "yyyy-MM-dd'T'HH:mm:ss'Z'");
-          return df.parse(value + "");
+          return MapiTypeConverter.DATE_TIME_Z_FORMAT.parseLocalDateTime(value + "").toDate();
         } else if (this.getType().isInstance(Boolean.valueOf(false))) {
           Object o = null;
           o = Boolean.parseBoolean(value + "");
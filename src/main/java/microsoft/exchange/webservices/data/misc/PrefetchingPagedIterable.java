@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Iterates over the results of a paged search, fetching the next pages in the
+ * background while the caller consumes the current one.
+ * <p>
+ * At most the prefetch depth pages are fetched ahead of the page being consumed,
+ * and pages are dropped once consumed, so the memory used does not grow with the
+ * number of results. With a prefetch depth of 0, each page is fetched by the caller
+ * when the previous one is exhausted. A page that could not be fetched ends the
+ * iteration with a {@link RuntimeException} caused by the failure.
+ * </p>
+ * <p>
+ * Each call to {@link #iterator()} starts again at the first page. Iterators are
+ * not thread-safe and must not be used at the same time as other iterators of the
+ * same instance, since they may share the view pages are fetched with.
+ * </p>
+ *
+ * @param <T> the type of the results
+ */
+public abstract class PrefetchingPagedIterable<T> implements Iterable<T> {
+
+  private final int offset;
+
+  private final int prefetchDepth;
+
+  private final Executor executor;
+
+  /**
+   * Initializes a new instance.
+   *
+   * @param offset        the offset of the first page
+   * @param prefetchDepth the number of pages fetched ahead of the page being consumed
+   * @param executor      the executor that fetches pages in the background, may be null
+   *                      if the prefetch depth is 0
+   */
+  protected PrefetchingPagedIterable(int offset, int prefetchDepth, Executor executor) {
+    if (prefetchDepth < 0) {
+      throw new IllegalArgumentException("prefetchDepth must not be negative");
+    }
+    this.offset = offset;
+    this.prefetchDepth = prefetchDepth;
+    this.executor = executor;
+  }
+
+  /**
+   * Fetches the page at an offset. Pages are fetched one at a time.
+   *
+   * @param offset the offset
+   * @return the page
+   * @throws Exception if the page could not be fetched
+   */
+  protected abstract Page<T> fetchPage(int offset) throws Exception;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new PageIterator();
+  }
+
+
+  /**
+   * A page of results.
+   *
+   * @param <T> the type of the results
+   */
+  public static final class Page<T> {
+
+    private final List<T> results;
+
+    private final Integer nextPageOffset;
+
+    /**
+     * Initializes a new instance.
+     *
+     * @param results        the results on the page
+     * @param moreAvailable  whether more results are available
+     * @param nextPageOffset the offset of the next page
+     */
+    public Page(List<T> results, boolean moreAvailable, Integer nextPageOffset) {
+      this.results = results == null ? Collections.<T>emptyList() : results;
+      this.nextPageOffset = moreAvailable ? nextPageOffset : null;
+    }
+  }
+
+
+  private final class PageIterator implements Iterator<T> {
+
+    private final Queue<Page<T>> fetched = new ArrayDeque<Page<T>>();
+
+    private Iterator<T> current = Collections.<T>emptyList().iterator();
+
+    private Integer nextOffset = offset;
+
+    private boolean fetching;
+
+    private Throwable failure;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        Integer demandOffset = null;
+        synchronized (this) {
+          while (fetched.isEmpty() && fetching) {
+            try {
+              this.wait();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new RuntimeException("Interrupted while waiting for the next page.", e);
+            }
+          }
+          if (!fetched.isEmpty()) {
+            current = fetched.remove().results.iterator();
+          } else if (failure instanceof Error) {
+            throw (Error) failure;
+          } else if (failure != null) {
+            throw new RuntimeException(String.format("The next page could not be fetched. %s",
+                failure.getMessage()), failure);
+          } else if (nextOffset == null) {
+            return false;
+          } else {
+            demandOffset = startFetch();
+          }
+        }
+        if (demandOffset != null) {
+          // Nothing is fetched ahead; fetch the page the caller waits for itself.
+          fetch(demandOffset);
+        }
+      }
+      prefetch();
+      return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Starts fetching the next page in the background if fewer than the prefetch
+     * depth pages are waiting to be consumed.
+     */
+    private void prefetch() {
+      final Integer prefetchOffset;
+      synchronized (this) {
+        if (executor == null || fetched.size() >= prefetchDepth) {
+          return;
+        }
+        prefetchOffset = startFetch();
+      }
+      if (prefetchOffset == null) {
+        return;
+      }
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            fetch(prefetchOffset);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        synchronized (this) {
+          fetching = false;
+        }
+      }
+    }
+
+    /**
+     * Claims the next page for fetching.
+     *
+     * @return the offset of the page, or null if it is being fetched or there are no more pages
+     */
+    private Integer startFetch() {
+      if (fetching || failure != null || nextOffset == null) {
+        return null;
+      }
+      fetching = true;
+      return nextOffset;
+    }
+
+    private void fetch(int pageOffset) {
+      Page<T> page = null;
+      Throwable error = null;
+      try {
+        page = fetchPage(pageOffset);
+      } catch (Throwable e) {
+        error = e;
+      }
+      synchronized (this) {
+        fetching = false;
+        if (page != null) {
+          fetched.add(page);
+          nextOffset = page.nextPageOffset;
+        } else {
+          failure = error;
+        }
+        this.notifyAll();
+      }
+      if (page != null) {
+        prefetch();
+      }
+    }
+  }
+
+}
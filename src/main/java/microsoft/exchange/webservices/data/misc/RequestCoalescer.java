@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines concurrent single-object requests into batch requests.
+ * <p>
+ * The first caller for a key opens a batch and waits until the window has
+ * passed or the batch is full, then executes one request for all ids that
+ * joined it. The other callers wait for that request and each get the
+ * response for their own id. No thread is used besides the callers'.
+ * </p>
+ * <p>
+ * Keys are compared by identity, so binds share a batch only if they use the
+ * same property set instance, such as {@code PropertySet.FirstClassProperties}.
+ * </p>
+ *
+ * @param <TId>       the type of the ids
+ * @param <TResponse> the type of the responses
+ */
+public abstract class RequestCoalescer<TId, TResponse extends ServiceResponse> {
+
+  private final long windowNanos;
+
+  private final int maxBatchSize;
+
+  private final Map<Object, Batch> openBatches = new IdentityHashMap<Object, Batch>();
+
+  /**
+   * Initializes a new instance.
+   *
+   * @param windowMillis the time in milliseconds a batch stays open for more ids
+   * @param maxBatchSize the number of ids at which a batch is executed without waiting
+   */
+  protected RequestCoalescer(int windowMillis, int maxBatchSize) {
+    if (windowMillis < 0) {
+      throw new IllegalArgumentException("windowMillis must not be negative");
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive");
+    }
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Executes one request for the ids of a batch. Errors of single ids must be
+   * returned as responses, not thrown.
+   *
+   * @param key the key of the batch
+   * @param ids the ids, in the order of the expected responses
+   * @return the responses
+   * @throws Exception if the request as a whole failed
+   */
+  protected abstract ServiceResponseCollection<TResponse> executeBatch(Object key, List<TId> ids)
+      throws Exception;
+
+  /**
+   * Gets the response for an id, executing it together with the ids that other
+   * threads request for the same key at the same time.
+   *
+   * @param key the key, e.g. the property set
+   * @param id  the id
+   * @return the response for the id
+   * @throws Exception if the batch request failed
+   */
+  public TResponse execute(Object key, TId id) throws Exception {
+    Batch batch;
+    int index;
+    boolean leader;
+    synchronized (this) {
+      batch = openBatches.get(key);
+      leader = batch == null;
+      if (leader) {
+        batch = new Batch();
+        openBatches.put(key, batch);
+      }
+      index = batch.ids.size();
+      batch.ids.add(id);
+      if (batch.ids.size() >= maxBatchSize) {
+        close(key, batch);
+      }
+    }
+
+    if (leader) {
+      awaitClose(key, batch);
+      ServiceResponseCollection<TResponse> responses = null;
+      Exception failure = null;
+      try {
+        responses = executeBatch(key, batch.ids);
+      } catch (Exception e) {
+        failure = e;
+      } finally {
+        if (responses == null && failure == null) {
+          failure = new IllegalStateException("The batch request failed.");
+        }
+        batch.complete(responses, failure);
+      }
+    }
+    return batch.getResponse(index);
+  }
+
+  /**
+   * Waits until the batch is full or the window has passed, then closes it.
+   * Other callers wait for the batch, so an interrupt only ends the window early.
+   */
+  private void awaitClose(Object key, Batch batch) {
+    long deadline = System.nanoTime() + windowNanos;
+    synchronized (batch) {
+      long remaining;
+      try {
+        while (!batch.closed && (remaining = deadline - System.nanoTime()) > 0) {
+          TimeUnit.NANOSECONDS.timedWait(batch, remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      close(key, batch);
+    }
+  }
+
+  /**
+   * Closes a batch for new ids. Must be called with the lock held.
+   */
+  private void close(Object key, Batch batch) {
+    if (openBatches.get(key) == batch) {
+      openBatches.remove(key);
+    }
+    synchronized (batch) {
+      batch.closed = true;
+      batch.notifyAll();
+    }
+  }
+
+
+  /**
+   * The ids of one batch request and, once executed, its outcome.
+   */
+  private final class Batch {
+
+    private final List<TId> ids = new ArrayList<TId>();
+
+    private boolean closed;
+
+    private boolean done;
+
+    private ServiceResponseCollection<TResponse> responses;
+
+    private Exception failure;
+
+    synchronized void complete(ServiceResponseCollection<TResponse> responses, Exception failure) {
+      this.responses = responses;
+      this.failure = failure;
+      this.done = true;
+      notifyAll();
+    }
+
+    synchronized TResponse getResponse(int index) throws Exception {
+      while (!done) {
+        wait();
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return responses.getResponseAtIndex(index);
+    }
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+
+/**
+ * Describes one attempt of a request to Exchange Web Services, as reported to an
+ * {@link IRequestInstrumentation}. Times are in nanoseconds and, like the response size,
+ * are -1 when the attempt did not get that far or the connection doesn't measure them.
+ */
+public final class RequestMetrics {
+
+  private final String operationName;
+
+  private final int retryCount;
+
+  private final long serializationNanos;
+
+  private final long connectionLeaseNanos;
+
+  private final long timeToFirstByteNanos;
+
+  private final long responseBytes;
+
+  private final long parseNanos;
+
+  private final long totalNanos;
+
+  private final int httpStatusCode;
+
+  private final ServiceError errorCode;
+
+  private final Exception exception;
+
+  /**
+   * Creates the metrics of a request attempt.
+   *
+   * @param operationName        the name of the operation
+   * @param retryCount           the number of earlier attempts of the same request
+   * @param serializationNanos   the time spent writing the request
+   * @param connectionLeaseNanos the time until a connection was leased and connected
+   * @param timeToFirstByteNanos the time until the response headers were received
+   * @param responseBytes        the size of the response body
+   * @param parseNanos           the time spent reading and parsing the response body
+   * @param totalNanos           the time of the whole attempt
+   * @param httpStatusCode       the HTTP status code, -1 if there was no response
+   * @param errorCode            the error reported by the server, null if there was none
+   * @param exception            the exception the attempt failed with, null if it succeeded
+   */
+  public RequestMetrics(String operationName, int retryCount, long serializationNanos,
+      long connectionLeaseNanos, long timeToFirstByteNanos, long responseBytes, long parseNanos,
+      long totalNanos, int httpStatusCode, ServiceError errorCode, Exception exception) {
+    this.operationName = operationName;
+    this.retryCount = retryCount;
+    this.serializationNanos = serializationNanos;
+    this.connectionLeaseNanos = connectionLeaseNanos;
+    this.timeToFirstByteNanos = timeToFirstByteNanos;
+    this.responseBytes = responseBytes;
+    this.parseNanos = parseNanos;
+    this.totalNanos = totalNanos;
+    this.httpStatusCode = httpStatusCode;
+    this.errorCode = errorCode;
+    this.exception = exception;
+  }
+
+  /**
+   * Gets the name of the operation, like FindItem.
+   *
+   * @return the operation name
+   */
+  public String getOperationName() {
+    return operationName;
+  }
+
+  /**
+   * Gets the number of earlier attempts of the same request, which were throttled
+   * and sent again.
+   *
+   * @return the retry count, 0 for the first attempt
+   */
+  public int getRetryCount() {
+    return retryCount;
+  }
+
+  /**
+   * Gets the time spent writing the request, including signing it.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getSerializationNanos() {
+    return serializationNanos;
+  }
+
+  /**
+   * Gets the time from sending the request until a connection was leased from the
+   * pool. For a new connection this includes connecting and the TLS handshake.
+   *
+   * @return the time in nanoseconds, -1 if unknown
+   */
+  public long getConnectionLeaseNanos() {
+    return connectionLeaseNanos;
+  }
+
+  /**
+   * Gets the time from sending the request until the headers of the response were
+   * received, including any authentication round trips.
+   *
+   * @return the time in nanoseconds, -1 if unknown
+   */
+  public long getTimeToFirstByteNanos() {
+    return timeToFirstByteNanos;
+  }
+
+  /**
+   * Gets the size of the response body as it was parsed, after it was decompressed.
+   *
+   * @return the number of bytes, -1 if the response wasn't read
+   */
+  public long getResponseBytes() {
+    return responseBytes;
+  }
+
+  /**
+   * Gets the time spent reading and parsing the response body. As the response is
+   * parsed while it is received, this includes the transfer of the body.
+   *
+   * @return the time in nanoseconds, -1 if the response wasn't read
+   */
+  public long getParseNanos() {
+    return parseNanos;
+  }
+
+  /**
+   * Gets the time of the whole attempt, from writing the request until the response
+   * was parsed or the attempt failed.
+   *
+   * @return the time in nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * Gets the HTTP status code of the response.
+   *
+   * @return the status code, -1 if no response was received
+   */
+  public int getHttpStatusCode() {
+    return httpStatusCode;
+  }
+
+  /**
+   * Gets the error the server reported in a SOAP fault, or else the first error in the
+   * response messages. An attempt whose response messages report errors still succeeded.
+   *
+   * @return the error, null if the server reported none
+   */
+  public ServiceError getErrorCode() {
+    return errorCode;
+  }
+
+  /**
+   * Gets the exception the attempt failed with.
+   *
+   * @return the exception, null if the attempt succeeded
+   */
+  public Exception getException() {
+    return exception;
+  }
+
+  /**
+   * Gets whether the attempt succeeded.
+   *
+   * @return true if the response was parsed
+   */
+  public boolean isSucceeded() {
+    return exception == null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: retry=%d, serialization=%d, lease=%d, ttfb=%d, bytes=%d, parse=%d, "
+        + "total=%d, status=%d, error=%s", operationName, retryCount, serializationNanos,
+        connectionLeaseNanos, timeToFirstByteNanos, responseBytes, parseNanos, totalNanos,
+        httpStatusCode, errorCode);
+  }
+
+}
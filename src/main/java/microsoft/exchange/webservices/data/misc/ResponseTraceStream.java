@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A stream that copies everything it returns from its read() calls into a
+ * bounded in-memory trace buffer. The response can therefore be parsed
+ * straight off the wire while still being available for tracing once
+ * parsing has finished.
+ */
+public class ResponseTraceStream extends FilterInputStream {
+
+  private final ByteArrayOutputStream responseCopy;
+  private final int maximumTraceSize;
+  private long totalBytesRead;
+
+  /**
+   * Initializes a new instance of the ResponseTraceStream class.
+   *
+   * @param stream           the underlying stream
+   * @param maximumTraceSize the maximum number of bytes kept for tracing
+   */
+  public ResponseTraceStream(final InputStream stream, final int maximumTraceSize) {
+    super(stream);
+    this.maximumTraceSize = maximumTraceSize;
+    this.responseCopy = new ByteArrayOutputStream(Math.min(maximumTraceSize, 8192));
+  }
+
+  @Override
+  public int read() throws IOException {
+    final int data = in.read();
+    if (data != -1) {
+      totalBytesRead++;
+      if (responseCopy.size() < maximumTraceSize) {
+        responseCopy.write(data);
+      }
+    }
+    return data;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int count) throws IOException {
+    final int retVal = in.read(buffer, offset, count);
+    if (retVal > 0) {
+      totalBytesRead += retVal;
+      final int remaining = maximumTraceSize - responseCopy.size();
+      if (remaining > 0) {
+        responseCopy.write(buffer, offset, Math.min(remaining, retVal));
+      }
+    }
+    return retVal;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    // Skipped bytes must still end up in the trace, so read them instead.
+    final byte[] buffer = new byte[(int) Math.min(n, 4096)];
+    long skipped = 0;
+    while (skipped < n) {
+      final int retVal = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+      if (retVal == -1) {
+        break;
+      }
+      skipped += retVal;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  /**
+   * Gets the traced copy of the bytes read so far.
+   *
+   * @return the response copy, at most maximumTraceSize bytes long
+   */
+  public ByteArrayOutputStream getResponseCopy() {
+    return responseCopy;
+  }
+
+  /**
+   * Gets the total number of bytes read from the underlying stream.
+   *
+   * @return the number of bytes read
+   */
+  public long getTotalBytesRead() {
+    return totalBytesRead;
+  }
+
+  /**
+   * Gets a value indicating whether the trace copy was cut off at the maximum trace size.
+   *
+   * @return true if some of the bytes read were not kept for tracing
+   */
+  public boolean isTruncated() {
+    return totalBytesRead > responseCopy.size();
+  }
+
+}
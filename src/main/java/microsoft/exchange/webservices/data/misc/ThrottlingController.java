@@ -0,0 +1,497 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+import microsoft.exchange.webservices.data.core.exception.http.HttpErrorException;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceRequestException;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceResponseException;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests in flight per target when the server throttles.
+ * <p>
+ * Each target, typically a server and mailbox, has a limit that grows by one
+ * request per limit's worth of successful requests and is halved when the server
+ * answers ErrorServerBusy or with HTTP 503 or 429 (additive increase, multiplicative
+ * decrease). Requests above the limit wait in a queue, and no request is sent before
+ * the back-off time advised by the server has passed. Idempotent requests that were
+ * throttled are sent again after the back-off.
+ * </p>
+ * <p>
+ * The state of a target is dropped once it has had no request for the idle time and
+ * its limit is back at the initial limit, or after ten times the idle time if the
+ * server throttled it, so that the controller doesn't grow with every mailbox ever used.
+ * </p>
+ */
+public class ThrottlingController {
+
+  /**
+   * The name of the error detail holding the advised back-off time.
+   */
+  public static final String BACK_OFF_MILLISECONDS = "BackOffMilliseconds";
+
+  private final int initialLimit;
+
+  private final int maxLimit;
+
+  private final int maxRetries;
+
+  private final long maxQueueWaitMillis;
+
+  private final long defaultBackOffMillis;
+
+  private final long idleNanos;
+
+  private final AtomicLong nextEviction;
+
+  private final ConcurrentMap<Object, Limiter> limiters = new ConcurrentHashMap<Object, Limiter>();
+
+  /**
+   * Initializes a new instance with an initial limit of 8 and a maximum of 64 requests in flight,
+   * two retries, a queue wait of at most one minute, a back-off of one second when the
+   * server does not advise one and an idle time of five minutes.
+   */
+  public ThrottlingController() {
+    this(8, 64, 2, 60000, 1000);
+  }
+
+  /**
+   * Initializes a new instance with an idle time of five minutes.
+   *
+   * @param initialLimit         the number of requests in flight a new target allows
+   * @param maxLimit             the maximum number of requests in flight per target
+   * @param maxRetries           how often a throttled idempotent request is sent again
+   * @param maxQueueWaitMillis   how long a request waits for admission before it is rejected,
+   *                             0 to wait indefinitely
+   * @param defaultBackOffMillis the back-off if the server does not advise one
+   */
+  public ThrottlingController(int initialLimit, int maxLimit, int maxRetries,
+      long maxQueueWaitMillis, long defaultBackOffMillis) {
+    this(initialLimit, maxLimit, maxRetries, maxQueueWaitMillis, defaultBackOffMillis, 300000);
+  }
+
+  /**
+   * Initializes a new instance.
+   *
+   * @param initialLimit         the number of requests in flight a new target allows
+   * @param maxLimit             the maximum number of requests in flight per target
+   * @param maxRetries           how often a throttled idempotent request is sent again
+   * @param maxQueueWaitMillis   how long a request waits for admission before it is rejected,
+   *                             0 to wait indefinitely
+   * @param defaultBackOffMillis the back-off if the server does not advise one
+   * @param idleMillis           how long a target without requests keeps its state
+   */
+  public ThrottlingController(int initialLimit, int maxLimit, int maxRetries,
+      long maxQueueWaitMillis, long defaultBackOffMillis, long idleMillis) {
+    if (initialLimit < 1 || maxLimit < initialLimit) {
+      throw new IllegalArgumentException("limits must satisfy 1 <= initialLimit <= maxLimit");
+    }
+    if (maxRetries < 0 || maxQueueWaitMillis < 0 || defaultBackOffMillis < 0) {
+      throw new IllegalArgumentException("maxRetries, maxQueueWaitMillis and defaultBackOffMillis "
+          + "must not be negative");
+    }
+    if (idleMillis < 1) {
+      throw new IllegalArgumentException("idleMillis must be 1 or greater");
+    }
+    this.initialLimit = initialLimit;
+    this.maxLimit = maxLimit;
+    this.maxRetries = maxRetries;
+    this.maxQueueWaitMillis = maxQueueWaitMillis;
+    this.defaultBackOffMillis = defaultBackOffMillis;
+    this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    this.nextEviction = new AtomicLong(System.nanoTime() + this.idleNanos);
+  }
+
+  /**
+   * Executes a request once it is admitted for the target.
+   *
+   * @param key        the target of the request
+   * @param idempotent whether the request may be sent again if it was throttled
+   * @param request    the request
+   * @param <T>        the type of the result
+   * @return the result of the request
+   * @throws Exception if the request failed, or wasn't admitted within the maximum queue wait
+   */
+  public <T> T execute(Object key, boolean idempotent, Callable<T> request) throws Exception {
+    Limiter limiter = getLimiter(key);
+    for (int attempt = 0; ; attempt++) {
+      while (!limiter.enqueue()) {
+        // The limiter was dropped after it was looked up.
+        limiter = getLimiter(key);
+      }
+      long admitted = limiter.acquire();
+      T result;
+      try {
+        result = request.call();
+      } catch (Exception e) {
+        long backOff = getBackOffMillis(e);
+        if (backOff < 0) {
+          limiter.release(admitted, -1);
+          throw e;
+        }
+        limiter.release(admitted, backOff);
+        if (!idempotent || attempt >= maxRetries) {
+          throw e;
+        }
+        limiter.retried();
+        continue;
+      } catch (Error e) {
+        limiter.release(admitted, -1);
+        throw e;
+      }
+      limiter.release(admitted, getBackOffMillis(result));
+      return result;
+    }
+  }
+
+  /**
+   * Gets the state of the limiter of a target.
+   *
+   * @param key the target
+   * @return the state, or null if no request was made for the target
+   */
+  public Metrics getMetrics(Object key) {
+    Limiter limiter = limiters.get(key);
+    return limiter == null ? null : limiter.snapshot();
+  }
+
+  /**
+   * Gets the state of the limiters of all targets.
+   *
+   * @return the state by target
+   */
+  public Map<Object, Metrics> getMetrics() {
+    Map<Object, Metrics> metrics = new HashMap<Object, Metrics>();
+    for (Map.Entry<Object, Limiter> entry : limiters.entrySet()) {
+      metrics.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return Collections.unmodifiableMap(metrics);
+  }
+
+  private Limiter getLimiter(Object key) {
+    long now = System.nanoTime();
+    long next = nextEviction.get();
+    if (now - next >= 0 && nextEviction.compareAndSet(next, now + idleNanos)) {
+      evictIdleLimiters(now);
+    }
+    Limiter limiter = limiters.get(key);
+    if (limiter == null) {
+      Limiter created = new Limiter();
+      limiter = limiters.putIfAbsent(key, created);
+      if (limiter == null) {
+        limiter = created;
+      }
+    }
+    return limiter;
+  }
+
+  private void evictIdleLimiters(long now) {
+    for (Map.Entry<Object, Limiter> entry : limiters.entrySet()) {
+      if (entry.getValue().evictIfIdle(now)) {
+        limiters.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Gets the back-off advised by a failed request.
+   *
+   * @return the back-off in milliseconds, or -1 if the request wasn't throttled
+   */
+  private long getBackOffMillis(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ServiceResponseException) {
+        return getBackOffMillis(((ServiceResponseException) cause).getResponse());
+      }
+      if (cause instanceof HttpErrorException) {
+        int code = ((HttpErrorException) cause).getHttpErrorCode();
+        return code == 503 || code == 429 ? defaultBackOffMillis : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the longest back-off advised by the responses of a successful request. Responses
+   * that were throttled are returned to the caller as they are.
+   *
+   * @return the back-off in milliseconds, or -1 if no response was throttled
+   */
+  private long getBackOffMillis(Object result) {
+    long backOff = -1;
+    if (result instanceof ServiceResponseCollection) {
+      for (Object response : (ServiceResponseCollection<?>) result) {
+        backOff = Math.max(backOff, getBackOffMillis((ServiceResponse) response));
+      }
+    }
+    return backOff;
+  }
+
+  private long getBackOffMillis(ServiceResponse response) {
+    if (response == null || response.getErrorCode() != ServiceError.ErrorServerBusy) {
+      return -1;
+    }
+    Map<String, String> details = response.getErrorDetails();
+    String value = details == null ? null : details.get(BACK_OFF_MILLISECONDS);
+    if (value != null) {
+      try {
+        return Math.max(0, Long.parseLong(value.trim()));
+      } catch (NumberFormatException e) {
+        // Fall back to the default.
+      }
+    }
+    return defaultBackOffMillis;
+  }
+
+
+  /**
+   * The admission state of one target.
+   */
+  private final class Limiter {
+
+    private double limit = initialLimit;
+
+    private int inFlight;
+
+    private int queued;
+
+    private boolean backingOff;
+
+    private long backOffUntil;
+
+    private long lastDecrease = System.nanoTime();
+
+    private long throttled;
+
+    private long rejected;
+
+    private long retried;
+
+    private long lastUsed = System.nanoTime();
+
+    private boolean evicted;
+
+    /**
+     * Queues a request, unless the limiter was dropped.
+     *
+     * @return false if the limiter was dropped and must be looked up again
+     */
+    synchronized boolean enqueue() {
+      if (evicted) {
+        return false;
+      }
+      queued++;
+      return true;
+    }
+
+    /**
+     * Waits until a queued request may be sent.
+     *
+     * @return the time the request was admitted
+     */
+    synchronized long acquire() throws InterruptedException, ServiceRequestException {
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMillis);
+      try {
+        while (true) {
+          long now = System.nanoTime();
+          if (backingOff && now - backOffUntil >= 0) {
+            backingOff = false;
+          }
+          if (!backingOff && inFlight < (int) limit) {
+            inFlight++;
+            return now;
+          }
+          long wait = backingOff ? backOffUntil - now : Long.MAX_VALUE;
+          if (maxQueueWaitMillis > 0) {
+            if (deadline - now <= 0) {
+              rejected++;
+              throw new ServiceRequestException(String.format(
+                  "The request was not sent because the server is throttling; "
+                      + "%d requests in flight, limit %d.", inFlight, (int) limit));
+            }
+            wait = Math.min(wait, deadline - now);
+          }
+          if (wait == Long.MAX_VALUE) {
+            this.wait();
+          } else {
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+          }
+        }
+      } finally {
+        queued--;
+      }
+    }
+
+    /**
+     * Releases a request and adjusts the limit to its outcome.
+     *
+     * @param admitted the time the request was admitted
+     * @param backOff  the back-off advised by the server, or -1 if the request wasn't throttled
+     */
+    synchronized void release(long admitted, long backOff) {
+      inFlight--;
+      lastUsed = System.nanoTime();
+      if (backOff < 0) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      } else {
+        throttled++;
+        // Requests that were already in flight when the limit was last decreased
+        // report the same congestion and don't decrease it again.
+        if (admitted - lastDecrease >= 0) {
+          limit = Math.max(1, limit / 2);
+          lastDecrease = System.nanoTime();
+        }
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backOff);
+        if (!backingOff || until - backOffUntil > 0) {
+          backingOff = backOff > 0;
+          backOffUntil = until;
+        }
+      }
+      this.notifyAll();
+    }
+
+    synchronized void retried() {
+      retried++;
+    }
+
+    /**
+     * Marks the limiter as dropped if it has been idle long enough.
+     *
+     * @param now the current time
+     * @return true if the limiter was dropped
+     */
+    synchronized boolean evictIfIdle(long now) {
+      if (inFlight > 0 || queued > 0 || (backingOff && now - backOffUntil < 0)) {
+        return false;
+      }
+      long idle = now - lastUsed;
+      evicted = limit >= initialLimit ? idle >= idleNanos : idle / 10 >= idleNanos;
+      return evicted;
+    }
+
+    synchronized Metrics snapshot() {
+      return new Metrics((int) limit, inFlight, queued, throttled, rejected, retried);
+    }
+  }
+
+
+  /**
+   * A snapshot of the admission state of one target.
+   */
+  public static final class Metrics {
+
+    private final int limit;
+
+    private final int inFlight;
+
+    private final int queued;
+
+    private final long throttled;
+
+    private final long rejected;
+
+    private final long retried;
+
+    Metrics(int limit, int inFlight, int queued, long throttled, long rejected, long retried) {
+      this.limit = limit;
+      this.inFlight = inFlight;
+      this.queued = queued;
+      this.throttled = throttled;
+      this.rejected = rejected;
+      this.retried = retried;
+    }
+
+    /**
+     * Gets the number of requests that may be in flight.
+     *
+     * @return the current limit
+     */
+    public int getLimit() {
+      return limit;
+    }
+
+    /**
+     * Gets the number of requests in flight.
+     *
+     * @return the number of requests in flight
+     */
+    public int getInFlight() {
+      return inFlight;
+    }
+
+    /**
+     * Gets the number of requests waiting for admission.
+     *
+     * @return the number of queued requests
+     */
+    public int getQueued() {
+      return queued;
+    }
+
+    /**
+     * Gets the number of requests the server throttled.
+     *
+     * @return the number of throttled requests
+     */
+    public long getThrottled() {
+      return throttled;
+    }
+
+    /**
+     * Gets the number of requests that were not admitted within the maximum queue wait.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejected() {
+      return rejected;
+    }
+
+    /**
+     * Gets the number of throttled requests that were sent again.
+     *
+     * @return the number of retries
+     */
+    public long getRetried() {
+      return retried;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("limit=%d, inFlight=%d, queued=%d, throttled=%d, rejected=%d, retried=%d",
+          limit, inFlight, queued, throttled, rejected, retried);
+    }
+  }
+
+}
@@ -33,6 +33,7 @@ import microsoft.exchange.webservices.data.core.enumeration.property.PropertyDef
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents the definition of a folder or item property.
@@ -60,6 +61,16 @@ public abstract class PropertyDefinition extends
    */
   private ExchangeVersion version;
 
+  /**
+   * The number of definitions created so far.
+   */
+  private static final AtomicInteger definitionCount = new AtomicInteger();
+
+  /**
+   * The number of this definition, in order of creation.
+   */
+  private final int definitionIndex = definitionCount.getAndIncrement();
+
   /**
    * Initializes a new instance.
    *
@@ -226,4 +237,14 @@ public abstract class PropertyDefinition extends
   @Override public String getPrintableName() {
     return this.getName();
   }
+
+  /**
+   * Gets the number of this definition among all property definitions, in order of
+   * creation. Schemas use it to find the ordinal of a registered property quickly.
+   *
+   * @return the definition index
+   */
+  public int getDefinitionIndex() {
+    return definitionIndex;
+  }
 }
@@ -28,10 +28,12 @@ import microsoft.exchange.webservices.data.core.EwsServiceXmlReader;
 import microsoft.exchange.webservices.data.core.EwsServiceXmlWriter;
 import microsoft.exchange.webservices.data.core.XmlAttributeNames;
 import microsoft.exchange.webservices.data.core.XmlElementNames;
+import microsoft.exchange.webservices.data.core.ExchangeServiceBase;
 import microsoft.exchange.webservices.data.core.enumeration.search.ComparisonMode;
 import microsoft.exchange.webservices.data.core.enumeration.search.ContainmentMode;
 import microsoft.exchange.webservices.data.core.enumeration.attribute.EditorBrowsableState;
 import microsoft.exchange.webservices.data.core.enumeration.search.LogicalOperator;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
 import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceValidationException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceXmlDeserializationException;
@@ -46,8 +48,11 @@ import org.apache.commons.logging.LogFactory;
 
 import javax.xml.stream.XMLStreamException;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Represents the base search filter class. Use descendant search filter classes
@@ -58,12 +63,62 @@ public abstract class SearchFilter extends ComplexProperty {
 
   private static final Log LOG = LogFactory.getLog(SearchFilter.class);
 
+  /**
+   * Whether the filter can no longer be modified.
+   */
+  private boolean isFrozen;
+
+  /**
+   * The serialized filter of a frozen filter, indexed by requested server
+   * version.
+   */
+  private AtomicReferenceArray<byte[]> fragments;
+
   /**
    * Initializes a new instance of the SearchFilter class.
    */
   protected SearchFilter() {
   }
 
+  /**
+   * Makes this filter and the filters it is composed of immutable. A frozen
+   * filter serializes itself once per requested server version and reuses
+   * the serialized XML in every subsequent request, so filters sent
+   * repeatedly should be frozen once they are fully built. Values compared
+   * against must not be modified after the filter is frozen.
+   */
+  public void freeze() {
+    this.markFrozen();
+    if (this.fragments == null) {
+      this.fragments = new AtomicReferenceArray<byte[]>(ExchangeVersion.values().length);
+    }
+  }
+
+  /**
+   * Marks this filter and the filters it is composed of as frozen.
+   */
+  protected void markFrozen() {
+    this.isFrozen = true;
+  }
+
+  /**
+   * Gets a value indicating whether this filter is frozen.
+   *
+   * @return true if the filter can't be modified
+   */
+  public boolean isFrozen() {
+    return this.isFrozen;
+  }
+
+  /**
+   * Throws if the filter is frozen.
+   */
+  protected void throwIfFrozen() {
+    if (this.isFrozen) {
+      throw new UnsupportedOperationException("This SearchFilter is frozen and can't be modified.");
+    }
+  }
+
   /**
    * The search.
    *
@@ -145,6 +200,37 @@ public abstract class SearchFilter extends ComplexProperty {
    * @throws Exception the exception
    */
   public void writeToXml(EwsServiceXmlWriter writer) throws Exception {
+    ExchangeServiceBase service = writer.getService();
+    if (this.fragments == null || service == null) {
+      this.internalWriteToXml(writer);
+      return;
+    }
+
+    int index = service.getRequestedServerVersion().ordinal();
+    byte[] fragment = this.fragments.get(index);
+    if (fragment == null) {
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      EwsServiceXmlWriter fragmentWriter = new EwsServiceXmlWriter(service, stream);
+      try {
+        this.internalWriteToXml(fragmentWriter);
+        fragmentWriter.flush();
+      } finally {
+        fragmentWriter.dispose();
+      }
+      fragment = stream.toByteArray();
+      this.fragments.set(index, fragment);
+    }
+    writer.writeFragment(fragment);
+  }
+
+  /**
+   * Writes the filter to XML without going through the serialized XML of a
+   * frozen filter.
+   *
+   * @param writer the writer
+   * @throws Exception the exception
+   */
+  protected void internalWriteToXml(EwsServiceXmlWriter writer) throws Exception {
     super.writeToXml(writer, this.getXmlElementName());
   }
 
@@ -329,6 +415,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param containmentMode the new containment mode
      */
     public void setContainmentMode(ContainmentMode containmentMode) {
+      this.throwIfFrozen();
       this.containmentMode = containmentMode;
     }
 
@@ -347,6 +434,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param comparisonMode the new comparison mode
      */
     public void setComparisonMode(ComparisonMode comparisonMode) {
+      this.throwIfFrozen();
       this.comparisonMode = comparisonMode;
     }
 
@@ -365,6 +453,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param value the new value
      */
     public void setValue(String value) {
+      this.throwIfFrozen();
       this.value = value;
     }
   }
@@ -467,6 +556,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param bitmask the new bitmask
      */
     public void setBitmask(int bitmask) {
+      this.throwIfFrozen();
       this.bitmask = bitmask;
     }
 
@@ -880,6 +970,17 @@ public abstract class SearchFilter extends ComplexProperty {
       this.searchFilter.writeToXml(writer);
     }
 
+    /**
+     * Marks this filter and the filter it negates as frozen.
+     */
+    @Override
+    protected void markFrozen() {
+      super.markFrozen();
+      if (this.searchFilter != null) {
+        this.searchFilter.markFrozen();
+      }
+    }
+
     /**
      * Gets  the search filter to negate. Available search filter
      * classes include SearchFilter.IsEqualTo,
@@ -900,6 +1001,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param searchFilter the new search filter
      */
     public void setSearchFilter(SearchFilter searchFilter) {
+      this.throwIfFrozen();
       if (this.searchFilter != null) {
         this.searchFilter.removeChangeEvent(this);
       }
@@ -1020,6 +1122,7 @@ public abstract class SearchFilter extends ComplexProperty {
      */
     public void setPropertyDefinition(
         PropertyDefinitionBase propertyDefinition) {
+      this.throwIfFrozen();
       this.propertyDefinition = propertyDefinition;
     }
   }
@@ -1175,6 +1278,7 @@ public abstract class SearchFilter extends ComplexProperty {
      */
     public void setOtherPropertyDefinition(
         PropertyDefinitionBase OtherPropertyDefinition) {
+      this.throwIfFrozen();
       this.otherPropertyDefinition = OtherPropertyDefinition;
       this.value = null;
     }
@@ -1194,6 +1298,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param value the new value
      */
     public void setValue(Object value) {
+      this.throwIfFrozen();
       this.value = value;
       this.otherPropertyDefinition = null;
     }
@@ -1344,7 +1449,8 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param writer the writer
      * @throws Exception the exception
      */
-    @Override public void writeToXml(EwsServiceXmlWriter writer) throws Exception {
+    @Override
+    protected void internalWriteToXml(EwsServiceXmlWriter writer) throws Exception {
       // If there is only one filter in the collection, which developers
       // tend
       // to do,
@@ -1356,7 +1462,7 @@ public abstract class SearchFilter extends ComplexProperty {
       if (this.getCount() == 1) {
         this.searchFilters.get(0).writeToXml(writer);
       } else {
-        super.writeToXml(writer);
+        super.internalWriteToXml(writer);
       }
     }
 
@@ -1369,6 +1475,7 @@ public abstract class SearchFilter extends ComplexProperty {
      *                     SearchFilter.SearchFilterCollection.
      */
     public void add(SearchFilter searchFilter) {
+      this.throwIfFrozen();
       if (searchFilter == null) {
         throw new IllegalArgumentException("searchFilter");
       }
@@ -1386,6 +1493,7 @@ public abstract class SearchFilter extends ComplexProperty {
      *                      SearchFilter.SearchFilterCollection
      */
     public void addRange(Iterable<SearchFilter> searchFilters) {
+      this.throwIfFrozen();
       if (searchFilters == null) {
         throw new IllegalArgumentException("searchFilters");
       }
@@ -1401,6 +1509,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * Clears the collection.
      */
     public void clear() {
+      this.throwIfFrozen();
       if (this.getCount() > 0) {
         for (SearchFilter searchFilter : this.searchFilters) {
           searchFilter.removeChangeEvent(this);
@@ -1427,6 +1536,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param searchFilter The search filter to remove
      */
     public void remove(SearchFilter searchFilter) {
+      this.throwIfFrozen();
       if (searchFilter == null) {
         throw new IllegalArgumentException("searchFilter");
       }
@@ -1444,6 +1554,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param index The zero-based index of the search filter to remove.
      */
     public void removeAt(int index) {
+      this.throwIfFrozen();
       if (index < 0 || index >= this.getCount()) {
         throw new IllegalArgumentException(
             String.format("index %d is out of range [0..%d[.", index, this.getCount()));
@@ -1486,6 +1597,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param searchFilter the search filter
      */
     public void setSearchFilter(int index, SearchFilter searchFilter) {
+      this.throwIfFrozen();
       if (index < 0 || index >= this.getCount()) {
         throw new IllegalArgumentException(
             String.format("index %d is out of range [0..%d[.", index, this.getCount())
@@ -1511,6 +1623,7 @@ public abstract class SearchFilter extends ComplexProperty {
      * @param logicalOperator the new logical operator
      */
     public void setLogicalOperator(LogicalOperator logicalOperator) {
+      this.throwIfFrozen();
       this.logicalOperator = logicalOperator;
     }
 
@@ -1535,8 +1648,22 @@ public abstract class SearchFilter extends ComplexProperty {
      */
     @Override
     public Iterator<SearchFilter> iterator() {
+      if (this.isFrozen()) {
+        return Collections.unmodifiableList(this.searchFilters).iterator();
+      }
       return this.searchFilters.iterator();
     }
 
+    /**
+     * Marks this collection and the filters it contains as frozen.
+     */
+    @Override
+    protected void markFrozen() {
+      super.markFrozen();
+      for (SearchFilter searchFilter : this.searchFilters) {
+        searchFilter.markFrozen();
+      }
+    }
+
   }
 }
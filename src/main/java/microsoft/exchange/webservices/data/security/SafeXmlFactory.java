@@ -24,18 +24,83 @@
 package microsoft.exchange.webservices.data.security;
 
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamReader;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.Reader;
 
+/**
+ * Holds the StAX factories used to read and write EWS XML.
+ * <p>
+ * Looking up a factory with newInstance() scans the classpath, so the
+ * factories are created once, configured not to process DTDs, and shared.
+ * Factories are safe to share between threads once configured. A different
+ * StAX implementation (e.g. Woodstox or Aalto) can be plugged in with
+ * {@link #setInputFactory(XMLInputFactory)} and {@link #setOutputFactory(XMLOutputFactory)}.
+ * </p>
+ */
 public class SafeXmlFactory {
+
+  /**
+   * @deprecated Unconfigured factory kept for compatibility, use {@link #getInputFactory()}.
+   */
+  @Deprecated
   public static XMLInputFactory factory = XMLInputFactory.newInstance();
 
+  private static volatile XMLInputFactory inputFactory = configure(XMLInputFactory.newInstance());
+
+  private static volatile XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+  /**
+   * Gets the shared input factory.
+   *
+   * @return the input factory, configured not to process DTDs
+   */
+  public static XMLInputFactory getInputFactory() {
+    return inputFactory;
+  }
+
+  /**
+   * Replaces the shared input factory. The factory is configured not to process
+   * DTDs or external entities before it is used.
+   *
+   * @param factory the input factory
+   */
+  public static void setInputFactory(XMLInputFactory factory) {
+    inputFactory = configure(factory);
+  }
+
+  /**
+   * Gets the shared output factory.
+   *
+   * @return the output factory
+   */
+  public static XMLOutputFactory getOutputFactory() {
+    return outputFactory;
+  }
+
+  /**
+   * Replaces the shared output factory.
+   *
+   * @param factory the output factory
+   */
+  public static void setOutputFactory(XMLOutputFactory factory) {
+    outputFactory = factory;
+  }
+
+  private static XMLInputFactory configure(XMLInputFactory factory) {
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    if (factory.isPropertySupported(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES)) {
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+    return factory;
+  }
+
 
   public static XMLStreamReader createSafeXmlTextReader(InputStream stream) throws Exception {
-    XMLStreamReader xsr = factory.createXMLStreamReader(stream);
+    XMLStreamReader xsr = getInputFactory().createXMLStreamReader(stream);
     return xsr;
 
   }
@@ -43,14 +108,14 @@ public class SafeXmlFactory {
 
   public static XMLStreamReader createSafeXmlTextReader(String url) throws Exception {
     FileInputStream fis = new FileInputStream(url);
-    XMLStreamReader xtr = factory.createXMLStreamReader(url, fis);
+    XMLStreamReader xtr = getInputFactory().createXMLStreamReader(url, fis);
     return xtr;
   }
 
   public static XMLStreamReader createSafeXmlTextReader(XMLStreamReader reader) throws Exception {
 
     XMLStreamReader xmlr =
-        factory.createXMLStreamReader((Reader) reader);
+        getInputFactory().createXMLStreamReader((Reader) reader);
     return xmlr;
 
 
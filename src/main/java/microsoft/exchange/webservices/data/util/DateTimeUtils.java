@@ -34,6 +34,14 @@ public final class DateTimeUtils {
   private static final DateTimeFormatter[] DATE_TIME_FORMATS = createDateTimeFormats();
   private static final DateTimeFormatter[] DATE_FORMATS = createDateFormats();
 
+  /**
+   * Earliest year handled by {@link #parseUniversalDateTime(String)}. Earlier dates
+   * are left to the formatters, since calendars disagree before the Gregorian cutover.
+   */
+  private static final int MIN_UNIVERSAL_DATE_TIME_YEAR = 1583;
+
+  private static final long DAYS_0000_TO_1970 = 719468L;
+
 
   private DateTimeUtils() {
     throw new UnsupportedOperationException();
@@ -70,6 +78,80 @@ public final class DateTimeUtils {
   }
 
 
+  /**
+   * Parses a date time in the yyyy-MM-dd'T'HH:mm:ss'Z' form EWS uses on the wire,
+   * without going through a formatter.
+   *
+   * @param value The string value to parse.
+   * @return The parsed {@link Date}, or null if the value is not a valid date time in exactly that form.
+   */
+  public static Date parseUniversalDateTime(String value) {
+    if (value == null || value.length() != 20
+        || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+        || value.charAt(13) != ':' || value.charAt(16) != ':' || value.charAt(19) != 'Z') {
+      return null;
+    }
+
+    final int year = parseDigits(value, 0, 4);
+    final int month = parseDigits(value, 5, 7);
+    final int day = parseDigits(value, 8, 10);
+    final int hour = parseDigits(value, 11, 13);
+    final int minute = parseDigits(value, 14, 16);
+    final int second = parseDigits(value, 17, 19);
+    if (year < MIN_UNIVERSAL_DATE_TIME_YEAR || month < 1 || month > 12
+        || day < 1 || day > daysInMonth(year, month)
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return null;
+    }
+
+    final long seconds = ((daysSinceEpoch(year, month, day) * 24 + hour) * 60 + minute) * 60 + second;
+    return new Date(seconds * 1000);
+  }
+
+  /**
+   * Parses a run of decimal digits.
+   *
+   * @return the value, or -1 if a character is not a digit
+   */
+  private static int parseDigits(String value, int start, int end) {
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      final int digit = value.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      result = result * 10 + digit;
+    }
+    return result;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * Counts the days from 1970-01-01 to a date in the proleptic Gregorian calendar.
+   */
+  private static long daysSinceEpoch(int year, int month, int day) {
+    // Count years from March so that the leap day falls at the end of the year.
+    final int y = month <= 2 ? year - 1 : year;
+    final int era = y / 400;
+    final int yearOfEra = y - era * 400;
+    final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - DAYS_0000_TO_1970;
+  }
+
   private static Date parseInternal(String value, boolean dateOnly) {
     String originalValue = value;
 
@@ -81,6 +163,13 @@ public final class DateTimeUtils {
         value = value.substring(0, value.length() - 1) + "Z";
       }
 
+      if (!dateOnly) {
+        final Date date = parseUniversalDateTime(value);
+        if (date != null) {
+          return date;
+        }
+      }
+
       final DateTimeFormatter[] formats = dateOnly ? DATE_FORMATS : DATE_TIME_FORMATS;
       for (final DateTimeFormatter format : formats) {
         try {
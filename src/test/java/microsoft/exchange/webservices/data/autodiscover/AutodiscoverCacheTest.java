@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.autodiscover;
+
+import microsoft.exchange.webservices.data.autodiscover.exception.AutodiscoverLocalException;
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class AutodiscoverCacheTest {
+
+  private static final URI EWS_URL = URI.create("https://mail.contoso.com/EWS/Exchange.asmx");
+
+  private static final String REDIRECTION_URL =
+      "https://autodiscover.contoso.net/autodiscover/autodiscover.svc";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testEntriesExpire() {
+    ManualClockCache cache = new ManualClockCache(10, 1000, 100);
+    cache.put("found", AutodiscoverCacheEntry.found(EWS_URL, true));
+    cache.put("missing", AutodiscoverCacheEntry.notFound("not located"));
+
+    cache.now = 99;
+    Assert.assertEquals(EWS_URL, cache.get("found").getUrl());
+    Assert.assertTrue(cache.get("found").isExternal());
+    Assert.assertEquals("not located", cache.get("missing").getErrorMessage());
+
+    cache.now = 100;
+    Assert.assertNull(cache.get("missing"));
+    Assert.assertNotNull(cache.get("found"));
+
+    cache.now = 1000;
+    Assert.assertNull(cache.get("found"));
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntryIsEvicted() {
+    AutodiscoverCache cache = new AutodiscoverCache(2, 60000, 60000);
+    cache.put("a", AutodiscoverCacheEntry.found(EWS_URL, false));
+    cache.put("b", AutodiscoverCacheEntry.found(EWS_URL, false));
+    cache.get("a");
+    cache.put("c", AutodiscoverCacheEntry.found(EWS_URL, false));
+
+    Assert.assertNotNull(cache.get("a"));
+    Assert.assertNull(cache.get("b"));
+    Assert.assertNotNull(cache.get("c"));
+  }
+
+  @Test
+  public void testFileBackedCacheSurvivesRestart() throws Exception {
+    File file = new File(folder.getRoot(), "autodiscover.cache");
+    AutodiscoverCache cache = new AutodiscoverCache(10, 60000, 60000, file);
+    cache.put(AutodiscoverCacheEntry.ewsUrlKey("User@Contoso.com"),
+        AutodiscoverCacheEntry.found(EWS_URL, false));
+    cache.put(AutodiscoverCacheEntry.domainKey("fabrikam.com"),
+        AutodiscoverCacheEntry.notFound("The Autodiscover service\tcouldn't\nbe located."));
+    cache.put("removed", AutodiscoverCacheEntry.found(EWS_URL, false));
+    cache.remove("removed");
+    cache.close();
+
+    AutodiscoverCache reloaded = new AutodiscoverCache(10, 60000, 60000, file);
+    Assert.assertEquals(EWS_URL,
+        reloaded.get(AutodiscoverCacheEntry.ewsUrlKey("user@contoso.com")).getUrl());
+    Assert.assertEquals("The Autodiscover service couldn't be located.",
+        reloaded.get(AutodiscoverCacheEntry.domainKey("FABRIKAM.com")).getErrorMessage());
+    Assert.assertNull(reloaded.get("removed"));
+    Assert.assertEquals(2, reloaded.size());
+    reloaded.close();
+  }
+
+  @Test
+  public void testCacheFileIsCompacted() throws Exception {
+    File file = new File(folder.getRoot(), "autodiscover.cache");
+    AutodiscoverCache cache = new AutodiscoverCache(10, 60000, 60000, file);
+    for (int i = 0; i < 1000; i++) {
+      cache.put("user" + (i % 20), AutodiscoverCacheEntry.found(EWS_URL, false));
+    }
+
+    // At most the entries written by the last compaction and the changes appended since.
+    Assert.assertTrue(Files.readAllLines(file.toPath(), Charset.forName("UTF-8")).size() <= 30);
+    cache.close();
+
+    AutodiscoverCache reloaded = new AutodiscoverCache(10, 60000, 60000, file);
+    Assert.assertEquals(10, reloaded.size());
+    Assert.assertNotNull(reloaded.get("user19"));
+    reloaded.close();
+  }
+
+  @Test
+  public void testAutodiscoverUrlUsesCachedResults() throws Exception {
+    AutodiscoverCache cache = new AutodiscoverCache();
+    cache.put(AutodiscoverCacheEntry.ewsUrlKey("user@contoso.com"),
+        AutodiscoverCacheEntry.found(EWS_URL, false));
+    cache.put(AutodiscoverCacheEntry.ewsUrlKey("nobody@contoso.com"),
+        AutodiscoverCacheEntry.notFound("Invalid user: 'nobody@contoso.com'"));
+
+    ExchangeService service = new ExchangeService();
+    service.setAutodiscoverCache(cache);
+    service.autodiscoverUrl("User@contoso.com");
+    Assert.assertEquals(EWS_URL, service.getUrl());
+
+    try {
+      service.autodiscoverUrl("nobody@contoso.com");
+      Assert.fail("Expected the cached failure");
+    } catch (AutodiscoverLocalException e) {
+      Assert.assertEquals("Invalid user: 'nobody@contoso.com'", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRedirectionUrlSurvivesRestart() throws Exception {
+    File file = new File(folder.getRoot(), "autodiscover.cache");
+    AutodiscoverCache cache = new AutodiscoverCache(10, 60000, 60000, file);
+    cache.put("redirected", AutodiscoverCacheEntry.found(EWS_URL, true, REDIRECTION_URL));
+    cache.put("direct", AutodiscoverCacheEntry.found(EWS_URL, false));
+    cache.close();
+
+    AutodiscoverCache reloaded = new AutodiscoverCache(10, 60000, 60000, file);
+    Assert.assertEquals(REDIRECTION_URL, reloaded.get("redirected").getRedirectionUrl());
+    Assert.assertNull(reloaded.get("direct").getRedirectionUrl());
+    reloaded.close();
+  }
+
+  @Test
+  public void testCacheFileIsOnlyAccessibleByOwner() throws Exception {
+    File file = new File(folder.getRoot(), "autodiscover.cache");
+    Assume.assumeNotNull(Files.getFileAttributeView(folder.getRoot().toPath(),
+        PosixFileAttributeView.class));
+
+    AutodiscoverCache cache = new AutodiscoverCache(10, 60000, 60000, file);
+    cache.put("found", AutodiscoverCacheEntry.found(EWS_URL, false));
+    cache.close();
+
+    Assert.assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+        Files.getPosixFilePermissions(file.toPath()));
+  }
+
+  @Test
+  public void testCachedRedirectedUrlIsRevalidated() throws Exception {
+    AutodiscoverCache cache = new AutodiscoverCache();
+    cache.put(AutodiscoverCacheEntry.ewsUrlKey("user@contoso.com"),
+        AutodiscoverCacheEntry.found(EWS_URL, false, REDIRECTION_URL));
+
+    ExchangeService service = new ExchangeService();
+    service.setAutodiscoverCache(cache);
+
+    // The default callback rejects every redirection, so the cached URL must not be used.
+    try {
+      service.autodiscoverUrl("user@contoso.com");
+      Assert.fail("Expected the redirection to be rejected");
+    } catch (AutodiscoverLocalException e) {
+      Assert.assertTrue(e.getMessage().contains(REDIRECTION_URL));
+    }
+    Assert.assertNull(service.getUrl());
+
+    final List<String> validated = new ArrayList<String>();
+    service.autodiscoverUrl("user@contoso.com", new IAutodiscoverRedirectionUrl() {
+      @Override
+      public boolean autodiscoverRedirectionUrlValidationCallback(String redirectionUrl) {
+        validated.add(redirectionUrl);
+        return true;
+      }
+    });
+    Assert.assertEquals(EWS_URL, service.getUrl());
+    Assert.assertEquals(1, validated.size());
+    Assert.assertEquals(REDIRECTION_URL, validated.get(0));
+  }
+
+  private static class ManualClockCache extends AutodiscoverCache {
+
+    private long now;
+
+    ManualClockCache(int maxEntries, long timeToLiveMillis, long negativeTimeToLiveMillis) {
+      super(maxEntries, timeToLiveMillis, negativeTimeToLiveMillis);
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+}
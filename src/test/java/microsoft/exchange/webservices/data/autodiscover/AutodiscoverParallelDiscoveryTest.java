@@ -0,0 +1,341 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.autodiscover;
+
+import microsoft.exchange.webservices.data.autodiscover.enumeration.UserSettingName;
+import microsoft.exchange.webservices.data.autodiscover.response.GetUserSettingsResponse;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
+import microsoft.exchange.webservices.data.credential.WebCredentials;
+import microsoft.exchange.webservices.data.misc.OutParam;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Autodiscover against local stub servers, each one standing for a candidate
+ * endpoint. Latches make the stubs wait for each other, so that only candidates
+ * contacted at the same time can answer.
+ */
+@RunWith(JUnit4.class)
+public class AutodiscoverParallelDiscoveryTest {
+
+  private static final String EMAIL_ADDRESS = "user@contoso.invalid";
+
+  private static final String DOMAIN = "contoso.invalid";
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private static final String SETTINGS_RESPONSE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<Autodiscover xmlns=\"http://schemas.microsoft.com/exchange/autodiscover/responseschema/2006\">"
+      + "<Response xmlns=\"http://schemas.microsoft.com/exchange/autodiscover/outlook/responseschema/2006a\">"
+      + "<User><DisplayName>%s</DisplayName></User>"
+      + "<Account><AccountType>email</AccountType><Action>settings</Action></Account>"
+      + "</Response></Autodiscover>";
+
+  private static final String SOAP_SETTINGS_RESPONSE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+      + " xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\"><s:Header></s:Header><s:Body>"
+      + "<GetUserSettingsResponseMessage xmlns=\"http://schemas.microsoft.com/exchange/2010/Autodiscover\">"
+      + "<Response><ErrorCode>NoError</ErrorCode><UserResponses>"
+      + "<UserResponse><ErrorCode>NoError</ErrorCode><UserSettings>"
+      + "<UserSetting i:type=\"StringSetting\"><Name>UserDisplayName</Name><Value>%s</Value></UserSetting>"
+      + "</UserSettings></UserResponse></UserResponses></Response>"
+      + "</GetUserSettingsResponseMessage></s:Body></s:Envelope>";
+
+  private final List<HttpServer> servers = new ArrayList<HttpServer>();
+
+  /**
+   * The candidates contacted, in the order they were contacted.
+   */
+  private final List<String> contacted = Collections.synchronizedList(new ArrayList<String>());
+
+  /**
+   * The number of candidates that gave up waiting for a latch.
+   */
+  private final AtomicInteger timedOut = new AtomicInteger();
+
+  /**
+   * Released when the test ends, so that candidates kept waiting return.
+   */
+  private final CountDownLatch testEnded = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    testEnded.countDown();
+    for (HttpServer server : servers) {
+      server.shutdown(100, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Test
+  public void testCandidatesAreContactedAtOnce() throws Exception {
+    // Each candidate only answers once all three were contacted.
+    CountDownLatch allContacted = new CountDownLatch(3);
+    StubAutodiscoverService service = new StubAutodiscoverService(ExchangeVersion.Exchange2007_SP1);
+    service.candidates.add(startStub("first", null, allContacted, allContacted));
+    service.candidates.add(startStub("second", null, allContacted, allContacted));
+    service.srvUrl = startStub("srv", "From SRV", null, null);
+    service.srvArrived = allContacted;
+    service.srvGate = allContacted;
+
+    Assert.assertEquals("From SRV", discover(service, true));
+    Assert.assertEquals(0, timedOut.get());
+  }
+
+  @Test
+  public void testSequentialDiscoveryContactsCandidatesInTurn() throws Exception {
+    StubAutodiscoverService service = new StubAutodiscoverService(ExchangeVersion.Exchange2007_SP1);
+    service.candidates.add(startStub("first", null, null, null));
+    service.candidates.add(startStub("second", null, null, null));
+    service.srvUrl = startStub("srv", "From SRV", null, null);
+
+    Assert.assertEquals("From SRV", discover(service, false));
+    Assert.assertEquals(Arrays.asList("first", "second", "redirect lookup", "srv lookup", "srv"),
+        contacted);
+  }
+
+  @Test
+  public void testHigherPriorityCandidateWins() throws Exception {
+    // The first candidate only answers once the second one did.
+    CountDownLatch secondAnswered = new CountDownLatch(1);
+    StubAutodiscoverService service = new StubAutodiscoverService(ExchangeVersion.Exchange2007_SP1);
+    service.candidates.add(startStub("first", "First", null, secondAnswered));
+    service.candidates.add(startStub("second", "Second", secondAnswered, null));
+
+    Assert.assertEquals("First", discover(service, true));
+    Assert.assertEquals(0, timedOut.get());
+  }
+
+  @Test
+  public void testLosingProbesAreCancelled() throws Exception {
+    StubAutodiscoverService service = new StubAutodiscoverService(ExchangeVersion.Exchange2007_SP1);
+    service.candidates.add(startStub("first", "First", null, null));
+    service.candidates.add(startStub("second", "Second", null, testEnded));
+    service.srvGate = testEnded;
+
+    Assert.assertEquals("First", discover(service, true));
+    Assert.assertTrue(service.srvLookupInterrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSoapHostsAreContactedAtOnce() throws Exception {
+    // Both hosts and the SRV lookup only answer once all three were contacted.
+    CountDownLatch allContacted = new CountDownLatch(3);
+    StubAutodiscoverService service = new StubAutodiscoverService(ExchangeVersion.Exchange2010);
+    service.hostArrived = allContacted;
+    service.hostGate = allContacted;
+    service.srvArrived = allContacted;
+    service.srvGate = allContacted;
+    service.soapEndpoints.put("autodiscover." + DOMAIN, startSoapStub("From SOAP"));
+
+    Assert.assertEquals("From SOAP", discover(service, true));
+    Assert.assertEquals(0, timedOut.get());
+    Assert.assertTrue(contacted.contains("host " + DOMAIN));
+    Assert.assertTrue(contacted.contains("srv lookup"));
+  }
+
+  private String discover(AutodiscoverService service, boolean parallel) throws Exception {
+    service.setCredentials(new WebCredentials("user", "password"));
+    service.setRedirectionUrlValidationCallback(new IAutodiscoverRedirectionUrl() {
+      @Override
+      public boolean autodiscoverRedirectionUrlValidationCallback(String redirectionUrl) {
+        return true;
+      }
+    });
+    service.setParallelEndpointDiscovery(parallel);
+
+    GetUserSettingsResponse response = service.getUserSettings(EMAIL_ADDRESS, UserSettingName.UserDisplayName);
+    return (String) response.getSettings().get(UserSettingName.UserDisplayName);
+  }
+
+  /**
+   * Starts a stub legacy Autodiscover endpoint.
+   *
+   * @param name        the name recorded when the endpoint is contacted
+   * @param displayName the display name returned, null to answer with an error
+   * @param arrived     the latch counted down when the endpoint is contacted, or null
+   * @param gate        the latch the endpoint waits for before answering, or null
+   * @return the URL of the endpoint
+   */
+  private URI startStub(final String name, final String displayName, final CountDownLatch arrived,
+      final CountDownLatch gate) throws IOException {
+    return startServer(new HttpRequestHandler() {
+      @Override
+      public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+          throws HttpException, IOException {
+        contacted.add(name);
+        try {
+          pass(arrived, gate);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if (displayName == null) {
+          response.setStatusCode(500);
+          return;
+        }
+        response.setEntity(new StringEntity(String.format(SETTINGS_RESPONSE, displayName),
+            ContentType.create("text/xml", "utf-8")));
+      }
+    }, "/autodiscover/autodiscover.xml");
+  }
+
+  /**
+   * Starts a stub Autodiscover SOAP endpoint.
+   *
+   * @param displayName the display name returned
+   * @return the URL of the endpoint
+   */
+  private URI startSoapStub(final String displayName) throws IOException {
+    return startServer(new HttpRequestHandler() {
+      @Override
+      public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+          throws HttpException, IOException {
+        response.setEntity(new StringEntity(String.format(SOAP_SETTINGS_RESPONSE, displayName),
+            ContentType.create("text/xml", "utf-8")));
+      }
+    }, "/autodiscover/autodiscover.svc");
+  }
+
+  private URI startServer(HttpRequestHandler handler, String path) throws IOException {
+    HttpServer server = ServerBootstrap.bootstrap()
+        .setListenerPort(0)
+        .registerHandler("*", handler)
+        .create();
+    server.start();
+    servers.add(server);
+    return URI.create("http://127.0.0.1:" + server.getLocalPort() + path);
+  }
+
+  /**
+   * Counts a latch down and waits for another one.
+   *
+   * @param arrived the latch to count down, or null
+   * @param gate    the latch to wait for, or null
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private void pass(CountDownLatch arrived, CountDownLatch gate) throws InterruptedException {
+    if (arrived != null) {
+      arrived.countDown();
+    }
+    if (gate != null && !gate.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      timedOut.incrementAndGet();
+    }
+  }
+
+  /**
+   * Autodiscover service whose candidate endpoints are the stub servers, and
+   * whose DNS and redirection lookups are answered locally.
+   */
+  private class StubAutodiscoverService extends AutodiscoverService {
+
+    /**
+     * The legacy endpoints, in priority order.
+     */
+    private final List<URI> candidates = new ArrayList<URI>();
+
+    /**
+     * The SOAP endpoints, by host. Other hosts have no endpoint.
+     */
+    private final Map<String, URI> soapEndpoints = new HashMap<String, URI>();
+
+    private final CountDownLatch srvLookupInterrupted = new CountDownLatch(1);
+
+    private URI srvUrl;
+
+    private CountDownLatch srvArrived;
+
+    private CountDownLatch srvGate;
+
+    private CountDownLatch hostArrived;
+
+    private CountDownLatch hostGate;
+
+    StubAutodiscoverService(ExchangeVersion requestedServerVersion) throws Exception {
+      super(requestedServerVersion);
+    }
+
+    @Override
+    protected List<URI> getAutodiscoverServiceUrls(String domainName, OutParam<Integer> scpHostCount)
+        throws URISyntaxException {
+      if (candidates.isEmpty()) {
+        return super.getAutodiscoverServiceUrls(domainName, scpHostCount);
+      }
+      scpHostCount.setParam(0);
+      return new ArrayList<URI>(candidates);
+    }
+
+    @Override
+    protected boolean tryGetAutodiscoverEndpointUrl(String host, OutParam<URI> url)
+        throws Exception {
+      contacted.add("host " + host);
+      pass(hostArrived, hostGate);
+      url.setParam(soapEndpoints.get(host));
+      return url.getParam() != null;
+    }
+
+    @Override
+    protected URI getRedirectUrl(String domainName) {
+      contacted.add("redirect lookup");
+      return null;
+    }
+
+    @Override
+    protected URI getRedirectionUrlFromDnsSrvRecord(String domainName) {
+      contacted.add("srv lookup");
+      try {
+        pass(srvArrived, srvGate);
+      } catch (InterruptedException e) {
+        srvLookupInterrupted.countDown();
+        return null;
+      }
+      return srvUrl;
+    }
+  }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.autodiscover;
+
+import microsoft.exchange.webservices.data.autodiscover.enumeration.AutodiscoverErrorCode;
+import microsoft.exchange.webservices.data.autodiscover.enumeration.UserSettingName;
+import microsoft.exchange.webservices.data.autodiscover.response.GetUserSettingsResponse;
+import microsoft.exchange.webservices.data.autodiscover.response.GetUserSettingsResponseCollection;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
+import microsoft.exchange.webservices.data.credential.WebCredentials;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Retrieves settings for more users than fit into one request from local stub servers.
+ */
+@RunWith(JUnit4.class)
+public class AutodiscoverUsersSettingsTest {
+
+  private static final int USERS = 250;
+
+  private static final Pattern MAILBOX_PATTERN = Pattern.compile("<a:Mailbox>([^<]+)</a:Mailbox>");
+
+  private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+      + " xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\"><s:Header></s:Header><s:Body>"
+      + "<GetUserSettingsResponseMessage xmlns=\"http://schemas.microsoft.com/exchange/2010/Autodiscover\">"
+      + "<Response><ErrorCode>NoError</ErrorCode><UserResponses>%s</UserResponses></Response>"
+      + "</GetUserSettingsResponseMessage></s:Body></s:Envelope>";
+
+  private static final String FAULT_RESPONSE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\""
+      + " xmlns:i=\"http://www.w3.org/2001/XMLSchema-instance\"><s:Header></s:Header><s:Body>"
+      + "<GetUserSettingsResponseMessage xmlns=\"http://schemas.microsoft.com/exchange/2010/Autodiscover\">"
+      + "<Response><ErrorCode>ServerBusy</ErrorCode><ErrorMessage>Try again later</ErrorMessage>"
+      + "<UserResponses /></Response>"
+      + "</GetUserSettingsResponseMessage></s:Body></s:Envelope>";
+
+  private static final String USER_RESPONSE = "<UserResponse><ErrorCode>NoError</ErrorCode><UserSettings>"
+      + "<UserSetting i:type=\"StringSetting\"><Name>UserDisplayName</Name><Value>%s on %s</Value></UserSetting>"
+      + "</UserSettings></UserResponse>";
+
+  private final List<HttpServer> servers = new ArrayList<HttpServer>();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  private final AtomicInteger maxUsersPerRequest = new AtomicInteger();
+
+  private volatile String failingChunk;
+
+  private volatile String rejectedChunk;
+
+  private URI primaryUrl;
+
+  private URI redirectedUrl;
+
+  private AutodiscoverService service;
+
+  @Before
+  public void setUp() throws Exception {
+    redirectedUrl = startStub("redirected", null);
+    primaryUrl = startStub("primary", redirectedUrl);
+    service = new AutodiscoverService(primaryUrl, ExchangeVersion.Exchange2010);
+    service.setCredentials(new WebCredentials("user", "password"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    service.close();
+    for (HttpServer server : servers) {
+      server.shutdown(100, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Test
+  public void testUsersAreSplitIntoChunksAndMergedInOrder() throws Exception {
+    GetUserSettingsResponseCollection responses = getUsersSettings();
+
+    Assert.assertEquals(USERS, responses.getCount());
+    for (int i = 0; i < USERS; i++) {
+      GetUserSettingsResponse response = responses.getTResponseAtIndex(i);
+      // The second chunk was redirected, the other ones were answered directly.
+      String server = (i >= 100 && i < 200) ? "redirected" : "primary";
+      Assert.assertEquals(address(i) + " on " + server,
+          response.getSettings().get(UserSettingName.UserDisplayName));
+    }
+    Assert.assertEquals(100, maxUsersPerRequest.get());
+    Assert.assertTrue(maxInFlight.get() > 1);
+  }
+
+  @Test
+  public void testChunksAreSentInTurnWithoutParallelism() throws Exception {
+    service.setUsersSettingsParallelism(1);
+
+    Assert.assertEquals(USERS, getUsersSettings().getCount());
+    Assert.assertEquals(1, maxInFlight.get());
+  }
+
+  @Test
+  public void testAnsweredUsersAreKeptWhenAChunkFails() throws Exception {
+    service.setUsersSettingsParallelism(1);
+    failingChunk = address(200);
+
+    GetUserSettingsResponseCollection responses = getUsersSettings();
+
+    Assert.assertEquals(USERS, responses.getCount());
+    for (int i = 0; i < USERS; i++) {
+      GetUserSettingsResponse response = responses.getTResponseAtIndex(i);
+      Assert.assertEquals(address(i), response.getSmtpAddress());
+      if (i < 200) {
+        Assert.assertEquals(AutodiscoverErrorCode.NoError, response.getErrorCode());
+      } else {
+        Assert.assertEquals(AutodiscoverErrorCode.InternalServerError, response.getErrorCode());
+        Assert.assertNotNull(response.getErrorMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testUsersOfARejectedChunkAreReported() throws Exception {
+    rejectedChunk = address(0);
+
+    GetUserSettingsResponseCollection responses = getUsersSettings();
+
+    Assert.assertEquals(USERS, responses.getCount());
+    for (int i = 0; i < USERS; i++) {
+      GetUserSettingsResponse response = responses.getTResponseAtIndex(i);
+      Assert.assertEquals(address(i), response.getSmtpAddress());
+      if (i < 100) {
+        Assert.assertEquals(AutodiscoverErrorCode.ServerBusy, response.getErrorCode());
+        Assert.assertEquals("Try again later", response.getErrorMessage());
+      } else {
+        Assert.assertEquals(AutodiscoverErrorCode.NoError, response.getErrorCode());
+      }
+    }
+  }
+
+  private GetUserSettingsResponseCollection getUsersSettings() throws Exception {
+    List<String> addresses = new ArrayList<String>();
+    for (int i = 0; i < USERS; i++) {
+      addresses.add(address(i));
+    }
+    return service.getUsersSettings(addresses, UserSettingName.UserDisplayName);
+  }
+
+  private static String address(int i) {
+    return "user" + i + "@contoso.com";
+  }
+
+  /**
+   * Starts a stub Autodiscover SOAP endpoint.
+   *
+   * @param name        the name the endpoint adds to the display names
+   * @param redirectUrl the URL requests starting with the 101st user are redirected to, or null
+   * @return the URL of the endpoint
+   */
+  private URI startStub(final String name, final URI redirectUrl) throws IOException {
+    HttpServer server = ServerBootstrap.bootstrap()
+        .setListenerPort(0)
+        .registerHandler("*", new HttpRequestHandler() {
+          @Override
+          public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+              throws HttpException, IOException {
+            String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+            List<String> mailboxes = new ArrayList<String>();
+            Matcher matcher = MAILBOX_PATTERN.matcher(body);
+            while (matcher.find()) {
+              mailboxes.add(matcher.group(1));
+            }
+            if (mailboxes.get(0).equals(failingChunk)) {
+              response.setStatusCode(500);
+              return;
+            }
+            if (mailboxes.get(0).equals(rejectedChunk)) {
+              response.setEntity(new StringEntity(FAULT_RESPONSE, ContentType.create("text/xml", "utf-8")));
+              return;
+            }
+            if (redirectUrl != null && mailboxes.get(0).equals(address(100))) {
+              response.setStatusCode(302);
+              response.setHeader("Location", redirectUrl.toString());
+              return;
+            }
+
+            int users = mailboxes.size();
+            int max;
+            while ((max = maxUsersPerRequest.get()) < users && !maxUsersPerRequest.compareAndSet(max, users)) {
+              // Retry until the maximum is up to date.
+            }
+            int running = inFlight.incrementAndGet();
+            while ((max = maxInFlight.get()) < running && !maxInFlight.compareAndSet(max, running)) {
+              // Retry until the maximum is up to date.
+            }
+            try {
+              Thread.sleep(200);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            } finally {
+              inFlight.decrementAndGet();
+            }
+
+            StringBuilder userResponses = new StringBuilder();
+            for (String mailbox : mailboxes) {
+              userResponses.append(String.format(USER_RESPONSE, mailbox, name));
+            }
+            response.setEntity(new StringEntity(String.format(RESPONSE, userResponses),
+                ContentType.create("text/xml", "utf-8")));
+          }
+        })
+        .create();
+    server.start();
+    servers.add(server);
+    return URI.create("http://127.0.0.1:" + server.getLocalPort() + "/autodiscover/autodiscover.svc");
+  }
+
+}
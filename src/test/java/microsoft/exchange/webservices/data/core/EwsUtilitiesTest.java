@@ -24,7 +24,10 @@
 package microsoft.exchange.webservices.data.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+import microsoft.exchange.webservices.data.core.enumeration.property.MailboxType;
 import microsoft.exchange.webservices.data.core.service.folder.CalendarFolder;
 import microsoft.exchange.webservices.data.core.service.folder.ContactsFolder;
 import microsoft.exchange.webservices.data.core.service.folder.Folder;
@@ -51,6 +54,7 @@ import java.math.BigInteger;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 
 @RunWith(JUnit4.class)
 public class EwsUtilitiesTest {
@@ -102,6 +106,19 @@ public class EwsUtilitiesTest {
     assertEquals(BigDecimal.TEN, EwsUtilities.parse(BigDecimal.class, BigDecimal.TEN.toString()));
   }
 
+  @Test
+  public void testParseEnum() throws ParseException {
+    assertEquals(ServiceError.ErrorServerBusy, EwsUtilities.parse(ServiceError.class, "ErrorServerBusy"));
+    assertEquals(MailboxType.Mailbox, EwsUtilities.parse(MailboxType.class, "Mailbox"));
+    assertNull(EwsUtilities.parse(MailboxType.class, "NoSuchMailboxType"));
+  }
+
+  @Test
+  public void testParseEnumSchemaName() throws ParseException {
+    assertEquals(MailboxType.PublicGroup, EwsUtilities.parse(MailboxType.class, "PublicDL"));
+    assertEquals(MailboxType.ContactGroup, EwsUtilities.parse(MailboxType.class, "PrivateDL"));
+  }
+
   @Test
   public void testParseString() throws ParseException {
     final String input = "lorem ipsum dolor sit amet";
@@ -196,6 +213,30 @@ public class EwsUtilitiesTest {
     assertEquals(input, EwsUtilities.parse(input.getClass(), input));
   }
 
+  @Test
+  public void testParseDateTimeRoundTrip() throws ParseException {
+    final Date date = new Date(1420711872000L);
+    final String input = EwsUtilities.dateTimeToXSDateTime(date);
+    assertEquals("2015-01-08T10:11:12Z", input);
+    assertEquals(date, EwsUtilities.parse(Date.class, input));
+  }
+
+  @Test
+  public void testParseDateTimeBeforeGregorianCutover() throws ParseException {
+    final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+    final String input = "0001-01-01T00:00:00Z";
+    final Date date = EwsUtilities.parse(Date.class, input);
+    assertEquals(sdf.parse(input), date);
+    assertEquals(input, EwsUtilities.dateTimeToXSDateTime(date));
+    assertEquals(input, sdf.format(date));
+  }
+
+  @Test(expected = ParseException.class)
+  public void testParseDateTimeInvalid() throws ParseException {
+    EwsUtilities.parse(Date.class, "2015-01-08 10:11:12");
+  }
+
   @Test
   public void testParseNullValue() throws ParseException {
     final String input = null;
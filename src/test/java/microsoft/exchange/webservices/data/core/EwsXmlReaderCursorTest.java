@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core;
+
+import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
+import microsoft.exchange.webservices.data.security.XmlNodeType;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the cursor backend of {@link EwsXmlReader} reads like the event backend.
+ */
+@RunWith(JUnit4.class)
+public class EwsXmlReaderCursorTest {
+
+  private static final String TYPES = EwsUtilities.getNamespaceUri(XmlNamespace.Types);
+
+  private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<t:Items xmlns:t=\"" + TYPES + "\">\n"
+      + "  <t:Message>\n"
+      + "    <t:ItemId Id=\"AAMk\" ChangeKey=\"CQAA\"/>\n"
+      + "    <t:Subject>Hello &amp; welcome</t:Subject>\n"
+      + "    <t:Body BodyType=\"Text\"><![CDATA[<b>]]> text</t:Body>\n"
+      + "    <t:Empty></t:Empty>\n"
+      + "    <t:Content>" + Base64.encodeBase64String("attachment".getBytes()) + "</t:Content>\n"
+      + "  </t:Message>\n"
+      + "</t:Items>";
+
+  private static EwsXmlReader createReader(boolean useCursor) throws Exception {
+    return new EwsXmlReader(new ByteArrayInputStream(XML.getBytes("UTF-8")), useCursor);
+  }
+
+  private static List<String> walk(EwsXmlReader reader) throws Exception {
+    List<String> nodes = new ArrayList<String>();
+    do {
+      reader.read();
+      XmlNodeType nodeType = reader.getNodeType();
+      if (reader.isStartElement()) {
+        nodes.add(nodeType + " " + reader.getNamespaceUri() + " " + reader.getLocalName()
+            + " " + reader.hasAttributes() + " " + reader.isEmptyElement());
+      } else if (nodeType.nodeType == XmlNodeType.END_ELEMENT) {
+        nodes.add(nodeType + " " + reader.getNamespaceUri() + " " + reader.getLocalName());
+      } else {
+        nodes.add(nodeType.toString());
+      }
+    } while (!reader.isEndElement(XmlNamespace.Types, "Items"));
+    return nodes;
+  }
+
+  @Test
+  public void testWalkMatchesEventReader() throws Exception {
+    Assert.assertEquals(walk(createReader(false)), walk(createReader(true)));
+  }
+
+  @Test
+  public void testReadElements() throws Exception {
+    EwsXmlReader reader = createReader(true);
+    reader.read(new XmlNodeType(XmlNodeType.START_DOCUMENT));
+    reader.readStartElement(XmlNamespace.Types, "Items");
+    reader.readStartElement(XmlNamespace.Types, "Message");
+
+    reader.readStartElement(XmlNamespace.Types, "ItemId");
+    Assert.assertTrue(reader.isEmptyElement());
+    Assert.assertTrue(reader.hasAttributes());
+    Assert.assertEquals("AAMk", reader.readAttributeValue("Id"));
+    Assert.assertEquals("CQAA", reader.readAttributeValue("ChangeKey"));
+    Assert.assertNull(reader.readAttributeValue("Missing"));
+    reader.readEndElement(XmlNamespace.Types, "ItemId");
+
+    Assert.assertEquals("Hello & welcome", reader.readElementValue(XmlNamespace.Types, "Subject"));
+    Assert.assertTrue(reader.isEndElement(XmlNamespace.Types, "Subject"));
+
+    reader.readStartElement(XmlNamespace.Types, "Body");
+    Assert.assertEquals("Text", reader.readAttributeValue("BodyType"));
+    Assert.assertEquals("<b> text", reader.readValue());
+
+    Assert.assertNull(reader.readElementValue(XmlNamespace.Types, "Empty"));
+
+    reader.readStartElement(XmlNamespace.Types, "Content");
+    Assert.assertFalse(reader.isEmptyElement());
+    Assert.assertEquals("attachment", new String(reader.readBase64ElementValue()));
+
+    reader.readEndElement(XmlNamespace.Types, "Message");
+    reader.readEndElement(XmlNamespace.Types, "Items");
+  }
+
+  @Test
+  public void testReadOuterAndInnerXml() throws Exception {
+    EwsXmlReader reader = createReader(true);
+    reader.read(new XmlNodeType(XmlNodeType.START_DOCUMENT));
+    reader.readStartElement(XmlNamespace.Types, "Items");
+    reader.readStartElement(XmlNamespace.Types, "Message");
+    reader.readStartElement(XmlNamespace.Types, "ItemId");
+    Assert.assertTrue(reader.isEmptyElement());
+    Assert.assertEquals("<t:ItemId Id=\"AAMk\" ChangeKey=\"CQAA\"></t:ItemId>", reader.readOuterXml());
+    Assert.assertTrue(reader.isEndElement(XmlNamespace.Types, "ItemId"));
+
+    reader.readStartElement(XmlNamespace.Types, "Subject");
+    Assert.assertEquals("Hello &amp; welcome", reader.readInnerXml());
+    Assert.assertTrue(reader.isEndElement(XmlNamespace.Types, "Subject"));
+  }
+
+  @Test
+  public void testReadToDescendant() throws Exception {
+    EwsXmlReader reader = createReader(true);
+    reader.read(new XmlNodeType(XmlNodeType.START_DOCUMENT));
+    reader.readStartElement(XmlNamespace.Types, "Items");
+    Assert.assertTrue(reader.readToDescendant("Subject", TYPES));
+    Assert.assertEquals("Hello & welcome", reader.readValue());
+  }
+}
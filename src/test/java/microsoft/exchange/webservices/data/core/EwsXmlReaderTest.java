@@ -26,6 +26,7 @@ package microsoft.exchange.webservices.data.core;
 import static org.mockito.Mockito.doReturn;
 
 import microsoft.exchange.webservices.data.security.XmlNodeType;
+import org.apache.commons.codec.binary.Base64;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +40,8 @@ import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.XMLEvent;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
 
 public class EwsXmlReaderTest {
 
@@ -99,4 +102,34 @@ public class EwsXmlReaderTest {
     Assert.assertNull(character.getData());
   }
 
+  @Test
+  public void testReadBase64ElementValueStreamsLargeContent() throws Exception {
+    byte[] content = new byte[100 * 1024 + 7];
+    new Random(42).nextBytes(content);
+    String encoded = new String(Base64.encodeBase64Chunked(content), "US-ASCII");
+
+    EwsXmlReader reader = new EwsXmlReader(new ByteArrayInputStream(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<Attachment><Content>" + encoded + "</Content><Name>a.bin</Name></Attachment>").getBytes("UTF-8")));
+    reader.read(new XmlNodeType(XmlNodeType.START_DOCUMENT));
+    reader.read(new XmlNodeType(XmlNodeType.START_ELEMENT));
+    reader.read(new XmlNodeType(XmlNodeType.START_ELEMENT));
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    reader.readBase64ElementValue(output);
+    Assert.assertArrayEquals(content, output.toByteArray());
+
+    reader.read(new XmlNodeType(XmlNodeType.START_ELEMENT));
+    Assert.assertEquals("Name", reader.getLocalName());
+  }
+
+  @Test
+  public void testReadBase64ElementValueOfEmptyElement() throws Exception {
+    EwsXmlReader reader = new EwsXmlReader(new ByteArrayInputStream(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<Content/>").getBytes("UTF-8")));
+    reader.read(new XmlNodeType(XmlNodeType.START_DOCUMENT));
+    reader.read(new XmlNodeType(XmlNodeType.START_ELEMENT));
+
+    Assert.assertEquals(0, reader.readBase64ElementValue().length);
+  }
+
 }
@@ -0,0 +1,298 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import microsoft.exchange.webservices.data.core.enumeration.availability.AvailabilityData;
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+import microsoft.exchange.webservices.data.core.enumeration.property.WellKnownFolderName;
+import microsoft.exchange.webservices.data.core.enumeration.service.MessageDisposition;
+import microsoft.exchange.webservices.data.core.enumeration.service.SyncFolderItemsScope;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceResponseException;
+import microsoft.exchange.webservices.data.core.response.GetItemResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import microsoft.exchange.webservices.data.core.service.item.EmailMessage;
+import microsoft.exchange.webservices.data.core.service.item.Item;
+import microsoft.exchange.webservices.data.misc.AsyncCallbackImplementation;
+import microsoft.exchange.webservices.data.misc.availability.AttendeeInfo;
+import microsoft.exchange.webservices.data.misc.availability.AvailabilityOptions;
+import microsoft.exchange.webservices.data.misc.availability.TimeWindow;
+import microsoft.exchange.webservices.data.property.complex.FolderId;
+import microsoft.exchange.webservices.data.property.complex.ItemId;
+import microsoft.exchange.webservices.data.search.FindItemsResults;
+import microsoft.exchange.webservices.data.search.ItemView;
+import microsoft.exchange.webservices.data.sync.ChangeCollection;
+import microsoft.exchange.webservices.data.sync.ItemChange;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the asynchronous request methods of {@link ExchangeService} against a local stub server.
+ */
+@RunWith(JUnit4.class)
+public class ExchangeServiceAsyncTest {
+
+  private static final String ENVELOPE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+      + "<s:Header><h:ServerVersionInfo MajorVersion=\"15\" MinorVersion=\"1\" MajorBuildNumber=\"1847\""
+      + " MinorBuildNumber=\"3\" xmlns:h=\"http://schemas.microsoft.com/exchange/services/2006/types\"/></s:Header>"
+      + "<s:Body><m:%1$sResponse xmlns:m=\"http://schemas.microsoft.com/exchange/services/2006/messages\""
+      + " xmlns:t=\"http://schemas.microsoft.com/exchange/services/2006/types\"><m:ResponseMessages>"
+      + "<m:%1$sResponseMessage ResponseClass=\"Success\"><m:ResponseCode>NoError</m:ResponseCode>"
+      + "%2$s</m:%1$sResponseMessage></m:ResponseMessages></m:%1$sResponse></s:Body></s:Envelope>";
+
+  private static final String MESSAGE = "<t:Message><t:ItemId Id=\"%s\" ChangeKey=\"CQAAAA==\"/>"
+      + "<t:Subject>Hello</t:Subject></t:Message>";
+
+  private static final String FIND_ITEM = "<m:RootFolder TotalItemsInView=\"1\" IncludesLastItemInRange=\"true\">"
+      + "<t:Items>" + String.format(MESSAGE, "found") + "</t:Items></m:RootFolder>";
+
+  private static final String GET_ITEM = "<m:Items>" + String.format(MESSAGE, "bound") + "</m:Items>";
+
+  private static final String CREATE_ITEM = "<m:Items><t:Message><t:ItemId Id=\"created\" ChangeKey=\"CQAAAA==\"/>"
+      + "</t:Message></m:Items>";
+
+  private static final String SYNC_FOLDER_ITEMS = "<m:SyncState>state-2</m:SyncState>"
+      + "<m:IncludesLastItemInRange>true</m:IncludesLastItemInRange>"
+      + "<m:Changes><t:Create>" + String.format(MESSAGE, "synced") + "</t:Create></m:Changes>";
+
+  private static final String ACCESS_DENIED_FAULT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><s:Fault>"
+      + "<faultcode xmlns:a=\"http://schemas.microsoft.com/exchange/services/2006/types\">a:ErrorAccessDenied</faultcode>"
+      + "<faultstring xml:lang=\"en-US\">Access is denied.</faultstring>"
+      + "<detail><e:ResponseCode xmlns:e=\"http://schemas.microsoft.com/exchange/services/2006/errors\">"
+      + "ErrorAccessDenied</e:ResponseCode>"
+      + "<e:Message xmlns:e=\"http://schemas.microsoft.com/exchange/services/2006/errors\">"
+      + "Access is denied.</e:Message></detail></s:Fault></s:Body></s:Envelope>";
+
+  private volatile boolean fail;
+
+  private HttpServer server;
+
+  private ExchangeService service;
+
+  @Before
+  public void setUp() throws Exception {
+    server = ServerBootstrap.bootstrap()
+        .setListenerPort(0)
+        .registerHandler("*", new HttpRequestHandler() {
+          @Override
+          public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+              throws HttpException, IOException {
+            String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+            if (fail) {
+              response.setStatusCode(500);
+              response.setEntity(new StringEntity(ACCESS_DENIED_FAULT,
+                  ContentType.create("text/xml", "utf-8")));
+              return;
+            }
+            String operation;
+            String payload;
+            if (body.contains(":FindItem ")) {
+              operation = "FindItem";
+              payload = FIND_ITEM;
+            } else if (body.contains(":GetItem>") || body.contains(":GetItem ")) {
+              operation = "GetItem";
+              payload = GET_ITEM;
+            } else if (body.contains(":CreateItem ")) {
+              operation = "CreateItem";
+              payload = CREATE_ITEM;
+            } else if (body.contains(":SyncFolderItems>") || body.contains(":SyncFolderItems ")) {
+              operation = "SyncFolderItems";
+              payload = SYNC_FOLDER_ITEMS;
+            } else {
+              response.setStatusCode(400);
+              return;
+            }
+            payload = String.format(ENVELOPE, operation, payload);
+            response.setHeader("X-Operation", operation);
+            response.setEntity(new StringEntity(payload, ContentType.create("text/xml", "utf-8")));
+          }
+        })
+        .create();
+    server.start();
+
+    service = new ExchangeService();
+    service.setUrl(new URI("http://localhost:" + server.getLocalPort() + "/EWS/Exchange.asmx"));
+  }
+
+  @After
+  public void tearDown() {
+    service.close();
+    server.shutdown(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testFindItemsResultArrivesThroughFuture() throws Exception {
+    Future<FindItemsResults<Item>> future = service.findItemsAsync(
+        new FolderId(WellKnownFolderName.Inbox), null, new ItemView(10));
+
+    FindItemsResults<Item> results = future.get(10, TimeUnit.SECONDS);
+    assertEquals(1, results.getItems().size());
+    assertEquals("found", results.getItems().get(0).getId().getUniqueId());
+  }
+
+  @Test
+  public void testResponseHeadersAreVisibleAfterAsyncCall() throws Exception {
+    service.findItemsAsync(new FolderId(WellKnownFolderName.Inbox), null, new ItemView(10))
+        .get(10, TimeUnit.SECONDS);
+    assertEquals("FindItem", service.getHttpResponseHeaders().get("X-Operation"));
+
+    service.bindToItemsAsync(Collections.singletonList(new ItemId("bound")),
+        PropertySet.getFirstClassProperties()).get(10, TimeUnit.SECONDS);
+    assertEquals("GetItem", service.getHttpResponseHeaders().get("X-Operation"));
+  }
+
+  @Test
+  public void testCallbackReceivesTheReturnedFuture() throws Exception {
+    final CountDownLatch called = new CountDownLatch(1);
+    final AtomicReference<Future<?>> seen = new AtomicReference<Future<?>>();
+    Future<FindItemsResults<Item>> future = service.findItemsAsync(new AsyncCallbackImplementation() {
+      @Override
+      public Object processMe(Future<?> task) {
+        seen.set(task);
+        called.countDown();
+        return null;
+      }
+    }, new FolderId(WellKnownFolderName.Inbox), null, new ItemView(10));
+
+    assertTrue(called.await(10, TimeUnit.SECONDS));
+    assertSame(future, seen.get());
+    assertTrue(future.isDone());
+    assertEquals(1, future.get().getTotalCount());
+  }
+
+  @Test
+  public void testBindAndLoadResultsArriveThroughFuture() throws Exception {
+    Future<ServiceResponseCollection<GetItemResponse>> bound = service.bindToItemsAsync(
+        Collections.singletonList(new ItemId("bound")), PropertySet.getFirstClassProperties());
+    ServiceResponseCollection<GetItemResponse> responses = bound.get(10, TimeUnit.SECONDS);
+    assertEquals(1, responses.getCount());
+    Item item = responses.getResponseAtIndex(0).getItem();
+    assertEquals("Hello", item.getSubject());
+
+    Future<ServiceResponseCollection<ServiceResponse>> loaded = service.loadPropertiesForItemsAsync(
+        Collections.singletonList(item), PropertySet.getFirstClassProperties());
+    assertEquals(ServiceError.NoError,
+        loaded.get(10, TimeUnit.SECONDS).getResponseAtIndex(0).getErrorCode());
+  }
+
+  @Test
+  public void testCreateAndSyncResultsArriveThroughFuture() throws Exception {
+    EmailMessage message = new EmailMessage(service);
+    message.setSubject("Hello");
+    List<Item> items = new ArrayList<Item>();
+    items.add(message);
+    Future<ServiceResponseCollection<ServiceResponse>> created = service.createItemsAsync(items,
+        new FolderId(WellKnownFolderName.Drafts), MessageDisposition.SaveOnly, null);
+    assertEquals(ServiceError.NoError,
+        created.get(10, TimeUnit.SECONDS).getResponseAtIndex(0).getErrorCode());
+    assertEquals("created", message.getId().getUniqueId());
+
+    Future<ChangeCollection<ItemChange>> synced = service.syncFolderItemsAsync(
+        new FolderId(WellKnownFolderName.Inbox), PropertySet.getIdOnly(), null, 10,
+        SyncFolderItemsScope.NormalItems, "state-1");
+    ChangeCollection<ItemChange> changes = synced.get(10, TimeUnit.SECONDS);
+    assertEquals("state-2", changes.getSyncState());
+    assertEquals("synced", changes.getChangeAtIndex(0).getItemId().getUniqueId());
+  }
+
+  @Test
+  public void testExceptionsArePassedThroughFuture() throws Exception {
+    Item bound = service.bindToItemsAsync(Collections.singletonList(new ItemId("bound")),
+        PropertySet.getIdOnly()).get(10, TimeUnit.SECONDS).getResponseAtIndex(0).getItem();
+    fail = true;
+    EmailMessage message = new EmailMessage(service);
+    List<Item> items = new ArrayList<Item>();
+    items.add(message);
+    FolderId inbox = new FolderId(WellKnownFolderName.Inbox);
+    Date start = new Date();
+    List<AttendeeInfo> attendees = new ArrayList<AttendeeInfo>();
+    attendees.add(new AttendeeInfo("user@contoso.com"));
+
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    futures.add(service.createItemsAsync(items, inbox, MessageDisposition.SaveOnly, null));
+    futures.add(service.findItemsAsync(inbox, null, new ItemView(10)));
+    futures.add(service.bindToItemsAsync(Collections.singletonList(new ItemId("bound")),
+        PropertySet.getFirstClassProperties()));
+    futures.add(service.loadPropertiesForItemsAsync(
+        Collections.singletonList(bound), PropertySet.getFirstClassProperties()));
+    futures.add(service.getEventsAsync("subscription", "watermark"));
+    futures.add(service.syncFolderItemsAsync(inbox, PropertySet.getIdOnly(), null, 10,
+        SyncFolderItemsScope.NormalItems, null));
+    futures.add(service.getUserAvailabilityAsync(attendees,
+        new TimeWindow(start, new Date(start.getTime() + TimeUnit.DAYS.toMillis(1))),
+        AvailabilityData.FreeBusy, new AvailabilityOptions()));
+
+    for (Future<?> future : futures) {
+      try {
+        future.get(10, TimeUnit.SECONDS);
+        fail("expected the request to fail");
+      } catch (ExecutionException e) {
+        assertEquals(ServiceError.ErrorAccessDenied, findResponseException(e).getErrorCode());
+      }
+    }
+  }
+
+  private static ServiceResponseException findResponseException(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ServiceResponseException) {
+        return (ServiceResponseException) cause;
+      }
+    }
+    throw new AssertionError("no ServiceResponseException in " + e);
+  }
+
+}
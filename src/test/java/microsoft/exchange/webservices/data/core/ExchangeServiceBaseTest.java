@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.URI;
+
+@RunWith(JUnit4.class)
+public class ExchangeServiceBaseTest {
+
+  private ExchangeService service;
+
+  @Before
+  public void setUp() {
+    service = new ExchangeService();
+  }
+
+  @After
+  public void tearDown() {
+    service.close();
+  }
+
+  @Test
+  public void testPerRouteLimitFollowsMaximumByDefault() {
+    service.setMaximumPoolingConnections(25);
+    assertEquals(25, service.getMaximumPoolingConnectionsPerRoute());
+
+    service.setMaximumPoolingConnectionsPerRoute(5);
+    service.setMaximumPoolingConnections(50);
+    assertEquals(5, service.getMaximumPoolingConnectionsPerRoute());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPerRouteLimitMustBePositive() {
+    service.setMaximumPoolingConnectionsPerRoute(0);
+  }
+
+  @Test
+  public void testPoolStatsReflectSettings() throws Exception {
+    assertNull(service.getConnectionPoolStats());
+
+    service.setMaximumPoolingConnections(20);
+    IOUtils.closeQuietly(service.prepareHttpPoolingWebRequestForUrl(
+        new URI("https://localhost/EWS/Exchange.asmx"), false, false));
+
+    PoolStats stats = service.getConnectionPoolStats();
+    assertNotNull(stats);
+    assertEquals(20, stats.getMax());
+    assertEquals(0, stats.getLeased());
+
+    service.setMaximumPoolingConnections(30);
+    assertEquals(30, service.getConnectionPoolStats().getMax());
+  }
+
+}
@@ -0,0 +1,370 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+import microsoft.exchange.webservices.data.core.exception.service.local.ServiceLocalException;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceRequestException;
+import microsoft.exchange.webservices.data.core.service.folder.Folder;
+import microsoft.exchange.webservices.data.misc.IRequestInstrumentation;
+import microsoft.exchange.webservices.data.misc.InMemoryRequestInstrumentation;
+import microsoft.exchange.webservices.data.misc.RequestMetrics;
+import microsoft.exchange.webservices.data.misc.ThrottlingController;
+import microsoft.exchange.webservices.data.property.complex.FolderId;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs concurrent requests on one {@link ExchangeService} against a local stub server.
+ */
+@RunWith(JUnit4.class)
+public class ExchangeServiceConcurrencyTest {
+
+  private static final int THREADS = 16;
+
+  private static final int REQUESTS_PER_THREAD = 25;
+
+  private static final Pattern FOLDER_ID_PATTERN = Pattern.compile("FolderId Id=\"([^\"]+)\"");
+
+  private static final String GET_FOLDER_RESPONSE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+      + "<s:Header><h:ServerVersionInfo MajorVersion=\"15\" MinorVersion=\"1\" MajorBuildNumber=\"1847\""
+      + " MinorBuildNumber=\"3\" xmlns:h=\"http://schemas.microsoft.com/exchange/services/2006/types\"/></s:Header>"
+      + "<s:Body><m:GetFolderResponse xmlns:m=\"http://schemas.microsoft.com/exchange/services/2006/messages\""
+      + " xmlns:t=\"http://schemas.microsoft.com/exchange/services/2006/types\"><m:ResponseMessages>"
+      + "%s</m:ResponseMessages></m:GetFolderResponse></s:Body></s:Envelope>";
+
+  private static final String GET_FOLDER_RESPONSE_MESSAGE =
+      "<m:GetFolderResponseMessage ResponseClass=\"Success\"><m:ResponseCode>NoError</m:ResponseCode>"
+      + "<m:Folders><t:Folder><t:FolderId Id=\"%1$s\" ChangeKey=\"AQAAAA==\"/>"
+      + "<t:DisplayName>Folder %1$s</t:DisplayName></t:Folder></m:Folders></m:GetFolderResponseMessage>";
+
+  private static final String SERVER_BUSY_RESPONSE_MESSAGE =
+      "<m:GetFolderResponseMessage ResponseClass=\"Error\">"
+      + "<m:MessageText>The server cannot service this request right now.</m:MessageText>"
+      + "<m:ResponseCode>ErrorServerBusy</m:ResponseCode><m:DescriptiveLinkKey>0</m:DescriptiveLinkKey>"
+      + "<m:MessageXml><t:Value Name=\"BackOffMilliseconds\">%d</t:Value></m:MessageXml>"
+      + "</m:GetFolderResponseMessage>";
+
+  private static final String SERVER_BUSY_FAULT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+      + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><s:Fault>"
+      + "<faultcode xmlns:a=\"http://schemas.microsoft.com/exchange/services/2006/types\">a:ErrorServerBusy</faultcode>"
+      + "<faultstring xml:lang=\"en-US\">The server cannot service this request right now.</faultstring>"
+      + "<detail><e:ResponseCode xmlns:e=\"http://schemas.microsoft.com/exchange/services/2006/errors\">"
+      + "ErrorServerBusy</e:ResponseCode>"
+      + "<e:Message xmlns:e=\"http://schemas.microsoft.com/exchange/services/2006/errors\">"
+      + "The server cannot service this request right now.</e:Message>"
+      + "<t:MessageXml xmlns:t=\"http://schemas.microsoft.com/exchange/services/2006/types\">"
+      + "<t:Value Name=\"BackOffMilliseconds\">%d</t:Value></t:MessageXml>"
+      + "</detail></s:Fault></s:Body></s:Envelope>";
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final AtomicInteger serverBusyResponses = new AtomicInteger();
+
+  private final AtomicInteger serverBusyMessages = new AtomicInteger();
+
+  private final AtomicInteger requestsWithoutCookie = new AtomicInteger();
+
+  private HttpServer server;
+
+  private ExchangeService service;
+
+  @Before
+  public void setUp() throws Exception {
+    server = ServerBootstrap.bootstrap()
+        .setListenerPort(0)
+        .registerHandler("*", new HttpRequestHandler() {
+          @Override
+          public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+              throws HttpException, IOException {
+            String body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+            Matcher matcher = FOLDER_ID_PATTERN.matcher(body);
+            StringBuilder messages = new StringBuilder();
+            String folderId = null;
+            while (matcher.find()) {
+              if (folderId == null) {
+                folderId = matcher.group(1);
+              }
+              messages.append(String.format(GET_FOLDER_RESPONSE_MESSAGE, matcher.group(1)));
+            }
+            requests.incrementAndGet();
+            if (request.getFirstHeader("Cookie") == null) {
+              requestsWithoutCookie.incrementAndGet();
+            }
+            response.setHeader("Set-Cookie", "session=stub; Path=/");
+            if (serverBusyResponses.getAndDecrement() > 0) {
+              response.setStatusCode(500);
+              response.setEntity(new StringEntity(String.format(SERVER_BUSY_FAULT, 100),
+                  ContentType.create("text/xml", "utf-8")));
+              return;
+            }
+            if (serverBusyMessages.getAndDecrement() > 0) {
+              response.setEntity(new StringEntity(String.format(GET_FOLDER_RESPONSE,
+                  String.format(SERVER_BUSY_RESPONSE_MESSAGE, 100)), ContentType.create("text/xml", "utf-8")));
+              return;
+            }
+            response.setHeader("X-Folder-Id", folderId);
+            response.setEntity(new StringEntity(String.format(GET_FOLDER_RESPONSE, messages),
+                ContentType.create("text/xml", "utf-8")));
+          }
+        })
+        .create();
+    server.start();
+
+    service = new ExchangeService();
+    service.setMaximumPoolingConnections(8);
+    service.setUrl(new URI("http://localhost:" + server.getLocalPort() + "/EWS/Exchange.asmx"));
+  }
+
+  @After
+  public void tearDown() {
+    service.close();
+    server.shutdown(1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testConcurrentRequests() throws Exception {
+    // The first response sets the session cookie, which all later requests should carry.
+    assertEquals("Folder warmup", Folder.bind(service, new FolderId("warmup")).getDisplayName());
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+              String id = "folder-" + thread + "-" + i;
+              Folder folder = Folder.bind(service, new FolderId(id));
+              assertEquals(id, folder.getId().getUniqueId());
+              assertEquals("Folder " + id, folder.getDisplayName());
+              // The headers are those of the last response of any thread, but never a mix.
+              String lastId = service.getHttpResponseHeaders().get("X-Folder-Id");
+              assertTrue(lastId, lastId.startsWith("folder-"));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, requestsWithoutCookie.get());
+    assertEquals(0, service.getConnectionPoolStats().getLeased());
+  }
+
+  @Test
+  public void testConcurrentBindsAreCoalesced() throws Exception {
+    service.setBindCoalescingWindow(50);
+    final PropertySet propertySet = PropertySet.getFirstClassProperties();
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < 5; i++) {
+              String id = "folder-" + thread + "-" + i;
+              Folder folder = service.bindToFolder(new FolderId(id), propertySet);
+              assertEquals(id, folder.getId().getUniqueId());
+              assertEquals("Folder " + id, folder.getDisplayName());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue("Expected far fewer requests than binds, got " + requests.get(), requests.get() < THREADS * 5 / 2);
+  }
+
+  @Test
+  public void testThrottledRequestsAreRetriedAfterBackOff() throws Exception {
+    ThrottlingController throttlingController = new ThrottlingController();
+    service.setThrottlingController(throttlingController);
+    serverBusyResponses.set(1);
+
+    long start = System.nanoTime();
+    assertEquals("Folder throttled", Folder.bind(service, new FolderId("throttled")).getDisplayName());
+
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    assertEquals(2, requests.get());
+    ThrottlingController.Metrics metrics = throttlingController.getMetrics(service.getThrottlingKey());
+    assertEquals(1, metrics.getThrottled());
+    assertEquals(1, metrics.getRetried());
+    assertEquals(4, metrics.getLimit());
+  }
+
+  @Test
+  public void testServerBusyResponseMessagesAreRetried() throws Exception {
+    ThrottlingController throttlingController = new ThrottlingController();
+    service.setThrottlingController(throttlingController);
+    serverBusyMessages.set(1);
+
+    long start = System.nanoTime();
+    assertEquals("Folder busy", Folder.bind(service, new FolderId("busy")).getDisplayName());
+
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    assertEquals(2, requests.get());
+    ThrottlingController.Metrics metrics = throttlingController.getMetrics(service.getThrottlingKey());
+    assertEquals(1, metrics.getThrottled());
+    assertEquals(1, metrics.getRetried());
+  }
+
+  @Test
+  public void testResponseMessageErrorsAreReported() throws Exception {
+    final List<RequestMetrics> attempts = Collections.synchronizedList(new ArrayList<RequestMetrics>());
+    service.setRequestInstrumentation(new IRequestInstrumentation() {
+      @Override
+      public void requestCompleted(RequestMetrics metrics) {
+        attempts.add(metrics);
+      }
+    });
+    service.setThrottlingController(new ThrottlingController());
+    serverBusyMessages.set(1);
+
+    assertEquals("Folder measured", Folder.bind(service, new FolderId("measured")).getDisplayName());
+
+    assertEquals(2, attempts.size());
+    RequestMetrics busy = attempts.get(0);
+    assertTrue(busy.isSucceeded());
+    assertEquals(200, busy.getHttpStatusCode());
+    assertEquals(ServiceError.ErrorServerBusy, busy.getErrorCode());
+    assertNull(attempts.get(1).getErrorCode());
+  }
+
+  @Test
+  public void testThrottlingKeyWithoutServer() throws Exception {
+    ExchangeService unconfigured = new ExchangeService();
+    assertEquals("", unconfigured.getThrottlingKey());
+    unconfigured.getHttpHeaders().put("X-AnchorMailbox", "User@contoso.com");
+    assertEquals("/user@contoso.com", unconfigured.getThrottlingKey());
+
+    unconfigured.setThrottlingController(new ThrottlingController());
+    try {
+      Folder.bind(unconfigured, new FolderId("folder"));
+      fail("Expected the missing URL to be reported");
+    } catch (ServiceRequestException e) {
+      // The same failure as without a throttling controller.
+      assertTrue(e.getCause() instanceof ServiceLocalException);
+      assertTrue(e.getMessage(), e.getMessage().contains("Url"));
+    } finally {
+      unconfigured.close();
+    }
+  }
+
+  @Test
+  public void testRequestInstrumentation() throws Exception {
+    final List<RequestMetrics> attempts = Collections.synchronizedList(new ArrayList<RequestMetrics>());
+    final InMemoryRequestInstrumentation statistics = new InMemoryRequestInstrumentation();
+    service.setRequestInstrumentation(new IRequestInstrumentation() {
+      @Override
+      public void requestCompleted(RequestMetrics metrics) {
+        attempts.add(metrics);
+        statistics.requestCompleted(metrics);
+      }
+    });
+    service.setThrottlingController(new ThrottlingController());
+    serverBusyResponses.set(1);
+
+    assertEquals("Folder measured", Folder.bind(service, new FolderId("measured")).getDisplayName());
+
+    assertEquals(2, attempts.size());
+    RequestMetrics throttled = attempts.get(0);
+    assertEquals("GetFolder", throttled.getOperationName());
+    assertEquals(0, throttled.getRetryCount());
+    assertFalse(throttled.isSucceeded());
+    assertEquals(500, throttled.getHttpStatusCode());
+    assertEquals(ServiceError.ErrorServerBusy, throttled.getErrorCode());
+
+    RequestMetrics succeeded = attempts.get(1);
+    assertTrue(succeeded.isSucceeded());
+    assertEquals(1, succeeded.getRetryCount());
+    assertEquals(200, succeeded.getHttpStatusCode());
+    assertNull(succeeded.getErrorCode());
+    assertTrue(succeeded.getSerializationNanos() >= 0);
+    assertTrue(succeeded.getConnectionLeaseNanos() >= 0);
+    assertTrue(succeeded.getTimeToFirstByteNanos() >= succeeded.getConnectionLeaseNanos());
+    assertTrue(succeeded.getParseNanos() >= 0);
+    assertTrue(succeeded.getTotalNanos() >= succeeded.getTimeToFirstByteNanos());
+    assertTrue(succeeded.getResponseBytes() > GET_FOLDER_RESPONSE.length());
+
+    InMemoryRequestInstrumentation.OperationStatistics getFolder = statistics.getStatistics("GetFolder");
+    assertEquals(2, getFolder.getAttempts());
+    assertEquals(1, getFolder.getFailures());
+    assertEquals(1, getFolder.getRetries());
+    assertEquals(Long.valueOf(1), getFolder.getErrors().get(ServiceError.ErrorServerBusy));
+    assertEquals(1, getFolder.getResponseSize().getCount());
+  }
+
+}
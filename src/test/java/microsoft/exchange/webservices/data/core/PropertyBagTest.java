@@ -24,17 +24,27 @@
 package microsoft.exchange.webservices.data.core;
 
 import microsoft.exchange.webservices.data.core.service.ServiceObject;
+import microsoft.exchange.webservices.data.core.service.item.EmailMessage;
 import microsoft.exchange.webservices.data.core.service.item.Item;
+import microsoft.exchange.webservices.data.core.service.schema.FolderSchema;
+import microsoft.exchange.webservices.data.core.service.schema.ItemSchema;
+import microsoft.exchange.webservices.data.core.service.schema.ServiceObjectSchema;
 import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
+import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
+import microsoft.exchange.webservices.data.core.enumeration.property.Importance;
 import microsoft.exchange.webservices.data.core.exception.misc.ArgumentException;
 import microsoft.exchange.webservices.data.core.exception.service.local.ServiceObjectPropertyException;
 import microsoft.exchange.webservices.data.misc.OutParam;
 import microsoft.exchange.webservices.data.property.definition.IntPropertyDefinition;
 import microsoft.exchange.webservices.data.property.definition.RecurrencePropertyDefinition;
+import microsoft.exchange.webservices.data.security.XmlNodeType;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayInputStream;
+
 @RunWith(JUnit4.class)
 public class PropertyBagTest {
 
@@ -56,6 +66,87 @@ public class PropertyBagTest {
     pb.getObjectFromPropertyDefinition(new IntPropertyDefinition("", "none", ExchangeVersion.Exchange2007_SP1));
   }
 
+  @Test
+  public void testChangesOfNewObject() throws Exception {
+    PropertyBag pb = createPropertyBag();
+    Assert.assertFalse(pb.getIsDirty());
+    Assert.assertFalse(pb.contains(ItemSchema.Subject));
+
+    pb.setObjectFromPropertyDefinition(ItemSchema.Subject, "Hello");
+    pb.setObjectFromPropertyDefinition(ItemSchema.Importance, Importance.High);
+
+    Assert.assertTrue(pb.getIsDirty());
+    Assert.assertTrue(pb.contains(ItemSchema.Subject));
+    Assert.assertTrue(pb.isPropertyUpdated(ItemSchema.Subject));
+    Assert.assertEquals("Hello", pb.getObjectFromPropertyDefinition(ItemSchema.Subject));
+    Assert.assertEquals(Importance.High, pb.getObjectFromPropertyDefinition(ItemSchema.Importance));
+    Assert.assertEquals(2, pb.getProperties().size());
+
+    pb.clearChangeLog();
+    Assert.assertFalse(pb.getIsDirty());
+    Assert.assertFalse(pb.isPropertyUpdated(ItemSchema.Subject));
+    Assert.assertEquals("Hello", pb.getObjectFromPropertyDefinition(ItemSchema.Subject));
+  }
+
+  @Test
+  public void testPropertyOrdinalsMatchRegistrationOrder() throws Exception {
+    ServiceObjectSchema schema = createPropertyBag().getOwner().getSchema();
+    for (int ordinal = 0; ordinal < schema.getPropertyCount(); ordinal++) {
+      Assert.assertEquals(ordinal, schema.getPropertyOrdinal(schema.getPropertyByOrdinal(ordinal)));
+    }
+    Assert.assertEquals(-1, schema.getPropertyOrdinal(
+        new IntPropertyDefinition("", "none", ExchangeVersion.Exchange2007_SP1)));
+  }
+
+  @Test
+  public void testPropertyOutsideOwnerSchema() throws Exception {
+    PropertyBag pb = createPropertyBag();
+    Assert.assertEquals(-1, pb.getOwner().getSchema().getPropertyOrdinal(FolderSchema.DisplayName));
+
+    pb.setObjectFromPropertyDefinition(FolderSchema.DisplayName, "Folder");
+    pb.setObjectFromPropertyDefinition(ItemSchema.Subject, "Hello");
+
+    Assert.assertTrue(pb.contains(FolderSchema.DisplayName));
+    Assert.assertTrue(pb.isPropertyUpdated(FolderSchema.DisplayName));
+    Assert.assertEquals("Folder", pb.getObjectFromPropertyDefinition(FolderSchema.DisplayName));
+    Assert.assertEquals("Hello", pb.getObjectFromPropertyDefinition(ItemSchema.Subject));
+    Assert.assertEquals("Folder", pb.getProperties().get(FolderSchema.DisplayName));
+  }
+
+  @Test
+  public void testChangesOfLoadedObject() throws Exception {
+    ExchangeService es = new ExchangeService();
+    EmailMessage message = new EmailMessage(es);
+    PropertyBag pb = message.getPropertyBag();
+    String xml = "<t:Message xmlns:t=\"http://schemas.microsoft.com/exchange/services/2006/types\">"
+        + "<t:ItemId Id=\"AAA=\" ChangeKey=\"CQA=\"/><t:Subject>Hello</t:Subject>"
+        + "<t:Importance>Low</t:Importance></t:Message>";
+    EwsServiceXmlReader reader = new EwsServiceXmlReader(
+        new ByteArrayInputStream(xml.getBytes("UTF-8")), es);
+    reader.read(new XmlNodeType(XmlNodeType.START_DOCUMENT));
+    reader.readStartElement(XmlNamespace.Types, XmlElementNames.Message);
+    pb.loadFromXml(reader, true, null, false);
+
+    Assert.assertFalse(message.isNew());
+    Assert.assertFalse(pb.getIsDirty());
+    Assert.assertTrue(pb.isPropertyLoaded(ItemSchema.Subject));
+    Assert.assertFalse(pb.isPropertyLoaded(ItemSchema.Body));
+    Assert.assertEquals("Hello", pb.getObjectFromPropertyDefinition(ItemSchema.Subject));
+
+    pb.setObjectFromPropertyDefinition(ItemSchema.Subject, "Changed");
+    Assert.assertTrue(pb.isPropertyUpdated(ItemSchema.Subject));
+    Assert.assertTrue(pb.getIsUpdateCallNecessary());
+
+    pb.setObjectFromPropertyDefinition(ItemSchema.Subject, null);
+    Assert.assertFalse(pb.contains(ItemSchema.Subject));
+    Assert.assertFalse(pb.isPropertyUpdated(ItemSchema.Subject));
+    Assert.assertTrue(pb.getIsDirty());
+
+    // Setting a deleted property again turns the deletion into an update.
+    pb.setObjectFromPropertyDefinition(ItemSchema.Subject, "Again");
+    Assert.assertTrue(pb.isPropertyUpdated(ItemSchema.Subject));
+    Assert.assertEquals("Again", pb.getObjectFromPropertyDefinition(ItemSchema.Subject));
+  }
 
   private PropertyBag createPropertyBag() throws Exception {
     ExchangeService es = new ExchangeService();
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core;
+
+import microsoft.exchange.webservices.base.BaseTest;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
+import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
+import microsoft.exchange.webservices.data.core.enumeration.property.BasePropertySet;
+import microsoft.exchange.webservices.data.core.enumeration.service.ServiceObjectType;
+import microsoft.exchange.webservices.data.core.service.schema.EmailMessageSchema;
+import microsoft.exchange.webservices.data.core.service.schema.ItemSchema;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+
+@RunWith(JUnit4.class)
+public class PropertySetTest extends BaseTest {
+
+  @Test
+  public void testFrozenPropertySetWritesSameXml() throws Exception {
+    PropertySet propertySet = createPropertySet();
+    String expected = write(exchangeServiceMock, propertySet, ServiceObjectType.Item);
+
+    PropertySet frozen = createPropertySet();
+    frozen.freeze();
+    Assert.assertEquals(expected, write(exchangeServiceMock, frozen, ServiceObjectType.Item));
+    Assert.assertEquals(expected, write(exchangeServiceMock, frozen, ServiceObjectType.Item));
+    Assert.assertEquals(write(exchangeServiceMock, propertySet, ServiceObjectType.Folder),
+        write(exchangeServiceMock, frozen, ServiceObjectType.Folder));
+  }
+
+  @Test
+  public void testFrozenPropertySetIsSerializedPerVersion() throws Exception {
+    ExchangeService legacyService = new ExchangeService(ExchangeVersion.Exchange2007_SP1);
+    PropertySet frozen = createPropertySet();
+    frozen.freeze();
+
+    String current = write(exchangeServiceMock, frozen, ServiceObjectType.Item);
+    String legacy = write(legacyService, frozen, ServiceObjectType.Item);
+    Assert.assertTrue(current.contains("ConvertHtmlCodePageToUTF8"));
+    Assert.assertFalse(legacy.contains("ConvertHtmlCodePageToUTF8"));
+    Assert.assertEquals(write(legacyService, createPropertySet(), ServiceObjectType.Item), legacy);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testFrozenPropertySetCannotBeModified() throws Exception {
+    PropertySet frozen = createPropertySet();
+    frozen.freeze();
+    Assert.assertTrue(frozen.isReadOnly());
+    frozen.add(ItemSchema.Importance);
+  }
+
+  private static PropertySet createPropertySet() {
+    PropertySet propertySet = new PropertySet(BasePropertySet.IdOnly, ItemSchema.Subject,
+        EmailMessageSchema.From, ItemSchema.DateTimeReceived);
+    propertySet.setConvertHtmlCodePageToUTF8(true);
+    return propertySet;
+  }
+
+  private static String write(ExchangeServiceBase service, PropertySet propertySet,
+      ServiceObjectType serviceObjectType) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    EwsServiceXmlWriter writer = new EwsServiceXmlWriter(service, output);
+    writer.writeStartElement(XmlNamespace.Messages, XmlElementNames.FindItem);
+    propertySet.writeToXml(writer, serviceObjectType);
+    writer.writeEndElement();
+    writer.flush();
+    return output.toString("UTF-8");
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.request;
+
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
+import microsoft.exchange.webservices.data.credential.ExchangeCredentials;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class DeferredFileRequestEntityTest {
+
+  private static final byte[] CONTENT = "<soap:Envelope>request</soap:Envelope>".getBytes();
+
+  @Test
+  public void testSmallRequestStaysInMemory() throws Exception {
+    DeferredFileRequestEntity entity = new DeferredFileRequestEntity(1024);
+    entity.getOutputStream().write(CONTENT);
+
+    assertContent(entity);
+    entity.dispose();
+  }
+
+  @Test
+  public void testLargeRequestIsSpooledAndRepeatable() throws Exception {
+    DeferredFileRequestEntity entity = new DeferredFileRequestEntity(8);
+    OutputStream os = entity.getOutputStream();
+    os.write(CONTENT);
+    os.close();
+
+    Assert.assertTrue(entity.isRepeatable());
+    assertContent(entity);
+    assertContent(entity);
+    Assert.assertArrayEquals(CONTENT, IOUtils.toByteArray(entity.getContent()));
+    entity.dispose();
+  }
+
+  @Test
+  public void testSpoolFileIsDeletedWhenSerializationFails() throws Exception {
+    ExchangeService service = new ExchangeService(ExchangeVersion.Exchange2010_SP1);
+    service.setUrl(new URI("http://localhost/EWS/Exchange.asmx"));
+    service.setMaximumRequestBufferSize(64);
+    service.setCredentials(new ExchangeCredentials() {
+      @Override
+      public void serializeExtraSoapHeaders(XMLStreamWriter writer, String webMethodName)
+          throws XMLStreamException {
+        // Enough content to spool the request, then a failure.
+        for (int i = 0; i < 100; i++) {
+          writer.writeComment("padding");
+        }
+        writer.flush();
+        throw new XMLStreamException("serialization failed");
+      }
+    });
+    Set<String> before = spoolFiles();
+
+    try {
+      new GetServerTimeZonesRequest(service).buildEwsHttpWebRequest();
+      Assert.fail("The serialization should have failed");
+    } catch (XMLStreamException e) {
+      Assert.assertEquals("serialization failed", e.getMessage());
+    } finally {
+      service.close();
+    }
+
+    Assert.assertEquals(before, spoolFiles());
+  }
+
+  private static Set<String> spoolFiles() {
+    String[] names = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith("ews-request-");
+      }
+    });
+    return new HashSet<String>(Arrays.asList(names));
+  }
+
+  private static void assertContent(DeferredFileRequestEntity entity) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+    Assert.assertEquals(CONTENT.length, entity.getContentLength());
+    Assert.assertArrayEquals(CONTENT, out.toByteArray());
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.request;
+
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.enumeration.misc.HangingRequestDisconnectReason;
+import microsoft.exchange.webservices.data.misc.IRequestInstrumentation;
+import microsoft.exchange.webservices.data.misc.RequestMetrics;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the metrics of hanging requests against a local stub server.
+ */
+@RunWith(JUnit4.class)
+public class HangingServiceRequestBaseTest {
+
+  /**
+   * Released when the test ends, so that streams kept open end.
+   */
+  private final CountDownLatch testEnded = new CountDownLatch(1);
+
+  private final BlockingQueue<RequestMetrics> completed = new LinkedBlockingQueue<RequestMetrics>();
+
+  private final BlockingQueue<HangingRequestDisconnectEventArgs> disconnects =
+      new LinkedBlockingQueue<HangingRequestDisconnectEventArgs>();
+
+  private volatile boolean keepOpen;
+
+  private HttpServer server;
+
+  private ExchangeService service;
+
+  @Before
+  public void setUp() throws Exception {
+    server = ServerBootstrap.bootstrap()
+        .setListenerPort(0)
+        .registerHandler("*", new HttpRequestHandler() {
+          @Override
+          public void handle(HttpRequest request, HttpResponse response, HttpContext context)
+              throws HttpException, IOException {
+            if (!keepOpen) {
+              // Closes the stream before any notification was sent.
+              response.setEntity(new StringEntity("", ContentType.create("text/xml", "utf-8")));
+              return;
+            }
+            // Whitespace, enough to get the response flushed, then nothing until the test ends.
+            response.setEntity(new InputStreamEntity(new InputStream() {
+              private int whitespace = 16 * 1024;
+
+              @Override
+              public int read() throws IOException {
+                if (whitespace-- > 0) {
+                  return ' ';
+                }
+                try {
+                  testEnded.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                return -1;
+              }
+            }, ContentType.create("text/xml", "utf-8")));
+          }
+        })
+        .create();
+    server.start();
+
+    service = new ExchangeService();
+    service.setUrl(new URI("http://localhost:" + server.getLocalPort() + "/EWS/Exchange.asmx"));
+    service.setRequestInstrumentation(new IRequestInstrumentation() {
+      @Override
+      public void requestCompleted(RequestMetrics metrics) {
+        completed.add(metrics);
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    testEnded.countDown();
+    service.close();
+    server.shutdown(100, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void testMetricsAreReportedWhenTheConnectionFails() throws Exception {
+    GetStreamingEventsRequest request = startRequest();
+
+    RequestMetrics metrics = completed.poll(10, TimeUnit.SECONDS);
+    Assert.assertNotNull(metrics);
+    Assert.assertEquals("GetStreamingEvents", metrics.getOperationName());
+    Assert.assertFalse(metrics.isSucceeded());
+    Assert.assertEquals(200, metrics.getHttpStatusCode());
+    Assert.assertEquals(HangingRequestDisconnectReason.Exception,
+        disconnects.poll(10, TimeUnit.SECONDS).getReason());
+    Assert.assertFalse(request.isConnected());
+    Assert.assertTrue(completed.isEmpty());
+  }
+
+  @Test
+  public void testMetricsAreReportedOnceWhenTheUserDisconnects() throws Exception {
+    keepOpen = true;
+    GetStreamingEventsRequest request = startRequest();
+    Assert.assertTrue(request.isConnected());
+    Assert.assertTrue(completed.isEmpty());
+
+    request.disconnect();
+
+    RequestMetrics metrics = completed.poll(10, TimeUnit.SECONDS);
+    Assert.assertNotNull(metrics);
+    Assert.assertEquals("GetStreamingEvents", metrics.getOperationName());
+    Assert.assertTrue(metrics.isSucceeded());
+    Assert.assertTrue(metrics.getTotalNanos() >= metrics.getTimeToFirstByteNanos());
+    Assert.assertEquals(HangingRequestDisconnectReason.UserInitiated,
+        disconnects.poll(10, TimeUnit.SECONDS).getReason());
+
+    // The reader thread fails once the stream is closed, which must not report again.
+    testEnded.countDown();
+    Assert.assertNull(completed.poll(200, TimeUnit.MILLISECONDS));
+    Assert.assertTrue(disconnects.isEmpty());
+  }
+
+  private GetStreamingEventsRequest startRequest() throws Exception {
+    List<String> subscriptionIds = new ArrayList<String>(Collections.singletonList("subscription"));
+    GetStreamingEventsRequest request = new GetStreamingEventsRequest(service,
+        new HangingServiceRequestBase.IHandleResponseObject() {
+          @Override
+          public void handleResponseObject(Object response) {
+          }
+        }, subscriptionIds, 1);
+    request.addOnDisconnectEvent(new HangingServiceRequestBase.IHangingRequestDisconnectHandler() {
+      @Override
+      public void hangingRequestDisconnectHandler(Object sender, HangingRequestDisconnectEventArgs args) {
+        disconnects.add(args);
+      }
+    });
+    request.internalExecute();
+    return request;
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.core.request;
+
+import microsoft.exchange.webservices.data.core.EwsServiceXmlWriter;
+import microsoft.exchange.webservices.data.core.ExchangeService;
+import microsoft.exchange.webservices.data.core.ICustomXmlSerialization;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ConnectingIdType;
+import microsoft.exchange.webservices.data.core.enumeration.misc.DateTimePrecision;
+import microsoft.exchange.webservices.data.core.enumeration.misc.ExchangeVersion;
+import microsoft.exchange.webservices.data.credential.ExchangeCredentials;
+import microsoft.exchange.webservices.data.credential.WebCredentials;
+import microsoft.exchange.webservices.data.misc.ImpersonatedUserId;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(JUnit4.class)
+public class SoapHeaderTemplateTest {
+
+  @Test
+  public void testTemplateMatchesWrittenHeader() throws Exception {
+    ExchangeService cached = configure(new ExchangeService(ExchangeVersion.Exchange2010_SP1));
+    ExchangeService uncached = configure(new ExchangeService(ExchangeVersion.Exchange2010_SP1));
+    // A custom header serializer keeps the service from using a template.
+    List<ICustomXmlSerialization> serializers = new ArrayList<ICustomXmlSerialization>();
+    serializers.add(new ICustomXmlSerialization() {
+      @Override
+      public void CustomXmlSerialization(XMLStreamWriter writer) {
+      }
+    });
+    uncached.setOnSerializeCustomSoapHeaders(serializers);
+
+    String expected = write(uncached);
+    Assert.assertFalse(isCachedFor(uncached));
+    Assert.assertEquals(expected, write(cached));
+    Assert.assertTrue(isCachedFor(cached));
+    Assert.assertEquals(expected, write(cached));
+  }
+
+  @Test
+  public void testTemplateFollowsSettingChanges() throws Exception {
+    ExchangeService service = new ExchangeService(ExchangeVersion.Exchange2010_SP1);
+    Assert.assertFalse(write(service).contains("MailboxCulture"));
+
+    service.setPreferredCulture(Locale.FRENCH);
+    Assert.assertTrue(write(service).contains("MailboxCulture"));
+
+    ImpersonatedUserId userId = new ImpersonatedUserId(ConnectingIdType.SmtpAddress, "first@contoso.com");
+    service.setImpersonatedUserId(userId);
+    Assert.assertTrue(write(service).contains("first@contoso.com"));
+
+    // The impersonated user id can change without going through the service.
+    userId.setId("second@contoso.com");
+    String xml = write(service);
+    Assert.assertTrue(xml.contains("second@contoso.com"));
+    Assert.assertFalse(xml.contains("first@contoso.com"));
+  }
+
+  @Test
+  public void testTemplateIsNotSharedBetweenServices() throws Exception {
+    ExchangeService first = configure(new ExchangeService(ExchangeVersion.Exchange2010_SP1));
+    ExchangeService second = new ExchangeService(ExchangeVersion.Exchange2010_SP1);
+    second.setImpersonatedUserId(new ImpersonatedUserId(ConnectingIdType.SmtpAddress, "other@contoso.com"));
+
+    Assert.assertTrue(write(first).contains("user@contoso.com"));
+    SoapHeaderTemplate template = SoapHeaderTemplate.getCached(first);
+    Assert.assertTrue(write(second).contains("other@contoso.com"));
+    Assert.assertNotSame(template, SoapHeaderTemplate.getCached(second));
+    Assert.assertTrue(write(first).contains("user@contoso.com"));
+    // Requests for another service don't evict the first service's template.
+    Assert.assertSame(template, SoapHeaderTemplate.getCached(first));
+  }
+
+  @Test
+  public void testTemplateFollowsServiceSettings() throws Exception {
+    ExchangeService service = configure(new ExchangeService(ExchangeVersion.Exchange2010_SP1));
+    write(service);
+    SoapHeaderTemplate template = SoapHeaderTemplate.getCached(service);
+    write(service);
+    Assert.assertSame(template, SoapHeaderTemplate.getCached(service));
+
+    service.setDateTimePrecision(DateTimePrecision.Seconds);
+    Assert.assertTrue(write(service).contains(">Seconds<"));
+    Assert.assertNotSame(template, SoapHeaderTemplate.getCached(service));
+
+    service.setCredentials(new ExchangeCredentials() {
+      @Override
+      public void serializeExtraSoapHeaders(XMLStreamWriter writer, String webMethodName)
+          throws XMLStreamException {
+        writer.writeEmptyElement("ExtraHeader");
+      }
+    });
+    Assert.assertTrue(write(service).contains("ExtraHeader"));
+  }
+
+  @Test
+  public void testCredentialsWithExtraHeaders() {
+    Assert.assertFalse(new WebCredentials("user", "password").emitsExtraSoapHeaders());
+    Assert.assertTrue(new ExchangeCredentials() {
+      @Override
+      public void serializeExtraSoapHeaders(XMLStreamWriter writer, String webMethodName) {
+      }
+    }.emitsExtraSoapHeaders());
+  }
+
+  private static ExchangeService configure(ExchangeService service) {
+    service.setPreferredCulture(Locale.GERMANY);
+    service.setDateTimePrecision(DateTimePrecision.Milliseconds);
+    service.setImpersonatedUserId(new ImpersonatedUserId(ConnectingIdType.SmtpAddress, "user@contoso.com"));
+    return service;
+  }
+
+  private static boolean isCachedFor(ExchangeService service) {
+    return SoapHeaderTemplate.getCached(service) != null;
+  }
+
+  private static String write(ExchangeService service) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    EwsServiceXmlWriter writer = new EwsServiceXmlWriter(service, output);
+    new GetServerTimeZonesRequest(service).writeToXml(writer);
+    writer.dispose();
+    return output.toString("UTF-8");
+  }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.dns;
+
+import microsoft.exchange.webservices.data.core.exception.dns.DnsException;
+import microsoft.exchange.webservices.data.core.exception.dns.DnsNameNotFoundException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(JUnit4.class)
+public class DnsCacheTest {
+
+  private static final String NAME = "_autodiscover._tcp.contoso.com";
+
+  @Test
+  public void testAnswerIsReusedUntilItExpires() throws Exception {
+    StubDnsCache cache = new StubDnsCache(srvRecord(0));
+
+    Assert.assertEquals("mail.contoso.com.", cache.query(DnsSrvRecord.class, NAME, null).get(0).getNameTarget());
+    cache.now = 999;
+    cache.query(DnsSrvRecord.class, NAME.toUpperCase(), null);
+    Assert.assertEquals(1, cache.lookups.get());
+
+    cache.now = 1000;
+    cache.query(DnsSrvRecord.class, NAME, null);
+    Assert.assertEquals(2, cache.lookups.get());
+  }
+
+  @Test
+  public void testRecordTimeToLiveIsRespected() throws Exception {
+    StubDnsCache cache = new StubDnsCache(srvRecord(300), srvRecord(60));
+
+    cache.query(DnsSrvRecord.class, NAME, null);
+    cache.now = 59999;
+    cache.query(DnsSrvRecord.class, NAME, null);
+    Assert.assertEquals(1, cache.lookups.get());
+
+    cache.now = 60000;
+    cache.query(DnsSrvRecord.class, NAME, null);
+    Assert.assertEquals(2, cache.lookups.get());
+  }
+
+  @Test
+  public void testMissingNameIsCachedNegatively() throws Exception {
+    StubDnsCache cache = new StubDnsCache();
+    cache.error = "DNS name not found";
+    cache.nameNotFound = true;
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.query(DnsSrvRecord.class, NAME, null);
+        Assert.fail("DnsException expected");
+      } catch (DnsException e) {
+        Assert.assertEquals("DNS name not found", e.getMessage());
+      }
+    }
+    Assert.assertEquals(1, cache.lookups.get());
+
+    cache.now = 100;
+    cache.error = null;
+    Assert.assertTrue(cache.query(DnsSrvRecord.class, NAME, null).isEmpty());
+    Assert.assertEquals(2, cache.lookups.get());
+  }
+
+  @Test
+  public void testFailedLookupIsNotCached() throws Exception {
+    StubDnsCache cache = new StubDnsCache(srvRecord(0));
+    cache.error = "DNS error";
+
+    try {
+      cache.query(DnsSrvRecord.class, NAME, null);
+      Assert.fail("DnsException expected");
+    } catch (DnsException e) {
+      Assert.assertEquals("DNS error", e.getMessage());
+    }
+    Assert.assertEquals(0, cache.size());
+
+    cache.error = null;
+    Assert.assertEquals(1, cache.query(DnsSrvRecord.class, NAME, null).size());
+    Assert.assertEquals(2, cache.lookups.get());
+  }
+
+  @Test
+  public void testInterruptedQueryStopsWaitingForSharedLookup() throws Exception {
+    final StubDnsCache cache = new StubDnsCache(srvRecord(0));
+    cache.started = new CountDownLatch(1);
+    cache.release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<List<DnsSrvRecord>> owner = executor.submit(new Callable<List<DnsSrvRecord>>() {
+        @Override
+        public List<DnsSrvRecord> call() throws Exception {
+          return cache.query(DnsSrvRecord.class, NAME, null);
+        }
+      });
+      Assert.assertTrue(cache.started.await(5, TimeUnit.SECONDS));
+
+      final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+      final AtomicBoolean interrupted = new AtomicBoolean();
+      Thread waiter = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            cache.query(DnsSrvRecord.class, NAME, null);
+          } catch (Exception e) {
+            failure.set(e);
+          }
+          interrupted.set(Thread.currentThread().isInterrupted());
+        }
+      });
+      waiter.start();
+      waiter.interrupt();
+      waiter.join(5000);
+
+      Assert.assertFalse(waiter.isAlive());
+      Assert.assertTrue(failure.get() instanceof DnsException);
+      Assert.assertTrue(interrupted.get());
+
+      cache.release.countDown();
+      Assert.assertEquals(1, owner.get(5, TimeUnit.SECONDS).size());
+    } finally {
+      cache.release.countDown();
+      executor.shutdownNow();
+    }
+    Assert.assertEquals(1, cache.lookups.get());
+  }
+
+  @Test
+  public void testConcurrentQueriesShareOneLookup() throws Exception {
+    final StubDnsCache cache = new StubDnsCache(srvRecord(0));
+    cache.release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<DnsSrvRecord>>> results = new ArrayList<Future<List<DnsSrvRecord>>>();
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(new Callable<List<DnsSrvRecord>>() {
+          @Override
+          public List<DnsSrvRecord> call() throws Exception {
+            return cache.query(DnsSrvRecord.class, NAME, null);
+          }
+        }));
+      }
+      Thread.sleep(200);
+      cache.release.countDown();
+      for (Future<List<DnsSrvRecord>> result : results) {
+        Assert.assertEquals(1, result.get(5, TimeUnit.SECONDS).size());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertEquals(1, cache.lookups.get());
+  }
+
+  private static DnsSrvRecord srvRecord(final int timeToLive) throws DnsException {
+    DnsSrvRecord record = new DnsSrvRecord() {
+      @Override
+      public int getTimeToLive() {
+        return timeToLive;
+      }
+    };
+    record.load("0 0 443 mail.contoso.com.");
+    return record;
+  }
+
+  /**
+   * Cache answering from fixed records, on a manual clock.
+   */
+  private static class StubDnsCache extends DnsCache {
+
+    private final List<DnsSrvRecord> records = new ArrayList<DnsSrvRecord>();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private volatile String error;
+
+    private volatile boolean nameNotFound;
+
+    private volatile CountDownLatch started;
+
+    private volatile CountDownLatch release;
+
+    private volatile long now;
+
+    StubDnsCache(DnsSrvRecord... records) {
+      super(10, 1000, 100);
+      Collections.addAll(this.records, records);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T extends DnsRecord> List<T> lookupRecords(Class<T> cls, String domain,
+        String dnsServerAddress) throws DnsException {
+      lookups.incrementAndGet();
+      if (started != null) {
+        started.countDown();
+      }
+      if (release != null) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new DnsException(e.getMessage());
+        }
+      }
+      if (error != null && nameNotFound) {
+        throw new DnsNameNotFoundException(error);
+      } else if (error != null) {
+        throw new DnsException(error);
+      }
+      return (List<T>) new ArrayList<DnsSrvRecord>(records);
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+}
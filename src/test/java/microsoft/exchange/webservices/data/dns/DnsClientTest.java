@@ -26,7 +26,15 @@ package microsoft.exchange.webservices.data.dns;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.naming.directory.DirContext;
+
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 public class DnsClientTest {
   @Test public void getEnvShouldSetNaming() {
@@ -46,4 +54,29 @@ public class DnsClientTest {
     Hashtable<String, String> env = DnsClient.getEnv("1.1.1.1");
     Assert.assertEquals(env.get("java.naming.provider.url"), "dns://1.1.1.1");
   }
+
+  @Test public void idleContextsAreCapped() throws Exception {
+    String server = "192.0.2.1";
+    List<DirContext> contexts = new ArrayList<DirContext>();
+    for (int i = 0; i <= DnsClient.MAX_IDLE_CONTEXTS; i++) {
+      DirContext context = mock(DirContext.class);
+      contexts.add(context);
+      DnsClient.releaseContext(server, context, true);
+    }
+
+    for (int i = 0; i < DnsClient.MAX_IDLE_CONTEXTS; i++) {
+      verify(contexts.get(i), never()).close();
+      Assert.assertSame(contexts.get(i), DnsClient.acquireContext(server));
+    }
+    verify(contexts.get(DnsClient.MAX_IDLE_CONTEXTS)).close();
+  }
+
+  @Test public void failedContextsAreClosed() throws Exception {
+    String server = "192.0.2.2";
+    DirContext context = mock(DirContext.class);
+    DnsClient.releaseContext(server, context, false);
+
+    verify(context).close();
+    Assert.assertNotSame(context, DnsClient.acquireContext(server));
+  }
 }
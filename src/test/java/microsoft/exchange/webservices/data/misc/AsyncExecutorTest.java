@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(JUnit4.class)
+public class AsyncExecutorTest {
+
+  @Test
+  public void testCallbackRunsOnPoolThread() throws Exception {
+    AsyncExecutor executor = new AsyncExecutor(1, 1);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<String> callbackThread = new AtomicReference<String>();
+    try {
+      Future<String> future = executor.submit(new Callable<String>() {
+        @Override
+        public String call() {
+          return Thread.currentThread().getName();
+        }
+      }, new AsyncCallback() {
+        @Override
+        public Object processMe(Future<?> task) {
+          callbackThread.set(Thread.currentThread().getName());
+          latch.countDown();
+          return null;
+        }
+      });
+
+      Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(future.get(), callbackThread.get());
+      Assert.assertTrue(callbackThread.get().startsWith("ews-async-"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testSaturatedPoolFailsTheFuture() throws Exception {
+    AsyncExecutor executor = new AsyncExecutor(1, 1);
+    final CountDownLatch release = new CountDownLatch(1);
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    final AtomicReference<Future<?>> callbackTask = new AtomicReference<Future<?>>();
+    try {
+      for (int i = 0; i < 2; i++) {
+        final int value = i;
+        futures.add(AsyncExecutor.submit(executor, new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            release.await();
+            return value;
+          }
+        }, null));
+      }
+      // The pool and queue are full, so this one must not run on the calling thread.
+      final AtomicReference<String> runner = new AtomicReference<String>();
+      Future<Integer> rejected = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          runner.set(Thread.currentThread().getName());
+          return 2;
+        }
+      }, new AsyncCallback() {
+        @Override
+        public Object processMe(Future<?> task) {
+          callbackTask.set(task);
+          return null;
+        }
+      });
+      Assert.assertTrue(rejected.isDone());
+      Assert.assertSame(rejected, callbackTask.get());
+      try {
+        rejected.get();
+        Assert.fail("Expected the rejection to fail the future");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+      }
+      Assert.assertNull(runner.get());
+      release.countDown();
+
+      for (int i = 0; i < futures.size(); i++) {
+        Assert.assertEquals(Integer.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testVirtualThreadExecutorFallsBack() throws Exception {
+    ExecutorService executor = AsyncExecutor.newVirtualThreadExecutor();
+    try {
+      Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return Boolean.TRUE;
+        }
+      });
+      Assert.assertTrue(future.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.enumeration.service.ServiceResult;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ChunkedRequestException;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class ChunkedRequestTest {
+
+  private static final class EchoResponse extends ServiceResponse {
+    private final Integer id;
+
+    EchoResponse(Integer id) {
+      this.id = id;
+    }
+
+    @Override
+    public ServiceResult getResult() {
+      return ServiceResult.Success;
+    }
+  }
+
+  private static class EchoRequest extends ChunkedRequest<Integer, EchoResponse> {
+    final List<List<Integer>> chunks = new CopyOnWriteArrayList<List<Integer>>();
+    final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+    @Override
+    protected ServiceResponseCollection<EchoResponse> executeChunk(List<Integer> chunk)
+        throws Exception {
+      chunks.add(new ArrayList<Integer>(chunk));
+      threads.add(Thread.currentThread());
+      // Let later chunks overtake earlier ones.
+      Thread.sleep(chunk.get(0) % 3 * 5);
+      ServiceResponseCollection<EchoResponse> responses = new ServiceResponseCollection<EchoResponse>();
+      for (Integer id : chunk) {
+        responses.add(new EchoResponse(id));
+      }
+      return responses;
+    }
+  }
+
+  private static List<Integer> range(int count) {
+    List<Integer> ids = new ArrayList<Integer>();
+    for (int i = 0; i < count; i++) {
+      ids.add(i);
+    }
+    return ids;
+  }
+
+  private static void assertInOrder(int count, ServiceResponseCollection<EchoResponse> responses) {
+    Assert.assertEquals(count, responses.getCount());
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(Integer.valueOf(i), responses.getResponseAtIndex(i).id);
+    }
+  }
+
+  @Test
+  public void testSingleRequestWithoutChunkSize() throws Exception {
+    EchoRequest request = new EchoRequest();
+    assertInOrder(25, request.execute(range(25), 0, 4, null));
+    Assert.assertEquals(1, request.chunks.size());
+
+    request = new EchoRequest();
+    assertInOrder(10, request.execute(range(10), 10, 4, null));
+    Assert.assertEquals(1, request.chunks.size());
+  }
+
+  @Test
+  public void testSequentialChunksPreserveOrder() throws Exception {
+    EchoRequest request = new EchoRequest();
+    assertInOrder(25, request.execute(range(25), 10, 1, null));
+    Assert.assertEquals(3, request.chunks.size());
+    Assert.assertEquals(range(10), request.chunks.get(0));
+    Assert.assertEquals(5, request.chunks.get(2).size());
+    Assert.assertEquals(1, request.threads.size());
+  }
+
+  @Test
+  public void testParallelChunksPreserveOrder() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      EchoRequest request = new EchoRequest();
+      assertInOrder(100, request.execute(range(100), 3, 4, executor));
+      Assert.assertEquals(34, request.chunks.size());
+      Assert.assertTrue(request.threads.size() > 1);
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testFailureStopsFurtherChunks() throws Exception {
+    final Exception failure = new Exception("chunk failed");
+    EchoRequest request = new EchoRequest() {
+      @Override
+      protected ServiceResponseCollection<EchoResponse> executeChunk(List<Integer> chunk)
+          throws Exception {
+        super.executeChunk(chunk);
+        throw failure;
+      }
+    };
+    try {
+      request.execute(range(50), 5, 1, null);
+      Assert.fail("expected the chunk failure");
+    } catch (Exception e) {
+      Assert.assertSame(failure, e);
+    }
+    Assert.assertEquals(1, request.chunks.size());
+  }
+
+  @Test
+  public void testCompletedChunksAreKeptOnFailure() throws Exception {
+    final Exception failure = new Exception("chunk failed");
+    EchoRequest request = new EchoRequest() {
+      @Override
+      protected ServiceResponseCollection<EchoResponse> executeChunk(List<Integer> chunk)
+          throws Exception {
+        if (chunk.get(0) == 10) {
+          throw failure;
+        }
+        return super.executeChunk(chunk);
+      }
+    };
+    try {
+      request.execute(range(25), 5, 1, null);
+      Assert.fail("expected the chunk failure");
+    } catch (ChunkedRequestException e) {
+      Assert.assertSame(failure, e.getCause());
+      Assert.assertEquals(5, e.getChunkSize());
+      List<ServiceResponseCollection<? extends ServiceResponse>> chunks = e.getChunkResponses();
+      Assert.assertEquals(5, chunks.size());
+      Assert.assertEquals(5, chunks.get(0).getCount());
+      Assert.assertEquals(Integer.valueOf(5), ((EchoResponse) chunks.get(1).getResponseAtIndex(0)).id);
+      Assert.assertNull(chunks.get(2));
+      Assert.assertNull(chunks.get(3));
+    }
+    Assert.assertEquals(2, request.chunks.size());
+  }
+
+  @Test
+  public void testBusyExecutorDoesNotBlockCaller() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // Occupy the only worker so that helper tasks never start.
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            Thread.sleep(2000);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      EchoRequest request = new EchoRequest();
+      assertInOrder(20, request.execute(range(20), 2, 4, executor));
+      Assert.assertEquals(1, request.threads.size());
+      Assert.assertTrue(request.threads.contains(Thread.currentThread()));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
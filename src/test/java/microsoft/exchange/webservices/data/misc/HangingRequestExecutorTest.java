@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class HangingRequestExecutorTest {
+
+  @Test
+  public void testDefaultExecutorIsUnbounded() throws Exception {
+    Assert.assertEquals(HangingRequestExecutor.UNBOUNDED,
+        HangingRequestExecutor.getDefault().getMaximumConnections());
+
+    // More readers than any fixed default would allow must all run at the same time.
+    HangingRequestExecutor executor = new HangingRequestExecutor();
+    int readers = 1100;
+    final CountDownLatch started = new CountDownLatch(readers);
+    final CountDownLatch release = new CountDownLatch(1);
+    Runnable reader = new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    try {
+      for (int i = 0; i < readers; i++) {
+        executor.execute(reader);
+      }
+      Assert.assertTrue(started.await(30, TimeUnit.SECONDS));
+      Assert.assertEquals(readers, executor.getActiveConnections());
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * A cap is opt-in. Once it is reached, further connections are rejected
+   * rather than queued, so that the caller opening the connection sees the failure.
+   */
+  @Test
+  public void testMaximumConnectionsIsEnforced() throws Exception {
+    HangingRequestExecutor executor = new HangingRequestExecutor(2);
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    Runnable reader = new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    try {
+      executor.execute(reader);
+      executor.execute(reader);
+      Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(2, executor.getActiveConnections());
+
+      try {
+        executor.execute(reader);
+        Assert.fail("Expected the third reader to be rejected");
+      } catch (RejectedExecutionException expected) {
+        Assert.assertEquals(2, executor.getActiveConnections());
+      }
+
+      release.countDown();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (executor.getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assert.assertEquals(0, executor.getActiveConnections());
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testVirtualThreadExecutorRunsReaders() throws Exception {
+    HangingRequestExecutor executor = HangingRequestExecutor.newVirtualThreadExecutor(10);
+    final CountDownLatch done = new CountDownLatch(1);
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          done.countDown();
+        }
+      });
+      Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(10, executor.getMaximumConnections());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class HistogramTest {
+
+  @Test
+  public void testSmallValuesAreExact() {
+    Histogram histogram = new Histogram(5);
+    for (int i = 1; i <= 64; i++) {
+      histogram.record(i);
+    }
+    Assert.assertEquals(64, histogram.getCount());
+    Assert.assertEquals(1, histogram.getMin());
+    Assert.assertEquals(64, histogram.getMax());
+    Assert.assertEquals(32.5, histogram.getMean(), 0.0);
+    Assert.assertEquals(32, histogram.getValueAtPercentile(50));
+    Assert.assertEquals(63, histogram.getValueAtPercentile(98));
+    Assert.assertEquals(64, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testLargeValuesAreWithinPrecision() {
+    Histogram histogram = new Histogram(5);
+    long[] values = {1000, 123456, 98765432, 5000000000L, Long.MAX_VALUE};
+    for (long value : values) {
+      Histogram single = new Histogram(5);
+      single.record(value);
+      single.record(0);
+      long reported = single.getValueAtPercentile(100);
+      Assert.assertTrue(value + " reported as " + reported,
+          reported >= value && reported - value <= value / 32);
+      histogram.record(value);
+    }
+    Assert.assertEquals(Long.MAX_VALUE, histogram.getMax());
+    long median = histogram.getValueAtPercentile(50);
+    Assert.assertTrue(median >= 98765432 && median - 98765432 <= 98765432 / 32);
+  }
+
+  @Test
+  public void testBucketsAreContiguous() {
+    Histogram histogram = new Histogram(3);
+    int previous = -1;
+    for (long value = 0; value < 100000; value++) {
+      int index = histogram.indexOf(value);
+      Assert.assertTrue(index == previous || index == previous + 1);
+      Assert.assertTrue(histogram.highestEquivalentValue(index) >= value);
+      previous = index;
+    }
+    Assert.assertEquals((64 - 3) * 8 - 1, histogram.indexOf(Long.MAX_VALUE));
+    Assert.assertEquals(Long.MAX_VALUE, histogram.highestEquivalentValue(histogram.indexOf(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testEmptyAndReset() {
+    Histogram histogram = new Histogram();
+    Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+    Assert.assertEquals(0, histogram.getMin());
+    Assert.assertEquals(0, histogram.getMax());
+    histogram.record(42);
+    histogram.reset();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getValueAtPercentile(50));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeValuesAreRejected() {
+    new Histogram().record(-1);
+  }
+
+  @Test
+  public void testConcurrentRecording() throws Exception {
+    final Histogram histogram = new Histogram();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(80000, histogram.getCount());
+    Assert.assertEquals(1, histogram.getMin());
+    Assert.assertEquals(10000, histogram.getMax());
+    Assert.assertEquals(5000.5, histogram.getMean(), 0.0);
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class PrefetchingPagedIterableTest {
+
+  private static final int PAGE_SIZE = 10;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  private static class NumberPages extends PrefetchingPagedIterable<Integer> {
+    final int count;
+    final List<Integer> offsets = new CopyOnWriteArrayList<Integer>();
+    final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+    final AtomicInteger consumed = new AtomicInteger();
+    volatile int maxAhead;
+
+    NumberPages(int count, int prefetchDepth, Executor executor) {
+      super(0, prefetchDepth, executor);
+      this.count = count;
+    }
+
+    @Override
+    protected Page<Integer> fetchPage(int offset) throws Exception {
+      offsets.add(offset);
+      threads.add(Thread.currentThread());
+      maxAhead = Math.max(maxAhead, offset / PAGE_SIZE - consumed.get() / PAGE_SIZE);
+      List<Integer> results = new ArrayList<Integer>();
+      for (int i = offset; i < Math.min(offset + PAGE_SIZE, count); i++) {
+        results.add(i);
+      }
+      boolean more = offset + PAGE_SIZE < count;
+      return new Page<Integer>(results, more, more ? offset + PAGE_SIZE : null);
+    }
+
+    List<Integer> consumeAll(long millisPerResult) throws InterruptedException {
+      List<Integer> results = new ArrayList<Integer>();
+      consumed.set(0);
+      for (Integer result : this) {
+        results.add(result);
+        consumed.incrementAndGet();
+        Thread.sleep(millisPerResult);
+      }
+      return results;
+    }
+  }
+
+  private static void assertRange(int count, List<Integer> results) {
+    Assert.assertEquals(count, results.size());
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(Integer.valueOf(i), results.get(i));
+    }
+  }
+
+  @Test
+  public void testWithoutPrefetchPagesAreFetchedByCaller() throws Exception {
+    NumberPages pages = new NumberPages(35, 0, null);
+
+    assertRange(35, pages.consumeAll(0));
+    Assert.assertEquals(4, pages.offsets.size());
+    for (Thread thread : pages.threads) {
+      Assert.assertSame(Thread.currentThread(), thread);
+    }
+    Assert.assertEquals(0, pages.maxAhead);
+  }
+
+  @Test
+  public void testNextPagesAreFetchedInBackground() throws Exception {
+    NumberPages pages = new NumberPages(50, 1, executor);
+
+    assertRange(50, pages.consumeAll(1));
+    Assert.assertEquals(5, pages.offsets.size());
+    Assert.assertSame(Thread.currentThread(), pages.threads.get(0));
+    for (Thread thread : pages.threads.subList(1, pages.threads.size())) {
+      Assert.assertNotSame(Thread.currentThread(), thread);
+    }
+    Assert.assertEquals(1, pages.maxAhead);
+  }
+
+  @Test
+  public void testPrefetchDepthBoundsPagesFetchedAhead() throws Exception {
+    NumberPages pages = new NumberPages(100, 3, executor);
+
+    assertRange(100, pages.consumeAll(2));
+    Assert.assertEquals(10, pages.offsets.size());
+    Assert.assertTrue(pages.maxAhead <= 3);
+    Assert.assertTrue(pages.maxAhead >= 2);
+  }
+
+  @Test
+  public void testIteratorStartsAgainAtFirstPage() throws Exception {
+    NumberPages pages = new NumberPages(15, 1, executor);
+
+    assertRange(15, pages.consumeAll(0));
+    assertRange(15, pages.consumeAll(0));
+    Assert.assertEquals(4, pages.offsets.size());
+  }
+
+  @Test
+  public void testEmptyResults() throws Exception {
+    Iterator<Integer> iterator = new NumberPages(0, 1, executor).iterator();
+
+    Assert.assertFalse(iterator.hasNext());
+    try {
+      iterator.next();
+      Assert.fail("expected no more results");
+    } catch (NoSuchElementException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testFetchFailureEndsIteration() throws Exception {
+    final Exception failure = new Exception("page failed");
+    NumberPages pages = new NumberPages(50, 1, executor) {
+      @Override
+      protected Page<Integer> fetchPage(int offset) throws Exception {
+        if (offset == 20) {
+          throw failure;
+        }
+        return super.fetchPage(offset);
+      }
+    };
+
+    List<Integer> results = new ArrayList<Integer>();
+    try {
+      for (Integer result : pages) {
+        results.add(result);
+      }
+      Assert.fail("expected the page failure");
+    } catch (RuntimeException e) {
+      Assert.assertSame(failure, e.getCause());
+    }
+    assertRange(20, results);
+  }
+
+}
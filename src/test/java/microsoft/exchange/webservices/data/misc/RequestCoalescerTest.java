@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.enumeration.service.ServiceResult;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import microsoft.exchange.webservices.data.core.response.ServiceResponseCollection;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class RequestCoalescerTest {
+
+  private static final class EchoResponse extends ServiceResponse {
+    private final String id;
+
+    EchoResponse(String id) {
+      this.id = id;
+    }
+
+    @Override
+    public ServiceResult getResult() {
+      return ServiceResult.Success;
+    }
+  }
+
+  private static final class EchoCoalescer extends RequestCoalescer<String, EchoResponse> {
+    private final List<List<String>> batches = new CopyOnWriteArrayList<List<String>>();
+    private volatile Exception failure;
+
+    EchoCoalescer(int windowMillis, int maxBatchSize) {
+      super(windowMillis, maxBatchSize);
+    }
+
+    @Override
+    protected ServiceResponseCollection<EchoResponse> executeBatch(Object key, List<String> ids)
+        throws Exception {
+      batches.add(new ArrayList<String>(ids));
+      if (failure != null) {
+        throw failure;
+      }
+      ServiceResponseCollection<EchoResponse> responses = new ServiceResponseCollection<EchoResponse>();
+      for (String id : ids) {
+        responses.add(new EchoResponse(key + ":" + id));
+      }
+      return responses;
+    }
+  }
+
+  private static List<Future<EchoResponse>> executeConcurrently(final EchoCoalescer coalescer,
+      ExecutorService executor, final Object[] keys, int count) {
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<EchoResponse>> futures = new ArrayList<Future<EchoResponse>>();
+    for (int i = 0; i < count; i++) {
+      final String id = String.valueOf(i);
+      final Object key = keys[i % keys.length];
+      futures.add(executor.submit(new Callable<EchoResponse>() {
+        public EchoResponse call() throws Exception {
+          start.await();
+          return coalescer.execute(key, id);
+        }
+      }));
+    }
+    start.countDown();
+    return futures;
+  }
+
+  @Test
+  public void testConcurrentCallsShareOneBatch() throws Exception {
+    EchoCoalescer coalescer = new EchoCoalescer(500, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<EchoResponse>> futures = executeConcurrently(coalescer, executor, new Object[] {"a"}, 16);
+      for (int i = 0; i < futures.size(); i++) {
+        Assert.assertEquals("a:" + i, futures.get(i).get(5, TimeUnit.SECONDS).id);
+      }
+      Assert.assertEquals(1, coalescer.batches.size());
+      Assert.assertEquals(16, coalescer.batches.get(0).size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testKeysUseSeparateBatches() throws Exception {
+    EchoCoalescer coalescer = new EchoCoalescer(500, 100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<EchoResponse>> futures =
+          executeConcurrently(coalescer, executor, new Object[] {"a", "b"}, 8);
+      for (int i = 0; i < futures.size(); i++) {
+        Assert.assertEquals((i % 2 == 0 ? "a:" : "b:") + i, futures.get(i).get(5, TimeUnit.SECONDS).id);
+      }
+      Assert.assertEquals(2, coalescer.batches.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFullBatchDoesNotWaitForWindow() throws Exception {
+    EchoCoalescer coalescer = new EchoCoalescer(60000, 4);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<EchoResponse>> futures = executeConcurrently(coalescer, executor, new Object[] {"a"}, 4);
+      for (Future<EchoResponse> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+      Assert.assertEquals(1, coalescer.batches.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailureReachesAllCallers() throws Exception {
+    EchoCoalescer coalescer = new EchoCoalescer(500, 100);
+    coalescer.failure = new IllegalStateException("request failed");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<EchoResponse>> futures = executeConcurrently(coalescer, executor, new Object[] {"a"}, 4);
+      for (Future<EchoResponse> future : futures) {
+        try {
+          future.get(5, TimeUnit.SECONDS);
+          Assert.fail("Expected the batch failure");
+        } catch (ExecutionException e) {
+          Assert.assertSame(coalescer.failure, e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+
+@RunWith(JUnit4.class)
+public class ResponseTraceStreamTest {
+
+  private static final byte[] RESPONSE = "<?xml version=\"1.0\"?><Envelope/>".getBytes();
+
+  @Test
+  public void testCopiesEverythingRead() throws Exception {
+    ResponseTraceStream stream = new ResponseTraceStream(new ByteArrayInputStream(RESPONSE), 1024);
+    byte[] read = IOUtils.toByteArray(stream);
+
+    Assert.assertArrayEquals(RESPONSE, read);
+    Assert.assertArrayEquals(RESPONSE, stream.getResponseCopy().toByteArray());
+    Assert.assertEquals(RESPONSE.length, stream.getTotalBytesRead());
+    Assert.assertFalse(stream.isTruncated());
+  }
+
+  @Test
+  public void testTraceIsBoundedButStreamIsNot() throws Exception {
+    ResponseTraceStream stream = new ResponseTraceStream(new ByteArrayInputStream(RESPONSE), 10);
+    Assert.assertEquals(RESPONSE[0], stream.read());
+    byte[] read = IOUtils.toByteArray(stream);
+
+    Assert.assertEquals(RESPONSE.length - 1, read.length);
+    Assert.assertEquals(10, stream.getResponseCopy().size());
+    Assert.assertEquals(RESPONSE.length, stream.getTotalBytesRead());
+    Assert.assertTrue(stream.isTruncated());
+  }
+
+  @Test
+  public void testSkippedBytesAreTraced() throws Exception {
+    ResponseTraceStream stream = new ResponseTraceStream(new ByteArrayInputStream(RESPONSE), 1024);
+    Assert.assertEquals(RESPONSE.length, stream.skip(Long.MAX_VALUE));
+    Assert.assertArrayEquals(RESPONSE, stream.getResponseCopy().toByteArray());
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.misc;
+
+import microsoft.exchange.webservices.data.core.enumeration.misc.error.ServiceError;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceRequestException;
+import microsoft.exchange.webservices.data.core.exception.service.remote.ServiceResponseException;
+import microsoft.exchange.webservices.data.core.response.ServiceResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class ThrottlingControllerTest {
+
+  private static final String KEY = "server/mailbox";
+
+  private static ServiceRequestException serverBusy(final String backOffMilliseconds) {
+    ServiceResponse response = new ServiceResponse() {
+      @Override
+      public ServiceError getErrorCode() {
+        return ServiceError.ErrorServerBusy;
+      }
+
+      @Override
+      public Map<String, String> getErrorDetails() {
+        return backOffMilliseconds == null ? Collections.<String, String>emptyMap()
+            : Collections.singletonMap(ThrottlingController.BACK_OFF_MILLISECONDS, backOffMilliseconds);
+      }
+    };
+    // Requests wrap the fault the way SimpleServiceRequestBase does.
+    return new ServiceRequestException("The request failed.", new ServiceResponseException(response));
+  }
+
+  private static Callable<String> failingTimes(final int failures, final Exception failure,
+      final List<Long> attempts) {
+    return new Callable<String>() {
+      public String call() throws Exception {
+        attempts.add(System.nanoTime());
+        if (attempts.size() <= failures) {
+          throw failure;
+        }
+        return "ok";
+      }
+    };
+  }
+
+  @Test
+  public void testIdempotentRequestIsRetriedAfterBackOff() throws Exception {
+    ThrottlingController controller = new ThrottlingController(4, 16, 2, 0, 1000);
+    List<Long> attempts = new ArrayList<Long>();
+
+    Assert.assertEquals("ok", controller.execute(KEY, true, failingTimes(1, serverBusy("200"), attempts)));
+
+    Assert.assertEquals(2, attempts.size());
+    Assert.assertTrue(attempts.get(1) - attempts.get(0) >= TimeUnit.MILLISECONDS.toNanos(190));
+    ThrottlingController.Metrics metrics = controller.getMetrics(KEY);
+    Assert.assertEquals(1, metrics.getThrottled());
+    Assert.assertEquals(1, metrics.getRetried());
+    Assert.assertEquals(2, metrics.getLimit());
+    Assert.assertEquals(0, metrics.getInFlight());
+  }
+
+  @Test
+  public void testNonIdempotentRequestIsNotRetried() throws Exception {
+    ThrottlingController controller = new ThrottlingController(4, 16, 2, 0, 0);
+    List<Long> attempts = new ArrayList<Long>();
+    ServiceRequestException failure = serverBusy("0");
+
+    try {
+      controller.execute(KEY, false, failingTimes(1, failure, attempts));
+      Assert.fail("expected the throttling error");
+    } catch (ServiceRequestException e) {
+      Assert.assertSame(failure, e);
+    }
+    Assert.assertEquals(1, attempts.size());
+    Assert.assertEquals(0, controller.getMetrics(KEY).getRetried());
+  }
+
+  @Test
+  public void testRetriesAreLimited() throws Exception {
+    ThrottlingController controller = new ThrottlingController(4, 16, 2, 0, 0);
+    List<Long> attempts = new ArrayList<Long>();
+
+    try {
+      controller.execute(KEY, true, failingTimes(10, serverBusy(null), attempts));
+      Assert.fail("expected the throttling error");
+    } catch (ServiceRequestException e) {
+      // Expected.
+    }
+    Assert.assertEquals(3, attempts.size());
+    Assert.assertEquals(1, controller.getMetrics(KEY).getLimit());
+  }
+
+  @Test
+  public void testOtherErrorsDoNotChangeLimit() throws Exception {
+    ThrottlingController controller = new ThrottlingController(4, 16, 2, 0, 0);
+    List<Long> attempts = new ArrayList<Long>();
+
+    try {
+      controller.execute(KEY, true, failingTimes(1, new ServiceRequestException("down"), attempts));
+      Assert.fail("expected the error");
+    } catch (ServiceRequestException e) {
+      // Expected.
+    }
+    Assert.assertEquals(1, attempts.size());
+    Assert.assertEquals(4, controller.getMetrics(KEY).getLimit());
+    Assert.assertEquals(0, controller.getMetrics(KEY).getThrottled());
+  }
+
+  @Test
+  public void testLimitGrowsAdditively() throws Exception {
+    ThrottlingController controller = new ThrottlingController(2, 3, 0, 0, 0);
+    Callable<String> ok = failingTimes(0, null, new ArrayList<Long>());
+
+    // 2 + 1/2 + 1/2.5 < 3 after two requests, one request per limit's worth raises it by one.
+    controller.execute(KEY, false, ok);
+    controller.execute(KEY, false, ok);
+    Assert.assertEquals(2, controller.getMetrics(KEY).getLimit());
+    controller.execute(KEY, false, ok);
+    Assert.assertEquals(3, controller.getMetrics(KEY).getLimit());
+    for (int i = 0; i < 10; i++) {
+      controller.execute(KEY, false, ok);
+    }
+    Assert.assertEquals(3, controller.getMetrics(KEY).getLimit());
+  }
+
+  @Test
+  public void testRequestsInFlightAreLimitedAndExcessIsRejected() throws Exception {
+    final ThrottlingController controller = new ThrottlingController(2, 2, 0, 200, 0);
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    final AtomicInteger inFlight = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<String>> blocked = new ArrayList<Future<String>>();
+      for (int i = 0; i < 2; i++) {
+        blocked.add(executor.submit(new Callable<String>() {
+          public String call() throws Exception {
+            return controller.execute(KEY, true, new Callable<String>() {
+              public String call() throws Exception {
+                maxInFlight.set(Math.max(maxInFlight.get(), inFlight.incrementAndGet()));
+                started.countDown();
+                release.await();
+                inFlight.decrementAndGet();
+                return "ok";
+              }
+            });
+          }
+        }));
+      }
+      Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+      try {
+        controller.execute(KEY, true, failingTimes(0, null, new ArrayList<Long>()));
+        Assert.fail("expected the request to be rejected");
+      } catch (ServiceRequestException e) {
+        // Expected.
+      }
+      ThrottlingController.Metrics metrics = controller.getMetrics(KEY);
+      Assert.assertEquals(2, metrics.getInFlight());
+      Assert.assertEquals(0, metrics.getQueued());
+      Assert.assertEquals(1, metrics.getRejected());
+
+      release.countDown();
+      for (Future<String> future : blocked) {
+        Assert.assertEquals("ok", future.get(5, TimeUnit.SECONDS));
+      }
+      Assert.assertEquals(2, maxInFlight.get());
+      Assert.assertEquals(0, controller.getMetrics(KEY).getInFlight());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTargetsAreLimitedIndependently() throws Exception {
+    ThrottlingController controller = new ThrottlingController(4, 16, 0, 0, 0);
+    try {
+      controller.execute("a", false, failingTimes(1, serverBusy("0"), new ArrayList<Long>()));
+    } catch (ServiceRequestException e) {
+      // Expected.
+    }
+    controller.execute("b", false, failingTimes(0, null, new ArrayList<Long>()));
+
+    Assert.assertEquals(2, controller.getMetrics("a").getLimit());
+    Assert.assertEquals(4, controller.getMetrics("b").getLimit());
+    Assert.assertEquals(2, controller.getMetrics().size());
+    Assert.assertNull(controller.getMetrics("c"));
+  }
+
+  @Test
+  public void testIdleTargetsAreDropped() throws Exception {
+    ThrottlingController controller = new ThrottlingController(4, 16, 0, 0, 0, 50);
+    controller.execute("a", false, failingTimes(0, null, new ArrayList<Long>()));
+    try {
+      controller.execute("b", false, failingTimes(1, serverBusy("0"), new ArrayList<Long>()));
+    } catch (ServiceRequestException e) {
+      // Expected.
+    }
+
+    Thread.sleep(100);
+    controller.execute("c", false, failingTimes(0, null, new ArrayList<Long>()));
+    // "a" is back at the initial limit, "b" is still throttled and kept for longer.
+    Assert.assertNull(controller.getMetrics("a"));
+    Assert.assertEquals(2, controller.getMetrics("b").getLimit());
+    Assert.assertNotNull(controller.getMetrics("c"));
+
+    Thread.sleep(550);
+    controller.execute("a", false, failingTimes(0, null, new ArrayList<Long>()));
+    Assert.assertNull(controller.getMetrics("b"));
+    Assert.assertNull(controller.getMetrics("c"));
+    Assert.assertEquals(4, controller.getMetrics("a").getLimit());
+    Assert.assertEquals(1, controller.getMetrics().size());
+  }
+
+}
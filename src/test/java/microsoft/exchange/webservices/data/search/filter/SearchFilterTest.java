@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ * Copyright (c) 2012 Microsoft Corporation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package microsoft.exchange.webservices.data.search.filter;
+
+import microsoft.exchange.webservices.base.BaseTest;
+import microsoft.exchange.webservices.data.core.EwsServiceXmlWriter;
+import microsoft.exchange.webservices.data.core.XmlElementNames;
+import microsoft.exchange.webservices.data.core.enumeration.misc.XmlNamespace;
+import microsoft.exchange.webservices.data.core.enumeration.search.LogicalOperator;
+import microsoft.exchange.webservices.data.core.service.schema.ItemSchema;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class SearchFilterTest extends BaseTest {
+
+  @Test
+  public void testFrozenFilterWritesSameXml() throws Exception {
+    String expected = write(createFilter());
+
+    SearchFilter frozen = createFilter();
+    frozen.freeze();
+    Assert.assertEquals(expected, write(frozen));
+    Assert.assertEquals(expected, write(frozen));
+  }
+
+  @Test
+  public void testFreezeAppliesToNestedFilters() throws Exception {
+    SearchFilter.IsEqualTo isRead = new SearchFilter.IsEqualTo(ItemSchema.Subject, "status");
+    SearchFilter.SearchFilterCollection filter = new SearchFilter.SearchFilterCollection(
+        LogicalOperator.Or, isRead, new SearchFilter.Not(new SearchFilter.Exists(ItemSchema.Categories)));
+    filter.freeze();
+
+    Assert.assertTrue(isRead.isFrozen());
+    try {
+      isRead.setValue("other");
+      Assert.fail("Expected the nested filter to be frozen");
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      filter.add(new SearchFilter.Exists(ItemSchema.Importance));
+      Assert.fail("Expected the collection to be frozen");
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  private static SearchFilter createFilter() {
+    return new SearchFilter.SearchFilterCollection(LogicalOperator.And,
+        new SearchFilter.IsGreaterThan(ItemSchema.DateTimeReceived, new Date(1262304000000L)),
+        new SearchFilter.ContainsSubstring(ItemSchema.Subject, "<report> & \"summary\""),
+        new SearchFilter.Not(new SearchFilter.Exists(ItemSchema.Categories)));
+  }
+
+  private static String write(SearchFilter filter) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    EwsServiceXmlWriter writer = new EwsServiceXmlWriter(exchangeServiceMock, output);
+    writer.writeStartElement(XmlNamespace.Messages, XmlElementNames.Restriction);
+    filter.writeToXml(writer);
+    writer.writeEndElement();
+    writer.flush();
+    return output.toString("UTF-8");
+  }
+
+}
@@ -27,6 +27,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
 import microsoft.exchange.webservices.base.util.TestUtils;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -61,6 +63,30 @@ public class DateTimeUtilsTest {
     assertEquals(12, calendar.get(Calendar.SECOND));
   }
 
+  @Test
+  public void testParseUniversalDateTimeMatchesFormatter() {
+    DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZoneUTC();
+    String[] values = {
+        "1601-01-01T00:00:00Z", "1969-12-31T23:59:59Z", "1970-01-01T00:00:00Z", "2000-02-29T12:30:45Z",
+        "2015-01-08T10:11:12Z", "2016-12-31T23:59:59Z", "2100-03-01T00:00:00Z", "9999-12-31T23:59:59Z"
+    };
+    for (String value : values) {
+      assertEquals(value, formatter.parseDateTime(value).toDate(), DateTimeUtils.parseUniversalDateTime(value));
+    }
+  }
+
+  @Test
+  public void testParseUniversalDateTimeOtherForms() {
+    assertNull(DateTimeUtils.parseUniversalDateTime(null));
+    assertNull(DateTimeUtils.parseUniversalDateTime("2015-01-08T10:11:12"));
+    assertNull(DateTimeUtils.parseUniversalDateTime("2015-01-08T10:11:12.123Z"));
+    assertNull(DateTimeUtils.parseUniversalDateTime("2015-01-08T10:11:12+01:00"));
+    assertNull(DateTimeUtils.parseUniversalDateTime("2015-01-0aT10:11:12Z"));
+    assertNull(DateTimeUtils.parseUniversalDateTime("2015-02-29T10:11:12Z"));
+    assertNull(DateTimeUtils.parseUniversalDateTime("2015-01-08T24:00:00Z"));
+    assertNull(DateTimeUtils.parseUniversalDateTime("1500-01-08T10:11:12Z"));
+  }
+
   @Test
   public void testDateTimeZuluLowerZ() {
     String dateString = "2015-01-08T10:11:12z";